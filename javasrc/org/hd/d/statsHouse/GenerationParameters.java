@@ -19,6 +19,8 @@ package org.hd.d.statsHouse;
 import java.util.List;
 import java.util.Objects;
 
+import org.hd.d.statsHouse.data.LaggedStream;
+import org.hd.d.statsHouse.data.RollingWindow;
 import org.hd.d.statsHouse.generic.Style;
 
 /**Parameters for music generation from data.
@@ -42,9 +44,15 @@ import org.hd.d.statsHouse.generic.Style;
  * @param name  short ASCII name of track or source, eg "gen-M"; can be null
  * @param derivedSeed should be 0 (RANDOMNESS_NONE) for no randomness, else strictly positive;
  *     can automatically be derived from seed and name
+ * @param rolling  rolling-window statistic of the main data stream
+ *     to add as a quiet support track (plain/gentle only); null if none
+ * @param lags  lags of the main data stream each to add as a quiet companion voice
+ *     (plain/gentle only); never null, may be empty
+ * @param noise  true to add a noise/hiss support track
+ *     as dense as the main data stream is unpredictable (house only)
  */
 public record GenerationParameters(int seed, Style style, int introBars, boolean hetero, String name,
-		int derivedSeed)
+		int derivedSeed, RollingWindow.Spec rolling, List<LaggedStream.Spec> lags, boolean noise)
 	{
     public GenerationParameters
 	    {
@@ -52,15 +60,32 @@ public record GenerationParameters(int seed, Style style, int introBars, boolean
 	    if(introBars < AUTO_INTRO_BARS) { throw new IllegalArgumentException(); }
 	    if(derivedSeed < 0) { throw new IllegalArgumentException(); }
 	    if((RANDOMNESS_NONE == seed) && (derivedSeed != 0)) { throw new IllegalArgumentException(seed +"/" +derivedSeed); }
+	    lags = List.copyOf(lags);
+	    if(lags.size() > MAX_LAGS) { throw new IllegalArgumentException("too many lags"); }
 	    }
 
     /**Generate the derived seed automatically. */
-    public GenerationParameters(final int seed, final Style style, final int introBars, final boolean hetero, final String name)
+    public GenerationParameters(final int seed, final Style style, final int introBars, final boolean hetero, final String name,
+    		final RollingWindow.Spec rolling, final List<LaggedStream.Spec> lags, final boolean noise)
 	    {
     	this(seed, style, introBars, hetero, name,
-    			makeDerivedSeed(seed, name));
+    			makeDerivedSeed(seed, name), rolling, lags, noise);
 	    }
 
+    /**Generate the derived seed automatically, with no noise track. */
+    public GenerationParameters(final int seed, final Style style, final int introBars, final boolean hetero, final String name,
+    		final RollingWindow.Spec rolling, final List<LaggedStream.Spec> lags)
+	    { this(seed, style, introBars, hetero, name, rolling, lags, DEFAULT_NOISE); }
+
+    /**Generate the derived seed automatically, with no lagged voices. */
+    public GenerationParameters(final int seed, final Style style, final int introBars, final boolean hetero, final String name,
+    		final RollingWindow.Spec rolling)
+	    { this(seed, style, introBars, hetero, name, rolling, DEFAULT_LAGS); }
+
+    /**Generate the derived seed automatically, with no derived support tracks. */
+    public GenerationParameters(final int seed, final Style style, final int introBars, final boolean hetero, final String name)
+	    { this(seed, style, introBars, hetero, name, DEFAULT_ROLLING); }
+
     /**Randomness: unique on each run derived from time of day. */
     public static final int RANDOMNESS_UNIQUE = -1;
     /**Randomness: none (though progression may still happen. */
@@ -84,12 +109,20 @@ public record GenerationParameters(int seed, Style style, int introBars, boolean
     public static final boolean DEFAULT_HETERO = false;
     /**Default name is absent (though the input filename can be used), ie null. */
     public static final String DEFAULT_NAME = null;
+    /**Default is no rolling-window support track, ie null. */
+    public static final RollingWindow.Spec DEFAULT_ROLLING = null;
+    /**Maximum number of lagged voices, each with its own channel. */
+    public static final int MAX_LAGS = 4;
+    /**Default is no lagged voices. */
+    public static final List<LaggedStream.Spec> DEFAULT_LAGS = List.of();
+    /**Default is no noise track. */
+    public static final boolean DEFAULT_NOISE = false;
 
     /**Default sensible (sciency) defaults for homogeneous data. */
     public GenerationParameters()
         {
     	this(DEFAULT_SEED, DEFAULT_STYLE, DEFAULT_INTRO_BARS, DEFAULT_HETERO, DEFAULT_NAME,
-    			makeDerivedSeed(DEFAULT_SEED, DEFAULT_NAME));
+    			makeDerivedSeed(DEFAULT_SEED, DEFAULT_NAME), DEFAULT_ROLLING, DEFAULT_LAGS, DEFAULT_NOISE);
     	}
 
     /**Print a summary of command options to stderr. */
@@ -105,6 +138,17 @@ public record GenerationParameters(int seed, Style style, int introBars, boolean
         System.err.println("         ie not the same variable");
         System.err.println("      [-intro (auto|<bars>)]");
         System.err.println("      [-style (plain|gentle|house)]");
+        System.err.println("      [-rolling (mean|min|max|variance|cmean)[:<rows>]]");
+        System.err.println("         adds a quiet track of a rolling-window statistic");
+        System.err.println("         of the main data stream (plain/gentle only);");
+        System.err.println("         the default window is 24h, 7d, 3m or 3y to suit the data");
+        System.err.println("      [-lag <n>[c](,<n>[c])*]");
+        System.err.println("         adds a quiet voice for each lag of the main data stream");
+        System.err.println("         (plain/gentle only, at most 4), in rows or with c in cycles,");
+        System.err.println("         eg 1c is 1 day back for hourly data and 1 year back for monthly");
+        System.err.println("      [-noise]");
+        System.err.println("         adds a hiss track in verses, denser where the main data stream");
+        System.err.println("         is varying unpredictably (house only)");
 //      System.err.println("      [-substyle <name>]");
 //      System.err.println("      [-hints <key>=<value>(,<key>=<value>)*]");
 //		System.err.println("      [-highWorse]");
@@ -125,6 +169,9 @@ public record GenerationParameters(int seed, Style style, int introBars, boolean
     	boolean hetero = DEFAULT_HETERO;
     	Style style = DEFAULT_STYLE;
     	int introBars = DEFAULT_INTRO_BARS;
+    	RollingWindow.Spec rolling = DEFAULT_ROLLING;
+    	List<LaggedStream.Spec> lags = DEFAULT_LAGS;
+    	boolean noise = DEFAULT_NOISE;
     	final String name = inputFileName;
 
     	for(int i = 0; i < args.size(); )
@@ -170,10 +217,41 @@ public record GenerationParameters(int seed, Style style, int introBars, boolean
 	            continue;
 		    	}
 
+	    	if((i+1 < args.size()) && "-rolling".equals(arg))
+		    	{
+	    		rolling = RollingWindow.Spec.parse(args.get(i+1));
+	            i += 2;
+	            continue;
+		    	}
+
+	    	if((i+1 < args.size()) && "-lag".equals(arg))
+		    	{
+	    		lags = LaggedStream.Spec.parseList(args.get(i+1));
+	            i += 2;
+	            continue;
+		    	}
+
+	    	if("-noise".equals(arg))
+		    	{
+				noise = true;
+				++i;
+				continue;
+		    	}
+
     		throw new IllegalArgumentException("unknown argument '"+ arg + "'");
 	    	}
 
-    	return(new GenerationParameters(seed, style, introBars, hetero, name));
+    	// The rolling-window support track is only generated for plain/gentle.
+    	if((null != rolling) && (Style.house == style))
+	    	{ throw new IllegalArgumentException("-rolling is not supported with house style"); }
+    	// The lagged voices are only generated for plain/gentle.
+    	if(!lags.isEmpty() && (Style.house == style))
+	    	{ throw new IllegalArgumentException("-lag is not supported with house style"); }
+    	// The noise track is only generated for house.
+    	if(noise && (Style.house != style))
+	    	{ throw new IllegalArgumentException("-noise is only supported with house style"); }
+
+    	return(new GenerationParameters(seed, style, introBars, hetero, name, rolling, lags, noise));
 	    }
 
     /**True if some sort of intro/outro is requested. */
@@ -17,7 +17,7 @@ Licensed under the Apache License, Version 2.0 (the "License");
 package org.hd.d.statsHouse;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
@@ -25,33 +25,50 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
+import org.hd.d.statsHouse.data.CadenceRollup;
 import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataMerge;
 import org.hd.d.statsHouse.data.DataVizBeatPoint;
 import org.hd.d.statsHouse.data.EOUDataCSV;
 import org.hd.d.statsHouse.data.FileUtils;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
 import org.hd.d.statsHouse.feedHits.GenerateSummary;
+import org.hd.d.statsHouse.feedHits.data.SyntheticFeedHits;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.midi.IncrementalTune;
+import org.hd.d.statsHouse.midi.LivePlayer;
 import org.hd.d.statsHouse.midi.MIDIConstant;
 import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIMix;
 import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+import org.hd.d.statsHouse.midi.StreamingTuneGen;
+import org.hd.d.statsHouse.midi.WAVRenderer;
 
 /**Main (command-line) entry-point for the data handler.
  */
@@ -66,11 +83,55 @@ public final class Main
         System.err.println("Commands/options:");
         System.err.println("  -help");
         System.err.println("    This summary/help.");
+        System.err.println("  -stats");
+        System.err.println("    Precedes any other command or -@ option.");
+        System.err.println("    Print per-stage timing and allocation for each command,");
+        System.err.println("    and a one-line machine-readable summary at the end.");
+        System.err.println("  -incremental");
+        System.err.println("    Precedes any other command or -@ option.");
+        System.err.println("    Retain parsed data and generated bars for each input and style,");
+        System.err.println("    so that when a command is repeated after rows are appended");
+        System.err.println("    only the new rows are parsed and only changed bars generated.");
+        System.err.println("  -deterministic");
+        System.err.println("    Precedes any other command or -@ option.");
+        System.err.println("    Make MIDI output reproducible: record as the generation time");
+        System.err.println("    SOURCE_DATE_EPOCH (seconds since 1970 UTC) from the environment if set,");
+        System.err.println("    else the last date in the input data, else nothing.");
+        System.err.println("    SOURCE_DATE_EPOCH is used even without this option.");
+        System.err.println("  -manifest <manifestfilename>");
+        System.err.println("    Precedes any other command or -@ option.");
+        System.err.println("    Skip commands whose output exists and whose inputs, parameters and version");
+        System.err.println("    match those recorded in the manifest file, and record commands run.");
+        System.err.println("    Commands that play, synthesise data or use -seed -1 always run.");
+        System.err.println("  -watch <cmdfilename>");
+        System.err.println("    Run until killed, as for -@ with -incremental,");
+        System.err.println("    re-running each command line when its input CSV or feedHits directories change.");
+        System.err.println("  -serve <port> <rootdir>");
+        System.err.println("    Run until killed, sonifying on demand over HTTP on localhost only, from files under rootdir:");
+        System.err.println("      GET /tune?file=<data.csv>[&opts=<options>]");
+        System.err.println("      POST /tune[?name=<name>][&opts=<options>] with CSV body");
+        System.err.println("      GET /feedHits?type=<N>&dir=<dir>[&dir=<dir>]*[&format=(mid|dat|bin)][&decimals=<n>]");
         System.err.println("  -@(<cmdfilename>|-)");
         System.err.println("    Read independent command lines from specified file or stdin if '-'");
         System.err.println("    Do not process further command-line arguments.");
         System.err.println("  infilename.csv (-play|<outfilename>.(csv|mid|wav)))");
-        System.err.println("  -feedHitsSummary -play|<outbasename> <typeN> {feedHitsDataDir}*");
+        System.err.println("    [(-rollup|-rollupMean) (D|M|Y)]");
+        System.err.println("    Optionally sonify the input rolled up to a coarser cadence,");
+        System.err.println("    summing or averaging values, parsing each input once per command batch.");
+        System.err.println("    The input may be several files of the same cadence joined with '+',");
+        System.err.println("    merged on date into one data set with up to " + DataBounds.MAX_DATA_STREAMS + " streams, eg for -hetero.");
+        System.err.println("  -feedHitsSummary [-binary] -play|<outbasename> <typeN> {feedHitsDataDir}*");
+        System.err.println("    Also saves any visualisation data as <outbasename>.dat text,");
+        System.err.println("    or with -binary as <outbasename>.bin little-endian floats for gnuplot.");
+        System.err.println("  -mix <outfilename>.(mid|wav) {-part infilename.csv [options]}+");
+        System.err.println("    Generate each part concurrently, then join them end to end into one tune,");
+        System.err.println("    fading expression across each join; options are as for a single input.");
+        System.err.println("  -streamTune infilename.csv <outfilename>.mid");
+        System.err.println("    Plain or gentle style only, in memory independent of data length.");
+        System.err.println("  -synthCSV -|<outfilename>.csv (H|D|M|Y) <rows> <streams> <gapProbability> <seed>");
+        System.err.println("    Write synthetic EOU data CSV, eg for scaling tests.");
+        System.err.println("  -synthFeedHits <outdir> <blocks> <intervalDays> <UAs> <seed>");
+        System.err.println("    Write synthetic feedHits data block directories under outdir.");
         GenerationParameters.printOptions();
     	System.err.println();
         System.err.println("    This syntax may be used, one per line, in the command file.");
@@ -92,8 +153,22 @@ public final class Main
         // List of command lines split at spaces.
         List<List<String>> cmdlines = null;
 
+        // Strip any leading global options, in any order.
+        int argi = 0;
+        boolean stats = false;
+        boolean incremental = false;
+        String manifestName = null;
+        for( ; argi < args.length; ++argi)
+	        {
+        	if("-stats".equals(args[argi])) { stats = true; }
+        	else if("-incremental".equals(args[argi])) { incremental = true; }
+        	else if("-deterministic".equals(args[argi])) { MIDIGen.setDeterministicHeader(true); }
+        	else if("-manifest".equals(args[argi]) && (args.length > argi + 1)) { manifestName = args[++argi]; }
+        	else { break; }
+	        }
+
         // Generate help if asked or if no parameters.
-        if((args.length < 1) || "-help".equals(args[0]))
+        if((args.length <= argi) || "-help".equals(args[argi]))
             {
             printOptions();
             return; // Not an error.
@@ -101,36 +176,44 @@ public final class Main
 
         try
             {
+            // If "-watch" is specified then run until killed.
+            if("-watch".equals(args[argi]))
+	            {
+            	if(args.length != argi + 2) { throw new IllegalArgumentException("-watch takes exactly one command file name"); }
+            	try(final Watcher w = new Watcher(new File(args[argi+1]),
+        			Watcher.DEFAULT_DEBOUNCE_MS, Watcher.DEFAULT_WORKERS, stats))
+            		{ w.run(); }
+            	System.exit(0);
+	            }
+
+            // If "-serve" is specified then serve requests until killed.
+            if("-serve".equals(args[argi]))
+	            {
+            	if(args.length != argi + 3) { throw new IllegalArgumentException("-serve takes a port and a root directory"); }
+            	final SonificationServer server = new SonificationServer(Integer.parseInt(args[argi+1], 10),
+        			new File(args[argi+2]), SonificationServer.DEFAULT_THREADS, SonificationServer.DEFAULT_CACHE_ENTRIES);
+            	System.out.println("INFO: serving on http://localhost:" + server.port() + "/");
+            	Thread.currentThread().join(); // Until killed.
+	            }
+
             // If "-@" is specified then select a command stream...
-            if((null != args[0]) && args[0].startsWith("-@"))
+            if((null != args[argi]) && args[argi].startsWith("-@"))
     	        {
-            	cmdlines = new ArrayList<>();
-    	        final String cmdfilename = args[0].substring(2);
+    	        final String cmdfilename = args[argi].substring(2);
     	        try(Reader cmdStreamReader = switch(cmdfilename) {
 	    	        case "-" -> new InputStreamReader(System.in);
 	    	        case "" -> throw new IllegalArgumentException("missing command file name");
 	    	        default -> new FileReader(cmdfilename);
 	    	        })
-	    	        {
-	    	        try(final BufferedReader br = new BufferedReader(cmdStreamReader, 8192))
-		    	        {
-	    	        	String line;
-	    		        while(null != (line = br.readLine()))
-	    		            {
-	    		        	// Skip empty lines.
-	    		        	if("".equals(line)) { continue; }
-	    		            final String fields[] = delimCmdStream.split(line);
-                            cmdlines.add(Collections.unmodifiableList(Arrays.asList(fields)));
-	    		            }
-		    	        }
-	    	        }
+	    	        { cmdlines = readCommandLines(cmdStreamReader); }
     	        }
 
             // If no command stream then wrap up args[] as a single command.
             if(null == cmdlines)
-	            { cmdlines = Collections.singletonList(Arrays.asList(args)); }
+	            { cmdlines = Collections.singletonList(Arrays.asList(args).subList(argi, args.length)); }
 
-            runCommands(cmdlines, false);
+            final OutputManifest manifest = (null == manifestName) ? null : new OutputManifest(new File(manifestName));
+            runCommands(cmdlines, false, stats, incremental, manifest);
 
         	final long end = System.currentTimeMillis();
             System.out.println(String.format("INFO: runtime %.3fs", (end - start) / 1000f));
@@ -151,6 +234,26 @@ public final class Main
         System.exit(1);
         }
 
+    /**Read command lines, one per line, skipping empty lines; never null.
+     * @param r  command stream, not closed by this routine; never null
+     * @return  immutable command lines, each split into immutable arguments
+     */
+    public static List<List<String>> readCommandLines(final Reader r) throws IOException
+	    {
+    	Objects.requireNonNull(r);
+    	final List<List<String>> cmdlines = new ArrayList<>();
+        final BufferedReader br = new BufferedReader(r, 8192);
+    	String line;
+        while(null != (line = br.readLine()))
+            {
+        	// Skip empty lines.
+        	if("".equals(line)) { continue; }
+            final String fields[] = delimCmdStream.split(line);
+            cmdlines.add(Collections.unmodifiableList(Arrays.asList(fields)));
+            }
+        return(Collections.unmodifiableList(cmdlines));
+	    }
+
     /**Convert input filename to tune name; never null.
      * Discard any path and and trailing ".csv" parts.
      */
@@ -163,6 +266,63 @@ public final class Main
 	    return(basename);
 	    }
 
+    /**Roll-up of the input requested in the options of a command.
+     * @param cadence  cadence to roll up to; null if none
+     * @param aggregate  how values are combined in each period; never null
+     * @param options  the remaining options, that determine GenerationParameters; never null
+     */
+    public record InputRollup(DataCadence cadence, CadenceRollup.Aggregate aggregate, List<String> options)
+	    {
+	    public InputRollup
+		    {
+		    Objects.requireNonNull(aggregate);
+		    Objects.requireNonNull(options);
+		    }
+
+	    /**Extract any -rollup or -rollupMean (D|M|Y) from command options; never null. */
+	    public static InputRollup parse(final List<String> options)
+		    {
+			for(int i = 0; i < options.size(); ++i)
+				{
+				final String o = options.get(i);
+				if(!"-rollup".equals(o) && !"-rollupMean".equals(o)) { continue; }
+				if(i + 1 >= options.size()) { throw new IllegalArgumentException(o + " needs a cadence (D|M|Y)"); }
+				final List<String> remaining = new ArrayList<>(options);
+				remaining.subList(i, i + 2).clear();
+				return(new InputRollup(DataCadence.valueOf(options.get(i + 1)),
+					"-rollupMean".equals(o) ? CadenceRollup.Aggregate.mean : CadenceRollup.Aggregate.sum,
+					Collections.unmodifiableList(remaining)));
+				}
+			return(new InputRollup(null, CadenceRollup.Aggregate.sum, options));
+		    }
+	    }
+
+    /**Flag immediately after -feedHitsSummary to save visualisation data in binary. */
+    public static final String FEEDHITS_BINARY_FLAG = "-binary";
+
+    /**True if a -feedHitsSummary command line asks for binary visualisation data. */
+    public static boolean feedHitsBinary(final List<String> cmdline)
+	    { return((cmdline.size() > 1) && FEEDHITS_BINARY_FLAG.equals(cmdline.get(1))); }
+
+    /**A -feedHitsSummary command line without any binary flag, so with its other arguments in fixed positions; never null. */
+    public static List<String> withoutFeedHitsBinary(final List<String> cmdline)
+	    {
+    	if(!feedHitsBinary(cmdline)) { return(cmdline); }
+    	final List<String> result = new ArrayList<>(cmdline);
+    	result.remove(1);
+    	return(result);
+	    }
+
+    /**Split a command input into the names of one or more files to be merged; never null nor empty.
+     * Names are separated by '+', though a name containing '+' that exists as a file is taken whole.
+     */
+    public static List<String> splitInputFileNames(final String input)
+	    {
+	    Objects.requireNonNull(input);
+	    if((input.indexOf('+') < 0) || new File(input).exists()) { return(List.of(input)); }
+	    return(List.of(input.split("\\+")));
+	    }
+
     /**Run zero or more command lines, aborting with an exception in case of error.
      * Any caught exception is rethrown as a RuntimeException, wrapped in some extra context.
      *
@@ -170,189 +330,532 @@ public final class Main
      * @param quiet  if true, minimise output such as progress indication
      */
 	public static void runCommands(final List<List<String>> cmdlines, final boolean quiet)
+		{ runCommands(cmdlines, quiet, false); }
+
+    /**Run zero or more command lines, aborting with an exception in case of error.
+     * Any caught exception is rethrown as a RuntimeException, wrapped in some extra context.
+     *
+     * @param cmdlines  zero or more command lines each consisting of arguments pre-parsed into separate Strings; never null
+     * @param quiet  if true, minimise output such as progress indication
+     * @param stats  if true, print per-stage timing and allocation for each command,
+     *     and a machine-readable summary line for all commands at the end
+     */
+	public static void runCommands(final List<List<String>> cmdlines, final boolean quiet, final boolean stats)
+		{ runCommands(cmdlines, quiet, stats, false); }
+
+    /**Run zero or more command lines, aborting with an exception in case of error.
+     * Any caught exception is rethrown as a RuntimeException, wrapped in some extra context.
+     *
+     * @param cmdlines  zero or more command lines each consisting of arguments pre-parsed into separate Strings; never null
+     * @param quiet  if true, minimise output such as progress indication
+     * @param stats  if true, print per-stage timing and allocation for each command,
+     *     and a machine-readable summary line for all commands at the end
+     * @param incremental  if true, retain state per input and parameters between commands
+     *     (and calls) to only parse and generate what has changed in the input
+     */
+	public static void runCommands(final List<List<String>> cmdlines, final boolean quiet, final boolean stats,
+			final boolean incremental)
+		{ runCommands(cmdlines, quiet, stats, incremental, null); }
+
+    /**Run zero or more command lines, aborting with an exception in case of error.
+     * Any caught exception is rethrown as a RuntimeException, wrapped in some extra context.
+     *
+     * @param cmdlines  zero or more command lines each consisting of arguments pre-parsed into separate Strings; never null
+     * @param quiet  if true, minimise output such as progress indication
+     * @param stats  if true, print per-stage timing and allocation for each command,
+     *     and a machine-readable summary line for all commands at the end
+     * @param incremental  if true, retain state per input and parameters between commands
+     *     (and calls) to only parse and generate what has changed in the input
+     * @param manifest  if not null, skip commands whose outputs are up to date,
+     *     and record completed commands, saving the manifest before returning
+     * <p>
+     * Unless collecting stats, WAV outputs are rendered in parallel in the background,
+     * all being complete before this returns;
+     * a failure in one of those is reported once the remaining commands have run.
+     */
+	public static void runCommands(final List<List<String>> cmdlines, final boolean quiet, final boolean stats,
+			final boolean incremental, final OutputManifest manifest)
 		{
+		// Stage totals across all commands, if collecting stats.
+		final Map<String, StageStats.Totals> allStats = new LinkedHashMap<>();
+
+		// Outputs of commands, completing once published.
+		final List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+		// Inputs parsed for roll-up, with all their cadences, so that each is parsed once per batch.
+		final Map<String, Map<DataCadence, EOUDataCSV>> rollups = new HashMap<>();
+
 		// Execute command line(s) sequentially, aborting at any exception.
 		int cmdCount = 0;
-		for(final List<String> cmdline : cmdlines)
+		try
 			{
-			final int argCount = cmdline.size();
-			if(argCount < 2)
-			    { throw new IllegalArgumentException("too few arguments: at least input.csv and -play or output.csv or output.mid required"); }
-
-		    try {
-	            if("-feedHitsSummary".equals(cmdline.get(0)))
-		            {
-		            // feedHits integration
-					if(argCount < 4) { throw new IllegalArgumentException("too few arguments to -feedHitsSummary"); }
-				    final String outputFileName = cmdline.get(1);
-					final MIDITune mt = GenerateSummary.summary(Integer.parseInt(cmdline.get(2), 10), cmdline.subList(3, cmdline.size()));
-
-					final Sequence s = MIDIGen.genFromTuneSequence(mt, null, null);
-
-					// Play it immediately!
-					if("-play".equals(outputFileName))
-					    { playIt(s); }
+			for(final List<String> cmdline : cmdlines)
+				{
+				++cmdCount;
+				OutputManifest.Entry entry = null;
+				if(null != manifest)
+					{
+					// An unreadable input is left for the command itself to report.
+					try { entry = OutputManifest.entryFor(cmdline); }
+					catch(final IOException | RuntimeException e) { entry = null; }
+					if((null != entry) && manifest.isUpToDate(entry))
+						{
+						if(!quiet) { System.out.println("INFO: up to date: " + cmdCount + "/" + cmdlines.size() + ": " + entry.output()); }
+						continue;
+						}
+					}
+				if(stats) { StageStats.begin(); }
+				try
+					{
+					// WAV rendering is left running in the background unless timing each command.
+					final OutputManifest.Entry done = entry;
+					pending.add(runCommand(cmdline, quiet, incremental, rollups, cmdCount, cmdlines.size(), !stats)
+						.handle((v, e) -> {
+							if(null != e)
+								{
+								throw new RuntimeException("failed processing command " + cmdline,
+									((e instanceof CompletionException) && (null != e.getCause())) ? e.getCause() : e);
+								}
+							if(null != done) { manifest.record(done); }
+							return(null);
+							}));
+					}
+				finally
+					{
+					if(stats)
+						{
+						final Map<String, StageStats.Totals> cmdStats = StageStats.end();
+						StageStats.printTable(System.out, cmdCount + "/" + cmdlines.size() + ": " + cmdline, cmdStats);
+						StageStats.merge(allStats, cmdStats);
+						}
+					}
+				}
+			}
+		finally
+			{
+			// Let outputs still being rendered complete (and be recorded), even if aborting.
+			for(final CompletableFuture<Void> f : pending)
+				{
+				try { f.join(); }
+				catch(final CompletionException | CancellationException e) { /* Reported below. */ }
+				}
+
+			// Keep a record of the work done, even if aborting.
+			if(null != manifest)
+				{
+				try { manifest.save(); }
+				catch(final IOException e) { throw new UncheckedIOException(e); }
+				}
+			}
+
+		// Report the first failure of any output completed in the background.
+		for(final CompletableFuture<Void> f : pending)
+			{
+			try { f.join(); }
+			catch(final CompletionException e) { throw (RuntimeException) e.getCause(); }
+			}
+
+		if(stats) { System.out.println(StageStats.summaryLine(cmdCount, allStats)); }
+		}
+
+    /**Already-completed result of a command whose outputs are all published. */
+    private static final CompletableFuture<Void> PUBLISHED = CompletableFuture.completedFuture(null);
+
+    /**Run one command line, aborting with an exception in case of error.
+     * Any caught exception is rethrown as a RuntimeException, wrapped in some extra context.
+     *
+     * @param cmdline  command line consisting of arguments pre-parsed into separate Strings; never null
+     * @param quiet  if true, minimise output such as progress indication
+     * @param incremental  if true, use retained state for the input where possible
+     * @param rollups  inputs already parsed for roll-up in this batch, keyed by aggregate and path,
+     *     to which any newly parsed are added; never null
+     * @param cmdNumber  1-based number of this command in the batch, for progress indication
+     * @param cmdTotal  number of commands in the batch, for progress indication
+     * @param background  if true, a WAV output may be rendered and published in the background
+     * @return  completes when all outputs are published, possibly already; never null
+     */
+	@SuppressWarnings("try")
+	private static CompletableFuture<Void> runCommand(final List<String> cmdline, final boolean quiet,
+			final boolean incremental, final Map<String, Map<DataCadence, EOUDataCSV>> rollups,
+			final int cmdNumber, final int cmdTotal, final boolean background)
+		{
+		final int argCount = cmdline.size();
+		if(argCount < 2)
+		    { throw new IllegalArgumentException("too few arguments: at least input.csv and -play or output.csv or output.mid required"); }
+
+	    try {
+            if("-feedHitsSummary".equals(cmdline.get(0)))
+	            {
+	            // feedHits integration
+				final boolean binary = feedHitsBinary(cmdline);
+				final List<String> args = withoutFeedHitsBinary(cmdline);
+				if(args.size() < 4) { throw new IllegalArgumentException("too few arguments to -feedHitsSummary"); }
+			    final String outputFileName = args.get(1);
+				final MIDITune mt;
+				try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE))
+					{ mt = GenerateSummary.summary(Integer.parseInt(args.get(2), 10), args.subList(3, args.size())); }
+
+				// Play it immediately!
+				if("-play".equals(outputFileName))
+				    { playIt(PackedMIDITune.of(mt)); }
+				else
+					{
+					final Sequence s;
+					try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SEQUENCE))
+						{ s = MIDIGen.genFromTuneSequence(mt, null, null); }
+					saveIt(s, outputFileName + ".mid");
+					// Save the data for visualisation if any, else remove any such file.
+					final DataVizBeatPoint dv = mt.dataRendered();
+					final String dvName = outputFileName + (binary ? ".bin" : ".dat");
+					if(null == dv)
+						{ (new File(dvName)).delete(); }
+					else if(binary)
+						{
+						try(ByteArrayOutputStream baos = new ByteArrayOutputStream(1024))
+				        	{
+				        	dv.writeBinary(baos);
+				    		FileUtils.replacePublishedFile(dvName, baos.toByteArray(), true);
+				        	}
+						}
 					else
 						{
-						saveIt(s, outputFileName + ".mid");
-						// Save the data for visualisation if any, else remove any such file.
-						final DataVizBeatPoint dv = mt.dataRendered();
-						final String dvName = outputFileName + ".dat";
-						if(null == dv)
-							{ (new File(dvName)).delete(); }
-						else
-							{
-							try(ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-								final OutputStreamWriter w = new OutputStreamWriter(baos))
-					        	{
-					        	dv.write(w, false);
-					    		FileUtils.replacePublishedFile(dvName, baos.toByteArray(), true);
-					        	}
-							}
+						try(ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+							final OutputStreamWriter w = new OutputStreamWriter(baos))
+				        	{
+				        	dv.write(w, false);
+				    		FileUtils.replacePublishedFile(dvName, baos.toByteArray(), true);
+				        	}
 						}
+					}
 
-	            	continue;
-		            }
+            	return(PUBLISHED);
+	            }
 
-			    final String inputFileName = cmdline.get(0);
-			    final String outputFileName = cmdline.get(1);
-				// Remaining optional args determine GenerationParameters.
-				// Use the final component of the input file name as the tune name.
-				// TODO strip extension
+            if("-streamTune".equals(cmdline.get(0)))
+	            {
+				if(argCount < 3) { throw new IllegalArgumentException("too few arguments to -streamTune"); }
+			    final String inputFileName = cmdline.get(1);
+			    final String outputFileName = cmdline.get(2);
+				if(!outputFileName.endsWith(".mid")) { throw new IllegalArgumentException("-streamTune output must be .mid"); }
 				final GenerationParameters params =
-					GenerationParameters.parseOptionalCommandArguments(cmdline.subList(2, cmdline.size()),
+					GenerationParameters.parseOptionalCommandArguments(cmdline.subList(3, cmdline.size()),
 						filenameToTuneName(inputFileName));
+				if(!StreamingTuneGen.canStream(params.style()))
+					{ throw new IllegalArgumentException("-streamTune style must be plain or gentle"); }
 				if(!quiet)
 				    {
-					System.out.println("INFO: sonifying: " +
-				        (++cmdCount) + "/" + (cmdlines.size()) + ": " +
-//					params);
-						Arrays.toString(cmdline.toArray()) + ", " +
-						"derivedSeed=" + params.derivedSeed());
+					System.out.println("INFO: streaming: " +
+				        cmdNumber + "/" + cmdTotal + ": " +
+						Arrays.toString(cmdline.toArray()));
 					}
-
-				// Generate the abstract MIDI form.
-				final EOUDataCSV data = EOUDataCSV.loadEOUDataCSV(new File (inputFileName));
-				final DataBounds db = new DataBounds(data);
-				final MIDITune mt = MIDIGen.genTune(params, data);
-
-				// Choose output type based on suffix, or -play.
-				if(outputFileName.endsWith(".csv"))
+				FileUtils.replacePublishedFile(outputFileName,
+					os -> {
+						try { StreamingTuneGen.genPlainGentle(params, new File(inputFileName), os); }
+						catch(final InvalidMidiDataException e) { throw new IOException(e); }
+						},
+					quiet);
+            	return(PUBLISHED);
+	            }
+
+            if("-synthCSV".equals(cmdline.get(0)))
+	            {
+				if(argCount != 7) { throw new IllegalArgumentException("wrong number of arguments to -synthCSV"); }
+			    final String outputFileName = cmdline.get(1);
+			    final SyntheticEOUData sd = new SyntheticEOUData(
+		    		DataCadence.valueOf(cmdline.get(2)),
+		    		Long.parseLong(cmdline.get(3), 10),
+		    		Integer.parseInt(cmdline.get(4), 10),
+		    		Float.parseFloat(cmdline.get(5)),
+		    		Long.parseLong(cmdline.get(6), 10));
+			    // Stream directly, since the output may be far too large to hold in memory.
+			    if("-".equals(outputFileName))
 				    {
-				    // Generate and publish MIDICSV file.
-					try (
-						ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
-						Writer w = new OutputStreamWriter(baos)
-						)
-				    	{
-				    	MIDIGen.genFromTuneMIDICSV(w, mt);
-				        FileUtils.replacePublishedFile(outputFileName, baos.toByteArray(), true);
-				    	}
+			    	final Writer w = new BufferedWriter(new OutputStreamWriter(System.out, EOUDataCSV.EOUDATACSV_CHARSET), 1 << 16);
+			    	sd.write(w);
+			    	w.flush();
 				    }
-				else
+			    else
 				    {
-					// MIDI output to play immediately or to save.
-					final Sequence s = MIDIGen.genFromTuneSequence(mt, params, db);
-					final boolean isMid = outputFileName.endsWith(".mid");
-					if(isMid || outputFileName.endsWith(".wav"))
-				    	{
-				        // Generate MIDI binary file.
-				    	try (ByteArrayOutputStream baos = new ByteArrayOutputStream(256))
-				        	{
-				        	MidiSystem.write(s, MIDIConstant.PREFERRED_MIDI_FILETYPE, baos);
-				        	if(isMid)
-				                {
-				        		// Publish binary MIDI file.
-				        		FileUtils.replacePublishedFile(outputFileName, baos.toByteArray(), true);
-				        		}
-				        	else
-				            	{
-				        		// Generate and publish WAV.
-				        	    final AudioInputStream stream = AudioSystem.getAudioInputStream(
-				    	    		new ByteArrayInputStream(baos.toByteArray()));
-				        	    try (ByteArrayOutputStream baosWAV = new ByteArrayOutputStream(16384))
-				            	    {
-				                    AudioSystem.write(stream, AudioFileFormat.Type.WAVE, baosWAV);
-				                    FileUtils.replacePublishedFile(outputFileName, baosWAV.toByteArray(), true);
-				            	    }
-				            	}
-				        	}
-				    	}
-					else if("-play".equals(outputFileName))
-				    	{
-						playIt(s);
-//				    	// Get default sequencer.
-//				    	try(final Sequencer sequencer = MidiSystem.getSequencer())
-//					    	{
-//					    	if(null == sequencer)
-//					    	    {
-//					    		throw new UnsupportedOperationException("MIDI sequencer not available.");
-//					    	    }
-//
-//				    	    // Acquire resources and make operational.
-//				    	    sequencer.open();
-//
-//				            sequencer.setSequence(s);
-//				            final long usLength = sequencer.getMicrosecondLength();
-//				        	System.out.println(String.format("INFO: duration %.1fs...", usLength / 1_000_000f));
-//				            sequencer.start();
-//				            while(sequencer.isRunning()) { Thread.sleep(1000); }
-//				            Thread.sleep(1000); // Allow for some graceful decay of the sound!
-//					    	}
-				    	}
-					else
-				    	{
-				    	throw new IllegalArgumentException("unrecognised output type/suffix: " + outputFileName);
-				    	}
+			    	try(Writer w = Files.newBufferedWriter(new File(outputFileName).toPath(), EOUDataCSV.EOUDATACSV_CHARSET))
+			    		{ sd.write(w); }
 				    }
+            	return(PUBLISHED);
+	            }
+
+            if("-synthFeedHits".equals(cmdline.get(0)))
+	            {
+				if(argCount != 6) { throw new IllegalArgumentException("wrong number of arguments to -synthFeedHits"); }
+				final List<String> dirs = SyntheticFeedHits.writeDirs(new File(cmdline.get(1)),
+					Integer.parseInt(cmdline.get(2), 10),
+					Integer.parseInt(cmdline.get(3), 10),
+					Integer.parseInt(cmdline.get(4), 10),
+					Long.parseLong(cmdline.get(5), 10));
+				if(!quiet) { System.out.println("INFO: wrote " + dirs.size() + " feedHits block directories under " + cmdline.get(1)); }
+            	return(PUBLISHED);
+	            }
+
+            if("-mix".equals(cmdline.get(0)))
+	            {
+			    final String outputFileName = cmdline.get(1);
+			    final boolean isMid = outputFileName.endsWith(".mid");
+			    if(!isMid && !outputFileName.endsWith(".wav")) { throw new IllegalArgumentException("-mix output must be .mid or .wav"); }
+			    final List<List<String>> parts = splitMixParts(cmdline.subList(2, argCount));
+				if(!quiet)
+				    {
+					System.out.println("INFO: mixing: " +
+				        cmdNumber + "/" + cmdTotal + ": " +
+						Arrays.toString(cmdline.toArray()));
+					}
+
+				// Load each input in turn, sharing any roll-up parse, and generate all parts concurrently.
+				final List<CompletableFuture<PackedMIDITune>> tunes = new ArrayList<>(parts.size());
+				final List<String> names = new ArrayList<>(parts.size());
+				for(final List<String> part : parts)
+					{
+					final List<String> inputFileNames = splitInputFileNames(part.get(0));
+					final InputRollup ir = InputRollup.parse(part.subList(1, part.size()));
+					final GenerationParameters params =
+						GenerationParameters.parseOptionalCommandArguments(ir.options(), tuneName(inputFileNames));
+					final EOUDataCSV data;
+					try(StageStats.Timer t = StageStats.time(StageStats.STAGE_CSV_LOAD))
+						{ data = loadInput(inputFileNames, ir, rollups); }
+					tunes.add(CompletableFuture.supplyAsync(() -> MIDIGen.genPackedTune(params, data)));
+					names.add(params.name());
+					}
+				final MIDIMix mix;
+				try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE))
+					{ mix = MIDIMix.stitch(tunes.stream().map(CompletableFuture::join).toList(), MIDIMix.DEFAULT_FADE_BARS); }
+
+				final byte smf[];
+		    	try(ByteArrayOutputStream baos = new ByteArrayOutputStream(256))
+		    		{
+		    		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SEQUENCE))
+		    			{ mix.writeSMF(String.join(" / ", names), baos); }
+		    		smf = baos.toByteArray();
+		    		}
+				if(isMid)
+					{ FileUtils.replacePublishedFile(outputFileName, smf, true); }
+				else if(background)
+	        		{
+        			return(WAVRenderer.shared().submit(smf).thenAccept(wav -> {
+        				try { FileUtils.replacePublishedFile(outputFileName, wav, true); }
+        				catch(final IOException e) { throw new UncheckedIOException(e); }
+        				}));
+	        		}
+				else
+					{
+	        		final byte wav[];
+	    	    	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_WAV))
+	    	    		{ wav = WAVRenderer.shared().render(smf); }
+	                FileUtils.replacePublishedFile(outputFileName, wav, true);
+					}
+            	return(PUBLISHED);
+	            }
+
+		    final String inputFileName = cmdline.get(0);
+		    final String outputFileName = cmdline.get(1);
+		    final List<String> inputFileNames = splitInputFileNames(inputFileName);
+			// Strip any roll-up of the input to a coarser cadence.
+			final InputRollup ir = InputRollup.parse(cmdline.subList(2, cmdline.size()));
+			// Remaining optional args determine GenerationParameters.
+			// Use the final component of the input file name as the tune name.
+			// TODO strip extension
+			final GenerationParameters params =
+				GenerationParameters.parseOptionalCommandArguments(ir.options(), tuneName(inputFileNames));
+			if(!quiet)
+			    {
+				System.out.println("INFO: sonifying: " +
+			        cmdNumber + "/" + cmdTotal + ": " +
+//					params);
+					Arrays.toString(cmdline.toArray()) + ", " +
+					"derivedSeed=" + params.derivedSeed());
+				}
+
+			// Generate the abstract MIDI form,
+			// packed unless the MIDICSV output needs the full form.
+			final boolean isCSV = outputFileName.endsWith(".csv");
+			final DataBounds db;
+			final MIDITune mt;
+			final PackedMIDITune pt;
+			if(incremental && (null == ir.cadence()) && (1 == inputFileNames.size()))
+				{
+				final IncrementalTune.Snapshot snapshot =
+					IncrementalTune.forInput(new File(inputFileName), params).update();
+				db = snapshot.bounds();
+				mt = snapshot.tune();
+				pt = isCSV ? null : PackedMIDITune.of(mt);
 				}
-		    catch(final Exception e)
-		        {
-				e.printStackTrace();
-		    	throw new RuntimeException("failed processing command " + cmdline, e);
+			else
+				{
+				final EOUDataCSV data;
+				try(StageStats.Timer t = StageStats.time(StageStats.STAGE_CSV_LOAD))
+					{ data = loadInput(inputFileNames, ir, rollups); }
+				try(StageStats.Timer t = StageStats.time(StageStats.STAGE_BOUNDS))
+					{ db = new DataBounds(data); }
+				mt = isCSV ? MIDIGen.genTune(params, data) : null;
+				pt = isCSV ? null : MIDIGen.genPackedTune(params, data);
 				}
+
+			// Choose output type based on suffix, or -play.
+			if(isCSV)
+			    {
+			    // Generate and publish MIDICSV file.
+				try (
+					ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+					Writer w = new OutputStreamWriter(baos)
+					)
+			    	{
+			    	MIDIGen.genFromTuneMIDICSV(w, mt);
+			        FileUtils.replacePublishedFile(outputFileName, baos.toByteArray(), true);
+			    	}
+			    }
+			else
+			    {
+				// MIDI output to play immediately or to save.
+				final boolean isMid = outputFileName.endsWith(".mid");
+				if(isMid || outputFileName.endsWith(".wav"))
+			    	{
+			        // Generate MIDI binary file.
+			    	try (ByteArrayOutputStream baos = new ByteArrayOutputStream(256))
+			        	{
+			    		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SEQUENCE))
+			    			{ MIDIGen.genFromPackedTuneSMF(pt, params, db, baos); }
+			        	if(isMid)
+			                {
+			        		// Publish binary MIDI file.
+			        		FileUtils.replacePublishedFile(outputFileName, baos.toByteArray(), true);
+			        		}
+			        	else
+			            	{
+			        		// Generate and publish WAV, on a shared pooled synthesizer.
+			        		if(background)
+				        		{
+			        			return(WAVRenderer.shared().submit(baos.toByteArray()).thenAccept(wav -> {
+			        				try { FileUtils.replacePublishedFile(outputFileName, wav, true); }
+			        				catch(final IOException e) { throw new UncheckedIOException(e); }
+			        				}));
+				        		}
+			        		final byte wav[];
+		        	    	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_WAV))
+		        	    		{ wav = WAVRenderer.shared().render(baos.toByteArray()); }
+		                    FileUtils.replacePublishedFile(outputFileName, wav, true);
+			            	}
+			        	}
+			    	}
+				else if("-play".equals(outputFileName))
+			    	{
+					playIt(pt);
+			    	}
+				else
+			    	{
+			    	throw new IllegalArgumentException("unrecognised output type/suffix: " + outputFileName);
+			    	}
+			    }
 			}
+	    catch(final Exception e)
+	        {
+			e.printStackTrace();
+	    	throw new RuntimeException("failed processing command " + cmdline, e);
+			}
+	    return(PUBLISHED);
+		}
+
+	/**Tune name for one or more input files; never null. */
+	private static String tuneName(final List<String> inputFileNames)
+		{ return(inputFileNames.stream().map(Main::filenameToTuneName).collect(Collectors.joining("+"))); }
+
+	/**Load input data, rolled up and merged as requested; never null.
+	 * @param inputFileNames  one or more files to merge; never null nor empty
+	 * @param ir  any roll-up; never null
+	 * @param rollups  inputs already parsed for roll-up, to which any new input is added; never null
+	 * @throws IOException  if an input is unreadable or unparseable
+	 */
+	private static EOUDataCSV loadInput(final List<String> inputFileNames, final InputRollup ir,
+			final Map<String, Map<DataCadence, EOUDataCSV>> rollups)
+		throws IOException
+		{
+		final List<EOUDataCSV> parts = new ArrayList<>(inputFileNames.size());
+		for(final String name : inputFileNames)
+			{
+			parts.add((null == ir.cadence()) ? EOUDataCSV.loadEOUDataCSV(new File(name)) :
+				rolledUp(rollups, new File(name), ir.aggregate(), ir.cadence()));
+			}
+		return((1 == parts.size()) ? parts.get(0) : DataMerge.merge(parts));
+		}
+
+	/**Split the arguments of a -mix command after the output into parts, each an input and its options; never null.
+	 * @throws IllegalArgumentException  if there are no parts, or arguments before the first -part,
+	 *     or a -part without an input
+	 */
+	public static List<List<String>> splitMixParts(final List<String> args)
+		{
+		if(args.isEmpty() || !"-part".equals(args.get(0)))
+			{ throw new IllegalArgumentException("-mix parts must each start with -part"); }
+		final List<List<String>> parts = new ArrayList<>();
+		int start = 1;
+		for(int i = 1; i <= args.size(); ++i)
+			{
+			if((i < args.size()) && !"-part".equals(args.get(i))) { continue; }
+			if(i == start) { throw new IllegalArgumentException("-part without an input"); }
+			parts.add(args.subList(start, i));
+			start = i + 1;
+			}
+		return(parts);
+		}
+
+	/**Get input data rolled up to the given cadence, parsing the input only if not already done; never null.
+	 * @param rollups  inputs already parsed for roll-up, to which this input is added if new; never null
+	 * @throws IOException  if the input is unreadable or unparseable
+	 * @throws IllegalArgumentException  if the input is of a coarser cadence than requested
+	 */
+	private static EOUDataCSV rolledUp(final Map<String, Map<DataCadence, EOUDataCSV>> rollups,
+			final File input, final CadenceRollup.Aggregate aggregate, final DataCadence cadence)
+		throws IOException
+		{
+		final String key = aggregate + ":" + input.getAbsolutePath();
+		Map<DataCadence, EOUDataCSV> all = rollups.get(key);
+		if(null == all)
+			{
+			all = CadenceRollup.load(input, aggregate);
+			rollups.put(key, all);
+			}
+		final EOUDataCSV data = all.get(cadence);
+		if(null == data) { throw new IllegalArgumentException("cannot roll up " + input + " to " + cadence); }
+		return(data);
 		}
 
 	/**Save the MIDI sequence; never null.
 	 * @throws InvalidMidiDataException
 	 * @throws IOException
 	 */
+	@SuppressWarnings("try")
 	private static final void saveIt(final Sequence s, final String outputFileName)
 		throws InvalidMidiDataException, IOException
 		{
 		// Generate MIDI binary file.
     	try (ByteArrayOutputStream baos = new ByteArrayOutputStream(256))
         	{
-        	MidiSystem.write(s, MIDIConstant.PREFERRED_MIDI_FILETYPE, baos);
+    		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SEQUENCE))
+    			{ MidiSystem.write(s, MIDIConstant.PREFERRED_MIDI_FILETYPE, baos); }
     		FileUtils.replacePublishedFile(outputFileName, baos.toByteArray(), true);
         	}
 		}
 
-	/**Play the MIDI Sequence; never null.
-	 * @throws InvalidMidiDataException
+	/**Play the tune live on the default MIDI receiver (synthesizer); never null.
+	 * Bars are rendered just ahead of the play head, so playback starts at once.
 	 * @throws MidiUnavailableException
 	 * @throws InterruptedException
 	 */
-	private static final void playIt(final Sequence s)
-		throws InvalidMidiDataException, MidiUnavailableException, InterruptedException
+	private static final void playIt(final PackedMIDITune tune)
+		throws MidiUnavailableException, InterruptedException
 		{
-    	// Get default sequencer.
-    	try(final Sequencer sequencer = MidiSystem.getSequencer())
+    	try(final Receiver receiver = MidiSystem.getReceiver();
+    		final LivePlayer player = new LivePlayer(receiver))
 	    	{
-	    	if(null == sequencer)
-	    	    {
-	    		throw new UnsupportedOperationException("MIDI sequencer not available.");
-	    	    }
-
-    	    // Acquire resources and make operational.
-    	    sequencer.open();
-
-            sequencer.setSequence(s);
-            final long usLength = sequencer.getMicrosecondLength();
-        	System.out.println(String.format("INFO: duration %.1fs...", usLength / 1_000_000f));
-            sequencer.start();
-            while(sequencer.isRunning()) { Thread.sleep(1000); }
+        	System.out.println(String.format("INFO: duration %.1fs...",
+    			(tune.endClock() * (double) LivePlayer.DEFAULT_NANOS_PER_CLOCK) / 1_000_000_000));
+        	player.start(tune);
+        	player.await();
             Thread.sleep(1000); // Allow for some graceful decay of the sound!
 	    	}
 		}
@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.hd.d.statsHouse.data.FileUtils;
+import org.hd.d.statsHouse.midi.MIDIGen;
+
+/**Dependency manifest, to skip commands whose outputs are already up to date.
+ * Records, per output, a hash of everything that the output depends on:
+ * the input file (or feedHits directory) content,
+ * the command line and parsed generation parameters,
+ * the statsHouse version,
+ * and how the MIDI header records the generation time.
+ * <p>
+ * A command whose output exists and whose manifest entry still matches
+ * can be skipped before any parsing or generation.
+ * Commands that play rather than save,
+ * that generate synthetic data,
+ * or that ask for different randomness each time (RANDOMNESS_UNIQUE),
+ * are never skipped.
+ * <p>
+ * The manifest is a text file of lines <code>hash output</code>, sorted by output.
+ * <p>
+ * Thread-safe.
+ */
+public final class OutputManifest
+    {
+	/**Manifest file; never null. */
+	private final File file;
+	/**Hash by output name; guarded by this. */
+	private final Map<String, String> entries = new TreeMap<>();
+	/**True if changed since loaded; guarded by this. */
+	private boolean dirty;
+
+	/**Load a manifest, or start an empty one if the file does not exist; never null.
+	 * @throws IOException  if the file exists but cannot be read
+	 */
+	public OutputManifest(final File file) throws IOException
+		{
+		Objects.requireNonNull(file);
+		this.file = file;
+		if(!file.exists()) { return; }
+		try(BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8)))
+			{
+			String line;
+			while(null != (line = br.readLine()))
+				{
+				if(line.isEmpty() || line.startsWith("#")) { continue; }
+				final int sp = line.indexOf(' ');
+				if(sp < 1) { throw new IOException("malformed manifest line: " + line); }
+				entries.put(line.substring(sp + 1), line.substring(0, sp));
+				}
+			}
+		}
+
+	/**Output and dependency hash for one command.
+	 * @param output  output name as given on the command line; never null
+	 * @param check  file whose existence shows that the output exists; never null
+	 * @param hash  hash of all dependencies; never null
+	 */
+	public record Entry(String output, File check, String hash)
+		{
+		public Entry
+			{
+			Objects.requireNonNull(output);
+			Objects.requireNonNull(check);
+			Objects.requireNonNull(hash);
+			}
+		}
+
+	/**Compute the manifest entry for a command line; null if the command must always be run.
+	 * Reads all the command's input files.
+	 *
+	 * @throws IOException  if an input cannot be read
+	 */
+	public static Entry entryFor(final List<String> cmdline) throws IOException
+		{
+		Objects.requireNonNull(cmdline);
+		if(cmdline.size() < 2) { return(null); }
+
+		final MessageDigest md;
+		try { md = MessageDigest.getInstance("SHA-256"); }
+		catch(final NoSuchAlgorithmException e) { throw new IOException(e); }
+		final String version = Main.getManifestVersion();
+		md.update(("statsHouse " + ((null == version) ? "" : version)
+			+ " deterministic=" + MIDIGen.isDeterministicHeader()
+			+ " sourceDate=" + MIDIGen.getSourceDate() + "\n").getBytes(StandardCharsets.UTF_8));
+		for(final String arg : cmdline)
+			{
+			md.update(arg.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			}
+
+		final String output;
+		final File check;
+		switch(cmdline.get(0))
+			{
+			case "-feedHitsSummary":
+				{
+				final List<String> args = Main.withoutFeedHitsBinary(cmdline);
+				if(args.size() < 4) { return(null); }
+				output = args.get(1);
+				if("-play".equals(output)) { return(null); }
+				check = new File(output + ".mid");
+				for(final String dir : args.subList(3, args.size()))
+					{ FileUtils.digestDirectory(md, new File(dir)); }
+				break;
+				}
+			case "-streamTune":
+				{
+				if(cmdline.size() < 3) { return(null); }
+				output = cmdline.get(2);
+				check = new File(output);
+				if(!digestParams(md, cmdline.get(1), cmdline.subList(3, cmdline.size()))) { return(null); }
+				FileUtils.digestFile(md, new File(cmdline.get(1)));
+				break;
+				}
+			case "-mix":
+				{
+				output = cmdline.get(1);
+				check = new File(output);
+				for(final List<String> part : Main.splitMixParts(cmdline.subList(2, cmdline.size())))
+					{
+					if(!digestParams(md, part.get(0), Main.InputRollup.parse(part.subList(1, part.size())).options())) { return(null); }
+					for(final String input : Main.splitInputFileNames(part.get(0)))
+						{ FileUtils.digestFile(md, new File(input)); }
+					}
+				break;
+				}
+			case "-synthCSV", "-synthFeedHits":
+				return(null);
+			default:
+				{
+				output = cmdline.get(1);
+				if("-play".equals(output)) { return(null); }
+				check = new File(output);
+				if(!digestParams(md, cmdline.get(0),
+					Main.InputRollup.parse(cmdline.subList(2, cmdline.size())).options())) { return(null); }
+				for(final String input : Main.splitInputFileNames(cmdline.get(0)))
+					{ FileUtils.digestFile(md, new File(input)); }
+				break;
+				}
+			}
+
+		return(new Entry(output, check, HexFormat.of().formatHex(md.digest())));
+		}
+
+	/**Add the parsed generation parameters to the digest; false if never reproducible. */
+	private static boolean digestParams(final MessageDigest md, final String inputFileName, final List<String> options)
+		{
+		final GenerationParameters params =
+			GenerationParameters.parseOptionalCommandArguments(options, Main.filenameToTuneName(inputFileName));
+		if(params.randomnessUnique()) { return(false); }
+		md.update(params.toString().getBytes(StandardCharsets.UTF_8));
+		return(true);
+		}
+
+	/**True if the entry's output exists and matches the manifest. */
+	public synchronized boolean isUpToDate(final Entry e)
+		{
+		Objects.requireNonNull(e);
+		return(e.hash().equals(entries.get(e.output())) && e.check().exists());
+		}
+
+	/**Record an entry once its output has been successfully generated. */
+	public synchronized void record(final Entry e)
+		{
+		Objects.requireNonNull(e);
+		if(!e.hash().equals(entries.put(e.output(), e.hash()))) { dirty = true; }
+		}
+
+	/**Publish the manifest if changed. */
+	public synchronized void save() throws IOException
+		{
+		if(!dirty) { return; }
+		final StringBuilder sb = new StringBuilder(128 * (1 + entries.size()));
+		sb.append("# statsHouse output manifest: hash output\n");
+		for(final Map.Entry<String, String> e : entries.entrySet())
+			{ sb.append(e.getValue()).append(' ').append(e.getKey()).append('\n'); }
+		FileUtils.replacePublishedFile(file.getPath(), sb.toString().getBytes(StandardCharsets.UTF_8), true);
+		dirty = false;
+		}
+    }
@@ -0,0 +1,445 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataVizBeatPoint;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.FileUtils;
+import org.hd.d.statsHouse.feedHits.GenerateSummary;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**Embedded HTTP server to sonify on demand, bound to localhost only.
+ * <p>
+ * Requests:
+ * <ul>
+ * <li><code>GET /tune?file=&lt;data.csv&gt;[&amp;opts=&lt;options&gt;]</code>
+ *     sonifies a data CSV file under the root directory.</li>
+ * <li><code>POST /tune[?name=&lt;name&gt;][&amp;opts=&lt;options&gt;]</code>
+ *     sonifies the data CSV in the request body.</li>
+ * <li><code>GET /feedHits?type=&lt;N&gt;&amp;dir=&lt;dir&gt;[&amp;dir=&lt;dir&gt;]*[&amp;format=(mid|dat|bin)][&amp;decimals=&lt;n&gt;]</code>
+ *     generates a feedHits summary from data directories under the root,
+ *     as MIDI or as the <code>.dat</code> data visualisation in text or gnuplot binary;
+ *     text values are in shortest form unless fixed decimal places are requested.</li>
+ * </ul>
+ * where the options are the usual GenerationParameters options separated by spaces,
+ * eg <code>opts=-style+house+-seed+1</code>.
+ * <p>
+ * Results are keyed by a hash of the request type, input content and options,
+ * so a changed input is never served stale.
+ * Identical concurrent requests share a single generation,
+ * and recent results are held in a small LRU cache.
+ * The key is also sent as an ETag, so clients can revalidate cheaply.
+ * Requests with <code>-seed -1</code> (different randomness each time) are never shared or cached.
+ * <p>
+ * Requests are handled on a bounded pool of platform threads.
+ */
+public final class SonificationServer implements Closeable
+    {
+	/**Default maximum number of results cached. */
+	public static final int DEFAULT_CACHE_ENTRIES = 64;
+	/**Default number of request-handling threads. */
+	public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	/**Maximum accepted size of a POSTed CSV body (bytes). */
+	public static final int MAX_POST_BYTES = 16 << 20;
+
+	/**Content type for MIDI. */
+	private static final String MIME_MIDI = "audio/midi";
+	/**Content type for the data visualisation. */
+	private static final String MIME_DAT = "text/plain; charset=US-ASCII";
+	/**Content type for the binary data visualisation. */
+	private static final String MIME_BIN = "application/octet-stream";
+	/**Output formats for feedHits summaries. */
+	private static final List<String> FEEDHITS_FORMATS = List.of("mid", "dat", "bin");
+
+	/**Root directory of files that may be read; never null. */
+	private final Path root;
+	/**HTTP server; never null. */
+	private final HttpServer server;
+	/**Request-handling threads; never null. */
+	private final ExecutorService executor;
+
+	/**Generations in progress by key; never null. */
+	private final ConcurrentHashMap<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+	/**Recently-completed results by key, in access order; guarded by itself. */
+	private final LinkedHashMap<String, Result> lru;
+	/**Count of generations actually performed. */
+	private final AtomicLong generations = new AtomicLong();
+
+	/**Generated result.
+	 * @param contentType  MIME type; never null
+	 * @param body  response body; never null
+	 */
+	private record Result(String contentType, byte[] body) { }
+
+	/**Client error, reported with the given HTTP status. */
+	private static final class RequestException extends Exception
+		{
+		private static final long serialVersionUID = 1L;
+		final int status;
+		RequestException(final int status, final String message) { super(message); this.status = status; }
+		}
+
+	/**Create and start a server.
+	 * @param port  port to listen on at the loopback address, or 0 for any free port
+	 * @param root  directory under which input files may be read; never null
+	 * @param threads  number of request-handling threads; strictly positive
+	 * @param cacheEntries  maximum number of results cached; non-negative
+	 */
+	public SonificationServer(final int port, final File root, final int threads, final int cacheEntries)
+		throws IOException
+		{
+		Objects.requireNonNull(root);
+		if(!root.isDirectory()) { throw new FileNotFoundException("root is not a directory: " + root); }
+		if(threads < 1) { throw new IllegalArgumentException(); }
+		if(cacheEntries < 0) { throw new IllegalArgumentException(); }
+		this.root = root.toPath().toRealPath();
+		lru = new LinkedHashMap<>(16, 0.75f, true)
+			{
+			private static final long serialVersionUID = 1L;
+			@Override protected boolean removeEldestEntry(final Map.Entry<String, Result> eldest)
+				{ return(size() > cacheEntries); }
+			};
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.createContext("/tune", this::handle);
+		server.createContext("/feedHits", this::handle);
+		server.start();
+		}
+
+	/**Port actually being listened on. */
+	public int port() { return(server.getAddress().getPort()); }
+
+	/**Count of generations actually performed, ie not coalesced or served from cache. */
+	public long generations() { return(generations.get()); }
+
+	/**Stop the server, waiting up to a second for requests in progress. */
+	@Override
+	public void close()
+		{
+		server.stop(1);
+		executor.shutdown();
+		}
+
+	/**Parse the URI query into parameters, keeping repeats in order; never null. */
+	private static Map<String, List<String>> parseQuery(final URI uri)
+		{
+		final Map<String, List<String>> result = new LinkedHashMap<>();
+		final String q = uri.getRawQuery();
+		if(null == q) { return(result); }
+		for(final String kv : q.split("&"))
+			{
+			if(kv.isEmpty()) { continue; }
+			final int eq = kv.indexOf('=');
+			final String k = URLDecoder.decode((eq < 0) ? kv : kv.substring(0, eq), StandardCharsets.UTF_8);
+			final String v = (eq < 0) ? "" : URLDecoder.decode(kv.substring(eq + 1), StandardCharsets.UTF_8);
+			result.computeIfAbsent(k, x -> new ArrayList<>()).add(v);
+			}
+		return(result);
+		}
+
+	/**Get a single optional query parameter, or the default if absent. */
+	private static String param(final Map<String, List<String>> q, final String name, final String dflt)
+		throws RequestException
+		{
+		final List<String> l = q.get(name);
+		if(null == l) { return(dflt); }
+		if(l.size() != 1) { throw new RequestException(400, "repeated parameter: " + name); }
+		return(l.get(0));
+		}
+
+	/**Resolve a client-supplied path under the root, refusing anything outside it; never null. */
+	private Path resolve(final String name) throws RequestException, IOException
+		{
+		if((null == name) || name.isEmpty()) { throw new RequestException(400, "missing file or dir"); }
+		final Path p = root.resolve(name).normalize();
+		if(!p.startsWith(root)) { throw new RequestException(403, "outside root: " + name); }
+		if(!Files.exists(p)) { throw new RequestException(404, "not found: " + name); }
+		if(!p.toRealPath().startsWith(root)) { throw new RequestException(403, "outside root: " + name); }
+		return(p);
+		}
+
+	/**Parse generation options; never null. */
+	private static GenerationParameters parseOptions(final String opts, final String name)
+		throws RequestException
+		{
+		final List<String> args = opts.isBlank() ? Collections.emptyList() :
+			Arrays.asList(Main.delimCmdStream.split(opts.strip()));
+		try { return(GenerationParameters.parseOptionalCommandArguments(args, name)); }
+		catch(final RuntimeException e) { throw new RequestException(400, "bad opts: " + e.getMessage()); }
+		}
+
+	/**Handle one request, sending a response in all cases. */
+	private void handle(final HttpExchange ex) throws IOException
+		{
+		try
+			{
+			int status = 200;
+			Result r = null;
+			String etag = null;
+			String error = null;
+			try
+				{
+				final String path = ex.getRequestURI().getPath();
+				final Map<String, List<String>> q = parseQuery(ex.getRequestURI());
+				final String method = ex.getRequestMethod();
+
+				// Digest of everything that determines the output.
+				final MessageDigest md = MessageDigest.getInstance("SHA-256");
+				md.update(path.getBytes(StandardCharsets.UTF_8));
+				md.update((byte) 0);
+
+				final GenerationParameters params;
+				final Generator g;
+				if("/tune".equals(path))
+					{
+					final byte csv[];
+					final String name;
+					if("GET".equals(method))
+						{
+						final String file = param(q, "file", null);
+						csv = Files.readAllBytes(resolve(file));
+						name = Main.filenameToTuneName(file);
+						}
+					else if("POST".equals(method))
+						{
+						try(InputStream is = ex.getRequestBody())
+							{ csv = is.readNBytes(MAX_POST_BYTES + 1); }
+						if(csv.length > MAX_POST_BYTES) { throw new RequestException(413, "body too large"); }
+						name = param(q, "name", "posted");
+						}
+					else { throw new RequestException(405, "GET or POST only"); }
+					params = parseOptions(param(q, "opts", ""), name);
+					md.update(csv);
+					g = () -> genTune(params, csv);
+					}
+				else if("/feedHits".equals(path))
+					{
+					if(!"GET".equals(method)) { throw new RequestException(405, "GET only"); }
+					final int type;
+					try { type = Integer.parseInt(param(q, "type", ""), 10); }
+					catch(final NumberFormatException e) { throw new RequestException(400, "bad type"); }
+					final String format = param(q, "format", "mid");
+					if(!FEEDHITS_FORMATS.contains(format)) { throw new RequestException(400, "bad format"); }
+					final int decimals;
+					try { decimals = Integer.parseInt(param(q, "decimals", Integer.toString(DataVizBeatPoint.SHORTEST)), 10); }
+					catch(final NumberFormatException e) { throw new RequestException(400, "bad decimals"); }
+					if((decimals < DataVizBeatPoint.SHORTEST) || (decimals > DataVizBeatPoint.MAX_DECIMALS))
+						{ throw new RequestException(400, "bad decimals"); }
+					final List<String> dirs = q.getOrDefault("dir", Collections.emptyList());
+					if(dirs.isEmpty()) { throw new RequestException(400, "missing dir"); }
+					final List<String> dirnames = new ArrayList<>(dirs.size());
+					md.update(Integer.toString(type).getBytes(StandardCharsets.US_ASCII));
+					md.update((byte) FEEDHITS_FORMATS.indexOf(format));
+					md.update((byte) decimals);
+					for(final String d : dirs)
+						{
+						final Path p = resolve(d);
+						dirnames.add(p.toString());
+						FileUtils.digestDirectory(md, p.toFile());
+						}
+					params = null;
+					g = () -> genFeedHits(type, dirnames, format, decimals);
+					}
+				else { throw new RequestException(404, "unknown path"); }
+
+				if(null != params) { md.update(params.toString().getBytes(StandardCharsets.UTF_8)); }
+				etag = "\"" + HexFormat.of().formatHex(md.digest()) + "\"";
+
+				final boolean shareable = (null == params) || !params.randomnessUnique();
+				if(!shareable) { etag = null; }
+				if((null != etag) && etag.equals(ex.getRequestHeaders().getFirst("If-None-Match")))
+					{ status = 304; }
+				else
+					{ r = shareable ? getShared(etag, g) : generate(g); }
+				}
+			catch(final RequestException e) { status = e.status; error = e.getMessage(); }
+			catch(final IOException | RuntimeException | NoSuchAlgorithmException | InvalidMidiDataException e)
+				{ status = 500; error = String.valueOf(e); }
+
+			if(null != etag) { ex.getResponseHeaders().set("ETag", etag); }
+			if(null != error)
+				{
+				final byte b[] = (error + "\n").getBytes(StandardCharsets.UTF_8);
+				ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+				ex.sendResponseHeaders(status, b.length);
+				ex.getResponseBody().write(b);
+				}
+			else if(null == r)
+				{ ex.sendResponseHeaders(status, -1); }
+			else
+				{
+				ex.getResponseHeaders().set("Content-Type", r.contentType());
+				ex.sendResponseHeaders(status, (0 == r.body().length) ? -1 : r.body().length);
+				ex.getResponseBody().write(r.body());
+				}
+			}
+		finally { ex.close(); }
+		}
+
+	/**Deferred generation of a result. */
+	@FunctionalInterface
+	private interface Generator { Result get() throws IOException, InvalidMidiDataException, RequestException; }
+
+	/**Run a generation, counting it. */
+	private Result generate(final Generator g) throws IOException, InvalidMidiDataException, RequestException
+		{
+		generations.incrementAndGet();
+		return(g.get());
+		}
+
+	/**Get a cached result, else join an identical generation in progress, else generate it. */
+	private Result getShared(final String key, final Generator g)
+		throws IOException, InvalidMidiDataException, RequestException
+		{
+		synchronized(lru) { final Result r = lru.get(key); if(null != r) { return(r); } }
+
+		final CompletableFuture<Result> mine = new CompletableFuture<>();
+		final CompletableFuture<Result> existing = inFlight.putIfAbsent(key, mine);
+		if(null != existing)
+			{
+			try { return(existing.get()); }
+			catch(final InterruptedException e)
+				{
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+				}
+			catch(final ExecutionException e)
+				{
+				final Throwable c = e.getCause();
+				if(c instanceof RequestException re) { throw new RequestException(re.status, re.getMessage()); }
+				throw new IOException(c);
+				}
+			}
+
+		try
+			{
+			// Check again, in case of completion since the first look.
+			Result r;
+			synchronized(lru) { r = lru.get(key); }
+			if(null == r)
+				{
+				r = generate(g);
+				synchronized(lru) { lru.put(key, r); }
+				}
+			mine.complete(r);
+			return(r);
+			}
+		catch(final IOException | InvalidMidiDataException | RequestException | RuntimeException e)
+			{
+			mine.completeExceptionally(e);
+			throw e;
+			}
+		finally { inFlight.remove(key, mine); }
+		}
+
+	/**Generate MIDI file bytes for a tune; never null.
+	 * @param params  generation params; may be null
+	 * @param db  data bounds; may be null
+	 */
+	private static byte[] midiBytes(final MIDITune mt, final GenerationParameters params, final DataBounds db)
+		throws IOException, InvalidMidiDataException
+		{
+		MIDIGen.validateMIDITune(mt);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(16384);
+		MIDIGen.genFromPackedTuneSMF(PackedMIDITune.of(mt), params, db, baos);
+		return(baos.toByteArray());
+		}
+
+	/**Sonify CSV content; never null. */
+	private static Result genTune(final GenerationParameters params, final byte csv[])
+		throws IOException, InvalidMidiDataException, RequestException
+		{
+		final EOUDataCSV data;
+		try { data = EOUDataCSV.parseEOUDataCSV(new InputStreamReader(new ByteArrayInputStream(csv), EOUDataCSV.EOUDATACSV_CHARSET)); }
+		catch(final IOException e) { throw new RequestException(400, "bad CSV: " + e.getMessage()); }
+		final MIDITune mt;
+		try { mt = MIDIGen.genTune(params, data); }
+		catch(final IllegalArgumentException | DateTimeException e)
+			{ throw new RequestException(400, "cannot sonify: " + e.getMessage()); }
+		return(new Result(MIME_MIDI, midiBytes(mt, params, new DataBounds(data))));
+		}
+
+	/**Generate a feedHits summary as MIDI or data visualisation; never null.
+	 * @param format  one of FEEDHITS_FORMATS
+	 * @param decimals  DataVizBeatPoint.SHORTEST or fixed decimal places for text visualisation data
+	 */
+	private static Result genFeedHits(final int type, final List<String> dirnames, final String format,
+			final int decimals)
+		throws IOException, InvalidMidiDataException, RequestException
+		{
+		final MIDITune mt;
+		try { mt = GenerateSummary.summary(type, dirnames); }
+		catch(final IllegalArgumentException e) { throw new RequestException(400, e.getMessage()); }
+		if("mid".equals(format)) { return(new Result(MIME_MIDI, midiBytes(mt, null, null))); }
+
+		final DataVizBeatPoint dv = mt.dataRendered();
+		if(null == dv) { throw new RequestException(404, "no visualisation data for summary type " + type); }
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+		if("bin".equals(format))
+			{
+			dv.writeBinary(baos);
+			return(new Result(MIME_BIN, baos.toByteArray()));
+			}
+		try(final Writer w = new OutputStreamWriter(baos, StandardCharsets.US_ASCII))
+			{ dv.write(w, false, decimals); }
+		return(new Result(MIME_DAT, baos.toByteArray()));
+		}
+    }
@@ -0,0 +1,298 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**Lightweight per-thread pipeline stage instrumentation.
+ * Records wall time, thread CPU time and thread allocated bytes
+ * for each named stage, eg CSV load, split/align, WAV render.
+ * <p>
+ * Use as:
+<pre>
+try(StageStats.Timer t = StageStats.time(StageStats.STAGE_CSV_LOAD))
+    { ... }
+</pre>
+ * <p>
+ * Collection into a table is only done on a thread between
+ * {@link #begin()} and {@link #end()}, eg for the <code>-stats</code> option,
+ * else timing is close to free.
+ * <p>
+ * Independently, a JFR {@link StageEvent} is emitted for each stage
+ * whenever a JFR recording has that event enabled,
+ * eg to see where each nightly batch spends its time in production.
+ * <p>
+ * Nested stages are allowed, and the table records <em>self</em> values,
+ * ie excluding any nested stages, so that stage totals sum to the whole.
+ * The JFR events are inclusive, as JFR shows nesting itself.
+ */
+public final class StageStats
+    {
+    /**Prevent creation of an instance. */
+    private StageStats() { }
+
+    /**Stage: load and parse input CSV. */
+    public static final String STAGE_CSV_LOAD = "csv-load";
+    /**Stage: compute data bounds. */
+    public static final String STAGE_BOUNDS = "bounds";
+    /**Stage: split and align data into proto bars. */
+    public static final String STAGE_SPLIT_ALIGN = "split-align";
+    /**Stage: tune generation outside any individual section. */
+    public static final String STAGE_TUNE = "tune";
+    /**Stage prefix: tune generation for one section type, eg "tune:verse". */
+    public static final String STAGE_TUNE_PREFIX = "tune:";
+    /**Stage: build Sequence and SMF (MIDI file) bytes. */
+    public static final String STAGE_SEQUENCE = "sequence";
+    /**Stage: render WAV from MIDI. */
+    public static final String STAGE_WAV = "wav";
+    /**Stage: publish output file. */
+    public static final String STAGE_PUBLISH = "publish";
+
+    /**JFR event for one pipeline stage. */
+    @Name("org.hd.d.statsHouse.Stage")
+    @Label("statsHouse Stage")
+    @Category("statsHouse")
+    @Description("One statsHouse pipeline stage, eg CSV load or WAV render")
+    public static final class StageEvent extends Event
+	    {
+    	@Label("Stage")
+	    public String stage;
+
+    	@Label("CPU Time")
+    	@Timespan(Timespan.NANOSECONDS)
+	    public long cpuTime;
+
+    	@Label("Allocated")
+    	@DataAmount(DataAmount.BYTES)
+	    public long allocated;
+	    }
+
+    /**Accumulated values for one stage; mutable, for use by one thread only. */
+    public static final class Totals
+	    {
+    	/**Number of times the stage was entered. */
+    	public long count;
+    	/**Self wall time (ns). */
+    	public long wallNs;
+    	/**Self CPU time (ns), or negative if not available. */
+    	public long cpuNs;
+    	/**Self allocated bytes, or negative if not available. */
+    	public long allocBytes;
+
+    	/**Add other totals into this. */
+    	void add(final Totals o)
+	    	{
+    		count += o.count;
+    		wallNs += o.wallNs;
+    		cpuNs = ((cpuNs < 0) || (o.cpuNs < 0)) ? -1 : (cpuNs + o.cpuNs);
+    		allocBytes = ((allocBytes < 0) || (o.allocBytes < 0)) ? -1 : (allocBytes + o.allocBytes);
+	    	}
+	    }
+
+    /**Thread MX bean, for CPU time; never null. */
+    private static final ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+    /**Extended bean for allocated bytes, or null if not available. */
+    private static final com.sun.management.ThreadMXBean tmxa =
+		(tmx instanceof com.sun.management.ThreadMXBean) ? (com.sun.management.ThreadMXBean) tmx : null;
+    /**True if thread CPU time can be measured. */
+    private static final boolean hasCPU = tmx.isCurrentThreadCpuTimeSupported() && tmx.isThreadCpuTimeEnabled();
+    /**True if thread allocated bytes can be measured. */
+    private static final boolean hasAlloc = (null != tmxa) && tmxa.isThreadAllocatedMemorySupported() && tmxa.isThreadAllocatedMemoryEnabled();
+
+    /**Current thread CPU time (ns), or -1 if not available. */
+    private static long cpuNow() { return(hasCPU ? tmx.getCurrentThreadCpuTime() : -1); }
+    /**Current thread allocated bytes, or -1 if not available. */
+    private static long allocNow() { return(hasAlloc ? tmxa.getCurrentThreadAllocatedBytes() : -1); }
+
+    /**Per-thread collector; null when not collecting. */
+    private static final ThreadLocal<Collector> collector = new ThreadLocal<>();
+
+    /**Per-thread collection state. */
+    private static final class Collector
+	    {
+    	/**Totals by stage in order of first use; never null. */
+    	final Map<String, Totals> byStage = new LinkedHashMap<>();
+    	/**Currently-open timer, innermost; null if none. */
+    	Timer open;
+	    }
+
+    /**Timer for one stage, to be closed exactly once, in LIFO order with other timers. */
+    public static final class Timer implements AutoCloseable
+	    {
+    	private final String stage;
+    	private final Collector c;
+    	private final StageEvent event;
+    	private final Timer parent;
+    	private final long wall0, cpu0, alloc0;
+    	/**Inclusive values of nested (child) stages so far. */
+    	private long childWall, childCPU, childAlloc;
+
+    	Timer(final String stage, final Collector c, final StageEvent event)
+	    	{
+    		this.stage = stage;
+    		this.c = c;
+    		this.event = event;
+    		parent = (null == c) ? null : c.open;
+    		if(null != c) { c.open = this; }
+    		cpu0 = cpuNow();
+    		alloc0 = allocNow();
+    		if(null != event) { event.begin(); }
+    		wall0 = System.nanoTime();
+	    	}
+
+    	@Override
+    	public void close()
+	    	{
+    		if((null == c) && (null == event)) { return; }
+    		final long wall = System.nanoTime() - wall0;
+    		final long cpu = hasCPU ? (cpuNow() - cpu0) : -1;
+    		final long alloc = hasAlloc ? (allocNow() - alloc0) : -1;
+
+    		if(null != event)
+	    		{
+    			event.end();
+    			event.stage = stage;
+    			event.cpuTime = cpu;
+    			event.allocated = alloc;
+    			event.commit();
+	    		}
+
+    		if(null != c)
+	    		{
+    			final Totals t = c.byStage.computeIfAbsent(stage, k -> new Totals());
+    			++t.count;
+    			t.wallNs += wall - childWall;
+    			t.cpuNs = (!hasCPU || (t.cpuNs < 0)) ? -1 : (t.cpuNs + cpu - childCPU);
+    			t.allocBytes = (!hasAlloc || (t.allocBytes < 0)) ? -1 : (t.allocBytes + alloc - childAlloc);
+    			if(null != parent)
+	    			{
+    				parent.childWall += wall;
+    				parent.childCPU += cpu;
+    				parent.childAlloc += alloc;
+	    			}
+    			c.open = parent;
+	    		}
+	    	}
+	    }
+
+    /**Shared no-op timer when neither collecting nor emitting JFR events. */
+    private static final Timer NOOP = new Timer("", null, null);
+
+    /**Start timing a stage on the current thread; never null.
+     * Use in a try-with-resources block.
+     *
+     * @param stage  stage name, eg {@link #STAGE_CSV_LOAD}; never null
+     */
+    public static Timer time(final String stage)
+	    {
+    	Objects.requireNonNull(stage);
+    	final Collector c = collector.get();
+    	final StageEvent event = new StageEvent();
+    	final boolean jfr = event.isEnabled();
+    	if((null == c) && !jfr) { return(NOOP); }
+    	return(new Timer(stage, c, jfr ? event : null));
+	    }
+
+    /**Start collecting stage totals on the current thread, discarding any previous. */
+    public static void begin() { collector.set(new Collector()); }
+
+    /**Stop collecting stage totals on the current thread and return them; never null.
+     * @return  totals by stage name in order of first use; empty if not collecting
+     */
+    public static Map<String, Totals> end()
+	    {
+    	final Collector c = collector.get();
+    	collector.remove();
+    	if(null == c) { return(Collections.emptyMap()); }
+    	return(Collections.unmodifiableMap(c.byStage));
+	    }
+
+    /**Merge stage totals into an accumulating map, eg across commands. */
+    public static void merge(final Map<String, Totals> into, final Map<String, Totals> from)
+	    {
+    	Objects.requireNonNull(into);
+    	Objects.requireNonNull(from);
+    	for(final Map.Entry<String, Totals> e : from.entrySet())
+    		{ into.computeIfAbsent(e.getKey(), k -> new Totals()).add(e.getValue()); }
+	    }
+
+    /**Print a human-readable table of stage totals, one line per stage plus a total line.
+     * @param out  stream to print to; never null
+     * @param title  title line; never null
+     * @param byStage  totals by stage; never null
+     */
+    public static void printTable(final PrintStream out, final String title, final Map<String, Totals> byStage)
+	    {
+    	out.println("STATS: " + title);
+    	out.println(String.format("STATS:   %-16s %6s %10s %10s %10s", "stage", "count", "wall_ms", "cpu_ms", "alloc_MB"));
+    	final Totals all = new Totals();
+    	for(final Map.Entry<String, Totals> e : byStage.entrySet())
+	    	{
+    		printRow(out, e.getKey(), e.getValue());
+    		all.add(e.getValue());
+	    	}
+    	printRow(out, "TOTAL", all);
+	    }
+
+    /**Print one row of the table. */
+    private static void printRow(final PrintStream out, final String stage, final Totals t)
+	    {
+    	out.println(String.format("STATS:   %-16s %6d %10.3f %10s %10s", stage, t.count, t.wallNs / 1e6,
+			(t.cpuNs < 0) ? "-" : String.format("%.3f", t.cpuNs / 1e6),
+			(t.allocBytes < 0) ? "-" : String.format("%.3f", t.allocBytes / (1024.0 * 1024.0))));
+	    }
+
+    /**Generate a single machine-readable summary line; never null.
+     * Of the form:
+<pre>
+STATSSUMMARY commands=N stage.count=C stage.wallNs=W stage.cpuNs=U stage.allocBytes=A ...
+</pre>
+     * with one group per stage, and values of -1 where not available.
+     *
+     * @param commands  number of commands run
+     * @param byStage  totals by stage; never null
+     */
+    public static String summaryLine(final int commands, final Map<String, Totals> byStage)
+	    {
+    	final StringBuilder sb = new StringBuilder(64 + 80 * byStage.size());
+    	sb.append("STATSSUMMARY commands=").append(commands);
+    	for(final Map.Entry<String, Totals> e : byStage.entrySet())
+	    	{
+    		final String k = e.getKey();
+    		final Totals t = e.getValue();
+    		sb.append(' ').append(k).append(".count=").append(t.count);
+    		sb.append(' ').append(k).append(".wallNs=").append(t.wallNs);
+    		sb.append(' ').append(k).append(".cpuNs=").append(t.cpuNs);
+    		sb.append(' ').append(k).append(".allocBytes=").append(t.allocBytes);
+	    	}
+    	return(sb.toString());
+	    }
+    }
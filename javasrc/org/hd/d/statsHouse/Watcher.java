@@ -0,0 +1,241 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Long-running mode that re-runs command lines when their inputs change.
+ * Avoids a fresh JVM per regeneration, so that parsed data (see IncrementalTune)
+ * and JIT-compiled code stay warm between updates.
+ * <p>
+ * All command lines are run once at start-up.
+ * Then the directories holding the input CSV files,
+ * and any feedHits data directories, are watched for changes.
+ * A burst of changes is allowed to settle for the debounce interval,
+ * then each affected command line is re-run on a worker pool,
+ * waiting for that batch to complete before handling any further changes.
+ * A change to the command file itself reloads it and re-runs everything.
+ * <p>
+ * A failing command line is reported but does not stop the watcher.
+ */
+public final class Watcher implements Closeable
+    {
+	/**Default quiet interval to let a burst of changes settle (ms). */
+	public static final long DEFAULT_DEBOUNCE_MS = 500;
+
+	/**Default number of worker threads. */
+	public static final int DEFAULT_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/**Command file; never null. */
+	private final Path cmdFile;
+	/**Quiet interval to let a burst of changes settle (ms); non-negative. */
+	private final long debounceMs;
+	/**If true, print per-stage stats for each command run. */
+	private final boolean stats;
+	/**Watch service; never null. */
+	private final WatchService ws;
+	/**Worker pool; never null. */
+	private final ExecutorService workers;
+
+	/**Directories registered, by key; only accessed by the run() thread. */
+	private final Map<WatchKey, Path> dirs = new HashMap<>();
+	/**Current command lines; only accessed by the run() thread. */
+	private List<List<String>> cmdlines = Collections.emptyList();
+	/**Count of command lines run, successfully or not. */
+	private final AtomicLong runs = new AtomicLong();
+
+	/**Create a watcher; call run() to start it.
+	 * @param cmdFile  command file with one command line per line, as for -@; never null
+	 * @param debounceMs  quiet interval to let a burst of changes settle (ms); non-negative
+	 * @param workers  number of worker threads; strictly positive
+	 * @param stats  if true, print per-stage stats for each command run
+	 */
+	public Watcher(final File cmdFile, final long debounceMs, final int workers, final boolean stats)
+		throws IOException
+		{
+		Objects.requireNonNull(cmdFile);
+		if(debounceMs < 0) { throw new IllegalArgumentException(); }
+		if(workers < 1) { throw new IllegalArgumentException(); }
+		this.cmdFile = cmdFile.toPath().toAbsolutePath().normalize();
+		this.debounceMs = debounceMs;
+		this.stats = stats;
+		ws = FileSystems.getDefault().newWatchService();
+		this.workers = Executors.newFixedThreadPool(workers);
+		}
+
+	/**Number of command lines run so far, successfully or not. */
+	public long runs() { return(runs.get()); }
+
+	/**Get the paths a command line reads from; never null but may be empty.
+	 * A directory path means any change within that directory.
+	 * Each of several merged inputs joined with '+' is a separate path.
+	 */
+	public static List<Path> inputsOf(final List<String> cmdline)
+		{
+		Objects.requireNonNull(cmdline);
+		if(cmdline.isEmpty()) { return(Collections.emptyList()); }
+		final List<String> names = switch(cmdline.get(0)) {
+			case "-feedHitsSummary" -> {
+				final List<String> args = Main.withoutFeedHitsBinary(cmdline);
+				yield((args.size() > 3) ? args.subList(3, args.size()) : Collections.emptyList());
+				}
+			case "-mix" -> {
+				final List<String> inputs = new ArrayList<>();
+				if(cmdline.size() > 2)
+					{
+					for(final List<String> part : Main.splitMixParts(cmdline.subList(2, cmdline.size())))
+						{ inputs.addAll(Main.splitInputFileNames(part.get(0))); }
+					}
+				yield(inputs);
+				}
+			case "-streamTune" -> (cmdline.size() > 1) ? cmdline.subList(1, 2) : Collections.emptyList();
+			case "-synthCSV", "-synthFeedHits" -> Collections.emptyList();
+			default -> Main.splitInputFileNames(cmdline.get(0));
+			};
+		final List<Path> result = new ArrayList<>(names.size());
+		for(final String n : names) { result.add(Path.of(n).toAbsolutePath().normalize()); }
+		return(result);
+		}
+
+	/**Directory to watch for an input: the input itself if a directory, else its parent. */
+	private static Path watchDirOf(final Path input)
+		{ return(input.toFile().isDirectory() ? input : input.getParent()); }
+
+	/**(Re)load the command file and register all the directories needed. */
+	private void reload() throws IOException
+		{
+		try(final Reader r = new FileReader(cmdFile.toFile(), Main.CMD_STREAM_CHARSET))
+			{ cmdlines = Main.readCommandLines(r); }
+		final Set<Path> wanted = new HashSet<>();
+		wanted.add(cmdFile.getParent());
+		for(final List<String> cmdline : cmdlines)
+			{ for(final Path p : inputsOf(cmdline)) { wanted.add(watchDirOf(p)); } }
+		wanted.removeAll(dirs.values());
+		for(final Path d : wanted)
+			{
+			if(!d.toFile().isDirectory())
+				{
+				System.err.println("WARNING: cannot watch missing directory: " + d);
+				continue;
+				}
+			dirs.put(d.register(ws,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE), d);
+			}
+		}
+
+	/**True if the command line reads from any of the changed paths or directories. */
+	private static boolean isAffected(final List<String> cmdline, final Set<Path> changed, final Set<Path> changedDirs)
+		{
+		for(final Path p : inputsOf(cmdline))
+			{ if(changed.contains(p) || changedDirs.contains(p)) { return(true); } }
+		return(false);
+		}
+
+	/**Run the given command lines on the worker pool and wait for them all to finish. */
+	private void runAll(final List<List<String>> toRun) throws InterruptedException
+		{
+		final List<Callable<Void>> tasks = new ArrayList<>(toRun.size());
+		for(final List<String> cmdline : toRun)
+			{
+			tasks.add(() -> {
+				try { Main.runCommands(Collections.singletonList(cmdline), false, stats, true); }
+				catch(final RuntimeException e)
+					{
+					System.err.println("ERROR: FAILED command: " + cmdline);
+					e.printStackTrace();
+					}
+				finally { runs.incrementAndGet(); }
+				return(null);
+				});
+			}
+		workers.invokeAll(tasks);
+		}
+
+	/**Run all commands then re-run them as their inputs change, until closed or interrupted. */
+	public void run() throws IOException, InterruptedException
+		{
+		reload();
+		runAll(cmdlines);
+		System.out.println("INFO: watching for changes to inputs of " + cmdlines.size() + " command(s)");
+
+		try
+			{
+			for( ; ; )
+				{
+				// Wait for a change, then for things to go quiet.
+				final Set<Path> changed = new HashSet<>();
+				final Set<Path> changedDirs = new HashSet<>();
+				boolean overflow = false;
+				for(WatchKey key = ws.take(); null != key; key = ws.poll(debounceMs, TimeUnit.MILLISECONDS))
+					{
+					final Path dir = dirs.get(key);
+					for(final WatchEvent<?> e : key.pollEvents())
+						{
+						if(StandardWatchEventKinds.OVERFLOW == e.kind()) { overflow = true; continue; }
+						if(null == dir) { continue; }
+						changedDirs.add(dir);
+						changed.add(dir.resolve((Path) e.context()));
+						}
+					if(!key.reset()) { dirs.remove(key); }
+					}
+
+				final boolean reloaded = overflow || changed.contains(cmdFile);
+				if(changed.contains(cmdFile)) { reload(); }
+
+				final List<List<String>> toRun = new ArrayList<>();
+				for(final List<String> cmdline : cmdlines)
+					{ if(reloaded || isAffected(cmdline, changed, changedDirs)) { toRun.add(cmdline); } }
+				if(!toRun.isEmpty()) { runAll(toRun); }
+				}
+			}
+		catch(final ClosedWatchServiceException e) { /* Closed: stop. */ }
+		}
+
+	/**Stop watching; any run() in progress will return once its current batch completes. */
+	@Override
+	public void close() throws IOException
+		{
+		ws.close();
+		workers.shutdown();
+		}
+    }
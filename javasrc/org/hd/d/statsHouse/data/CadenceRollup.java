@@ -0,0 +1,311 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hd.d.statsHouse.generic.DataCadence;
+
+/**Rolls a series up to all coarser cadences in a single streaming pass, eg D to M and Y.
+ * Rows are fed in date order (as in any EOU data file) and each coarser series
+ * is emitted period by period as soon as the date leaves that period,
+ * so the only state held is one accumulator per stream per coarser cadence,
+ * and each source row is looked at once whatever the number of targets.
+ * <p>
+ * Each stream (device column) is rolled up separately:
+ * <ul>
+ * <li>the device is the first named in the period;</li>
+ * <li>the coverage is the sum of the source coverage over the number of source slots
+ *     (hours or days, or months for Y from M) in the whole period, capped at 1,
+ *     so that eg a month with 4 days of full data has coverage 4/31;</li>
+ * <li>the value is the sum of the source values (eg for energy generated),
+ *     or their coverage-weighted mean (eg for a temperature).</li>
+ * </ul>
+ * Source slots without both coverage and value, or with zero coverage, are ignored;
+ * a period with none for a stream has that stream empty.
+ * <p>
+ * The results are EOUDataCSV data sets like those loaded from a file of that cadence,
+ * with stream positions preserved, so can be sonified directly.
+ */
+public final class CadenceRollup
+    {
+	/**How source values are combined within a period. */
+	public enum Aggregate
+		{
+		/**Sum of values, eg for energy or a count. */
+		sum,
+		/**Coverage-weighted mean of values, eg for a temperature or a rate. */
+		mean
+		}
+
+	/**Length of the date of each cadence, eg 7 for YYYY-MM; index by DataCadence.ordinal(). */
+	private static final int DATE_LENGTH[] = { PackedDate.HOURLY_LENGTH, 10, 7, 4 };
+
+	/**Significant digits kept in rolled-up coverage and values. */
+	private static final MathContext DIGITS = new MathContext(7);
+
+	/**Accumulator for one coarser cadence. */
+	private static final class Level
+		{
+		final DataCadence cadence;
+		final int dateLength;
+		final ArrayList<List<String>> rows = new ArrayList<>();
+		/**Date (prefix of a source date) of the period being accumulated; null if none. */
+		String date;
+		/**Streams seen in the current period. */
+		int streams;
+		String device[] = new String[1];
+		double coverage[] = new double[1];
+		double value[] = new double[1];
+		double weighted[] = new double[1];
+
+		Level(final DataCadence cadence)
+			{
+			this.cadence = cadence;
+			dateLength = DATE_LENGTH[cadence.ordinal()];
+			}
+		}
+
+	/**Aggregation for all levels; never null. */
+	private final Aggregate aggregate;
+	/**If true, retain the source rows as well. */
+	private final boolean keepSource;
+	/**Retained source rows, if keepSource. */
+	private final ArrayList<List<String>> sourceRows = new ArrayList<>();
+	/**Source cadence, once known from the first row; null before. */
+	private DataCadence source;
+	/**Coarser levels, once the source cadence is known; null before. */
+	private Level levels[];
+	/**True once finished. */
+	private boolean finished;
+
+	/**Create an empty roll-up.
+	 * @param aggregate  how values are combined in each period; never null
+	 * @param keepSource  if true, also retain the source rows so as to return the source data set
+	 */
+	public CadenceRollup(final Aggregate aggregate, final boolean keepSource)
+		{
+		if(null == aggregate) { throw new IllegalArgumentException(); }
+		this.aggregate = aggregate;
+		this.keepSource = keepSource;
+		}
+
+	/**Add the next source row, in date order.
+	 * The cadence of the source is taken from the first row.
+	 *
+	 * @param row  non-null EOU data row of the source cadence
+	 * @throws IllegalArgumentException  if the row's date is not of the source cadence,
+	 *     or is before the previous row's
+	 */
+	public void add(final List<String> row)
+		{
+		if(finished) { throw new IllegalStateException(); }
+		final String date = row.get(0);
+		if(null == levels)
+			{
+			source = DataUtils.extractDataCadenceFromDate(date);
+			levels = new Level[DataCadence.values().length - 1 - source.ordinal()];
+			for(int i = 0; i < levels.length; ++i)
+				{ levels[i] = new Level(DataCadence.values()[source.ordinal() + 1 + i]); }
+			}
+		else if(date.length() != DATE_LENGTH[source.ordinal()])
+			{ throw new IllegalArgumentException("mixed cadences at " + date); }
+		if(keepSource) { sourceRows.add(row); }
+
+		for(final Level l : levels)
+			{
+			// Compare date prefixes in place, without substrings.
+			if((null == l.date) || !date.regionMatches(0, l.date, 0, l.dateLength))
+				{
+				if((null != l.date) && (date.compareTo(l.date) < 0))
+					{ throw new IllegalArgumentException("out of order at " + date); }
+				flush(l);
+				l.date = date.substring(0, l.dateLength);
+				}
+			accumulate(l, row);
+			}
+		}
+
+	/**Add one source row into the current period of a level. */
+	private static void accumulate(final Level l, final List<String> row)
+		{
+		final int streams = (row.size() - 1) / 3;
+		if(streams > l.device.length)
+			{
+			l.device = Arrays.copyOf(l.device, streams);
+			l.coverage = Arrays.copyOf(l.coverage, streams);
+			l.value = Arrays.copyOf(l.value, streams);
+			l.weighted = Arrays.copyOf(l.weighted, streams);
+			}
+		if(streams > l.streams) { l.streams = streams; }
+		for(int s = 0; s < streams; ++s)
+			{
+			final String c = row.get((3 * s) + 2);
+			final String v = row.get((3 * s) + 3);
+			if(c.isEmpty() || v.isEmpty()) { continue; }
+			final float coverage, value;
+			try
+				{
+				coverage = Float.parseFloat(c);
+				value = Float.parseFloat(v);
+				}
+			catch(final NumberFormatException e) { continue; }
+			if(!(coverage > 0) || !Float.isFinite(coverage) || !Float.isFinite(value)) { continue; }
+			if(null == l.device[s])
+				{
+				final String d = row.get((3 * s) + 1);
+				if(!d.isEmpty()) { l.device[s] = d; }
+				}
+			l.coverage[s] += coverage;
+			l.value[s] += value;
+			l.weighted[s] += coverage * value;
+			}
+		}
+
+	/**Number of source slots in the (whole) period with the given date prefix. */
+	private int slotsInPeriod(final Level l)
+		{
+		final int year = Integer.parseInt(l.date, 0, 4, 10);
+		final int days = switch(l.cadence)
+			{
+			case D -> 1;
+			case M -> PackedDate.daysInMonth(year, Integer.parseInt(l.date, 5, 7, 10));
+			case Y -> PackedDate.daysInYear(year);
+			default -> throw new IllegalStateException();
+			};
+		return(switch(source)
+			{
+			case H -> days * PackedDate.HOURS_PER_DAY;
+			case D -> days;
+			case M -> 12;
+			default -> throw new IllegalStateException();
+			});
+		}
+
+	/**Compact decimal form of a rolled-up number, eg "1" or "68.55". */
+	private static String format(final double d)
+		{
+		if(0 == d) { return("0"); }
+		return(new BigDecimal(d).round(DIGITS).stripTrailingZeros().toPlainString());
+		}
+
+	/**Emit the current period of a level, if any, and reset its accumulators. */
+	private void flush(final Level l)
+		{
+		if(null == l.date) { return; }
+		final int slots = slotsInPeriod(l);
+		final String fields[] = new String[1 + (3 * l.streams)];
+		fields[0] = l.date;
+		for(int s = 0; s < l.streams; ++s)
+			{
+			if(0 == l.coverage[s])
+				{ fields[(3*s)+1] = ""; fields[(3*s)+2] = ""; fields[(3*s)+3] = ""; }
+			else
+				{
+				fields[(3*s)+1] = (null == l.device[s]) ? "" : l.device[s];
+				fields[(3*s)+2] = format(Math.min(1, l.coverage[s] / slots));
+				fields[(3*s)+3] = format((Aggregate.sum == aggregate) ? l.value[s] : (l.weighted[s] / l.coverage[s]));
+				}
+			}
+		l.rows.add(Collections.unmodifiableList(Arrays.asList(fields)));
+		l.date = null;
+		l.streams = 0;
+		Arrays.fill(l.device, null);
+		Arrays.fill(l.coverage, 0);
+		Arrays.fill(l.value, 0);
+		Arrays.fill(l.weighted, 0);
+		}
+
+	/**Complete the roll-up and return the data set for each cadence produced; never null.
+	 * These are all the cadences coarser than the source,
+	 * plus the source itself if retained,
+	 * or none if no rows were added.
+	 * May be called only once.
+	 */
+	public Map<DataCadence, EOUDataCSV> finish()
+		{
+		if(finished) { throw new IllegalStateException(); }
+		finished = true;
+		final Map<DataCadence, EOUDataCSV> result = new EnumMap<>(DataCadence.class);
+		if(null == levels) { return(result); }
+		if(keepSource)
+			{
+			sourceRows.trimToSize();
+			result.put(source, new EOUDataCSV(Collections.unmodifiableList(sourceRows)));
+			}
+		for(final Level l : levels)
+			{
+			flush(l);
+			l.rows.trimToSize();
+			result.put(l.cadence, new EOUDataCSV(Collections.unmodifiableList(l.rows)));
+			}
+		return(result);
+		}
+
+	/**Roll up in-memory data to all coarser cadences; never null.
+	 * @param data  source data in date order; never null
+	 * @param aggregate  how values are combined in each period; never null
+	 * @return  data set for each coarser cadence, none if data is empty
+	 */
+	public static Map<DataCadence, EOUDataCSV> rollUp(final EOUDataCSV data, final Aggregate aggregate)
+		{
+		final CadenceRollup r = new CadenceRollup(aggregate, false);
+		for(final List<String> row : data.data()) { r.add(row); }
+		return(r.finish());
+		}
+
+	/**Parse EOU data once, returning it and its roll-up to all coarser cadences; never null.
+	 * @param reader  source data in date order, not closed by this routine; never null
+	 * @param aggregate  how values are combined in each period; never null
+	 * @throws IOException  if there is an I/O problem or the data is malformed
+	 */
+	public static Map<DataCadence, EOUDataCSV> parse(final Reader reader, final Aggregate aggregate)
+		throws IOException
+		{
+		final CadenceRollup r = new CadenceRollup(aggregate, true);
+		final EOUDataCSV.RowReader rr = new EOUDataCSV.RowReader(reader);
+		try
+			{
+			List<String> row;
+			while(null != (row = rr.next())) { r.add(row); }
+			}
+		catch(final IllegalArgumentException e) { throw new IOException(e.getMessage(), e); }
+		return(r.finish());
+		}
+
+	/**Load EOU data from file once, returning it and its roll-up to all coarser cadences; never null.
+	 * @throws IOException  if file not present or unreadable/unparseable
+	 */
+	public static Map<DataCadence, EOUDataCSV> load(final File dataCSVFile, final Aggregate aggregate)
+		throws IOException
+		{
+		if(null == dataCSVFile) { throw new IllegalArgumentException(); }
+		try(final Reader r = new FileReader(dataCSVFile, EOUDataCSV.EOUDATACSV_CHARSET))
+			{ return(parse(r, aggregate)); }
+		}
+    }
@@ -0,0 +1,197 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**Merge-join of several EOU data sets of the same cadence into one multi-stream data set.
+ * This allows heterogeneous comparisons, eg of generation against import,
+ * to be sonified as for a single file with several streams (and -hetero).
+ * <p>
+ * The inputs are each already in date order, so are joined in a single linear pass,
+ * comparing packed dates (see {@link PackedDate#pack(CharSequence)})
+ * computed once per input row, rather than strings or by hashing.
+ * Where an input has no row for a date present in another,
+ * its streams are empty (",,,") in the merged row.
+ */
+public final class DataMerge
+    {
+    /**Prevent creation of an instance. */
+    private DataMerge() { }
+
+    /**One stream of one input selected for the merged data.
+     * @param input  0-based index of the input
+     * @param stream  1-based stream within that input
+     */
+    public record Source(int input, int stream)
+	    {
+    	public Source
+	    	{
+    		if(input < 0) { throw new IllegalArgumentException(); }
+    		if(stream < 1) { throw new IllegalArgumentException(); }
+	    	}
+	    }
+
+    /**Select the streams to merge, at most DataBounds.MAX_DATA_STREAMS in total; never null.
+     * If all the streams fit then all are used, in input order.
+     * Otherwise the main stream (with most values) of each input is taken first,
+     * then the remaining streams one input at a time in turn until full,
+     * and the result put back into input order.
+     *
+     * @param inputs  data sets to merge; never null
+     * @throws IllegalArgumentException  if there are more inputs than streams allowed
+     */
+    public static List<Source> selectStreams(final List<EOUDataCSV> inputs)
+	    {
+    	if(inputs.size() > DataBounds.MAX_DATA_STREAMS)
+    		{ throw new IllegalArgumentException("too many inputs to merge: " + inputs.size()); }
+    	final int counts[] = new int[inputs.size()];
+    	int total = 0;
+    	for(int i = 0; i < counts.length; ++i)
+	    	{ total += (counts[i] = DataUtils.countDataStreamsQuick(inputs.get(i))); }
+
+    	final List<Source> result = new ArrayList<>(Math.min(total, DataBounds.MAX_DATA_STREAMS));
+    	if(total <= DataBounds.MAX_DATA_STREAMS)
+	    	{
+    		for(int i = 0; i < counts.length; ++i)
+    			{ for(int s = 1; s <= counts[i]; ++s) { result.add(new Source(i, s)); } }
+    		return(result);
+	    	}
+
+    	// Main stream of each input first.
+    	final int main[] = new int[counts.length];
+    	for(int i = 0; i < counts.length; ++i)
+	    	{
+    		if(0 == counts[i]) { continue; }
+    		final int m = DataUtils.maxNVal(inputs.get(i));
+    		main[i] = ((m < 1) || (m > counts[i])) ? 1 : m;
+    		result.add(new Source(i, main[i]));
+	    	}
+    	// Then the others, in turn.
+    	final int next[] = new int[counts.length];
+    	Arrays.fill(next, 1);
+    	for(boolean added = true; added && (result.size() < DataBounds.MAX_DATA_STREAMS); )
+	    	{
+    		added = false;
+	    	for(int i = 0; (i < counts.length) && (result.size() < DataBounds.MAX_DATA_STREAMS); ++i)
+		    	{
+	    		if(next[i] == main[i]) { ++next[i]; }
+	    		if(next[i] > counts[i]) { continue; }
+	    		result.add(new Source(i, next[i]++));
+	    		added = true;
+		    	}
+	    	}
+    	result.sort((a, b) -> (a.input() != b.input()) ? Integer.compare(a.input(), b.input()) : Integer.compare(a.stream(), b.stream()));
+    	return(result);
+	    }
+
+    /**Merge data sets with automatic stream selection; never null.
+     * @see #selectStreams(List)
+     * @see #merge(List, List)
+     */
+    public static EOUDataCSV merge(final List<EOUDataCSV> inputs)
+	    { return(merge(inputs, selectStreams(inputs))); }
+
+    /**Merge-join data sets of the same cadence on date; never null.
+     * There is one output row for each date in any input, in order,
+     * with the selected streams in the order given.
+     *
+     * @param inputs  data sets of the same cadence, each in strictly increasing date order; never null
+     * @param streams  streams to take from the inputs; never null
+     * @throws IllegalArgumentException  if the inputs are of different cadences,
+     *     or not in strictly increasing date order, or a stream refers to a missing input
+     * @throws java.time.DateTimeException  if a date is malformed
+     */
+    public static EOUDataCSV merge(final List<EOUDataCSV> inputs, final List<Source> streams)
+	    {
+    	final int n = inputs.size();
+    	for(final Source s : streams)
+	    	{ if(s.input() >= n) { throw new IllegalArgumentException("no such input: " + s.input()); } }
+
+    	// Cursor and packed date of the current row of each input.
+    	final int pos[] = new int[n];
+    	final int key[] = new int[n];
+    	int dateLength = -1;
+    	int capacity = 0;
+    	for(int i = 0; i < n; ++i)
+	    	{
+    		final List<List<String>> rows = inputs.get(i).data();
+    		capacity = Math.max(capacity, rows.size());
+    		if(rows.isEmpty()) { continue; }
+    		final String date = rows.get(0).get(0);
+    		if(dateLength < 0) { dateLength = date.length(); }
+    		else if(date.length() != dateLength) { throw new IllegalArgumentException("inputs of different cadences"); }
+    		key[i] = PackedDate.pack(date);
+	    	}
+
+    	final ArrayList<List<String>> result = new ArrayList<>(capacity);
+    	// Index of the row of each input at the current date, or -1 if none.
+    	final int at[] = new int[n];
+    	for( ; ; )
+	    	{
+    		// Earliest current date of any input.
+    		boolean any = false;
+    		int min = 0;
+    		for(int i = 0; i < n; ++i)
+	    		{
+    			if(pos[i] >= inputs.get(i).data().size()) { continue; }
+    			if(!any || (key[i] < min)) { min = key[i]; any = true; }
+	    		}
+    		if(!any) { break; }
+
+    		// Take the row of each input at that date, advancing past it.
+    		String date = null;
+    		for(int i = 0; i < n; ++i)
+	    		{
+    			final List<List<String>> rows = inputs.get(i).data();
+    			at[i] = -1;
+    			if((pos[i] >= rows.size()) || (key[i] != min)) { continue; }
+    			at[i] = pos[i];
+    			if(null == date) { date = rows.get(pos[i]).get(0); }
+    			if(++pos[i] < rows.size())
+	    			{
+    				final String d = rows.get(pos[i]).get(0);
+    				if(d.length() != dateLength) { throw new IllegalArgumentException("inputs of different cadences"); }
+    				final int k = PackedDate.pack(d);
+    				if(k <= min) { throw new IllegalArgumentException("input " + i + " not in date order at " + d); }
+    				key[i] = k;
+	    			}
+	    		}
+
+    		final String fields[] = new String[1 + (3 * streams.size())];
+    		fields[0] = date;
+    		int f = 1;
+    		for(final Source s : streams)
+	    		{
+    			final int r = at[s.input()];
+    			final List<String> row = (r < 0) ? null : inputs.get(s.input()).data().get(r);
+    			final int last = 3 * s.stream();
+    			final boolean present = (null != row) && (last < row.size());
+    			fields[f++] = present ? row.get(last - 2) : "";
+    			fields[f++] = present ? row.get(last - 1) : "";
+    			fields[f++] = present ? row.get(last) : "";
+	    		}
+    		result.add(Collections.unmodifiableList(Arrays.asList(fields)));
+	    	}
+
+    	result.trimToSize();
+    	return(new EOUDataCSV(Collections.unmodifiableList(result)));
+	    }
+    }
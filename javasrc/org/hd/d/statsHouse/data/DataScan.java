@@ -0,0 +1,149 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.hd.d.statsHouse.generic.DataCadence;
+
+/**Single-pass accumulator of whole-series values, for streaming very long data series.
+ * Rows are added one at a time in order, and only a few values are retained,
+ * so memory use is independent of series length.
+ * <p>
+ * The results match those computed from the whole parsed data,
+ * eg {@link #bounds()} equals <code>new DataBounds(data)</code>,
+ * and {@link #sourceName(int)} equals {@link DataUtils#extractSourceName(EOUDataCSV, int)}.
+ * <p>
+ * Not thread-safe.
+ */
+public final class DataScan
+    {
+	/**Number of rows added. */
+	private long rows;
+	/**First and last dates; null if no rows. */
+	private String firstDate, lastDate;
+	/**Stream count from first row. */
+	private int rawStreams;
+	/**Highest positive value seen. */
+	private float maxVal;
+	/**Count of non-empty values by stream (index 0 unused); grown as needed. */
+	private long[] nonEmpty = new long[1 + DataBounds.MAX_DATA_STREAMS];
+	/**First non-empty source name by stream (index 0 unused); grown as needed. */
+	private String[] sources = new String[1 + DataBounds.MAX_DATA_STREAMS];
+
+	/**Ensure that per-stream arrays can hold the given stream. */
+	private void ensureStream(final int stream)
+		{
+		if(stream < nonEmpty.length) { return; }
+		nonEmpty = Arrays.copyOf(nonEmpty, stream + 1);
+		sources = Arrays.copyOf(sources, stream + 1);
+		}
+
+	/**Add one row in order; never null. */
+	public void add(final List<String> row)
+		{
+		Objects.requireNonNull(row);
+		final String date = row.get(0);
+		if(0 == rows++)
+			{
+			firstDate = date;
+			rawStreams = (row.size() - 1) / 3;
+			}
+		lastDate = date;
+
+	    // 2008-02,,,,meter,1,4,SunnyBeam,0.142857,3.54
+		for(int j = 3; j < row.size(); j += 3)
+			{
+			final String v = row.get(j);
+			if(v.isEmpty()) { continue; }
+			final int stream = j / 3;
+			ensureStream(stream);
+			++nonEmpty[stream];
+	    	try {
+	    		final float f = Float.parseFloat(v);
+	    		if(f > maxVal) { maxVal = f; }
+	    		}
+	    	catch(final NumberFormatException e) { /* Ignore */ }
+			}
+		for(int stream = 1; (stream * 3) - 2 < row.size(); ++stream)
+			{
+			ensureStream(stream);
+			if(null != sources[stream]) { continue; }
+			final String s = row.get((stream * 3) - 2);
+			if(!s.isEmpty()) { sources[stream] = s; }
+			}
+		}
+
+	/**Number of rows added. */
+	public long rows() { return(rows); }
+
+	/**Data bounds of the rows so far; never null. */
+	public DataBounds bounds()
+		{
+		// Busiest stream, lowest-numbered on a tie.
+		long highestCount = 0;
+		int busiestStream = 0;
+		for(int s = 1; s < nonEmpty.length; ++s)
+			{
+			if(nonEmpty[s] > highestCount) { highestCount = nonEmpty[s]; busiestStream = s; }
+			}
+		return(new DataBounds(Math.min(rawStreams, DataBounds.MAX_DATA_STREAMS),
+			busiestStream, maxVal, firstDate, lastDate));
+		}
+
+	/**Cadence as for {@link DataUtils#extractDataCadenceQuick(EOUDataCSV)}; never null.
+	 * @throws IllegalArgumentException  if the cadence cannot be deduced
+	 */
+	public DataCadence cadence()
+		{
+	    if(null == firstDate) { return(DataCadence.Y); }
+	    return(DataUtils.extractDataCadenceFromDate(firstDate));
+		}
+
+	/**First non-empty source name for given 1-based stream; non-empty or null. */
+	public String sourceName(final int stream)
+		{
+	    if(stream < 1) { throw new IllegalArgumentException(); }
+	    return((stream < sources.length) ? sources[stream] : null);
+		}
+
+	/**Scan an entire CSV stream; never null.
+	 * @param r  stream to read from, not closed by this routine; never null
+	 */
+	public static DataScan scan(final Reader r) throws IOException
+		{
+		final DataScan ds = new DataScan();
+		final EOUDataCSV.RowReader rr = new EOUDataCSV.RowReader(r);
+		List<String> row;
+		while(null != (row = rr.next())) { ds.add(row); }
+		return(ds);
+		}
+
+	/**Scan an entire CSV file; never null. */
+	public static DataScan scan(final File dataCSVFile) throws IOException
+		{
+		Objects.requireNonNull(dataCSVFile);
+		try(final Reader r = new FileReader(dataCSVFile, EOUDataCSV.EOUDATACSV_CHARSET))
+		    { return(scan(r)); }
+		}
+    }
@@ -155,7 +155,8 @@ public final class DataUtils
      * This only looks at the first row of the data.
      * <p>
      * If the date us of the form YYYY then the cadence is yearly;
-     * YYYY-MM is monthly; YYYY-MM-DD is daily; otherwise an error.
+     * YYYY-MM is monthly; YYYY-MM-DD is daily; YYYY-MM-DDTHH is hourly;
+     * otherwise an error.
      * <p>
      * This assumes that dates are correctly formated,
      * and the same format for all rows.
@@ -171,10 +172,24 @@ public final class DataUtils
 	    {
 	    if(null == data) { throw new IllegalArgumentException(); }
 	    if(data.data().isEmpty()) { return(DataCadence.Y); }
-	    final String firstDate = data.data().get(0).get(0);
-	    if(4 == firstDate.length()) { return(DataCadence.Y); }
-	    if(7 == firstDate.length()) { return(DataCadence.M); }
-	    if(10 == firstDate.length()) { return(DataCadence.D); }
+	    return(extractDataCadenceFromDate(data.data().get(0).get(0)));
+	    }
+
+    /**Extracts the cadence implied by the form of a single date; never null.
+     * If the date us of the form YYYY then the cadence is yearly;
+     * YYYY-MM is monthly; YYYY-MM-DD is daily; YYYY-MM-DDTHH is hourly;
+     * otherwise an error.
+     *
+     * @param date  raw date from a data row; never null
+     * @throws IllegalArgumentException  if the cadence cannot be deduced
+     */
+    public static DataCadence extractDataCadenceFromDate(final String date)
+	    {
+	    if(null == date) { throw new IllegalArgumentException(); }
+	    if(4 == date.length()) { return(DataCadence.Y); }
+	    if(7 == date.length()) { return(DataCadence.M); }
+	    if(10 == date.length()) { return(DataCadence.D); }
+	    if(PackedDate.isHourly(date)) { return(DataCadence.H); }
 	    throw new IllegalArgumentException();
 	    }
 
@@ -205,4 +220,42 @@ public final class DataUtils
 		result.trimToSize();
 		return(Collections.unmodifiableList(result));
 	    }
+
+    /**Values of one stream in slot order, NaN where missing; never null.
+     * A value is missing, as for a data melody note, if absent or without strictly positive coverage.
+     *
+     * @param bars  proto bars; never null
+     * @param stream  1-based stream
+     */
+    public static float[] column(final List<DataProtoBar> bars, final int stream)
+	    { return(columns(bars, stream, null)); }
+
+    /**Values and coverage of one stream in slot order, in a single pass over the rows; never null.
+     * A value is missing, as for a data melody note, if absent or without strictly positive coverage.
+     *
+     * @param bars  proto bars; never null
+     * @param stream  1-based stream
+     * @param coverage  if not null, filled with the coverage of each slot, zero where missing;
+     *     length must be the total slots of the bars
+     * @return values in slot order, NaN where missing
+     */
+    public static float[] columns(final List<DataProtoBar> bars, final int stream, final float coverage[])
+	    {
+    	int slots = 0;
+    	for(final DataProtoBar b : bars) { slots += b.dataNotesPerBar(); }
+    	if((null != coverage) && (coverage.length != slots)) { throw new IllegalArgumentException(); }
+    	final float values[] = new float[slots];
+    	int i = 0;
+    	for(final DataProtoBar b : bars)
+	    	{
+    		for(final List<String> row : b.dataRows().data())
+	    		{
+    			final Datum d = Datum.extractDatum(stream, row);
+    			final boolean missing = (null == d.value()) || (null == d.coverage()) || !(d.coverage() > 0);
+    			if(null != coverage) { coverage[i] = missing ? 0 : d.coverage(); }
+    			values[i++] = missing ? Float.NaN : d.value();
+	    		}
+	    	}
+    	return(values);
+	    }
     }
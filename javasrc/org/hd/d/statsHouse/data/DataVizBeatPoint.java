@@ -17,22 +17,31 @@ Licensed under the Apache License, Version 2.0 (the "License");
 package org.hd.d.statsHouse.data;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 /**Data Visualisation for a data point vector per simple (typically 4/4) beat.
- * TODO: will be immutable by defensive copying.
+ * Immutable by defensive copying.
  * <p>
+ * The values are held as a primitive row-major matrix, one row per beat,
+ * with NaN for a missing value,
+ * so that large data sets (eg a year of weekly feedHits blocks) are compact
+ * and quick to build and write.
  *
- * @param dataLabels  column labels for dataRendered;
+ * @param dataLabels  column labels for the values;
  *     may be empty, contain nulls, may be null (but if not null size must == nColumns)
- * @param dataRendered  the set of key data as rendered in the tune,
- *     with the outer List usually one item per bar beat,
- *     and the inner list an ordered list of the key items rendered in that beat, possibly normalised;
- *     never null but may be empty
+ * @param values  the set of key data as rendered in the tune, row-major,
+ *     with one row usually per bar beat,
+ *     and each row the ordered key items rendered in that beat, possibly normalised, NaN if missing;
+ *     never null, length nBeats * nColumns
  * @param beatLabels  label for beats / time axis;
  *     may be empty, contain nulls, may be null (but if not null size must == nBeats)
  */
@@ -40,7 +49,7 @@ public record DataVizBeatPoint(
 		int nBeats,
 		int nColumns,
         List<String> dataLabels,
-        List<List<Float>> dataRendered,
+        float[] values,
         List<String> beatLabels
 		)
 	{
@@ -48,39 +57,273 @@ public record DataVizBeatPoint(
 	    {
     	if(nBeats < 0) { throw new IllegalArgumentException(); }
     	if(nColumns < 0) { throw new IllegalArgumentException(); }
-    	Objects.requireNonNull(dataRendered);
+    	Objects.requireNonNull(values);
+    	if(values.length != (long) nBeats * nColumns) { throw new IllegalArgumentException(); }
+    	values = values.clone(); // Defensive copy.
     	if((null != dataLabels) && (nColumns != dataLabels.size())) { throw new IllegalArgumentException(); }
 	    if(null != dataLabels) { dataLabels = Collections.unmodifiableList(new ArrayList<>(dataLabels)); } // Defensive copy.
     	if((null != beatLabels) && (nBeats != beatLabels.size())) { throw new IllegalArgumentException(); }
 	    if(null != beatLabels) { beatLabels = Collections.unmodifiableList(new ArrayList<>(beatLabels)); } // Defensive copy.
 	    }
 
+    /**Create from per-beat lists of values, null for missing.
+     * A null row is entirely missing.
+     *
+     * @param dataRendered  one row per beat; never null, size must == nBeats,
+     *     and each non-null row's size must == nColumns
+     */
+    public DataVizBeatPoint(final int nBeats, final int nColumns,
+    		final List<String> dataLabels, final List<List<Float>> dataRendered, final List<String> beatLabels)
+	    { this(nBeats, nColumns, dataLabels, toMatrix(nBeats, nColumns, dataRendered), beatLabels); }
+
+    /**Flatten per-beat lists to a row-major matrix with NaN for missing; never null. */
+    private static float[] toMatrix(final int nBeats, final int nColumns, final List<List<Float>> dataRendered)
+	    {
+    	if(dataRendered.size() != nBeats) { throw new IllegalArgumentException(); }
+    	if((nBeats < 0) || (nColumns < 0)) { throw new IllegalArgumentException(); }
+    	final float m[] = new float[nBeats * nColumns];
+    	Arrays.fill(m, Float.NaN);
+    	int row = 0;
+    	for(final List<Float> b : dataRendered)
+	    	{
+    		if(null != b)
+	    		{
+    			if(b.size() != nColumns) { throw new IllegalArgumentException(); }
+    			for(int c = 0; c < nColumns; ++c)
+	    			{
+    				final Float v = b.get(c);
+    				if(null != v) { m[(row * nColumns) + c] = v; }
+	    			}
+	    		}
+    		++row;
+	    	}
+    	return(m);
+	    }
+
+    /**Returns a copy of the row-major values; never null. */
+    @Override
+    public float[] values() { return(values.clone()); }
+
+    /**Get one value, NaN if missing. */
+    public float value(final int beat, final int column)
+	    {
+    	Objects.checkIndex(beat, nBeats);
+    	Objects.checkIndex(column, nColumns);
+    	return(values[(beat * nColumns) + column]);
+	    }
+
+    /**Read-only view of the values as one list per beat, null for missing; never null. */
+    public List<List<Float>> dataRendered()
+	    {
+    	return(new AbstractList<List<Float>>() {
+    		@Override public int size() { return(nBeats); }
+    		@Override public List<Float> get(final int beat)
+	    		{
+    			Objects.checkIndex(beat, nBeats);
+    			return(new AbstractList<Float>() {
+    				@Override public int size() { return(nColumns); }
+    				@Override public Float get(final int column)
+	    				{
+    					final float v = value(beat, column);
+    					return(Float.isNaN(v) ? null : v);
+	    				}
+	    			});
+	    		}
+	    	});
+	    }
+
+    @Override
+    public boolean equals(final Object o)
+	    {
+    	if(this == o) { return(true); }
+    	if(!(o instanceof DataVizBeatPoint d)) { return(false); }
+    	return((nBeats == d.nBeats) && (nColumns == d.nColumns) &&
+    		Objects.equals(dataLabels, d.dataLabels) &&
+    		Arrays.equals(values, d.values) &&
+    		Objects.equals(beatLabels, d.beatLabels));
+	    }
+
+    @Override
+    public int hashCode()
+	    { return(Objects.hash(nBeats, nColumns, dataLabels, Arrays.hashCode(values), beatLabels)); }
+
+    @Override
+    public String toString()
+	    { return("DataVizBeatPoint[nBeats=" + nBeats + ", nColumns=" + nColumns + ", dataLabels=" + dataLabels + "]"); }
+
+    /**Incremental builder for a fixed number of beats, with columns appended as needed.
+     * All values start missing (NaN).
+     * Not thread-safe.
+     */
+    public static final class Builder
+	    {
+    	/**Number of beats (rows); non-negative. */
+    	private final int nBeats;
+    	/**Column labels so far; never null. */
+    	private final List<String> dataLabels = new ArrayList<>();
+    	/**Beat labels; never null, size nBeats. */
+    	private final List<String> beatLabels;
+    	/**Whether any beat label has been set. */
+    	private boolean hasBeatLabels;
+    	/**Row-major values, nBeats * dataLabels.size(); never null. */
+    	private float values[] = new float[0];
+
+    	/**Create a builder for a fixed number of beats, with no columns. */
+    	public Builder(final int nBeats)
+	    	{
+    		if(nBeats < 0) { throw new IllegalArgumentException(); }
+    		this.nBeats = nBeats;
+    		beatLabels = new ArrayList<>(Collections.nCopies(nBeats, null));
+	    	}
+
+    	/**Number of columns so far. */
+    	public int nColumns() { return(dataLabels.size()); }
+
+    	/**Append columns, initially all missing, returning the index of the first new one.
+    	 * Rows are re-laid once per call, so append columns in groups where possible.
+    	 */
+    	public int addColumns(final List<String> labels)
+	    	{
+    		final int oldColumns = dataLabels.size();
+    		final int newColumns = oldColumns + labels.size();
+    		final float m[] = new float[nBeats * newColumns];
+    		Arrays.fill(m, Float.NaN);
+    		if(oldColumns > 0)
+	    		{
+    			for(int b = 0; b < nBeats; ++b)
+    				{ System.arraycopy(values, b * oldColumns, m, b * newColumns, oldColumns); }
+	    		}
+    		values = m;
+    		dataLabels.addAll(labels);
+    		return(oldColumns);
+	    	}
+
+    	/**Set one value; NaN for missing. */
+    	public void set(final int beat, final int column, final float value)
+	    	{
+    		Objects.checkIndex(beat, nBeats);
+    		Objects.checkIndex(column, dataLabels.size());
+    		values[(beat * dataLabels.size()) + column] = value;
+	    	}
+
+    	/**Set the label for one beat; may be null. */
+    	public void setBeatLabel(final int beat, final String label)
+	    	{
+    		beatLabels.set(beat, label);
+    		hasBeatLabels = true;
+	    	}
+
+    	/**Set the labels for all beats; never null, size must == nBeats, may contain nulls. */
+    	public void setBeatLabels(final List<String> labels)
+	    	{
+    		if(labels.size() != nBeats) { throw new IllegalArgumentException(); }
+    		for(int b = 0; b < nBeats; ++b) { beatLabels.set(b, labels.get(b)); }
+    		hasBeatLabels = true;
+	    	}
+
+    	/**Build the immutable result, with beat labels only if any were set; never null. */
+    	public DataVizBeatPoint build()
+	    	{ return(new DataVizBeatPoint(nBeats, dataLabels.size(), dataLabels, values, hasBeatLabels ? beatLabels : null)); }
+	    }
+
     /**Output placeholder in place of empty label or value for write(). */
     public static final String PlaceholderValue = "?";
 
     /**Output placeholder character in place of potential separator for write(). */
     public static final char PlaceholderChar = '_';
 
+    /**Shortest round-tripping representation of each value, as Float.toString(), for write(). */
+    public static final int SHORTEST = -1;
+
+    /**Maximum decimal places for fixed-precision output. */
+    public static final int MAX_DECIMALS = 6;
+
+    /**Suggested decimal places where fixed-precision output of visualisation data is requested. */
+    public static final int DEFAULT_DECIMALS = 3;
+
+    /**Powers of ten up to MAX_DECIMALS. */
+    private static final long POW10[] = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000 };
+
+    /**Magnitude below which a fixed-precision value is formatted directly as scaled integer digits. */
+    private static final double FIXED_LIMIT = 1e12;
+
+    /**Maximum characters for one formatted value. */
+    private static final int MAX_VALUE_CHARS = 32;
+
+    /**Format one value into the buffer, returning the new position.
+     * NaN is the placeholder value.
+     * With fixed precision, trailing fractional zeros and any then-trailing point are dropped,
+     * and very large or infinite values fall back to the shortest representation.
+     *
+     * @param decimals  SHORTEST, or 0 to MAX_DECIMALS decimal places
+     * @param buf  buffer with at least MAX_VALUE_CHARS free from pos
+     */
+    static int format(final float v, final int decimals, final char buf[], int pos)
+	    {
+    	if(Float.isNaN(v)) { buf[pos++] = PlaceholderValue.charAt(0); return(pos); }
+    	final double a = Math.abs((double) v);
+    	if((decimals < 0) || !(a < FIXED_LIMIT))
+	    	{
+    		final String s = Float.toString(v);
+    		s.getChars(0, s.length(), buf, pos);
+    		return(pos + s.length());
+	    	}
+    	final long scaled = Math.round(a * POW10[decimals]);
+    	if((v < 0) && (0 != scaled)) { buf[pos++] = '-'; }
+    	long ip = scaled / POW10[decimals];
+    	long fp = scaled % POW10[decimals];
+    	// Integer part, written backwards then reversed in place.
+    	final int start = pos;
+    	do { buf[pos++] = (char) ('0' + (ip % 10)); ip /= 10; } while(ip != 0);
+    	for(int i = start, j = pos - 1; i < j; ++i, --j) { final char t = buf[i]; buf[i] = buf[j]; buf[j] = t; }
+    	if(0 != fp)
+	    	{
+    		int d = decimals;
+    		while(0 == (fp % 10)) { fp /= 10; --d; }
+    		buf[pos++] = '.';
+    		for(int i = pos + d - 1; i >= pos; --i) { buf[i] = (char) ('0' + (fp % 10)); fp /= 10; }
+    		pos += d;
+	    	}
+    	return(pos);
+	    }
+
+    /**Write dataset to stream for other tools such as gnuplot to visualise/render,
+     * with the shortest representation of each value.
+     * @see #write(Writer, boolean, int)
+     */
+    public void write(final Writer w, final boolean commaSep) throws IOException
+	    { write(w, commaSep, SHORTEST); }
+
     /**Write dataset to stream for other tools such as gnuplot to visualise/render.
      * Each beat's vector of points is written to a record in a single line.
      * <p>
      * The first line may optionally be labels if dataLabels is not null.
      * <p>
      * Values in a record may be separated by spaces or commas.
+     * A missing value is written as the placeholder value.
+     * <p>
+     * Each record is formatted into one reusable buffer
+     * and handed to the Writer in one call.
      * <p>
      * Finishes with a flush() to avoid surprises!
+     *
+     * @param decimals  SHORTEST for the shortest representation of each value (as Float.toString()),
+     *     else fixed precision with up to 0 to MAX_DECIMALS decimal places,
+     *     much quicker for large data sets
      */
-    public void write(final Writer w, final boolean commaSep) throws IOException
+    public void write(final Writer w, final boolean commaSep, final int decimals) throws IOException
 	    {
         Objects.requireNonNull(w);
+        if((decimals < SHORTEST) || (decimals > MAX_DECIMALS)) { throw new IllegalArgumentException(); }
 
         final boolean hasBeatLabels = (null != beatLabels) && (!beatLabels.isEmpty());
+        final char sep = commaSep ? ',' : ' ';
 
         // Write data column labels, if any.
         if(null != dataLabels)
 	        {
         	// Start with beatLabel 'label' if any.
-        	if(hasBeatLabels) { w.append("beat"); if(nColumns > 0) { w.write(commaSep ? ',' : ' '); } }
+        	if(hasBeatLabels) { w.append("beat"); if(nColumns > 0) { w.write(sep); } }
 	        // Write column headings.
         	// Convert any commas and spaces to underscores to avoid ambiguity.
         	// A null label becomes a single non-empty place-holder value.
@@ -89,37 +332,58 @@ public record DataVizBeatPoint(
 	        	String label = dataLabels.get(c);
 	        	if(null == label) { label = PlaceholderValue; }
 	        	else { label = label.replace(',', PlaceholderChar).replace(' ', PlaceholderChar); }
-                if(c > 0) { w.write(commaSep ? ',' : ' '); }
+                if(c > 0) { w.write(sep); }
 	        	w.append(label);
 	        	}
         	w.write('\n');
 	        }
 
         // Write beat vector data rows.
-        int row = 0;
-        for(final List<Float> b : dataRendered)
+        final char buf[] = new char[(nColumns * (MAX_VALUE_CHARS + 1)) + 1];
+        for(int row = 0; row < nBeats; ++row)
         	{
         	// Start with beatLabel 'label' if any.
         	if(hasBeatLabels)
         	    {
         		final String bl = beatLabels.get(row);
         		w.append((null == bl)? PlaceholderValue : bl);
-        		if(nColumns > 0) { w.write(commaSep ? ',' : ' '); }
+        		if(nColumns > 0) { w.write(sep); }
         		}
 
-        	if(null != b)
-	        	{
-		    	for(int c = 0; c < nColumns; ++c)
-			    	{
-		    		final Float rawValue = b.get(c);
-	                if(c > 0) { w.write(commaSep ? ',' : ' '); }
-		    		w.append((null == rawValue)? PlaceholderValue : rawValue.toString());
-			    	}
-	        	}
-        	w.write('\n');
-        	row++;
+        	int pos = 0;
+        	final int base = row * nColumns;
+	    	for(int c = 0; c < nColumns; ++c)
+		    	{
+                if(c > 0) { buf[pos++] = sep; }
+                pos = format(values[base + c], decimals, buf, pos);
+		    	}
+	    	buf[pos++] = '\n';
+	    	w.write(buf, 0, pos);
 		    }
 
         w.flush();
 	    }
+
+    /**Write the values in binary for gnuplot, as little-endian 32-bit floats, row-major, NaN for missing.
+     * There are no labels, and beats are implicit in the record number,
+     * so with nColumns 3 for example gnuplot can plot column 2 with:
+     * <pre>
+     * plot 'x.bin' binary format="%3float" endian=little using 0:2 with lines
+     * </pre>
+     * This is far smaller and quicker to write and to load than text for large data sets.
+     * <p>
+     * Finishes with a flush() to avoid surprises!
+     */
+    public void writeBinary(final OutputStream os) throws IOException
+	    {
+    	Objects.requireNonNull(os);
+    	final ByteBuffer bb = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+    	for(final float v : values)
+	    	{
+    		if(!bb.hasRemaining()) { os.write(bb.array(), 0, bb.position()); bb.clear(); }
+    		bb.putFloat(v);
+	    	}
+    	os.write(bb.array(), 0, bb.position());
+    	os.flush();
+	    }
 	}
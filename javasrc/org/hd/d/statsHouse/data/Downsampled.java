@@ -0,0 +1,141 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.List;
+
+/**One stream of aligned proto bars downsampled into coarser slots, eg daily to weekly or monthly to quarterly.
+ * Each run of factor() slots within a bar becomes one coarse slot
+ * holding the coverage-weighted mean of the valid values in the run,
+ * and the mean coverage of the run (missing values counting as zero).
+ * <p>
+ * Computed once in a single pass into primitive columns,
+ * so may be shared by every chorus and voice that needs it.
+ * <p>
+ * Immutable.
+ */
+public final class Downsampled
+    {
+	/**Default number of coarse slots per bar to aim for. */
+	public static final int DEFAULT_COARSE_SLOTS_PER_BAR = 4;
+
+	/**Fine slots per coarse slot; strictly positive. */
+	private final int factor;
+	/**Coarse slots per bar; strictly positive. */
+	private final int slotsPerBar;
+	/**Coverage-weighted mean of each coarse slot in order, NaN if no valid values. */
+	private final float values[];
+	/**Mean coverage of each coarse slot in order, in [0,1]. */
+	private final float coverage[];
+	/**Per-coarse-slot statistics across bars; never null. */
+	private final SlotStatistics stats;
+
+	private Downsampled(final int factor, final int slotsPerBar, final float values[], final float coverage[])
+		{
+		this.factor = factor;
+		this.slotsPerBar = slotsPerBar;
+		this.values = values;
+		this.coverage = coverage;
+		stats = SlotStatistics.of(values, slotsPerBar);
+		}
+
+	/**Default downsampling factor for bars of the given size, eg 3 for 12 months, 8 for 32 days; strictly positive.
+	 * Aims for DEFAULT_COARSE_SLOTS_PER_BAR coarse slots,
+	 * else does not downsample if the bar does not divide evenly.
+	 */
+	public static int defaultFactor(final int dataNotesPerBar)
+		{
+		if(dataNotesPerBar < 1) { throw new IllegalArgumentException(); }
+		return((0 == (dataNotesPerBar % DEFAULT_COARSE_SLOTS_PER_BAR)) ?
+			(dataNotesPerBar / DEFAULT_COARSE_SLOTS_PER_BAR) : 1);
+		}
+
+	/**Downsample one stream of the given bars by the default factor; never null.
+	 * @param bars  aligned proto bars all with the same notes per bar; never null nor empty
+	 * @param stream  1-based stream
+	 */
+	public static Downsampled of(final List<DataProtoBar> bars, final int stream)
+		{
+		if(bars.isEmpty()) { throw new IllegalArgumentException(); }
+		return(of(bars, stream, defaultFactor(bars.get(0).dataNotesPerBar())));
+		}
+
+	/**Downsample one stream of the given bars in one pass; never null.
+	 * A value is missing, as for a data melody note, if absent or without strictly positive coverage.
+	 *
+	 * @param bars  aligned proto bars all with the same notes per bar; never null nor empty
+	 * @param stream  1-based stream
+	 * @param factor  fine slots per coarse slot; strictly positive and must divide the bar evenly
+	 */
+	public static Downsampled of(final List<DataProtoBar> bars, final int stream, final int factor)
+		{
+		if(bars.isEmpty()) { throw new IllegalArgumentException(); }
+		final int fine = bars.get(0).dataNotesPerBar();
+		for(final DataProtoBar b : bars)
+			{ if(b.dataNotesPerBar() != fine) { throw new IllegalArgumentException("bars not aligned"); } }
+		final float coverage[] = new float[bars.size() * fine];
+		final float values[] = DataUtils.columns(bars, stream, coverage);
+		return(of(values, coverage, fine, factor));
+		}
+
+	/**Downsample columns of values and coverage in one pass; never null.
+	 * @param values  values in slot order, a whole number of bars, NaN where missing; never null nor empty
+	 * @param coverage  coverage in slot order, zero where missing; never null, same length as values
+	 * @param slotsPerBar  fine slots per bar; strictly positive
+	 * @param factor  fine slots per coarse slot; strictly positive and must divide the bar evenly
+	 */
+	public static Downsampled of(final float values[], final float coverage[], final int slotsPerBar, final int factor)
+		{
+		if((slotsPerBar < 1) || (0 == values.length) || (0 != (values.length % slotsPerBar))) { throw new IllegalArgumentException(); }
+		if(coverage.length != values.length) { throw new IllegalArgumentException(); }
+		if((factor < 1) || (0 != (slotsPerBar % factor))) { throw new IllegalArgumentException("bad factor " + factor); }
+		final int n = values.length / factor;
+		final float means[] = new float[n];
+		final float meanCoverage[] = new float[n];
+		for(int out = 0; out < n; ++out)
+			{
+			double sumW = 0, sumWV = 0;
+			for(int i = out * factor; i < (out + 1) * factor; ++i)
+				{
+				if(Float.isNaN(values[i])) { continue; }
+				sumW += coverage[i];
+				sumWV += coverage[i] * values[i];
+				}
+			means[out] = (sumW > 0) ? (float) (sumWV / sumW) : Float.NaN;
+			meanCoverage[out] = (float) Math.min(1, sumW / factor);
+			}
+		return(new Downsampled(factor, slotsPerBar / factor, means, meanCoverage));
+		}
+
+	/**Fine slots per coarse slot; strictly positive. */
+	public int factor() { return(factor); }
+
+	/**Coarse slots per bar; strictly positive. */
+	public int slotsPerBar() { return(slotsPerBar); }
+
+	/**Number of bars; strictly positive. */
+	public int bars() { return(values.length / slotsPerBar); }
+
+	/**Coverage-weighted mean of a coarse slot, counting from the start of the first bar; NaN if no valid values. */
+	public float value(final int i) { return(values[i]); }
+
+	/**Mean coverage of a coarse slot, counting from the start of the first bar; in [0,1]. */
+	public float coverage(final int i) { return(coverage[i]); }
+
+	/**Per-coarse-slot statistics across all bars; never null. */
+	public SlotStatistics slotStatistics() { return(stats); }
+    }
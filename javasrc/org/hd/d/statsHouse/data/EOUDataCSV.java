@@ -69,14 +69,66 @@ public record EOUDataCSV(List<List<String>> data)
 	        {
 	        if(null == r) { throw new IllegalArgumentException(); }
 
-	        // Wrap a buffered reader around the input if not already so.
-	        final BufferedReader br = (r instanceof BufferedReader) ? (BufferedReader)r :
-	        	new BufferedReader(r, 8192);
-
 	        // Initially-empty result...
 	        // As of 2023-06-08, largest non-daily-cadence data CSV is 203 lines.
 	        final ArrayList<List<String>> result = new ArrayList<>(256);
 
+	        final RowReader rr = new RowReader(r);
+	        List<String> row;
+	        while(null != (row = rr.next())) { result.add(row); }
+
+	        result.trimToSize(); // Free resources...
+	        return(new EOUDataCSV(Collections.unmodifiableList(result))); // Make outer list unmodifiable...
+	        }
+
+	/**Load from file EOU consolidated data in a form that parseEOUDataCSV() can read; never null but may be empty.
+	 * @throws IOException  if file not present or unreadable/unparseable.
+	 */
+	public static EOUDataCSV loadEOUDataCSV(final File dataCSVFile)
+	    throws IOException
+	    {
+		if(null == dataCSVFile) { throw new IllegalArgumentException(); }
+		try(final Reader r = new FileReader(dataCSVFile, EOUDATACSV_CHARSET))
+		    { return(parseEOUDataCSV(r)); }
+	    }
+	
+	/**Incremental reader of EOU consolidated data CSV rows, eg for streaming very long series.
+	 * Applies exactly the same rules as parseEOUDataCSV(),
+	 * so that a stream of rows from this is the same as the parsed data,
+	 * but holds only the previous row.
+	 * <p>
+	 * This buffers its input for efficiency if not already a BufferedReader.
+	 * The underlying reader is not closed by this.
+	 */
+	public static final class RowReader
+		{
+		private final BufferedReader br;
+		/**Previous row returned, for sharing duplicate values; null if none. */
+		private List<String> prevRow;
+
+		/**Create a row reader on a stream; never null. */
+		public RowReader(final Reader r) { this(r, null); }
+
+		/**Create a row reader on a stream continuing on from a previous row; never null.
+		 * Allows the tail of a growing file to be parsed just as if read as part of the whole.
+		 *
+		 * @param r  stream to read from; never null
+		 * @param prevRow  the last row parsed before the start of this stream; may be null
+		 */
+		public RowReader(final Reader r, final List<String> prevRow)
+			{
+	        if(null == r) { throw new IllegalArgumentException(); }
+	        // Wrap a buffered reader around the input if not already so.
+	        br = (r instanceof BufferedReader) ? (BufferedReader)r :
+	        	new BufferedReader(r, 8192);
+	        this.prevRow = prevRow;
+			}
+
+		/**Get the next row as an unmodifiable List of fields, or null at end of stream.
+	     * @throws IOException  if there is an I/O problem or the data is malformed
+		 */
+		public List<String> next() throws IOException
+			{
 	        String row;
 	        while(null != (row = br.readLine()))
 	            {
@@ -97,9 +149,8 @@ public record EOUDataCSV(List<List<String>> data)
 	            // but may save more than that in avoided GC on small JVM instance.
 	            //
 	            // DHD20230615: "0" is not common and mainly in successive records in a few files.
-	            if(OPTIMISE_MEMORY_IN_EOUDATACSV_PARSE && !result.isEmpty())
+	            if(OPTIMISE_MEMORY_IN_EOUDATACSV_PARSE && (null != prevRow))
 		            {
-		            final List<String> prevRow = result.get(result.size() - 1);
 		            if(fields.length == prevRow.size())
 			            {
 			            for(int i = fields.length; --i >= 0; )
@@ -120,21 +171,10 @@ public record EOUDataCSV(List<List<String>> data)
 		            }
 
 	            // Package up row data (and make it unmodifiable).
-	            result.add(Collections.unmodifiableList(Arrays.asList(fields)));
+	            prevRow = Collections.unmodifiableList(Arrays.asList(fields));
+	            return(prevRow);
 	            }
-
-	        result.trimToSize(); // Free resources...
-	        return(new EOUDataCSV(Collections.unmodifiableList(result))); // Make outer list unmodifiable...
-	        }
-
-	/**Load from file EOU consolidated data in a form that parseEOUDataCSV() can read; never null but may be empty.
-	 * @throws IOException  if file not present or unreadable/unparseable.
-	 */
-	public static EOUDataCSV loadEOUDataCSV(final File dataCSVFile)
-	    throws IOException
-	    {
-		if(null == dataCSVFile) { throw new IllegalArgumentException(); }
-		try(final Reader r = new FileReader(dataCSVFile, EOUDATACSV_CHARSET))
-		    { return(parseEOUDataCSV(r)); }
-	    }
+	        return(null);
+			}
+		}
 	}
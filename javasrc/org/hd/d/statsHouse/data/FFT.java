@@ -0,0 +1,120 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.Arrays;
+
+/**Minimal in-place radix-2 fast Fourier transform, and autocorrelation built on it.
+ * Arrays are primitive and supplied by the caller so that repeated use need not allocate.
+ */
+public final class FFT
+    {
+    /**Prevent creation of an instance. */
+    private FFT() { }
+
+    /**True if n is a (strictly positive) power of two. */
+    public static boolean isPowerOfTwo(final int n) { return((n > 0) && (0 == (n & (n - 1)))); }
+
+    /**Smallest power of two not less than n; n must be in [1,2^30]. */
+    public static int nextPowerOfTwo(final int n)
+	    {
+    	if((n < 1) || (n > (1 << 30))) { throw new IllegalArgumentException(); }
+    	return((1 == n) ? 1 : Integer.highestOneBit(n - 1) << 1);
+	    }
+
+    /**In-place forward (e^-i) or inverse (e^+i, scaled by 1/n) discrete Fourier transform.
+     * @param re  real parts, length a power of two; never null
+     * @param im  imaginary parts, same length as re; never null
+     * @param n  number of points to transform from the start of the arrays, a power of two
+     * @param inverse  if true, do the inverse transform
+     */
+    public static void transform(final double re[], final double im[], final int n, final boolean inverse)
+	    {
+    	if(!isPowerOfTwo(n) || (re.length < n) || (im.length < n)) { throw new IllegalArgumentException(); }
+
+    	// Bit-reversal permutation.
+    	for(int i = 1, j = 0; i < n; ++i)
+	    	{
+    		int bit = n >> 1;
+    		for( ; 0 != (j & bit); bit >>= 1) { j ^= bit; }
+    		j ^= bit;
+    		if(i < j)
+	    		{
+    			final double tr = re[i]; re[i] = re[j]; re[j] = tr;
+    			final double ti = im[i]; im[i] = im[j]; im[j] = ti;
+	    		}
+	    	}
+
+    	// Butterflies, with twiddle factors by recurrence from one sin/cos per stage.
+    	for(int len = 2; len <= n; len <<= 1)
+	    	{
+    		final double angle = (inverse ? 2 : -2) * Math.PI / len;
+    		final double wr = Math.cos(angle), wi = Math.sin(angle);
+    		final int half = len >> 1;
+    		for(int i = 0; i < n; i += len)
+	    		{
+    			double cr = 1, ci = 0;
+    			for(int k = 0; k < half; ++k)
+	    			{
+    				final int a = i + k, b = a + half;
+    				final double xr = (re[b] * cr) - (im[b] * ci);
+    				final double xi = (re[b] * ci) + (im[b] * cr);
+    				re[b] = re[a] - xr; im[b] = im[a] - xi;
+    				re[a] += xr; im[a] += xi;
+    				final double t = (cr * wr) - (ci * wi);
+    				ci = (cr * wi) + (ci * wr);
+    				cr = t;
+	    			}
+	    		}
+	    	}
+
+    	if(inverse)
+	    	{
+    		final double scale = 1.0 / n;
+    		for(int i = 0; i < n; ++i) { re[i] *= scale; im[i] *= scale; }
+	    	}
+	    }
+
+    /**Autocorrelation (unnormalised, ie sum of x[i]*x[i+k]) of the first len values, for lags [0,len-1].
+     * Uses a zero-padded FFT so that there is no wrap-around, in O(len log len) time.
+     *
+     * @param x  values, eg with the mean removed; never null
+     * @param len  number of values to use; strictly positive
+     * @param acf  destination for lags [0,len-1]; never null
+     * @param re  workspace of at least nextPowerOfTwo(2*len) elements; never null
+     * @param im  workspace of the same size as re; never null
+     */
+    public static void autocorrelation(final double x[], final int len, final double acf[],
+    		final double re[], final double im[])
+	    {
+    	if((len < 1) || (x.length < len) || (acf.length < len)) { throw new IllegalArgumentException(); }
+    	final int n = nextPowerOfTwo(2 * len);
+    	if((re.length < n) || (im.length < n)) { throw new IllegalArgumentException("workspace too small"); }
+    	System.arraycopy(x, 0, re, 0, len);
+    	Arrays.fill(re, len, n, 0);
+    	Arrays.fill(im, 0, n, 0);
+    	transform(re, im, n, false);
+    	// Power spectrum, whose inverse transform is the autocorrelation.
+    	for(int i = 0; i < n; ++i)
+	    	{
+    		re[i] = (re[i] * re[i]) + (im[i] * im[i]);
+    		im[i] = 0;
+	    	}
+    	transform(re, im, n, true);
+    	System.arraycopy(re, 0, acf, 0, len);
+	    }
+    }
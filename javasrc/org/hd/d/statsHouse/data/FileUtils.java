@@ -17,6 +17,7 @@ Licensed under the Apache License, Version 2.0 (the "License");
 package org.hd.d.statsHouse.data;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -24,9 +25,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.hd.d.statsHouse.StageStats;
+
 
 /**File utilities.
  * Includes nominally-atomic publishing of globally-readable files and updates.
@@ -86,10 +92,77 @@ public final class FileUtils
      *
      * @param quiet     if true then only error messages will be output
      */
+    @SuppressWarnings("try")
     public static boolean replacePublishedFile(final String name, final byte data[],
                                                final boolean quiet)
         throws IOException
         {
+        try(StageStats.Timer t = StageStats.time(StageStats.STAGE_PUBLISH))
+            { return(_replacePublishedFile(name, data, quiet)); }
+        }
+
+    /**Content to be streamed to a file, eg too large to hold in memory. */
+    @FunctionalInterface
+    public interface StreamedContent
+        {
+        /**Write all the content to the stream, which should not be closed. */
+        void writeTo(OutputStream os) throws IOException;
+        }
+
+    /**Replaces an existing published file with new streamed content.
+     * As for the byte[] version, but without holding the content in memory,
+     * and so always replacing the file, without comparing content.
+     * <p>
+     * The content is written to a temporary file in the same directory first,
+     * and only moved into place once complete,
+     * so that a failure part way leaves any existing file untouched.
+     *
+     * @param quiet     if true then only error messages will be output
+     */
+    @SuppressWarnings("try")
+    public static void replacePublishedFile(final String name, final StreamedContent content,
+                                            final boolean quiet)
+        throws IOException
+        {
+        if((name == null) || (name.length() == 0))
+            { throw new IOException("inappropriate file name"); }
+        if(content == null)
+            { throw new IOException("inappropriate file content"); }
+
+        final File extant = new File(name);
+        final File tempFile;
+        // Reserve the temporary file name under the lock.
+        rPF_rwlock.writeLock().lock();
+        try
+            {
+            tempFile = _makeTempFile(extant);
+            new FileOutputStream(tempFile).close();
+            }
+        finally { rPF_rwlock.writeLock().unlock(); }
+
+        try {
+            // Write the new temp file without holding the lock, since it may take a while.
+            try(OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))
+                { content.writeTo(os); }
+
+            try(StageStats.Timer t = StageStats.time(StageStats.STAGE_PUBLISH))
+                {
+                rPF_rwlock.writeLock().lock();
+                try { _moveIntoPlace(tempFile, extant, tempFile.length(), quiet); }
+                finally { rPF_rwlock.writeLock().unlock(); }
+                }
+            }
+        finally // Tidy up...
+            {
+            tempFile.delete(); // Remove the temp file if not moved.
+            }
+        }
+
+    /**Implementation of replacePublishedFile(). */
+    private static boolean _replacePublishedFile(final String name, final byte data[],
+                                                 final boolean quiet)
+        throws IOException
+        {
         if((name == null) || (name.length() == 0))
             { throw new IOException("inappropriate file name"); }
         if((data == null) /* || (data.length == 0) */ )
@@ -103,24 +176,7 @@ public final class FileUtils
             {
             // Use a temporary file in the same directory (and thus the same filesystem)
             // to avoid unexpectedly truncating the file when copying/moving it.
-            File tempFile;
-            for( ; ; )
-                {
-                tempFile = new File(extant.getParent(),
-                    F_tmpPrefix +
-                    Long.toString((rnd.nextLong() >>> 1),
-                        Character.MAX_RADIX) /* +
-                    "." +
-                    extant.getName() */ ); // Avoid making very long names...
-                if(tempFile.exists())
-                    {
-                    System.err.println("WARNING: FileTools.replacePublishedFile(): "+
-                        "temporary file " + tempFile.getPath() +
-                        " exists, looping...");
-                    continue;
-                    }
-                break;
-                }
+            final File tempFile = _makeTempFile(extant);
 
             // Get extant file's length.
             final long oldLength = extant.length();
@@ -168,43 +224,7 @@ public final class FileUtils
                 if(tempFile.length() != data.length)
                     { new IOException("temp file not written correctly"); }
 
-                final boolean globalRead = !extant.getName().startsWith(".");
-
-                // Ensure that the temp file has the correct read permissions.
-                tempFile.setReadable(true, !globalRead);
-                tempFile.setWritable(true, true);
-
-                // Warn if target does not have write perms, and try to add them.
-                // This should allow us to replace it with the new file.
-                final boolean alreadyExists = extant.exists();
-                if(alreadyExists && !extant.canWrite())
-                    {
-                    System.err.println("FileTools.replacePublishedFile(): "+
-                        "WARNING: " + name + " not writable.");
-                    extant.setWritable(true, true);
-                    if(!extant.canWrite())
-                        {
-                        throw new IOException("can't make target writable");
-                        }
-                    }
-
-                // (Atomically) move tempFile to extant file.
-                // Note that renameTo() may not be atomic
-                // and we may have to remove the target file first.
-                if(!tempFile.renameTo(extant))
-                    {
-                    // If the target already exists,
-                    // then be prepared to explicitly delete it.
-                    if(!alreadyExists || !extant.delete() || !tempFile.renameTo(extant))
-                        { throw new IOException("renameTo/update of "+name+" failed"); }
-                    if(!quiet) { System.err.println("[WARNING: atomic replacement not possible for: " + name + ": used explicit delete.]"); }
-                    }
-
-                if(extant.length() != data.length)
-                    { new IOException("update of "+name+" failed"); }
-                extant.setReadable(true, !globalRead);
-                extant.setWritable(true, true);
-                if(!quiet) { System.err.println("["+(alreadyExists?"Updated":"Created")+" " + name + "]"); }
+                _moveIntoPlace(tempFile, extant, data.length, quiet);
                 return(true); // All seems OK.
                 }
             finally // Tidy up...
@@ -218,6 +238,112 @@ public final class FileUtils
         // Can't get here...
         }
 
+    /**Make a new temporary file name in the same directory (and thus the same filesystem) as the target; never null. */
+    private static File _makeTempFile(final File extant)
+        {
+        File tempFile;
+        for( ; ; )
+            {
+            tempFile = new File(extant.getParent(),
+                F_tmpPrefix +
+                Long.toString((rnd.nextLong() >>> 1),
+                    Character.MAX_RADIX) /* +
+                "." +
+                extant.getName() */ ); // Avoid making very long names...
+            if(tempFile.exists())
+                {
+                System.err.println("WARNING: FileTools.replacePublishedFile(): "+
+                    "temporary file " + tempFile.getPath() +
+                    " exists, looping...");
+                continue;
+                }
+            break;
+            }
+        return(tempFile);
+        }
+
+    /**Move a fully-written temporary file into place as the target, with published permissions.
+     * Caller must hold the write lock.
+     *
+     * @param expectedLength  expected length of the target once replaced
+     */
+    private static void _moveIntoPlace(final File tempFile, final File extant,
+                                       final long expectedLength, final boolean quiet)
+        throws IOException
+        {
+        final String name = extant.getPath();
+        final boolean globalRead = !extant.getName().startsWith(".");
+
+        // Ensure that the temp file has the correct read permissions.
+        tempFile.setReadable(true, !globalRead);
+        tempFile.setWritable(true, true);
+
+        // Warn if target does not have write perms, and try to add them.
+        // This should allow us to replace it with the new file.
+        final boolean alreadyExists = extant.exists();
+        if(alreadyExists && !extant.canWrite())
+            {
+            System.err.println("FileTools.replacePublishedFile(): "+
+                "WARNING: " + name + " not writable.");
+            extant.setWritable(true, true);
+            if(!extant.canWrite())
+                {
+                throw new IOException("can't make target writable");
+                }
+            }
+
+        // (Atomically) move tempFile to extant file.
+        // Note that renameTo() may not be atomic
+        // and we may have to remove the target file first.
+        if(!tempFile.renameTo(extant))
+            {
+            // If the target already exists,
+            // then be prepared to explicitly delete it.
+            if(!alreadyExists || !extant.delete() || !tempFile.renameTo(extant))
+                { throw new IOException("renameTo/update of "+name+" failed"); }
+            if(!quiet) { System.err.println("[WARNING: atomic replacement not possible for: " + name + ": used explicit delete.]"); }
+            }
+
+        if(extant.length() != expectedLength)
+            { new IOException("update of "+name+" failed"); }
+        extant.setReadable(true, !globalRead);
+        extant.setWritable(true, true);
+        if(!quiet) { System.err.println("["+(alreadyExists?"Updated":"Created")+" " + name + "]"); }
+        }
+
+    /**Add a file's content to a digest.
+     * @throws IOException  if the file cannot be read
+     */
+    public static void digestFile(final MessageDigest md, final File f)
+        throws IOException
+        {
+        try(InputStream is = new FileInputStream(f))
+	        {
+	        final byte buf[] = new byte[8192];
+	        int n;
+	        while((n = is.read(buf)) > 0) { md.update(buf, 0, n); }
+	        }
+        }
+
+    /**Add a directory's plain files, names and content, in name order, to a digest.
+     * Does not descend into subdirectories.
+     * @throws IOException  if the directory or any of its files cannot be read
+     */
+    public static void digestDirectory(final MessageDigest md, final File dir)
+        throws IOException
+        {
+        final File files[] = dir.listFiles(File::isFile);
+        if(null == files) { throw new IOException("cannot list " + dir); }
+        Arrays.sort(files);
+        for(final File f : files)
+	        {
+	        md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+	        md.update((byte) 0);
+	        digestFile(md, f);
+	        md.update((byte) 0);
+	        }
+        }
+
     /**Private lock for replacePublishedFile().
      * We use a read/write lock to improve available concurrency.
      * <p>
@@ -0,0 +1,120 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**Lagged view of a sequence of proto bars: the same slots, with each row from earlier in the data.
+ * Proto bars are fed in order and for each a lagged bar is returned
+ * whose slots refer to the original (immutable) rows, so no row is copied or re-parsed;
+ * the only state is a ring of references to the last lag rows or slots.
+ * <p>
+ * The lag is either in rows, or in cadence cycles of slots.
+ * <ul>
+ * <li>A row lag is counted in data rows only, skipping gaps and padding,
+ *     and the lagged row is placed where the current row is,
+ *     so the lagged voice plays exactly when the data does.</li>
+ * <li>A cycle lag is counted in slots, including gaps and padding,
+ *     so once data is aligned (as by MIDIGen.splitAndAlignData()) it is the same point in the cycle,
+ *     eg the same hour the day before, or the same day of the previous month.
+ *     Padding (or not yet available) slots are empty in the lagged bar.</li>
+ * </ul>
+ * <p>
+ * Not thread-safe.
+ */
+public final class LaggedStream
+    {
+	/**Lag specification, eg from the command line.
+	 * @param lag  lag; strictly positive
+	 * @param cycles  true if in cadence cycles, else in rows
+	 */
+	public record Spec(int lag, boolean cycles)
+		{
+		public Spec
+			{ if(lag < 1) { throw new IllegalArgumentException(); } }
+
+		/**Parse a lag of the form n (rows) or nc (cycles); never null.
+		 * @throws IllegalArgumentException  if malformed
+		 */
+		public static Spec parse(final String s)
+			{
+			final boolean cycles = s.endsWith("c");
+			return(new Spec(Integer.parseInt(cycles ? s.substring(0, s.length() - 1) : s), cycles));
+			}
+
+		/**Parse a comma-separated list of lags; never null nor empty.
+		 * @throws IllegalArgumentException  if malformed
+		 */
+		public static List<Spec> parseList(final String s)
+			{ return(Arrays.stream(s.split(",", -1)).map(Spec::parse).toList()); }
+
+		/**As parse() accepts. */
+		@Override
+		public String toString() { return(cycles ? (lag + "c") : Integer.toString(lag)); }
+		}
+
+	/**Length of the ring: the lag in rows or slots; strictly positive. */
+	private final int length;
+	/**True if lagging by slots, else by (non-null) rows. */
+	private final boolean bySlot;
+	/**The last length rows or slots, null where not yet filled or padding. */
+	private final List<?> ring[];
+	/**Next ring position to read then overwrite. */
+	private int pos;
+
+	/**Create a lagged view with nothing yet fed in.
+	 * @param spec  lag; never null
+	 * @param slotsPerCycle  slots per cadence cycle, used for a cycle lag;
+	 *     non-positive (as for a cadence with no cycle) is taken as 1
+	 */
+	public LaggedStream(final Spec spec, final int slotsPerCycle)
+		{
+		Objects.requireNonNull(spec);
+		bySlot = spec.cycles();
+		final long l = bySlot ? ((long) spec.lag() * Math.max(1, slotsPerCycle)) : spec.lag();
+		if(l > Integer.MAX_VALUE) { throw new IllegalArgumentException("lag too long"); }
+		length = (int) l;
+		ring = new List<?>[length];
+		}
+
+	/**Lag in rows (for a row lag) or slots (for a cycle lag). */
+	public int length() { return(length); }
+
+	/**Feed the next proto bar and get its lagged counterpart; never null.
+	 * @param bar  next proto bar in order; never null
+	 * @return  bar of the same size with the lagged rows, null where none
+	 */
+	@SuppressWarnings("unchecked")
+	public DataProtoBar next(final DataProtoBar bar)
+		{
+		final List<List<String>> rows = bar.dataRows().data();
+		final List<?> lagged[] = new List<?>[rows.size()];
+		for(int i = 0; i < lagged.length; ++i)
+			{
+			final List<String> row = rows.get(i);
+			if(!bySlot && (null == row)) { continue; }
+			lagged[i] = ring[pos];
+			ring[pos] = row;
+			if(++pos == length) { pos = 0; }
+			}
+		final List<List<String>> view = (List<List<String>>) (List<?>) Arrays.asList(lagged);
+		return(new DataProtoBar(bar.dataNotesPerBar(), new EOUDataCSV(Collections.unmodifiableList(view))));
+		}
+    }
@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.List;
+
+/**Per-bar noisiness of a data stream, from windowed autocorrelation and running variance.
+ * For each bar the window is the trailing few bars of slots ending with it.
+ * A series that is well predicted by its own recent past
+ * (some strong autocorrelation at a lag up to half the window, eg a daily cycle)
+ * is not noisy, however much it varies;
+ * an unpredictable one is noisy in proportion to its spread (standard deviation).
+ * <p>
+ * The autocorrelation of each window is computed with a zero-padded FFT,
+ * and the variance with a running window,
+ * so a series of n slots costs O(n log w) for windows of w slots
+ * rather than the O(n w) or worse of direct computation per window.
+ * Missing values (padding or gaps) are taken as the window mean, so contribute nothing.
+ */
+public final class NoiseAnalysis
+    {
+    /**Prevent creation of an instance. */
+    private NoiseAnalysis() { }
+
+    /**Default window length in bars. */
+    public static final int DEFAULT_WINDOW_BARS = 4;
+
+    /**Noise intensity in [0,1] for each bar of a column; never null.
+     * @param values  values in slot order, NaN where missing; never null
+     * @param slotsPerBar  slots per bar; strictly positive, and values.length must be a multiple
+     * @param windowBars  window length in bars; strictly positive
+     * @param maxVal  maximum data value, to scale the spread; non-negative
+     */
+    public static float[] intensity(final float values[], final int slotsPerBar, final int windowBars, final float maxVal)
+	    {
+    	if((slotsPerBar < 1) || (windowBars < 1)) { throw new IllegalArgumentException(); }
+    	if(0 != (values.length % slotsPerBar)) { throw new IllegalArgumentException(); }
+    	if(!(maxVal >= 0)) { throw new IllegalArgumentException(); }
+    	final int barCount = values.length / slotsPerBar;
+    	final int window = slotsPerBar * windowBars;
+    	final float result[] = new float[barCount];
+    	if(0 == maxVal) { return(result); }
+
+    	// Workspace reused for every window.
+    	final int n = FFT.nextPowerOfTwo(2 * window);
+    	final double x[] = new double[window];
+    	final double acf[] = new double[window];
+    	final double re[] = new double[n];
+    	final double im[] = new double[n];
+    	final RollingWindow variance = RollingWindow.of(RollingWindow.Kind.variance, window);
+    	final RollingWindow mean = RollingWindow.of(RollingWindow.Kind.mean, window);
+
+    	for(int b = 0; b < barCount; ++b)
+	    	{
+    		// Advance the running statistics to the end of this bar.
+    		float var = Float.NaN, m = Float.NaN;
+    		final int end = (b + 1) * slotsPerBar;
+    		for(int i = b * slotsPerBar; i < end; ++i)
+	    		{
+    			var = variance.add(values[i]);
+    			m = mean.add(values[i]);
+	    		}
+    		if(!(var > 0)) { continue; } // Silent if nothing or nothing varying in the window.
+
+    		// Autocorrelation of the (partial, at the start) window, about its mean.
+    		final int start = Math.max(0, end - window);
+    		final int len = end - start;
+    		for(int i = 0; i < len; ++i)
+	    		{
+    			final float v = values[start + i];
+    			x[i] = Float.isNaN(v) ? 0 : (v - m);
+	    		}
+    		FFT.autocorrelation(x, len, acf, re, im);
+
+    		// Strongest positive correlation at any lag up to half the window,
+    		// each lag normalised by its number of terms so as not to favour short lags.
+    		double predictability = 0;
+    		if(acf[0] > 0)
+	    		{
+    			final double r0 = acf[0] / len;
+    			for(int k = 1; k <= len / 2; ++k)
+    				{ predictability = Math.max(predictability, (acf[k] / (len - k)) / r0); }
+	    		}
+    		final double spread = Math.min(1, (2 * Math.sqrt(var)) / maxVal);
+    		result[b] = (float) Math.max(0, Math.min(1, (1 - Math.min(1, predictability)) * spread));
+	    	}
+    	return(result);
+	    }
+
+    /**Noise intensity in [0,1] for each proto bar, for one stream; never null.
+     * @param bars  proto bars, all with the same slots per bar; never null
+     * @param stream  1-based stream
+     * @param maxVal  maximum data value, to scale the spread; non-negative
+     */
+    public static float[] intensity(final List<DataProtoBar> bars, final int stream, final float maxVal)
+	    {
+    	if(bars.isEmpty()) { return(new float[0]); }
+    	return(intensity(DataUtils.column(bars, stream), bars.get(0).dataNotesPerBar(), DEFAULT_WINDOW_BARS, maxVal));
+	    }
+    }
@@ -0,0 +1,123 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.Arrays;
+
+/**Streaming estimate of one quantile in fixed space, by the P-square algorithm.
+ * Five markers track the minimum, the quantile, the maximum and two points between,
+ * adjusted by piecewise-parabolic interpolation as each sample arrives,
+ * so there is no need to keep or sort the samples.
+ * Exact until more than five samples have been seen.
+ * <p>
+ * See Jain and Chlamtac, "The P-Square Algorithm for Dynamic Calculation of
+ * Quantiles and Histograms Without Storing Observations", CACM 28(10), 1985.
+ * <p>
+ * Not thread-safe.
+ */
+public final class P2Quantile
+    {
+	/**Quantile being estimated, in [0,1]. */
+	private final double p;
+	/**Marker heights; the first count of them are the raw samples until there are five. */
+	private final double q[] = new double[5];
+	/**Marker positions, 1-based. */
+	private final int n[] = { 1, 2, 3, 4, 5 };
+	/**Desired marker positions. */
+	private final double np[];
+	/**Increments of the desired marker positions per sample. */
+	private final double dn[];
+	/**Samples seen. */
+	private long count;
+
+	/**Create an estimator with no samples.
+	 * @param p  quantile to estimate, eg 0.5 for the median; in [0,1]
+	 */
+	public P2Quantile(final double p)
+		{
+		if(!(p >= 0) || !(p <= 1)) { throw new IllegalArgumentException(); }
+		this.p = p;
+		np = new double[]{ 1, 1 + (2*p), 1 + (4*p), 3 + (2*p), 5 };
+		dn = new double[]{ 0, p/2, p, (1+p)/2, 1 };
+		}
+
+	/**Number of samples added. */
+	public long count() { return(count); }
+
+	/**Add a sample; non-finite values are ignored. */
+	public void add(final double x)
+		{
+		if(!Double.isFinite(x)) { return; }
+		if(count < 5)
+			{
+			q[(int) count++] = x;
+			if(5 == count) { Arrays.sort(q); }
+			return;
+			}
+		++count;
+
+		// Find the cell containing x, extending the extremes if need be.
+		final int k;
+		if(x < q[0]) { q[0] = x; k = 0; }
+		else if(x >= q[4]) { q[4] = x; k = 3; }
+		else
+			{
+			int c = 0;
+			while(x >= q[c+1]) { ++c; }
+			k = c;
+			}
+		for(int i = k + 1; i < 5; ++i) { ++n[i]; }
+		for(int i = 0; i < 5; ++i) { np[i] += dn[i]; }
+
+		// Move any middle marker that is now at least a position off where it should be.
+		for(int i = 1; i <= 3; ++i)
+			{
+			final double d = np[i] - n[i];
+			if(((d >= 1) && ((n[i+1] - n[i]) > 1)) || ((d <= -1) && ((n[i-1] - n[i]) < -1)))
+				{
+				final int s = (d > 0) ? 1 : -1;
+				final double qp = parabolic(i, s);
+				q[i] = ((q[i-1] < qp) && (qp < q[i+1])) ? qp :
+					(q[i] + ((s * (q[i+s] - q[i])) / (n[i+s] - n[i])));
+				n[i] += s;
+				}
+			}
+		}
+
+	/**Piecewise-parabolic prediction of marker i moved by s (+/-1) positions. */
+	private double parabolic(final int i, final int s)
+		{
+		return(q[i] + ((double) s / (n[i+1] - n[i-1])) *
+			(((n[i] - n[i-1] + s) * (q[i+1] - q[i]) / (n[i+1] - n[i])) +
+			 ((n[i+1] - n[i] - s) * (q[i] - q[i-1]) / (n[i] - n[i-1]))));
+		}
+
+	/**Current estimate of the quantile, NaN if no samples.
+	 * With five or fewer samples this is exact,
+	 * interpolating linearly between the closest ranks.
+	 */
+	public double quantile()
+		{
+		if(0 == count) { return(Double.NaN); }
+		if(count > 5) { return(q[2]); }
+		final double s[] = Arrays.copyOf(q, (int) count);
+		Arrays.sort(s);
+		final double pos = p * (s.length - 1);
+		final int lo = (int) pos;
+		return((lo + 1 < s.length) ? (s[lo] + ((pos - lo) * (s[lo+1] - s[lo]))) : s[lo]);
+		}
+    }
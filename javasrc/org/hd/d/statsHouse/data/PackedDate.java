@@ -0,0 +1,172 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.time.DateTimeException;
+
+/**Compact handling of EOU data dates without substrings or general parsing.
+ * Hourly dates (ISO YYYY-MM-DDTHH, UTC) are packed as an int count of hours
+ * since 1970-01-01T00, so that ordering, gaps and hour-of-day
+ * are simple integer arithmetic.
+ * <p>
+ * Hourly data is 24 times the size of daily data,
+ * so this is on the per-row path and creates no objects when parsing.
+ */
+public final class PackedDate
+    {
+    /**Prevent creation of an instance. */
+    private PackedDate() { }
+
+    /**Length of an hourly date, YYYY-MM-DDTHH. */
+    public static final int HOURLY_LENGTH = 13;
+
+    /**Hours in a day. */
+    public static final int HOURS_PER_DAY = 24;
+
+    /**True if the date is in hourly form (YYYY-MM-DDTHH), judged by length and separator only.
+     * @param date  raw date from a data row; never null
+     */
+    public static boolean isHourly(final String date)
+	    { return((HOURLY_LENGTH == date.length()) && ('T' == date.charAt(10))); }
+
+    /**Value of the decimal digit at the given position.
+     * @throws DateTimeException  if not a digit
+     */
+    private static int digit(final CharSequence date, final int i)
+	    {
+    	final int d = date.charAt(i) - '0';
+    	if((d < 0) || (d > 9)) { throw new DateTimeException("malformed date (non-digit): " + date); }
+    	return(d);
+	    }
+
+    /**True if the year is a leap year in the proleptic Gregorian calendar. */
+    private static boolean isLeap(final int year)
+	    { return(((year & 3) == 0) && (((year % 100) != 0) || ((year % 400) == 0))); }
+
+    /**Days in the given month [1,12] of the year, in the proleptic Gregorian calendar. */
+    public static int daysInMonth(final int year, final int month)
+	    { return((2 == month) ? (isLeap(year) ? 29 : 28) : (30 + ((month + (month >> 3)) & 1))); }
+
+    /**Days in the given year, in the proleptic Gregorian calendar. */
+    public static int daysInYear(final int year)
+	    { return(isLeap(year) ? 366 : 365); }
+
+    /**Days since 1970-01-01 for a valid civil date, in the proleptic Gregorian calendar. */
+    private static int epochDay(final int year, final int month, final int day)
+	    {
+    	// Count years from March, so that any leap day is last.
+    	final int y = (month <= 2) ? (year - 1) : year;
+    	final int era = Math.floorDiv(y, 400);
+    	final int yoe = y - (era * 400);
+    	final int doy = (((153 * ((month > 2) ? (month - 3) : (month + 9))) + 2) / 5) + day - 1;
+    	final int doe = (yoe * 365) + (yoe / 4) - (yoe / 100) + doy;
+    	return((era * 146097) + doe - 719468);
+	    }
+
+    /**Pack an hourly date (YYYY-MM-DDTHH) as hours since 1970-01-01T00.
+     * @param date  hourly date; never null
+     * @throws DateTimeException  if malformed or not a valid date and hour
+     */
+    public static int epochHour(final CharSequence date)
+	    {
+    	if((HOURLY_LENGTH != date.length()) ||
+			('-' != date.charAt(4)) || ('-' != date.charAt(7)) || ('T' != date.charAt(10)))
+    		{ throw new DateTimeException("malformed hourly date: " + date); }
+    	final int year = (1000 * digit(date, 0)) + (100 * digit(date, 1)) + (10 * digit(date, 2)) + digit(date, 3);
+    	final int month = (10 * digit(date, 5)) + digit(date, 6);
+    	final int day = (10 * digit(date, 8)) + digit(date, 9);
+    	final int hour = (10 * digit(date, 11)) + digit(date, 12);
+    	if((month < 1) || (month > 12)) { throw new DateTimeException("bad month: " + date); }
+    	if((day < 1) || (day > daysInMonth(year, month))) { throw new DateTimeException("bad day: " + date); }
+    	if(hour >= HOURS_PER_DAY) { throw new DateTimeException("bad hour: " + date); }
+    	return((epochDay(year, month, day) * HOURS_PER_DAY) + hour);
+	    }
+
+    /**Pack a date of any cadence (YYYY, YYYY-MM, YYYY-MM-DD or YYYY-MM-DDTHH) as an int.
+     * This is the year, months since year 0, days since 1970-01-01 or hours since 1970-01-01T00,
+     * so orders as the dates do and is consecutive for consecutive dates,
+     * but is comparable only between dates of the same cadence.
+     *
+     * @param date  date; never null
+     * @throws DateTimeException  if malformed or not a valid date
+     */
+    public static int pack(final CharSequence date)
+	    {
+    	final int length = date.length();
+    	if(HOURLY_LENGTH == length) { return(epochHour(date)); }
+    	if((4 != length) && (7 != length) && (10 != length)) { throw new DateTimeException("malformed date: " + date); }
+    	final int year = (1000 * digit(date, 0)) + (100 * digit(date, 1)) + (10 * digit(date, 2)) + digit(date, 3);
+    	if(4 == length) { return(year); }
+    	if('-' != date.charAt(4)) { throw new DateTimeException("malformed date: " + date); }
+    	final int month = (10 * digit(date, 5)) + digit(date, 6);
+    	if((month < 1) || (month > 12)) { throw new DateTimeException("bad month: " + date); }
+    	if(7 == length) { return((year * 12) + (month - 1)); }
+    	if('-' != date.charAt(7)) { throw new DateTimeException("malformed date: " + date); }
+    	final int day = (10 * digit(date, 8)) + digit(date, 9);
+    	if((day < 1) || (day > daysInMonth(year, month))) { throw new DateTimeException("bad day: " + date); }
+    	return(epochDay(year, month, day));
+	    }
+
+    /**Hour of day [0,23] of a packed hourly date. */
+    public static int hourOfDay(final int epochHour)
+	    { return(Math.floorMod(epochHour, HOURS_PER_DAY)); }
+
+    /**Format a packed hourly date as YYYY-MM-DDTHH; never null.
+     * @param epochHour  hours since 1970-01-01T00, for a year in [0,9999]
+     */
+    public static String formatEpochHour(final int epochHour)
+	    {
+    	// Inverse of epochDay().
+    	final int z = Math.floorDiv(epochHour, HOURS_PER_DAY) + 719468;
+    	final int era = Math.floorDiv(z, 146097);
+    	final int doe = z - (era * 146097);
+    	final int yoe = (doe - (doe / 1460) + (doe / 36524) - (doe / 146096)) / 365;
+    	final int doy = doe - ((365 * yoe) + (yoe / 4) - (yoe / 100));
+    	final int mp = ((5 * doy) + 2) / 153;
+    	final int day = doy - (((153 * mp) + 2) / 5) + 1;
+    	final int month = (mp < 10) ? (mp + 3) : (mp - 9);
+    	final int year = yoe + (era * 400) + ((month <= 2) ? 1 : 0);
+    	if((year < 0) || (year > 9999)) { throw new DateTimeException("year out of range: " + year); }
+    	final int hour = hourOfDay(epochHour);
+    	final char c[] = {
+			(char) ('0' + (year / 1000)), (char) ('0' + ((year / 100) % 10)),
+			(char) ('0' + ((year / 10) % 10)), (char) ('0' + (year % 10)),
+			'-', (char) ('0' + (month / 10)), (char) ('0' + (month % 10)),
+			'-', (char) ('0' + (day / 10)), (char) ('0' + (day % 10)),
+			'T', (char) ('0' + (hour / 10)), (char) ('0' + (hour % 10)),
+			};
+    	return(new String(c));
+	    }
+
+    /**Value of the least-significant (last '-' separated) component of a YYYY-MM or YYYY-MM-DD date.
+     * @param date  raw date from a data row; never null
+     * @throws DateTimeException  if there is no '-' or the component is not all digits
+     */
+    public static int lastComponent(final String date)
+	    {
+    	final int lastDash = date.lastIndexOf('-');
+    	if(lastDash < 0) { throw new DateTimeException("malformed date (missing '-'): " + date); }
+    	if(lastDash == date.length() - 1) { throw new DateTimeException("malformed date (empty lsd): " + date); }
+    	int value = 0;
+    	for(int i = lastDash + 1; i < date.length(); ++i)
+    		{
+    		value = (10 * value) + digit(date, i);
+    		if(value > 9999) { throw new DateTimeException("malformed date (lsd too long): " + date); }
+    		}
+    	return(value);
+	    }
+    }
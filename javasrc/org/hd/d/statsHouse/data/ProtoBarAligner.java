@@ -0,0 +1,198 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**Incremental splitting of in-order data rows into proto bars, with optional alignment.
+ * Rows are pushed in one at a time, and each bar is passed on as soon as it is complete,
+ * so only one partial bar is held at once.
+ * <p>
+ * This is the core of MIDIGen.splitAndAlignData(),
+ * and can also be used directly to stream very long data series.
+ * <p>
+ * When aligning, a final (all-padding) bar is still emitted by {@link #finish()}
+ * if the data ended exactly at a bar boundary,
+ * as the original whole-data implementation did.
+ * <p>
+ * Hourly data (YYYY-MM-DDTHH) is aligned on hour of day
+ * using dates packed as epoch hours.
+ * Gaps are tolerated, including across bars:
+ * skipped bars are inserted as padding only modulo the bars in a day,
+ * so as to keep the daily phase without unbounded padding.
+ * <p>
+ * Not thread-safe.
+ */
+public final class ProtoBarAligner
+    {
+	/**Data notes per bar; strictly positive. */
+	private final int dataNotesPerBar;
+	/**If true, align rows in each bar by the least-significant date component. */
+	private final boolean doAlign;
+	/**Destination for completed bars; never null. */
+	private final Consumer<DataProtoBar> out;
+
+	/**Current partial bar; never null. */
+	private final List<List<String>> bar;
+	/**True once finish() has been called. */
+	private boolean finished;
+	/**Packed date of the last hourly row added, if lastHourValid. */
+	private int lastEpochHour;
+	/**True once an hourly row has been added. */
+	private boolean lastHourValid;
+
+	/**Create an aligner.
+	 * @param dataNotesPerBar  data notes per bar; strictly positive
+	 * @param doAlign  if true, align rows to beats using the least-significant date component
+	 * @param out  destination for completed bars, in order; never null
+	 */
+	public ProtoBarAligner(final int dataNotesPerBar, final boolean doAlign, final Consumer<DataProtoBar> out)
+		{
+		if(dataNotesPerBar < 1) { throw new IllegalArgumentException(); }
+		Objects.requireNonNull(out);
+		this.dataNotesPerBar = dataNotesPerBar;
+		this.doAlign = doAlign;
+		this.out = out;
+		bar = new ArrayList<>(dataNotesPerBar);
+		}
+
+	/**Make a padded proto bar from the current partial bar; never null. */
+	private DataProtoBar paddedBar()
+		{
+	    final List<List<String>> rows = new ArrayList<>(dataNotesPerBar);
+	    rows.addAll(bar);
+	    while(rows.size() < dataNotesPerBar) { rows.add(null); }
+	    return(new DataProtoBar(dataNotesPerBar, new EOUDataCSV(Collections.unmodifiableList(rows))));
+		}
+
+	/**Emit the current bar, padded as need be, and start a new one. */
+	private void emitBar()
+		{
+	    out.accept(paddedBar());
+	    bar.clear();
+		}
+
+	/**Add the next row in order; never null.
+	 * @throws DateTimeException  if aligning and the date is malformed or out of sequence
+	 */
+	public void add(final List<String> row)
+		{
+		Objects.requireNonNull(row);
+		if(finished) { throw new IllegalStateException("finished"); }
+
+		if(!doAlign)
+			{
+			bar.add(row);
+			if(dataNotesPerBar == bar.size()) { emitBar(); }
+			return;
+			}
+
+    	// Do alignment.
+    	// Assumes all input data is well-formed, well-ordered and dense (no gaps).
+    	// Any item with least-significant date (lsd) section N should be on beat N
+    	// (treating both schemes as 1-based).
+    	//     * If a datum with lsd less than the current beat is encountered
+    	//       then insert empty notes to pad the current bar to the end.
+    	//       (Nominally the lsd should be 1 (or "01") if no gaps,
+    	//       but we could drop through to the next rule to cope with some gaps.)
+    	//     * If a datum with lsd greater than the current beat is encountered
+    	//       then insert empty notes to get to beat N.
+		final int currentBeatNumber = bar.size() + 1;
+
+		final String date = row.get(0);
+		if(PackedDate.isHourly(date)) { addHourly(row, date); return; }
+		final int lsd = PackedDate.lastComponent(date);
+		if(lsd <= 0) { throw new DateTimeException("malformed date (lsd <= 0): " + date); }
+		if(lsd > dataNotesPerBar) { throw new DateTimeException("malformed date (lsd too high): " + date); }
+
+        if(lsd < currentBeatNumber)
+            {
+        	if(1 != lsd) { throw new DateTimeException("malformed date or missing datum: " + date + "; lsd="+lsd+", currentBeatNumber="+currentBeatNumber); }
+            // Pad bar to end, push it out,
+        	// and be ready to start new bar with this note.
+        	emitBar();
+            }
+        else if(lsd > currentBeatNumber)
+            {
+            // Insert empty notes to get to the right place.
+        	// Should only happen on a partial first bar if data is dense/complete.
+		    while(bar.size()+1 < lsd) { bar.add(null); }
+            }
+
+        // Add this note.
+	    bar.add(row);
+
+	    assert(bar.size() <= dataNotesPerBar);
+	    if(dataNotesPerBar == bar.size()) { emitBar(); }
+		}
+
+	/**Add an hourly row when aligning, placing it by hour of day. */
+	private void addHourly(final List<String> row, final String date)
+		{
+		final int eh = PackedDate.epochHour(date);
+		if(lastHourValid)
+			{
+			if(eh <= lastEpochHour) { throw new DateTimeException("date out of sequence: " + date); }
+			final int barsOn = Math.floorDiv(eh, dataNotesPerBar) - Math.floorDiv(lastEpochHour, dataNotesPerBar);
+			if(barsOn > 0)
+				{
+				// Push out the current bar unless just completed and emitted.
+				if(!bar.isEmpty()) { emitBar(); }
+				// Keep the daily phase where bars fit whole days.
+				final int barsPerDay = (0 == (PackedDate.HOURS_PER_DAY % dataNotesPerBar)) ?
+					(PackedDate.HOURS_PER_DAY / dataNotesPerBar) : 1;
+				for(int i = (barsOn - 1) % barsPerDay; --i >= 0; ) { emitBar(); }
+				}
+			}
+		lastEpochHour = eh;
+		lastHourValid = true;
+
+		// Pad to this hour's slot in the bar.
+		final int slot = Math.floorMod(eh, dataNotesPerBar);
+		while(bar.size() < slot) { bar.add(null); }
+		bar.add(row);
+		if(dataNotesPerBar == bar.size()) { emitBar(); }
+		}
+
+	/**Number of rows (or padding) in the current partial bar; non-negative. */
+	public int partialBarSize() { return(bar.size()); }
+
+	/**Get the final bar that finish() would emit now, without finishing; null if none.
+	 * Allows a growing data series to be viewed as complete at any point
+	 * while more rows can still be added.
+	 */
+	public DataProtoBar peekFinal()
+		{
+		if(finished) { throw new IllegalStateException("finished"); }
+		if(!doAlign && bar.isEmpty()) { return(null); }
+		return(paddedBar());
+		}
+
+	/**Emit any final partial bar, padded; no more rows can be added after this. */
+	public void finish()
+		{
+		if(finished) { return; }
+		finished = true;
+		// Pad the final possibly-partial bar if necessary.
+		if(doAlign || !bar.isEmpty()) { emitBar(); }
+		}
+    }
@@ -0,0 +1,270 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.Objects;
+
+/**Trailing sliding-window statistic over a column of float samples, in O(1) time per sample.
+ * Each sample added yields the statistic over the window of the last (up to) rows() samples,
+ * so feeding a column through gives a derived column of the same length,
+ * in a single pass and without recomputing any window.
+ * <p>
+ * A sample is missing if its value is not finite
+ * or its weight (eg coverage) is not finite and strictly positive,
+ * as for a data melody note.
+ * A missing sample still takes its place in the window but contributes nothing.
+ * The statistic of a window with no valid samples is NaN.
+ * <p>
+ * Not thread-safe.
+ */
+public abstract class RollingWindow
+    {
+	/**Statistic computed over the window. */
+	public enum Kind
+		{
+		/**Arithmetic mean. */
+		mean,
+		/**Minimum. */
+		min,
+		/**Maximum. */
+		max,
+		/**Population variance. */
+		variance,
+		/**Mean weighted by coverage. */
+		cmean
+		}
+
+	/**Window specification, eg from the command line.
+	 * @param kind  statistic; never null
+	 * @param rows  window length in samples; strictly positive, or 0 for a default to suit the data
+	 */
+	public record Spec(Kind kind, int rows)
+		{
+		public Spec
+			{
+			Objects.requireNonNull(kind);
+			if(rows < 0) { throw new IllegalArgumentException(); }
+			}
+
+		/**Parse a specification of the form kind[:rows]; never null.
+		 * @throws IllegalArgumentException  if malformed
+		 */
+		public static Spec parse(final String s)
+			{
+			final int colon = s.indexOf(':');
+			final Kind kind = Kind.valueOf((colon < 0) ? s : s.substring(0, colon));
+			final int rows = (colon < 0) ? 0 : Integer.parseInt(s.substring(colon + 1));
+			if((colon >= 0) && (rows < 1)) { throw new IllegalArgumentException("bad window length: " + s); }
+			return(new Spec(kind, rows));
+			}
+
+		/**As parse() accepts. */
+		@Override
+		public String toString() { return((0 == rows) ? kind.name() : (kind.name() + ':' + rows)); }
+		}
+
+	/**Window length in samples; strictly positive. */
+	protected final int rows;
+	/**Number of samples added so far, including missing ones. */
+	protected long count;
+
+	/**Create an empty window. */
+	RollingWindow(final int rows)
+		{
+		if(rows < 1) { throw new IllegalArgumentException(); }
+		this.rows = rows;
+		}
+
+	/**Window length in samples; strictly positive. */
+	public final int rows() { return(rows); }
+
+	/**True if the value and weight make a valid (non-missing) sample. */
+	protected static boolean isValid(final float value, final float weight)
+		{ return(Float.isFinite(value) && Float.isFinite(weight) && (weight > 0)); }
+
+	/**Add a sample with unit weight; returns the statistic over the window now ending with it, or NaN. */
+	public final float add(final float value) { return(add(value, 1)); }
+
+	/**Add a sample; returns the statistic over the window now ending with it, or NaN.
+	 * @param value  data value; not finite if missing
+	 * @param weight  weight, eg coverage; missing unless finite and strictly positive
+	 */
+	public abstract float add(float value, float weight);
+
+	/**Create an empty window; never null.
+	 * @param kind  statistic; never null
+	 * @param rows  window length in samples; strictly positive
+	 */
+	public static RollingWindow of(final Kind kind, final int rows)
+		{
+		return(switch(kind) {
+			case mean -> new Mean(rows, false);
+			case cmean -> new Mean(rows, true);
+			case min -> new Extreme(rows, false);
+			case max -> new Extreme(rows, true);
+			case variance -> new Variance(rows);
+			});
+		}
+
+	/**Derived column of the statistic at each sample of a column; never null.
+	 * @param values  data values, not finite where missing; never null
+	 * @param weights  weights, same length as values, or null for unit weights
+	 */
+	public static float[] apply(final Kind kind, final int rows, final float values[], final float weights[])
+		{
+		if((null != weights) && (weights.length != values.length)) { throw new IllegalArgumentException(); }
+		final RollingWindow w = of(kind, rows);
+		final float result[] = new float[values.length];
+		for(int i = 0; i < values.length; ++i)
+			{ result[i] = w.add(values[i], (null == weights) ? 1 : weights[i]); }
+		return(result);
+		}
+
+	/**Mean, optionally weighted, from running sums. */
+	private static final class Mean extends RollingWindow
+		{
+		/**True if weighted. */
+		private final boolean weighted;
+		/**Values in the window, NaN where missing. */
+		private final float values[];
+		/**Weights in the window, 0 where missing. */
+		private final float weights[];
+		/**Running sums of weight*value and weight. */
+		private double sum, sumWeights;
+		/**Number of valid samples in the window. */
+		private int n;
+
+		Mean(final int rows, final boolean weighted)
+			{
+			super(rows);
+			this.weighted = weighted;
+			values = new float[rows];
+			weights = new float[rows];
+			}
+
+		@Override
+		public float add(final float value, final float weight)
+			{
+			final int i = (int) (count++ % rows);
+			if(!Float.isNaN(values[i]) && (0 != weights[i]))
+				{
+				sum -= weights[i] * (double) values[i];
+				sumWeights -= weights[i];
+				--n;
+				}
+			if(isValid(value, weight))
+				{
+				values[i] = value;
+				weights[i] = weighted ? weight : 1;
+				sum += weights[i] * (double) value;
+				sumWeights += weights[i];
+				++n;
+				}
+			else { values[i] = Float.NaN; weights[i] = 0; }
+			// Shed any accumulated rounding error whenever the window empties.
+			if(0 == n) { sum = 0; sumWeights = 0; return(Float.NaN); }
+			return((float) (sum / sumWeights));
+			}
+		}
+
+	/**Population variance from running sums of values shifted by a fixed offset,
+	 * which keeps the cancellation error small for data far from zero.
+	 */
+	private static final class Variance extends RollingWindow
+		{
+		/**Values in the window, NaN where missing. */
+		private final float values[];
+		/**Shift, the first valid value seen. */
+		private double shift = Double.NaN;
+		/**Running sums of shifted values and of their squares. */
+		private double sum, sumSquares;
+		/**Number of valid samples in the window. */
+		private int n;
+
+		Variance(final int rows)
+			{
+			super(rows);
+			values = new float[rows];
+			}
+
+		@Override
+		public float add(final float value, final float weight)
+			{
+			final int i = (int) (count++ % rows);
+			if((count > rows) && !Float.isNaN(values[i]))
+				{
+				final double d = values[i] - shift;
+				sum -= d;
+				sumSquares -= d * d;
+				--n;
+				}
+			if(isValid(value, weight))
+				{
+				if(Double.isNaN(shift)) { shift = value; }
+				values[i] = value;
+				final double d = value - shift;
+				sum += d;
+				sumSquares += d * d;
+				++n;
+				}
+			else { values[i] = Float.NaN; }
+			if(0 == n) { sum = 0; sumSquares = 0; return(Float.NaN); }
+			return((float) Math.max(0, (sumSquares - ((sum * sum) / n)) / n));
+			}
+		}
+
+	/**Minimum or maximum from a monotonic deque of candidate samples,
+	 * each added and removed at most once, so O(1) amortised per sample.
+	 */
+	private static final class Extreme extends RollingWindow
+		{
+		/**+1 for maximum, -1 for minimum, applied to values held in the deque. */
+		private final float sign;
+		/**Circular deque of sample numbers and their signed values, decreasing in value from the head. */
+		private final long index[];
+		private final float value[];
+		/**Head position and size of the deque. */
+		private int head, size;
+
+		Extreme(final int rows, final boolean max)
+			{
+			super(rows);
+			sign = max ? 1 : -1;
+			index = new long[rows];
+			value = new float[rows];
+			}
+
+		@Override
+		public float add(final float v, final float weight)
+			{
+			final long now = count++;
+			// Drop the head if it has slid out of the window.
+			if((size > 0) && (index[head] <= now - rows)) { head = (head + 1) % rows; --size; }
+			if(isValid(v, weight))
+				{
+				// Drop candidates that can never again be the extreme.
+				final float sv = sign * v;
+				while((size > 0) && (value[(head + size - 1) % rows] <= sv)) { --size; }
+				final int tail = (head + size) % rows;
+				index[tail] = now;
+				value[tail] = sv;
+				++size;
+				}
+			return((0 == size) ? Float.NaN : (sign * value[head]));
+			}
+		}
+    }
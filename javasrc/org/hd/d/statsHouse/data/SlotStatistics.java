@@ -0,0 +1,133 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.util.List;
+
+/**Per-slot summary statistics of one stream across a run of aligned proto bars.
+ * Slot i is the i-th note of every bar, eg the same month of each year
+ * or the same hour of each day,
+ * so this summarises the typical shape of a bar (a cadence cycle) of the data.
+ * <p>
+ * Computed in a single pass in fixed space per slot,
+ * with the percentiles estimated by P-square sketches rather than by sorting,
+ * so is cheap even for long series.
+ * <p>
+ * Immutable.
+ */
+public final class SlotStatistics
+    {
+	/**Percentiles summarised. */
+	public enum Percentile
+		{
+		/**10th percentile. */
+		P10(0.1),
+		/**Median. */
+		P50(0.5),
+		/**90th percentile. */
+		P90(0.9);
+
+		/**Quantile in [0,1]. */
+		public final double quantile;
+
+		private Percentile(final double q) { quantile = q; }
+		}
+
+	/**Valid samples in each slot. */
+	private final int count[];
+	/**Mean of each slot, NaN if no samples. */
+	private final float mean[];
+	/**Percentiles of each slot, by Percentile ordinal then slot, NaN if no samples. */
+	private final float percentile[][];
+
+	private SlotStatistics(final int count[], final float mean[], final float percentile[][])
+		{
+		this.count = count;
+		this.mean = mean;
+		this.percentile = percentile;
+		}
+
+	/**Summarise one stream of the given bars; never null.
+	 * A value is missing, as for a data melody note, if absent or without strictly positive coverage.
+	 *
+	 * @param bars  aligned proto bars all with the same notes per bar; never null nor empty
+	 * @param stream  1-based stream
+	 */
+	public static SlotStatistics of(final List<DataProtoBar> bars, final int stream)
+		{
+		if(bars.isEmpty()) { throw new IllegalArgumentException(); }
+		final int slots = bars.get(0).dataNotesPerBar();
+		for(final DataProtoBar b : bars)
+			{ if(b.dataNotesPerBar() != slots) { throw new IllegalArgumentException("bars not aligned"); } }
+		return(of(DataUtils.column(bars, stream), slots));
+		}
+
+	/**Summarise a column of values in one pass; never null.
+	 * @param values  values in slot order, a whole number of bars, NaN where missing; never null
+	 * @param slotsPerBar  slots per bar; strictly positive
+	 */
+	public static SlotStatistics of(final float values[], final int slotsPerBar)
+		{
+		if(slotsPerBar < 1) { throw new IllegalArgumentException(); }
+		if(0 != (values.length % slotsPerBar)) { throw new IllegalArgumentException(); }
+		final Percentile ps[] = Percentile.values();
+		final double sum[] = new double[slotsPerBar];
+		final int count[] = new int[slotsPerBar];
+		final P2Quantile sketches[][] = new P2Quantile[ps.length][slotsPerBar];
+		for(int j = 0; j < ps.length; ++j)
+			{ for(int i = 0; i < slotsPerBar; ++i) { sketches[j][i] = new P2Quantile(ps[j].quantile); } }
+
+		for(int k = 0; k < values.length; ++k)
+			{
+			final float v = values[k];
+			if(Float.isNaN(v)) { continue; }
+			final int i = k % slotsPerBar;
+			++count[i];
+			sum[i] += v;
+			for(int j = 0; j < ps.length; ++j) { sketches[j][i].add(v); }
+			}
+
+		final float mean[] = new float[slotsPerBar];
+		final float percentile[][] = new float[ps.length][slotsPerBar];
+		for(int i = 0; i < slotsPerBar; ++i)
+			{
+			mean[i] = (0 == count[i]) ? Float.NaN : (float) (sum[i] / count[i]);
+			for(int j = 0; j < ps.length; ++j) { percentile[j][i] = (float) sketches[j][i].quantile(); }
+			}
+		return(new SlotStatistics(count, mean, percentile));
+		}
+
+	/**Number of slots, ie notes per bar; strictly positive. */
+	public int slots() { return(count.length); }
+
+	/**Number of valid samples in a slot; non-negative. */
+	public int count(final int slot) { return(count[slot]); }
+
+	/**Largest number of valid samples in any slot; non-negative. */
+	public int maxCount()
+		{
+		int max = 0;
+		for(final int c : count) { max = Math.max(max, c); }
+		return(max);
+		}
+
+	/**Mean of a slot; NaN if no samples. */
+	public float mean(final int slot) { return(mean[slot]); }
+
+	/**(Estimated) percentile of a slot; NaN if no samples. */
+	public float percentile(final Percentile p, final int slot) { return(percentile[p.ordinal()][slot]); }
+    }
@@ -0,0 +1,208 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import org.hd.d.statsHouse.generic.DataCadence;
+
+/**Specification for synthetic EOU consolidated data CSV, eg for scaling tests and benchmarks; immutable.
+ * Output is entirely determined by these parameters, including the seed.
+ * <p>
+ * Each row starts with the date, followed by a (source, coverage, value) triple for each stream,
+ * in the same shape as files such as <code>dataSample/gen-M.csv</code>.
+ * A gap in a stream is an empty triple, ie <code>,,,</code>.
+ * At least one stream in each row is not a gap.
+ * <p>
+ * Dates start at {@link #FIRST_DATE} and are dense at the given cadence.
+ * Hourly dates are of the form <code>YYYY-MM-DDTHH</code>.
+ * <p>
+ * Values follow a cycle natural to the cadence (eg daily for hourly data, yearly for daily data)
+ * with per-stream level and phase, and some noise.
+ *
+ * @param cadence  data cadence; never null
+ * @param rows  number of data rows; strictly positive and small enough to keep years to 4 digits
+ * @param streams  number of data streams per row; strictly positive
+ * @param gapProbability  probability in [0,1) that any one stream value is missing
+ * @param sources  source (device) names, used in turn for each stream; never null nor empty
+ * @param seed  PRNG seed
+ */
+public record SyntheticEOUData(DataCadence cadence, long rows, int streams,
+		float gapProbability, List<String> sources, long seed)
+    {
+	public SyntheticEOUData
+		{
+		Objects.requireNonNull(cadence);
+		if(rows <= 0) { throw new IllegalArgumentException("rows must be positive"); }
+		if(rows > maxRows(cadence)) { throw new IllegalArgumentException("too many rows for cadence " + cadence + ": " + rows); }
+		if(streams <= 0) { throw new IllegalArgumentException("streams must be positive"); }
+		if(!(gapProbability >= 0) || !(gapProbability < 1)) { throw new IllegalArgumentException("bad gapProbability"); }
+		Objects.requireNonNull(sources);
+		if(sources.isEmpty()) { throw new IllegalArgumentException("no sources"); }
+		for(final String s : sources)
+			{ if(s.isEmpty() || (s.indexOf(',') >= 0) || (s.indexOf('\n') >= 0)) { throw new IllegalArgumentException("bad source name: " + s); } }
+		sources = List.copyOf(sources); // Defensive copy to enforce immutability.
+		}
+
+	/**Default source names, as in the generation data samples. */
+	public static final List<String> DEFAULT_SOURCES = List.of("Enphase", "meter", "SunnyBeam");
+
+	/**First date of all synthetic data. */
+	public static final LocalDate FIRST_DATE = LocalDate.of(2008, 1, 1);
+	/**Last date allowed in synthetic data, keeping years to 4 digits. */
+	public static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+
+	/**Maximum number of rows for the given cadence, from FIRST_DATE to LAST_DATE inclusive. */
+	public static long maxRows(final DataCadence cadence)
+		{
+		return(switch(cadence) {
+			case H -> 24 * (1 + ChronoUnit.DAYS.between(FIRST_DATE, LAST_DATE));
+			case D -> 1 + ChronoUnit.DAYS.between(FIRST_DATE, LAST_DATE);
+			case M -> 1 + ChronoUnit.MONTHS.between(FIRST_DATE, LAST_DATE);
+			case Y -> 1 + ChronoUnit.YEARS.between(FIRST_DATE, LAST_DATE);
+			});
+		}
+
+	/**Natural cycle length in rows for values of the given cadence; strictly positive. */
+	private static double cycleRows(final DataCadence cadence)
+		{
+		return(switch(cadence) {
+			case H -> 24;
+			case D -> 365.25;
+			case M -> 12;
+			case Y -> 11; // Roughly a solar cycle.
+			});
+		}
+
+	/**Construct with default sources. */
+	public SyntheticEOUData(final DataCadence cadence, final long rows, final int streams,
+			final float gapProbability, final long seed)
+		{ this(cadence, rows, streams, gapProbability, DEFAULT_SOURCES, seed); }
+
+	/**Write the CSV, header comments then rows, streaming with constant memory.
+	 * The writer should be buffered for efficiency.
+	 *
+	 * @param w  writer to send the CSV to, not closed by this routine; never null
+	 */
+	public void write(final Writer w) throws IOException
+		{
+		Objects.requireNonNull(w);
+
+		// Header rows, ignored by the parser.
+		final StringBuilder sb = new StringBuilder(64 + (streams * 48));
+		sb.append('#').append(switch(cadence) {
+			case H -> "YYYY-MM-DDTHH";
+			case D -> "YYYY-MM-DD";
+			case M -> "YYYY-MM";
+			case Y -> "YYYY";
+			});
+		for(int s = 0; s < streams; ++s) { sb.append(",device,coverage,gen"); }
+		sb.append('\n');
+		for(int s = 0; s < streams; ++s)
+			{ sb.append("#input,\"synthetic/").append(source(s)).append(".csv\"\n"); }
+		w.write(sb.toString());
+
+		final Random prng = new Random(seed);
+		// Per-stream level (milli-units) and cycle phase.
+		final long level[] = new long[streams];
+		final double phase[] = new double[streams];
+		for(int s = 0; s < streams; ++s)
+			{
+			level[s] = 1000L * (10 + prng.nextInt(1000));
+			phase[s] = prng.nextDouble() * 2 * Math.PI;
+			}
+		final double omega = 2 * Math.PI / cycleRows(cadence);
+		final boolean gap[] = new boolean[streams];
+
+		LocalDate date = FIRST_DATE;
+		int hour = 0;
+		for(long r = 0; r < rows; ++r)
+			{
+			sb.setLength(0);
+			appendDate(sb, date, hour);
+
+			boolean any = false;
+			for(int s = 0; s < streams; ++s)
+				{ any |= !(gap[s] = (prng.nextFloat() < gapProbability)); }
+			if(!any) { gap[streams - 1] = false; }
+
+			for(int s = 0; s < streams; ++s)
+				{
+				if(gap[s]) { sb.append(",,,"); continue; }
+				sb.append(',').append(source(s)).append(',');
+				// Occasional partial coverage.
+				if(prng.nextFloat() < (gapProbability / 2))
+					{ appendMilli(sb, 1 + prng.nextInt(999)); }
+				else
+					{ sb.append('1'); }
+				sb.append(',');
+				final double cycle = 1 + (0.6 * Math.sin((omega * r) + phase[s]));
+				final double noise = 0.8 + (0.4 * prng.nextDouble());
+				appendMilli(sb, Math.round(level[s] * cycle * noise));
+				}
+			sb.append('\n');
+			w.write(sb.toString());
+
+			// Advance date.
+			switch(cadence)
+				{
+				case H: if(++hour < 24) { break; } hour = 0; date = date.plusDays(1); break;
+				case D: date = date.plusDays(1); break;
+				case M: date = date.plusMonths(1); break;
+				case Y: date = date.plusYears(1); break;
+				}
+			}
+		}
+
+	/**Source name for the given stream. */
+	private String source(final int stream) { return(sources.get(stream % sources.size())); }
+
+	/**Append the date in the form for the cadence. */
+	private void appendDate(final StringBuilder sb, final LocalDate date, final int hour)
+		{
+		sb.append(date.getYear());
+		if(DataCadence.Y == cadence) { return; }
+		append2(sb.append('-'), date.getMonthValue());
+		if(DataCadence.M == cadence) { return; }
+		append2(sb.append('-'), date.getDayOfMonth());
+		if(DataCadence.D == cadence) { return; }
+		append2(sb.append('T'), hour);
+		}
+
+	/**Append a two-digit zero-padded value. */
+	private static void append2(final StringBuilder sb, final int v)
+		{ sb.append((char)('0' + (v / 10))).append((char)('0' + (v % 10))); }
+
+	/**Append non-negative milli-units as a decimal with up to three places, eg 1234 as 1.234, 1000 as 1. */
+	private static void appendMilli(final StringBuilder sb, final long milli)
+		{
+		sb.append(milli / 1000);
+		int frac = (int) (milli % 1000);
+		if(0 == frac) { return; }
+		sb.append('.');
+		if(frac < 100) { sb.append('0'); }
+		if(frac < 10) { sb.append('0'); }
+		while(0 == (frac % 10)) { frac /= 10; }
+		sb.append(frac);
+		}
+    }
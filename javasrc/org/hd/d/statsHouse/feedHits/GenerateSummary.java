@@ -25,9 +25,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.ToDoubleFunction;
 
 import org.hd.d.statsHouse.data.DataVizBeatPoint;
 import org.hd.d.statsHouse.feedHits.data.FeedStatus;
@@ -36,6 +38,7 @@ import org.hd.d.statsHouse.feedHits.data.FeedStatusBlocks;
 import org.hd.d.statsHouse.generic.NoteAndVelocity;
 import org.hd.d.statsHouse.generic.Scale;
 import org.hd.d.statsHouse.generic.TuneSectionPlan;
+import org.hd.d.statsHouse.midi.MIDIBarPool;
 import org.hd.d.statsHouse.midi.MIDIConstant;
 import org.hd.d.statsHouse.midi.MIDIDataMelodyTrack;
 import org.hd.d.statsHouse.midi.MIDIGen;
@@ -96,24 +99,20 @@ public final class GenerateSummary
 	/**Generate the percussion track for summary type 1 (and 2); never null.
 	 *
 	 * @param fsbs  in-order blocks of feed status data; never null
-	 * @param dataRendered  rendered data to append to; never null
+	 * @param dv  visualisation data to append columns to, one beat per hour; never null
 	 * @return
 	 */
 	private static MIDISupportTrack generatePercussionType1(final FeedStatusBlocks fsbs,
-		final List<List<Float>> dataRendered,
-		final List<String> dataLabels)
+		final DataVizBeatPoint.Builder dv)
 		{
 		Objects.requireNonNull(fsbs);
-		Objects.requireNonNull(dataRendered);
-		Objects.requireNonNull(dataLabels);
+		Objects.requireNonNull(dv);
 
 		// For now assume that the render info is EMPTY.
-		// May have to append sideways to it in future.
-		if(!dataRendered.isEmpty()) { throw new RuntimeException("unexpected state"); }
-		if(!dataLabels.isEmpty()) { throw new RuntimeException("unexpected state"); }
+		if(0 != dv.nColumns()) { throw new RuntimeException("unexpected state"); }
 
 		// Add in the columns that this routine will insert data for.
-		dataLabels.addAll(List.of("bytes/h", "hits/h"));
+		final int column0 = dv.addColumns(List.of("bytes/h", "hits/h"));
 
         // Total number of distinct hours to sonify; 24 summary hours for each block.
 		final int nTotalHours = fsbs.blocks().size() * 24;
@@ -209,14 +208,11 @@ public final class GenerateSummary
 						MIDIGen.DEFAULT_CLKSPQTR/2-1));
 
 				// Capture for visualisation.
-				final List<Float> d = List.of(
-					normalisedBytesPerHour[hour],
-					normalisedHitsPerHour[hour]
-					);
-				dataRendered.add(d);
+				dv.set(hour, column0, normalisedBytesPerHour[hour]);
+				dv.set(hour, column0 + 1, normalisedHitsPerHour[hour]);
 				}
 
-			final MIDIPlayableBar bar = new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes));
+			final MIDIPlayableBar bar = MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes)));
 			pbBytes.add(bar);
 			}
 
@@ -237,15 +233,14 @@ public final class GenerateSummary
 		final int nTotalHours = fsbs.blocks().size() * 24;
 
 		// Data for the data visualisation.
-        final List<List<Float>> dataRendered = new ArrayList<>(nTotalHours);
-        final List<String> dataLabels = new ArrayList<>();
+        final DataVizBeatPoint.Builder dvb = new DataVizBeatPoint.Builder(nTotalHours);
 
         final MIDISupportTrack percussion =
-    		generatePercussionType1(fsbs, dataRendered, dataLabels);
+    		generatePercussionType1(fsbs, dvb);
 
 		// Set up the data visualisation.
-        final List<String> beatLabels = generateBeatLabelsType1(fsbs);
-        final DataVizBeatPoint dv = new DataVizBeatPoint(nTotalHours, dataLabels.size(), dataLabels, dataRendered, beatLabels);
+        dvb.setBeatLabels(generateBeatLabelsType1(fsbs));
+        final DataVizBeatPoint dv = dvb.build();
 
 		final List<MIDIDataMelodyTrack> dataMelody = Collections.emptyList();
 		final TuneSectionPlan tsp = null;
@@ -296,11 +291,12 @@ public final class GenerateSummary
 		final int nDataBars = nTotalHours / nHoursPerBar;
 
 		// Data for the data visualisation.
-        final List<List<Float>> dataRendered = new ArrayList<>(nTotalHours);
-        final List<String> dataLabels = new ArrayList<>();
+        final DataVizBeatPoint.Builder dvb = new DataVizBeatPoint.Builder(nTotalHours);
 
         final MIDISupportTrack percussion =
-    		generatePercussionType1(fsbs, dataRendered, dataLabels);
+    		generatePercussionType1(fsbs, dvb);
+        // Melody data columns appear after the percussion data columns.
+        final int statusColumn0 = dvb.addColumns(List.copyOf(type2CodeMap.keySet()));
 
         final byte rootNote = MIDIGen.DEFAULT_ROOT_NOTE;
         final Scale scale = Scale.DORIAN;
@@ -353,6 +349,7 @@ public final class GenerateSummary
 		for(int bh = 0; bh < nTotalHours; bh += nHoursPerBar)
 			{
 			// For each status code create its next full bar.
+			int statusColumn = statusColumn0;
 	        for(final String k : type2CodeMap.keySet())
 	        	{
 	        	final byte semitones = type2CodeMap.get(k);
@@ -382,30 +379,19 @@ public final class GenerateSummary
 					notes.add(nv);
 
 					// Visualise what is being played.
-					List<Float> dataPoints = dataRendered.get(hour);
-					if(!(dataPoints instanceof ArrayList))
-					    {
-						// Allow first append of melody data.
-						final List<Float> d = new ArrayList<>(dataPoints.size() + type2CodeMap.size());
-						d.addAll(dataPoints);
-						dataPoints = d;
-						dataRendered.set(hour, d);
-						}
-					dataPoints.add(hourlyHits);
+					dvb.set(hour, statusColumn, hourlyHits);
 					}
+				++statusColumn;
 
-				final MIDIPlayableMonophonicDataBar bar = new MIDIPlayableMonophonicDataBar(notes);
+				final MIDIPlayableMonophonicDataBar bar =
+					MIDIBarPool.intern(new MIDIPlayableMonophonicDataBar(List.copyOf(notes)));
 				db.get(k).add(bar);
 				}
 			}
 
 		// Set up the data visualisation.
-        final List<String> beatLabels = generateBeatLabelsType1(fsbs);
-        // Melody data columns appear after the percussion data columns.
-        dataLabels.addAll(type2CodeMap.keySet());
-//System.out.println(Arrays.toString(dataLabels.toArray()));
-//System.out.println(Arrays.toString(dataRendered.toArray()));
-        final DataVizBeatPoint dv = new DataVizBeatPoint(nTotalHours, dataLabels.size(), dataLabels, dataRendered, beatLabels);
+        dvb.setBeatLabels(generateBeatLabelsType1(fsbs));
+        final DataVizBeatPoint dv = dvb.build();
 
 		final List<MIDIDataMelodyTrack> dataMelody = new ArrayList<>(statusMelody.values());
 		final TuneSectionPlan tsp = null;
@@ -423,8 +409,8 @@ public final class GenerateSummary
 	private static final Map<String,String> UAtoToken = Map.ofEntries(
 			entry("Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)", "Googlebot"),
 			entry("iTMS", "iTunes"),
-			entry("Podbean/FeedUpdate 2.1)", "Podbean"),
-			entry("Spotify/1.0)", "Spotify"),
+			entry("Podbean/FeedUpdate 2.1", "Podbean"),
+			entry("Spotify/1.0", "Spotify"),
 			entry("Gofeed/1.0", "Gofeed"),
 			entry("Amazon Music Podcast", "Amazon"),
 			entry("-", "NONE"),
@@ -433,16 +419,91 @@ public final class GenerateSummary
 	/**A token not present in {@link UAtoToken}; non-empty, non-null. */
 	private static final String UAOther = "OTHER";
 
-	/**Summary type 3; by-US trend melody.
+	/**Prebuilt lookup from raw quoted by-UA record index to friendly token; non-empty, non-null.
+	 * Keyed by the index exactly as it appears in a by-UA record,
+	 * eg <code>"iTMS"</code> with the quotes, and <code>"-"</code> for no User-Agent,
+	 * so that no per-record quote stripping or string comparisons are needed.
+	 */
+	private static final Map<String,String> UAIndexToToken;
+	static
+		{
+		final Map<String,String> m = new HashMap<>(2 * UAtoToken.size());
+		for(final Map.Entry<String,String> e : UAtoToken.entrySet())
+			{ m.put('"' + e.getKey() + '"', e.getValue()); }
+		UAIndexToToken = Collections.unmodifiableMap(m);
+		}
+
+	/**Number of heaviest User-Agents overall that get their own instrument/track; strictly positive. */
+	private static final int TYPE3_TOP_UAS_OVERALL = 4;
+	/**Number of heaviest User-Agents per block (bar), one per beat; strictly positive. */
+	private static final int TYPE3_TOP_UAS_PER_BLOCK = MIDIGen.DEFAULT_BEATS_PER_BAR;
+	/**Chord progression root offsets in scale steps, one per bar in rotation; non-empty. */
+	private static final int[] TYPE3_PROGRESSION = { 0, 5, 3, 4 };
+	/**Instruments for the tracks of the overall heaviest UAs, then for all others; non-empty. */
+	private static final MIDIInstrument[] TYPE3_INSTRUMENTS = {
+		MIDIInstrument.MARIMBA,
+		MIDIInstrument.OCARINA,
+		MIDIInstrument.TENOR_SAX,
+		MIDIInstrument.SYNTH_BRASS_1,
+		MIDIInstrument.ACOUSTIC_BASE,
+		};
+
+	/**Select (up to) the k largest items, largest first, with a bounded min-heap; never null.
+	 * This is O(n log k) time and O(k) space for n items,
+	 * rather than sorting every item.
+	 * <p>
+	 * Ties are resolved in favour of the item seen first.
+	 *
+	 * @param items  items to select from; never null
+	 * @param k  maximum number of items to select; strictly positive
+	 * @param weight  weight function for each item; never null
+	 * @return  mutable list of up to k heaviest items, heaviest first; never null
+	 */
+	static <T> List<T> topK(final Iterable<T> items, final int k, final ToDoubleFunction<T> weight)
+		{
+		Objects.requireNonNull(items);
+		Objects.requireNonNull(weight);
+		if(k <= 0) { throw new IllegalArgumentException(); }
+
+		// Min-heap on weight, then on reverse arrival order so that earlier items win ties.
+		record Weighted<T>(T item, double w, int seq) { }
+		final PriorityQueue<Weighted<T>> heap = new PriorityQueue<>(k + 1, (a, b) ->
+			{
+			final int wDiff = Double.compare(a.w(), b.w());
+			if(0 != wDiff) { return(wDiff); }
+			return(Integer.compare(b.seq(), a.seq()));
+			});
+		int seq = 0;
+		for(final T item : items)
+			{
+			final double w = weight.applyAsDouble(item);
+			if(heap.size() < k) { heap.add(new Weighted<>(item, w, seq++)); continue; }
+			// Cheap rejection of the common case without touching the heap.
+			if(w <= heap.peek().w()) { ++seq; continue; }
+			heap.poll();
+			heap.add(new Weighted<>(item, w, seq++));
+			}
+
+		final List<T> result = new ArrayList<>(heap.size());
+		while(!heap.isEmpty()) { result.add(heap.poll().item()); }
+		Collections.reverse(result);
+		return(result);
+		}
+
+	/**Summary type 3; by-UA trend melody.
 	 * Overall picks the heaviest User-Agents by hits and assigns each an instrument.
 	 * <p>
-	 * For each data block (week) creates a bar with the 4 (or 8?) heaviest hitting UAs of that block,
+	 * For each data block (week) creates a bar with the 4 heaviest hitting UAs of that block,
 	 * and from heaviest downwards plays a chord
 	 * with each note in the chord being the weighted status result values.
 	 * <p>
-	 * The root notes used could be a chord progression.
+	 * The root notes used follow a simple chord progression.
 	 * <p>
 	 * Uses the same note offsets as summary type 2.
+	 * <p>
+	 * Heavy-hitter selection per block and overall uses a bounded heap,
+	 * so is O(n log K) in the number of by-UA records,
+	 * and only per-UA totals (not per-UA sorted lists) are retained.
 	 *
 	 * @param dirnames  in-order names of directories to extract data from; never null
 	 * @return  a complete MIDI 'tune'; never null
@@ -452,41 +513,175 @@ public final class GenerateSummary
 		{
 		final FeedStatusBlocks fsbs = FeedStatusBlocks.loadStatusByUAFromDirs(dirnames);
 
-if(true) { throw new RuntimeException("COMPUTER SEZ NO"); }
+		// One bar per block.
+		final int nDataBars = fsbs.blocks().size();
+		final int nBeatsPerBar = TYPE3_TOP_UAS_PER_BLOCK;
+		final int nTotalBeats = nDataBars * nBeatsPerBar;
 
-        // Total number of distinct hours to sonify; 24 summary hours for each block.
-		final int nTotalHours = fsbs.blocks().size() * 24;
-		// Hours' data for each bar (must be a factor of 24).
-		final int nHoursPerBar = 4;
-		// Total number of data bars to generate.
-		final int nDataBars = nTotalHours / nHoursPerBar;
+		// Accumulate normalised hits/day for each UA across all blocks,
+		// and select the heaviest UAs in each block.
+		final Map<String, float[]> overallHitsPerDay = new HashMap<>();
+		final List<List<FeedStatus>> topUAsByBlock = new ArrayList<>(nDataBars);
+		float maxHitsPerDay = 0;
+		for(final FeedStatusBlock fsb : fsbs.blocks())
+			{
+			final float nDaysF = fsb.nDays();
+			final List<FeedStatus> uas = new ArrayList<>(fsb.records().size());
+			for(final FeedStatus fs : fsb.records())
+				{
+				if(!fs.isUA()) { continue; }
+				uas.add(fs);
+				final float nh = fs.hits() / nDaysF;
+				overallHitsPerDay.computeIfAbsent(fs.index(), k -> new float[1])[0] += nh;
+				}
+			final List<FeedStatus> top = topK(uas, nBeatsPerBar, FeedStatus::hits);
+			if(!top.isEmpty())
+				{
+				final float nh = top.get(0).hits() / nDaysF;
+				if(nh > maxHitsPerDay) { maxHitsPerDay = nh; }
+				}
+			topUAsByBlock.add(top);
+			}
+
+		// Select the overall heaviest UAs, each of which gets its own track.
+		final List<Map.Entry<String, float[]>> topOverall =
+			topK(overallHitsPerDay.entrySet(), TYPE3_TOP_UAS_OVERALL, e -> e.getValue()[0]);
+		// Map from raw index to track number; absent for 'other'.
+		final Map<String, Integer> trackByIndex = new HashMap<>();
+		for(int i = 0; i < topOverall.size(); ++i)
+			{ trackByIndex.put(topOverall.get(i).getKey(), i); }
+		final int nTracks = topOverall.size() + 1;
+		final int otherTrack = nTracks - 1;
+
+		// Set up the tracks, one channel each, avoiding the percussion channel.
+		final List<List<MIDIPlayableBar>> trackBars = new ArrayList<>(nTracks);
+		final List<MIDISupportTrack> tracks = new ArrayList<>(nTracks + 1);
+		for(int t = 0; t < nTracks; ++t)
+			{
+			final boolean isOther = (t == otherTrack);
+			final String token = isOther ? UAOther : tokenForUA(topOverall.get(t).getKey(), t);
+			final MIDITrackSetup ts = new MIDITrackSetup(
+				(byte) t,
+				(isOther ? TYPE3_INSTRUMENTS[TYPE3_INSTRUMENTS.length-1] :
+					TYPE3_INSTRUMENTS[t % (TYPE3_INSTRUMENTS.length-1)]).instrument0,
+				MIDIConstant.DEFAULT_VOLUME,
+				(byte) (MIDIConstant.DEFAULT_PAN + ((t % 2 == 0) ? -16 : 16) * ((t+1)/2 % 3)),
+				"UA: " + token);
+			final List<MIDIPlayableBar> bars = new ArrayList<>(nDataBars);
+			trackBars.add(bars);
+			tracks.add(new MIDISupportTrack(ts, bars));
+			}
+
+		// Quiet percussion: one tom hit per beat in proportion to that UA's hits.
+		final MIDITrackSetup trSetupPercussion = new MIDITrackSetup(
+			MIDIConstant.GM1_PERCUSSION_CHANNEL0,
+			(byte) 0,
+			MIDIConstant.DEFAULT_VOLUME,
+			(MIDIConstant.DEFAULT_PAN),
+			"hits by UA");
+		final List<MIDIPlayableBar> pbPercussion = new ArrayList<>(nDataBars);
+		tracks.add(new MIDISupportTrack(trSetupPercussion, pbPercussion));
 
 		// Data for the data visualisation.
-        final List<List<Float>> dataRendered = new ArrayList<>(nTotalHours);
-        final List<String> dataLabels = new ArrayList<>();
+		final List<String> dataLabels = new ArrayList<>(1 + type2CodeMap.size());
+		dataLabels.add("hits/d");
+		dataLabels.addAll(type2CodeMap.keySet());
+		final DataVizBeatPoint.Builder dvb = new DataVizBeatPoint.Builder(nTotalBeats);
+		dvb.addColumns(dataLabels);
 
-        final MIDISupportTrack percussion =
-    		generatePercussionType1(fsbs, dataRendered, dataLabels);
+		final byte rootNote = MIDIGen.DEFAULT_ROOT_NOTE;
+		final Scale scale = Scale.DORIAN;
+		final int beatClocks = MIDIGen.DEFAULT_CLKSPQTR;
 
+		// Column positions in the previous colTypes seen, to avoid re-splitting for each record.
+		String lastColTypes = null;
+		int[] codeColumns = null;
+
+		for(int bar = 0; bar < nDataBars; ++bar)
+			{
+			final FeedStatusBlock fsb = fsbs.blocks().get(bar);
+			final float nDaysF = fsb.nDays();
+			final List<FeedStatus> top = topUAsByBlock.get(bar);
+			final int root = TYPE3_PROGRESSION[bar % TYPE3_PROGRESSION.length];
+
+			final List<SortedSet<MIDIPlayableBar.StartNoteVelocityDuration>> notesByTrack = new ArrayList<>(nTracks);
+			for(int t = 0; t < nTracks; ++t) { notesByTrack.add(new TreeSet<>()); }
+			final SortedSet<MIDIPlayableBar.StartNoteVelocityDuration> percussionNotes = new TreeSet<>();
+
+			for(int b = 0; b < nBeatsPerBar; ++b)
+				{
+				final int beat = (bar * nBeatsPerBar) + b;
+				if(b >= top.size())
+					{
+					// Fewer UAs than beats in this block: rest and leave a gap in the visualisation.
+					dvb.setBeatLabel(beat, "-");
+					continue;
+					}
 
+				final FeedStatus fs = top.get(b);
+				final Integer trackNo = trackByIndex.get(fs.index());
+				final int t = (null == trackNo) ? otherTrack : trackNo;
+				final float hitsPerDay = fs.hits() / nDaysF;
+				final int beatStart = b * beatClocks;
 
+				if(!fs.colTypes().equals(lastColTypes))
+					{
+					lastColTypes = fs.colTypes();
+					final List<String> colKeys = List.of(lastColTypes.split(":"));
+					codeColumns = new int[type2CodeMap.size()];
+					int i = 0;
+					for(final String k : type2CodeMap.keySet()) { codeColumns[i++] = colKeys.indexOf(k); }
+					}
 
-        // TODO
+				dvb.set(beat, 0, hitsPerDay);
+				int i = 0;
+				for(final Byte semitones : type2CodeMap.values())
+					{
+					final int col = codeColumns[i++];
+					final int codeHits = (col < 0) ? 0 : fs.cols().get(col);
+					dvb.set(beat, i, codeHits / nDaysF);
+					if(0 == codeHits) { continue; }
+					// Weight each chord note by its share of the heaviest UA/block hits.
+					final float vel = (codeHits / nDaysF) / maxHitsPerDay;
+					final byte velb = (byte) Math.max(1, Math.round(vel * MIDIGen.DEFAULT_MAX_MELODY_VELOCITY));
+					final byte note = (byte) (rootNote + scale.noteOffset((byte) (root + semitones)));
+					notesByTrack.get(t).add(new MIDIPlayableBar.StartNoteVelocityDuration(
+						beatStart, new NoteAndVelocity(note, velb), beatClocks-1));
+					}
 
+				final float intH = hitsPerDay / maxHitsPerDay;
+				percussionNotes.add(new MIDIPlayableBar.StartNoteVelocityDuration(
+					beatStart,
+					new NoteAndVelocity(MIDIPercusssionInstrument.LOW_MID_TOM.instrument0,
+						(byte) Math.round(MIDIGen.DEFAULT_MAX_MELODY_VELOCITY/2 * intH)),
+					beatClocks/2-1));
 
+				dvb.setBeatLabel(beat, (null == trackNo) ? UAOther : tokenForUA(fs.index(), trackNo));
+				}
 
+			for(int t = 0; t < nTracks; ++t)
+				{ trackBars.get(t).add(MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(notesByTrack.get(t))))); }
+			pbPercussion.add(MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(percussionNotes))));
+			}
 
 		// Set up the data visualisation.
-        final List<String> beatLabels = generateBeatLabelsType1(fsbs);
-        // Melody data columns appear after the percussion data columns.
-        dataLabels.addAll(type2CodeMap.keySet());
-//System.out.println(Arrays.toString(dataLabels.toArray()));
-//System.out.println(Arrays.toString(dataRendered.toArray()));
-        final DataVizBeatPoint dv = new DataVizBeatPoint(nTotalHours, dataLabels.size(), dataLabels, dataRendered, beatLabels);
+        final DataVizBeatPoint dv = dvb.build();
 
-		final List<MIDIDataMelodyTrack> dataMelody = List.of(); //  ArrayList<>(statusMelody.values());
+		final List<MIDIDataMelodyTrack> dataMelody = Collections.emptyList();
 		final TuneSectionPlan tsp = null;
-		return(new MIDITune(dataMelody, List.of(percussion), tsp, dv));
+		return(new MIDITune(dataMelody, tracks, tsp, dv));
+		}
+
+	/**Get the friendly token for one of the overall heaviest UAs; never null.
+	 * @param index  raw (quoted) by-UA record index; never null
+	 * @param rank  0-based rank of the UA amongst the overall heaviest
+	 * @return  mapped token if any, else {@link #UAOther} with the 1-based rank appended
+	 */
+	private static String tokenForUA(final String index, final int rank)
+		{
+		final String token = UAIndexToToken.get(index);
+		if(null != token) { return(token); }
+		return(UAOther + (rank+1));
 		}
 
     }
@@ -0,0 +1,177 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.feedHits.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**Generates synthetic feedHits data block directories, eg for scaling tests and benchmarks.
+ * Output is entirely determined by the parameters, including the seed.
+ * <p>
+ * Each block directory is named <code>YYYYMMDD</code> for its start date,
+ * and contains the files that {@link FeedStatusBlocks} loads:
+ * {@link FeedStatusBlocks#INTERVAL_DAYS_FILENAME},
+ * {@link FeedStatusBlocks#STATUS_BY_HOUR_FILENAME} (hours 00 to 23 then ALL) and
+ * {@link FeedStatusBlocks#STATUS_BY_UA_FILENAME} (ALL then UAs heaviest first).
+ */
+public final class SyntheticFeedHits
+    {
+    /**Prevent creation of an instance. */
+    private SyntheticFeedHits() { }
+
+	/**Column types, as in live data. */
+	public static final String COL_TYPES = "200:304:406:429:SH";
+
+	/**Start date of the first block. */
+	public static final LocalDate FIRST_DATE = LocalDate.of(2024, 1, 1);
+
+	/**Some realistic User-Agents, used first, with "-" for an empty UA. */
+	private static final List<String> KNOWN_UAS = List.of(
+		"iTMS",
+		"Podbean/FeedUpdate 2.1",
+		"Spotify/1.0",
+		"Amazon Music Podcast",
+		"-",
+		"Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+		"Gofeed/1.0",
+		"Overcast/1.0 Podcast Sync",
+		"PocketCasts/1.0 (Pocket Casts Feed Parser; +http://pocketcasts.com/)",
+		"Podcast Addict/v5");
+
+	/**Write a series of block directories under the parent directory; never null.
+	 * The parent directory is created if need be.
+	 *
+	 * @param parent  parent directory; never null
+	 * @param blocks  number of consecutive blocks; strictly positive
+	 * @param intervalDays  days covered by each block; strictly positive
+	 * @param uas  number of distinct User-Agents per block; strictly positive
+	 * @param seed  PRNG seed
+	 * @return  block directory names in date order, suitable for {@link FeedStatusBlocks}
+	 */
+	public static List<String> writeDirs(final File parent, final int blocks,
+			final int intervalDays, final int uas, final long seed)
+		throws IOException
+		{
+		Objects.requireNonNull(parent);
+		if(blocks <= 0) { throw new IllegalArgumentException(); }
+		if(intervalDays <= 0) { throw new IllegalArgumentException(); }
+		if(uas <= 0) { throw new IllegalArgumentException(); }
+
+		final Random prng = new Random(seed);
+		final DateTimeFormatter fmt = DateTimeFormatter.BASIC_ISO_DATE;
+		final List<String> result = new ArrayList<>(blocks);
+		LocalDate date = FIRST_DATE;
+		for(int b = 0; b < blocks; ++b, date = date.plusDays(intervalDays))
+			{
+			final File d = new File(parent, date.format(fmt));
+			Files.createDirectories(d.toPath());
+			Files.writeString(new File(d, FeedStatusBlocks.INTERVAL_DAYS_FILENAME).toPath(),
+				Integer.toString(intervalDays) + "\n", FeedStatus.CHARSET);
+			Files.writeString(new File(d, FeedStatusBlocks.STATUS_BY_HOUR_FILENAME).toPath(),
+				byHour(prng, intervalDays), FeedStatus.CHARSET);
+			Files.writeString(new File(d, FeedStatusBlocks.STATUS_BY_UA_FILENAME).toPath(),
+				byUA(prng, intervalDays, uas), FeedStatus.CHARSET);
+			result.add(d.getPath());
+			}
+		return(Collections.unmodifiableList(result));
+		}
+
+	/**Generate one random record's columns for the given hits; sum of the first four is hits.
+	 * Skipped hours (SH) is all hits when in skip hours, else zero.
+	 */
+	private static int[] cols(final Random prng, final int hits, final boolean skipHours)
+		{
+		final int c200 = (int) (hits * (0.05 + (0.2 * prng.nextDouble())));
+		final int c304 = (int) ((hits - c200) * 0.2 * prng.nextDouble());
+		final int c406 = (int) ((hits - c200 - c304) * 0.05 * prng.nextDouble());
+		final int c429 = hits - c200 - c304 - c406;
+		return(new int[]{ c200, c304, c406, c429, skipHours ? hits : 0 });
+		}
+
+	/**Append one record. */
+	private static void appendRecord(final StringBuilder sb, final int hits, final long bytes,
+			final int[] cols, final String index)
+		{
+		sb.append(hits).append(' ').append(bytes).append(' ').append(COL_TYPES);
+		for(final int c : cols) { sb.append(' ').append(c); }
+		sb.append(' ').append(index).append('\n');
+		}
+
+	/**Generate by-hour file content, with a daily cycle. */
+	private static String byHour(final Random prng, final int intervalDays)
+		{
+		final StringBuilder sb = new StringBuilder(25 * 64);
+		final int all[] = new int[5];
+		int allHits = 0;
+		long allBytes = 0;
+		final int base = (10 + prng.nextInt(100)) * intervalDays;
+		for(int h = 0; h < 24; ++h)
+			{
+			final int hits = (int) (base * (1 + (0.3 * Math.sin((h - 6) * Math.PI / 12)) + (0.2 * prng.nextDouble())));
+			final long bytes = hits * (2000L + prng.nextInt(6000));
+			final boolean skipHours = (h < 8) || (h >= 22);
+			final int cols[] = cols(prng, hits, skipHours);
+			appendRecord(sb, hits, bytes, cols, String.format("%02d", h));
+			allHits += hits;
+			allBytes += bytes;
+			for(int i = 0; i < all.length; ++i) { all[i] += cols[i]; }
+			}
+		appendRecord(sb, allHits, Math.min(allBytes, Integer.MAX_VALUE), all, "ALL");
+		return(sb.toString());
+		}
+
+	/**Generate by-UA file content, with a long-tailed hits distribution. */
+	private static String byUA(final Random prng, final int intervalDays, final int uas)
+		{
+		final int hits[] = new int[uas];
+		final long bytes[] = new long[uas];
+		final int cols[][] = new int[uas][];
+		final int all[] = new int[5];
+		int allHits = 0;
+		long allBytes = 0;
+		final int top = (1000 + prng.nextInt(3000)) * intervalDays;
+		for(int u = 0; u < uas; ++u)
+			{
+			// Roughly Zipf, kept strictly non-increasing so heaviest is first.
+			final int h = Math.max(1, (int) (top / ((u + 1) * (0.8 + (0.4 * prng.nextDouble())))));
+			hits[u] = (0 == u) ? h : Math.min(hits[u-1], h);
+			bytes[u] = hits[u] * (500L + prng.nextInt(4000));
+			cols[u] = cols(prng, hits[u], false);
+			cols[u][4] = (int) (hits[u] * 0.4 * prng.nextDouble());
+			allHits += hits[u];
+			allBytes += bytes[u];
+			for(int i = 0; i < all.length; ++i) { all[i] += cols[u][i]; }
+			}
+
+		final StringBuilder sb = new StringBuilder((uas + 1) * 80);
+		appendRecord(sb, allHits, Math.min(allBytes, Integer.MAX_VALUE), all, "ALL");
+		for(int u = 0; u < uas; ++u)
+			{
+			final String ua = (u < KNOWN_UAS.size()) ? KNOWN_UAS.get(u) : ("SyntheticFeedReader/" + (u + 1));
+			appendRecord(sb, hits[u], Math.min(bytes[u], Integer.MAX_VALUE), cols[u], '"' + ua + '"');
+			}
+		return(sb.toString());
+		}
+    }
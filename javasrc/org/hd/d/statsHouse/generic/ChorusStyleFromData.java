@@ -33,4 +33,26 @@ public enum ChorusStyleFromData
     /**Downsampling in at least one bar, then synthetic style; hopes for periodicity on ls date component. */
     MeansPlusSyntheticRepresentativeDataBar,
     MeansPlusSyntheticRepresentativeDataBarPlusCounterpoint;
+
+    /**True if this style's chorus melody uses data downsampled to coarser (eg quarterly) slots.
+     * Any counterpoint line is always from downsampled data regardless.
+     */
+    public boolean downsampled()
+	    {
+    	return(switch(this) {
+    		case MeansPlusSyntheticRepresentativeDataBar, MeansPlusSyntheticRepresentativeDataBarPlusCounterpoint -> true;
+    		default -> false;
+    		});
+	    }
+
+    /**True if this style adds a counterpoint line from data downsampled to coarser slots,
+     * even where the chorus melody itself is not downsampled.
+     */
+    public boolean hasCounterpoint()
+	    {
+    	return(switch(this) {
+    		case SyntheticRepresentativeDataBarPlusCounterpoint, MeansPlusSyntheticRepresentativeDataBarPlusCounterpoint -> true;
+    		default -> false;
+    		});
+	    }
 	}
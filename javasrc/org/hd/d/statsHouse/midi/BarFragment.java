@@ -0,0 +1,187 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.sound.midi.ShortMessage;
+
+/**One bar of one packed track compiled to a reusable block of SMF track bytes.
+ * Holds the bar's events in time order relative to the start of the bar,
+ * as pre-encoded delta times and (running status) messages,
+ * so that each distinct bar is encoded once
+ * and then spliced in wherever it occurs.
+ * <p>
+ * The only part that depends on what precedes the bar
+ * is whether the expression (CC 11) must be set before the first note,
+ * and whether the first note-on needs its status byte;
+ * that first event is held apart and encoded when spliced.
+ * <p>
+ * The events are those that MIDIGen._addPackedTrackEvents() would generate,
+ * in the order that javax.sound.midi.Track would hold them.
+ * <p>
+ * Immutable.
+ */
+final class BarFragment
+    {
+	/**MIDI channel. */
+	final byte channel;
+	/**Tick of the first note-on relative to the start of the bar. */
+	final int firstTick;
+	/**Expression level in effect for the first note. */
+	final byte firstExpression;
+	/**First note-on message (status, note, velocity); never null. */
+	private final byte firstOn[];
+	/**Events after the first, encoded with running status starting from the first note-on; never null. */
+	private final byte rest[];
+	/**Tick of the last event relative to the start of the bar. */
+	final int lastTick;
+	/**Status byte of the last event. */
+	final int lastStatus;
+	/**Expression level at the end of the bar. */
+	final byte lastExpression;
+
+	/**Packed events for one bar, with start clocks relative to the bar, and channel: the cache key for a fragment.
+	 * Compared by content.
+	 */
+	record Key(byte channel, long[] events)
+		{
+		Key
+			{
+			Objects.requireNonNull(events);
+			if(0 == events.length) { throw new IllegalArgumentException(); }
+			}
+
+		@Override public boolean equals(final Object o)
+			{ return((o instanceof Key k) && (channel == k.channel) && Arrays.equals(events, k.events)); }
+
+		@Override public int hashCode() { return((31 * Arrays.hashCode(events)) + channel); }
+
+		@Override public String toString() { return("Key[channel=" + channel + ", events=" + events.length + "]"); }
+		}
+
+	/**Make the key for events [from,to) of a packed track, all starting in the bar starting at barStart; never null. */
+	static Key key(final PackedMIDITrack t, final int from, final int to, final int barStart)
+		{
+		final long rebase = ((long) barStart) << 35;
+		final long events[] = new long[to - from];
+		for(int i = from; i < to; ++i) { events[i - from] = t.event(i) - rebase; }
+		return(new Key(t.setup().channel(), events));
+		}
+
+	/**True if every note of the track, including its note-off, lies within the bar in which it starts.
+	 * Only then can a track be assembled from independent bar fragments.
+	 */
+	static boolean fitsBars(final PackedMIDITrack t, final int barClocks)
+		{
+		for(int i = t.size(); --i >= 0; )
+			{
+			final long e = t.event(i);
+			if((PackedMIDITrack.start(e) % barClocks) + PackedMIDITrack.duration(e) - 1 >= barClocks)
+				{ return(false); }
+			}
+		return(true);
+		}
+
+	/**Compile a fragment from its key; never null. */
+	static BarFragment compile(final Key k)
+		{
+		final long events[] = k.events();
+		final int ch = k.channel();
+
+		// Generate messages in the order _addPackedTrackEvents() would,
+		// as sortable (tick, sequence, message) triples.
+		// The first note's expression change is left to splicing.
+		final long msgs[] = new long[3 * events.length];
+		int n = 0;
+		byte expression = PackedMIDITrack.expression(events[0]);
+		for(final long e : events)
+			{
+			final int start = PackedMIDITrack.start(e);
+			final byte note = PackedMIDITrack.note(e);
+			final byte targetExpression = PackedMIDITrack.expression(e);
+			if(expression != targetExpression)
+				{
+				expression = targetExpression;
+				msgs[n] = triple(start, n, ShortMessage.CONTROL_CHANGE | ch, 11, expression); ++n;
+				}
+			msgs[n] = triple(start, n, ShortMessage.NOTE_ON | ch, note, PackedMIDITrack.velocity(e)); ++n;
+			msgs[n] = triple(start + PackedMIDITrack.duration(e) - 1, n, ShortMessage.NOTE_OFF | ch, note, 0); ++n;
+			}
+		// Stable by construction: sequence breaks ties in tick.
+		Arrays.sort(msgs, 0, n);
+
+		// The first note-on is always first in time order.
+		final int first = message(msgs[0]);
+		final ByteArrayOutputStream rest = new ByteArrayOutputStream(3 * n);
+		final byte buf[] = new byte[4];
+		long prevTick = tick(msgs[0]);
+		int runningStatus = first >>> 16;
+		for(int i = 1; i < n; ++i)
+			{
+			final long tick = tick(msgs[i]);
+			final int len = StreamingSMFWriter.encodeVarLen(tick - prevTick, buf);
+			rest.write(buf, 4 - len, len);
+			prevTick = tick;
+			final int m = message(msgs[i]);
+			final int status = m >>> 16;
+			if(status != runningStatus) { rest.write(status); runningStatus = status; }
+			rest.write((m >>> 8) & 0x7f);
+			rest.write(m & 0x7f);
+			}
+
+		return(new BarFragment((byte) ch, (int) tick(msgs[0]), PackedMIDITrack.expression(events[0]),
+			new byte[]{ (byte) (first >>> 16), (byte) (first >>> 8), (byte) first },
+			rest.toByteArray(), (int) prevTick, runningStatus, expression));
+		}
+
+	/**Pack tick, sequence number and 3-byte message into a sortable long. */
+	private static long triple(final int tick, final int seq, final int status, final int d1, final int d2)
+		{
+		if(seq > 0xffff) { throw new IllegalArgumentException("too many events in bar"); }
+		return(((long) tick << 40) | ((long) seq << 24) | (status << 16) | (d1 << 8) | d2);
+		}
+	/**Tick of a triple. */
+	private static long tick(final long t) { return(t >>> 40); }
+	/**Message of a triple. */
+	private static int message(final long t) { return((int) (t & 0xffffff)); }
+
+	private BarFragment(final byte channel, final int firstTick, final byte firstExpression,
+			final byte firstOn[], final byte rest[],
+			final int lastTick, final int lastStatus, final byte lastExpression)
+		{
+		this.channel = channel;
+		this.firstTick = firstTick;
+		this.firstExpression = firstExpression;
+		this.firstOn = firstOn;
+		this.rest = rest;
+		this.lastTick = lastTick;
+		this.lastStatus = lastStatus;
+		this.lastExpression = lastExpression;
+		}
+
+	/**First note-on status byte. */
+	int firstStatus() { return(firstOn[0] & 0xff); }
+	/**First note-on note. */
+	int firstNote() { return(firstOn[1]); }
+	/**First note-on velocity. */
+	int firstVelocity() { return(firstOn[2]); }
+	/**Pre-encoded events after the first; not to be modified. */
+	byte[] rest() { return(rest); }
+    }
@@ -0,0 +1,355 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.StageStats;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataScan;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.ProtoBarAligner;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.ProductionLevel;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+
+/**Incremental re-sonification of a data CSV file that grows by having rows appended.
+ * Between updates this remembers the file offset parsed to,
+ * the file length and modification time,
+ * a checksum of a bounded window of content just before that offset,
+ * the parsed rows, and for plain/gentle style the split proto bars
+ * and the data melody bars generated from them.
+ * After rows are appended only the new tail is parsed,
+ * and only the final partial bar and any new bars are generated;
+ * the rest of the tune is assembled from the retained bars.
+ * <p>
+ * Any unterminated final line is left unparsed until its newline arrives,
+ * since it may be part-way through being appended.
+ * The whole file is re-parsed if the file has shrunk,
+ * or has been modified without growing,
+ * or the window before the old end has changed;
+ * an append costs I/O only for that window and the new tail, not the whole file.
+ * (A same-length rewrite within the file-system timestamp resolution,
+ * or a growing rewrite that leaves that window intact, is not detected.)
+ * All bars are regenerated (without re-parsing) if the stream count,
+ * main stream or maximum value change, since those affect every bar.
+ * House style sections are planned from the whole data length,
+ * so for that style only the parsing is incremental,
+ * as it is for any derived (rolling-window or lagged) support track.
+ * <p>
+ * The tune is the same as MIDIGen.genTune() gives for the whole (newline-terminated) file.
+ * <p>
+ * Thread-safe.
+ */
+public final class IncrementalTune
+    {
+	/**Immutable result of one update.
+	 * @param tune  tune for the whole input; never null
+	 * @param bounds  data bounds of the whole input; never null
+	 */
+	public record Snapshot(MIDITune tune, DataBounds bounds)
+		{
+		public Snapshot
+			{
+			Objects.requireNonNull(tune);
+			Objects.requireNonNull(bounds);
+			}
+		}
+
+	/**Input data CSV file; never null. */
+	private final File csv;
+	/**Generation parameters; never null. */
+	private final GenerationParameters params;
+	/**True if bars are generated incrementally, ie for plain and gentle styles. */
+	private final boolean barsIncremental;
+
+	/**Bytes of the file parsed so far, ending at a line boundary. */
+	private long offset;
+	/**CRC32 of the (up to) CHECK_WINDOW bytes parsed just before offset. */
+	private long windowCRC;
+	/**File length at the last update; -1 if none. */
+	private long lastLength;
+	/**File modification time at the last update. */
+	private long lastModified;
+	/**All rows parsed so far; never null. */
+	private ArrayList<List<String>> rows;
+	/**Whole-series values for rows so far; never null. */
+	private DataScan scan;
+	/**Aligner for plain/gentle, created on the first row; null if none yet. */
+	private ProtoBarAligner aligner;
+	/**Complete proto bars from the aligner; never null. */
+	private ArrayList<DataProtoBar> completeBars;
+	/**Number of complete proto bars already turned into verse bars. */
+	private int barsDone;
+	/**Verse bars by stream for the first barsDone complete proto bars; null if none. */
+	private List<List<MIDIPlayableMonophonicDataBar>> verseBars;
+	/**Bounds used to generate verseBars; null if none. */
+	private DataBounds barsBounds;
+	/**Result of the last update; null if none or invalidated. */
+	private Snapshot last;
+
+	/**Rows parsed in the last update. */
+	private int lastRowsParsed;
+	/**Verse bars generated per stream in the last update; -1 if the whole tune was regenerated. */
+	private int lastBarsGenerated;
+
+	/**Create an instance with no state yet; call update() to parse the input.
+	 * @param csv  input data CSV file; never null
+	 * @param params  generation parameters; never null
+	 */
+	public IncrementalTune(final File csv, final GenerationParameters params)
+		{
+		Objects.requireNonNull(csv);
+		Objects.requireNonNull(params);
+		this.csv = csv;
+		this.params = params;
+		// Derived support tracks are stateful across bars, so are not kept incrementally.
+		barsIncremental = ((Style.plain == params.style()) || (Style.gentle == params.style())) &&
+			(null == params.rolling()) && params.lags().isEmpty();
+		reset();
+		}
+
+	/**Forget all state, so that the next update parses the whole file. */
+	private void reset()
+		{
+		offset = 0;
+		windowCRC = new CRC32().getValue();
+		lastLength = -1;
+		lastModified = 0;
+		rows = new ArrayList<>();
+		scan = new DataScan();
+		aligner = null;
+		completeBars = new ArrayList<>();
+		barsDone = 0;
+		verseBars = null;
+		barsBounds = null;
+		last = null;
+		}
+
+	/**Bring the tune up to date with the input file and return it; never null.
+	 * Does little work if the file is unchanged since the last update.
+	 *
+	 * @throws IOException  if the file cannot be read or is malformed
+	 */
+	@SuppressWarnings("try")
+	public synchronized Snapshot update() throws IOException
+		{
+		try
+			{
+			final int added;
+			try(StageStats.Timer t = StageStats.time(StageStats.STAGE_CSV_LOAD))
+				{ added = parseTail(); }
+			lastRowsParsed = added;
+			lastBarsGenerated = 0;
+			if((0 == added) && (null != last)) { return(last); }
+			last = regenerate();
+			return(last);
+			}
+		catch(final IOException | RuntimeException e)
+			{
+			// Start afresh next time rather than trust partial state.
+			reset();
+			throw e;
+			}
+		}
+
+	/**Rows parsed in the last update, for the whole file if it was re-parsed. */
+	public synchronized int lastRowsParsed() { return(lastRowsParsed); }
+
+	/**Verse bars generated per stream in the last update; -1 if the whole tune was regenerated. */
+	public synchronized int lastBarsGenerated() { return(lastBarsGenerated); }
+
+	/**Bytes just before the old end checked for changes on each update; strictly positive. */
+	static final int CHECK_WINDOW = 4096;
+
+	/**Parse any complete lines appended since the last update, re-parsing all if need be.
+	 * @return number of rows added
+	 */
+	private int parseTail() throws IOException
+		{
+		// The window before the old end followed by the new tail.
+		final byte buf[];
+		final int prev;
+		try(RandomAccessFile raf = new RandomAccessFile(csv, "r"))
+			{
+			final long length = raf.length();
+			final long modified = csv.lastModified();
+			// Unchanged since last time.
+			if((length == lastLength) && (modified == lastModified)) { return(0); }
+
+			// Shrunk, or modified without growing, so not simply appended to.
+			boolean rewritten = (length < offset) || (length == lastLength);
+			if(!rewritten)
+				{
+				final long from = Math.max(0, offset - CHECK_WINDOW);
+				prev = (int) (offset - from);
+				buf = new byte[Math.toIntExact(length - from)];
+				raf.seek(from);
+				raf.readFully(buf);
+				// Check cheaply that what was parsed before is unchanged.
+				final CRC32 crc = new CRC32();
+				crc.update(buf, 0, prev);
+				rewritten = (crc.getValue() != windowCRC);
+				}
+			else { buf = null; prev = 0; }
+			if(rewritten)
+				{
+				// Rewritten rather than appended to, so start again.
+				reset();
+				return(parseTail());
+				}
+			lastLength = length;
+			lastModified = modified;
+			}
+
+		// Only parse up to the end of the last complete line.
+		int end = buf.length;
+		while((end > prev) && ('\n' != buf[end-1])) { --end; }
+		if(prev == end) { return(0); }
+
+		final int before = rows.size();
+		final EOUDataCSV.RowReader rr = new EOUDataCSV.RowReader(
+			new InputStreamReader(new ByteArrayInputStream(buf, prev, end - prev), EOUDataCSV.EOUDATACSV_CHARSET),
+			rows.isEmpty() ? null : rows.get(rows.size()-1));
+		List<String> row;
+		while(null != (row = rr.next()))
+			{
+			rows.add(row);
+			scan.add(row);
+			if(barsIncremental)
+				{
+				if(null == aligner)
+					{
+					final DataCadence cadence = DataUtils.extractDataCadenceFromDate(row.get(0));
+					final boolean doAlign = cadence.canAlign() && (ProductionLevel.Gentle == params.style().level);
+					aligner = new ProtoBarAligner(cadence.defaultPerBar, doAlign, completeBars::add);
+					}
+				aligner.add(row);
+				}
+			}
+
+		// Checksum the window before the new end, which may overlap the old one.
+		final CRC32 crc = new CRC32();
+		final int from = Math.max(0, end - CHECK_WINDOW);
+		crc.update(buf, from, end - from);
+		windowCRC = crc.getValue();
+		offset += end - prev;
+		return(rows.size() - before);
+		}
+
+	/**Regenerate the tune from the current state; never null. */
+	@SuppressWarnings("try")
+	private Snapshot regenerate()
+		{
+		final DataBounds db = scan.bounds();
+		if(rows.isEmpty()) { return(new Snapshot(new MIDITune(), db)); }
+
+		if(!barsIncremental)
+			{
+			lastBarsGenerated = -1;
+			final EOUDataCSV data = new EOUDataCSV(Collections.unmodifiableList(new ArrayList<>(rows)));
+			return(new Snapshot(MIDIGen.genTune(params, data), db));
+			}
+
+		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE))
+			{
+			// Discard all bars if anything that scales every bar has changed.
+			if((null == barsBounds) ||
+			   (barsBounds.streams() != db.streams()) ||
+			   (barsBounds.mainDataStream() != db.mainDataStream()) ||
+			   (barsBounds.maxVal() != db.maxVal()))
+				{
+				barsDone = 0;
+				verseBars = new ArrayList<>(db.streams());
+				for(int s = db.streams(); --s >= 0; ) { verseBars.add(new ArrayList<>()); }
+				barsBounds = db;
+				}
+
+			final List<List<MIDIPlayableMonophonicDataBar>> verse = new ArrayList<>(db.streams());
+			final DataProtoBar finalBar = aligner.peekFinal();
+			try(StageStats.Timer tv = StageStats.time(StageStats.STAGE_TUNE_PREFIX + TuneSection.verse))
+				{
+				final int fresh = completeBars.size() - barsDone;
+				MIDIGen.plainGentleVerseBars(params, db, completeBars.subList(barsDone, completeBars.size()), verseBars);
+				barsDone = completeBars.size();
+				for(final List<MIDIPlayableMonophonicDataBar> bars : verseBars)
+					{
+					final List<MIDIPlayableMonophonicDataBar> l = new ArrayList<>(bars.size() + 1);
+					l.addAll(bars);
+					verse.add(l);
+					}
+				if(null != finalBar) { MIDIGen.plainGentleVerseBars(params, db, List.of(finalBar), verse); }
+				lastBarsGenerated = fresh + ((null == finalBar) ? 0 : 1);
+				}
+
+			final int verseLength = barsDone + ((null == finalBar) ? 0 : 1);
+			if(0 == verseLength) { return(new Snapshot(new MIDITune(), db)); }
+			return(new Snapshot(MIDIGen.plainGentleTuneFromVerse(params, db, scan::sourceName, verseLength, verse), db));
+			}
+		}
+
+	/**Cache key. */
+	private record Key(String path, GenerationParameters params) { }
+
+	/**Maximum number of shared instances retained; strictly positive.
+	 * Generous for the inputs of a watched command file,
+	 * while bounding what is kept across command-file reloads that change parameters.
+	 */
+	public static final int MAX_CACHED = 64;
+
+	/**Process-wide instances by input file and parameters, in access order; guarded by itself. */
+	private static final LinkedHashMap<Key, IncrementalTune> cache = new LinkedHashMap<>(16, 0.75f, true)
+		{
+		private static final long serialVersionUID = 1L;
+		@Override protected boolean removeEldestEntry(final Map.Entry<Key, IncrementalTune> eldest)
+			{ return(size() > MAX_CACHED); }
+		};
+
+	/**Get the shared instance for an input file and parameters, creating it if need be; never null.
+	 * Retains the parsed data until clearCache(),
+	 * or until evicted as the least-recently used of more than MAX_CACHED instances.
+	 */
+	public static IncrementalTune forInput(final File csv, final GenerationParameters params)
+		throws IOException
+		{
+		Objects.requireNonNull(csv);
+		Objects.requireNonNull(params);
+		final Key key = new Key(csv.getCanonicalPath(), params);
+		synchronized(cache)
+			{
+			return(cache.computeIfAbsent(key, k -> new IncrementalTune(new File(k.path()), k.params())));
+			}
+		}
+
+	/**Discard all shared instances, eg to free memory. */
+	public static void clearCache() { synchronized(cache) { cache.clear(); } }
+    }
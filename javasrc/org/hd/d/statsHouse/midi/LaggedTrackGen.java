@@ -0,0 +1,94 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.LaggedStream;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+
+/**Generates a quiet companion voice playing the main data stream as it was a lag earlier,
+ * eg the same hour yesterday, or a week ago, from a lagged view of the verse proto bars.
+ * Notes are as the plain/gentle melody would play them for a secondary stream.
+ * <p>
+ * Not thread-safe.
+ */
+public final class LaggedTrackGen implements VerseSupportGen
+    {
+	/**Maximum number of lagged voices, each with its own channel. */
+	public static final int MAX_VOICES = GenerationParameters.MAX_LAGS;
+
+	/**Lagged view of the verse; never null. */
+	private final LaggedStream lagged;
+	/**Main data stream, 1-based. */
+	private final int stream;
+	/**Multiplier from data value to semitones, as for the plain/gentle melody. */
+	private final float multScaling;
+	/**Track setup; never null. */
+	private final MIDITrackSetup setup;
+
+	/**Create a generator with nothing yet seen.
+	 * @param spec  lag; never null
+	 * @param voice  voice number [0,MAX_VOICES-1], determining the channel
+	 * @param cadence  data cadence, for the slots in a cycle; never null
+	 * @param db  data bounds; never null
+	 */
+	public LaggedTrackGen(final LaggedStream.Spec spec, final int voice, final DataCadence cadence, final DataBounds db)
+		{
+		Objects.requireNonNull(spec);
+		if((voice < 0) || (voice >= MAX_VOICES)) { throw new IllegalArgumentException("too many lagged voices"); }
+		Objects.requireNonNull(cadence);
+		Objects.requireNonNull(db);
+		lagged = new LaggedStream(spec, cadence.defaultCycle);
+		stream = Math.max(1, db.mainDataStream());
+		multScaling = MIDIGen.plainGentleMultScaling(db);
+		// Use channels after that of the rolling-window track.
+		setup = new MIDITrackSetup((byte) (MIDIConstant.GM1_PERCUSSION_CHANNEL + 1 + voice),
+			MIDIInstrument.MARIMBA.instrument0,
+			(byte) (MIDIConstant.DEFAULT_VOLUME/2),
+			MIDIConstant.DEFAULT_PAN,
+			"lagged: " + spec);
+		}
+
+	@Override
+	public MIDITrackSetup setup() { return(setup); }
+
+	/**Make the next bar from the lagged view of the proto bar; never null. */
+	@Override
+	public MIDIPlayableBar bar(final DataProtoBar dbp)
+		{
+		final List<List<String>> rows = lagged.next(dbp).dataRows().data();
+		final int clocksPerNote = MIDIGen.DEFAULT_CLOCKS_PER_BAR / dbp.dataNotesPerBar();
+		final SortedSet<MIDIPlayableBar.StartNoteVelocityDuration> notes = new TreeSet<>();
+		for(int i = 0; i < rows.size(); ++i)
+			{
+			final NoteAndVelocity n = MIDIGen.datumToNoteAndVelocityNoScale(
+				Datum.extractDatum(stream, rows.get(i)), false, multScaling);
+			if(null != n) { notes.add(new MIDIPlayableBar.StartNoteVelocityDuration(i * clocksPerNote, n, clocksPerNote)); }
+			}
+		return(MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes))));
+		}
+    }
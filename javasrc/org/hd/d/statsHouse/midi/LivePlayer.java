@@ -0,0 +1,243 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**Real-time playback of a packed tune to a MIDI Receiver, without building a Sequence.
+ * Events are rendered from the packed tracks a bar or so ahead of the play head
+ * and sent at their due time by a dedicated thread,
+ * which waits with a high-resolution timed park rather than coarse sleeps.
+ * So playback starts immediately and memory use beyond the tune itself is small.
+ * <p>
+ * The Receiver may be that of a (software) synthesizer,
+ * or any stand-in, eg one that records what it is sent.
+ * Messages are sent with no timestamp (-1), ie for immediate action.
+ * <p>
+ * Each track's messages are sent in the same order
+ * as in the Sequence from MIDIGen.genFromPackedTuneSequence().
+ * <p>
+ * Thread-safe.
+ */
+public final class LivePlayer implements Closeable
+    {
+	/**Default nanoseconds per clock, from the default tempo and clocks per quarter note. */
+	public static final long DEFAULT_NANOS_PER_CLOCK = (MIDIGen.DEFAULT_TEMPO * 1000L) / MIDIGen.DEFAULT_CLKSPQTR;
+	/**How far ahead of the next event to send, in clocks, that events are rendered. */
+	public static final int LOOKAHEAD_CLOCKS = MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+
+	/**Destination for messages; never null. */
+	private final Receiver receiver;
+	/**Nanoseconds per clock; strictly positive. */
+	private final long nanosPerClock;
+
+	/**Playback thread, or null if not (yet) started; guarded by this. */
+	private Thread thread;
+	/**Set to stop playback early. */
+	private volatile boolean stopping;
+	/**Clock of the last event sent. */
+	private volatile long position;
+	/**Failure during playback, if any. */
+	private volatile Exception failure;
+
+	/**Create a player at the default tempo.
+	 * @param receiver  destination for messages, not closed by this player; never null
+	 */
+	public LivePlayer(final Receiver receiver)
+		{ this(receiver, DEFAULT_NANOS_PER_CLOCK); }
+
+	/**Create a player.
+	 * @param receiver  destination for messages, not closed by this player; never null
+	 * @param nanosPerClock  playback speed in nanoseconds per clock; strictly positive
+	 */
+	public LivePlayer(final Receiver receiver, final long nanosPerClock)
+		{
+		Objects.requireNonNull(receiver);
+		if(nanosPerClock < 1) { throw new IllegalArgumentException(); }
+		this.receiver = receiver;
+		this.nanosPerClock = nanosPerClock;
+		}
+
+	/**Start playing a tune; returns immediately.
+	 * @param tune  tune to play; never null
+	 * @throws IllegalStateException  if already started
+	 */
+	public synchronized void start(final PackedMIDITune tune)
+		{
+		Objects.requireNonNull(tune);
+		if(null != thread) { throw new IllegalStateException("already started"); }
+		thread = new Thread(() -> play(tune), "statsHouse-live");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+		}
+
+	/**Wait for playback to finish or be stopped.
+	 * @throws IllegalStateException  if playback failed
+	 */
+	public void await() throws InterruptedException
+		{
+		final Thread t;
+		synchronized(this) { t = thread; }
+		if(null != t) { t.join(); }
+		final Exception e = failure;
+		if(null != e) { throw new IllegalStateException("playback failed", e); }
+		}
+
+	/**Stop playback promptly, silencing any sounding notes; does not wait. */
+	public void stop()
+		{
+		stopping = true;
+		final Thread t;
+		synchronized(this) { t = thread; }
+		if(null != t) { LockSupport.unpark(t); }
+		}
+
+	/**Stop playback and wait for the playback thread to finish. */
+	@Override
+	public void close()
+		{
+		stop();
+		final Thread t;
+		synchronized(this) { t = thread; }
+		if(null == t) { return; }
+		boolean interrupted = false;
+		while(t.isAlive())
+			{
+			try { t.join(); }
+			catch(final InterruptedException e) { interrupted = true; }
+			}
+		if(interrupted) { Thread.currentThread().interrupt(); }
+		}
+
+	/**Clock of the last event sent, ie the play head. */
+	public long position() { return(position); }
+
+	/**Event due at a clock, ordered by clock then order of rendering. */
+	private record Pending(long tick, long seq, MidiMessage message) implements Comparable<Pending>
+		{
+		@Override
+		public int compareTo(final Pending o)
+			{
+			final int c = Long.compare(tick, o.tick);
+			return((0 != c) ? c : Long.compare(seq, o.seq));
+			}
+		}
+
+	/**Play on the playback thread. */
+	private void play(final PackedMIDITune tune)
+		{
+		final List<PackedMIDITrack> tracks = new ArrayList<>(tune.supportTracks());
+		tracks.addAll(tune.dataMelody());
+		final int nTracks = tracks.size();
+		final BitSet channels = new BitSet(16);
+		try
+			{
+			// Track setup messages, all at the start.
+			for(final PackedMIDITrack t : tracks)
+				{
+				channels.set(t.setup().channel());
+				final Track setup = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+				MIDIGen._setupMIDITrack(setup, t.setup());
+				for(int i = 0; i < setup.size(); ++i)
+					{
+					final MidiMessage m = setup.get(i).getMessage();
+					if(m instanceof ShortMessage) { receiver.send(m, -1); }
+					}
+				}
+
+			final int cursor[] = new int[nTracks];
+			final byte expression[] = new byte[nTracks];
+			Arrays.fill(expression, MIDIConstant.DEFAULT_EXPRESSION);
+			final PriorityQueue<Pending> queue = new PriorityQueue<>();
+			long seq = 0;
+			long renderedTo = 0;
+			boolean allRendered = (0 == nTracks);
+			final long startNanos = System.nanoTime();
+
+			while(!stopping)
+				{
+				// Render whole bars up to a little beyond the next event due.
+				final long horizon = (queue.isEmpty() ? renderedTo : queue.peek().tick()) + LOOKAHEAD_CLOCKS;
+				while(!allRendered && (renderedTo <= horizon))
+					{
+					final long barEnd = renderedTo + MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+					allRendered = true;
+					for(int k = 0; k < nTracks; ++k)
+						{
+						final PackedMIDITrack t = tracks.get(k);
+						final byte channel = t.setup().channel();
+						for( ; (cursor[k] < t.size()) && (PackedMIDITrack.start(t.event(cursor[k])) < barEnd); ++cursor[k])
+							{
+							final long e = t.event(cursor[k]);
+							final int start = PackedMIDITrack.start(e);
+							final byte note = PackedMIDITrack.note(e);
+							final byte targetExpression = PackedMIDITrack.expression(e);
+							if(expression[k] != targetExpression)
+								{
+								expression[k] = targetExpression;
+								queue.add(new Pending(start, seq++, new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, 11, targetExpression)));
+								}
+							queue.add(new Pending(start, seq++, new ShortMessage(ShortMessage.NOTE_ON, channel, note, PackedMIDITrack.velocity(e))));
+							queue.add(new Pending(start + PackedMIDITrack.duration(e) - 1, seq++, new ShortMessage(ShortMessage.NOTE_OFF, channel, note, 0)));
+							}
+						if(cursor[k] < t.size()) { allRendered = false; }
+						}
+					renderedTo = barEnd;
+					}
+
+				if(queue.isEmpty())
+					{
+					if(allRendered) { break; }
+					continue;
+					}
+
+				// Wait until the next event is due, then send it.
+				final Pending p = queue.peek();
+				final long due = startNanos + (p.tick() * nanosPerClock);
+				long wait;
+				while(!stopping && ((wait = due - System.nanoTime()) > 0)) { LockSupport.parkNanos(this, wait); }
+				if(stopping) { break; }
+				queue.poll();
+				receiver.send(p.message(), -1);
+				position = p.tick();
+				}
+
+			// Silence anything left sounding if stopped early.
+			if(stopping)
+				{
+				for(int ch = channels.nextSetBit(0); ch >= 0; ch = channels.nextSetBit(ch + 1))
+					{ receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, ch, 123, 0), -1); }
+				}
+			}
+		catch(final InvalidMidiDataException | RuntimeException e) { failure = e; }
+		}
+    }
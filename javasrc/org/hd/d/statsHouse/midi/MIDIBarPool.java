@@ -0,0 +1,97 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+
+/**Process-wide pool of canonical bar instances (flyweights).
+ * Equal bars, eg the same faded chorus or percussion bar
+ * across sections, streams and tunes in one batch,
+ * can share one instance.
+ * <p>
+ * Bars are equal by value: notes and expression.
+ * <p>
+ * A data melody bar backed by source data is not itself pooled,
+ * since it would rarely match one from other rows and would keep its rows alive;
+ * instead its notes list is shared with any other bar having equal notes,
+ * eg the same melody played from different rows,
+ * and the bar keeps its own source proto bar and stream,
+ * so that interning never changes what a bar refers to.
+ * <p>
+ * Only immutable bars may be interned.
+ * <p>
+ * The pool is bounded; when full it is emptied and starts again,
+ * which may leave some equal bars unshared but is never incorrect.
+ * <p>
+ * Thread-safe.
+ */
+public final class MIDIBarPool
+    {
+    /**Prevent creation of an instance. */
+    private MIDIBarPool() { }
+
+    /**Maximum number of pooled bars before the pool is emptied. */
+    public static final int MAX_ENTRIES = 4096;
+
+    /**Canonical bars, each mapped to itself. */
+    private static final ConcurrentHashMap<MIDIBarExpression, MIDIBarExpression> pool = new ConcurrentHashMap<>();
+
+    /**Canonical notes of data melody bars backed by source data, each mapped to itself. */
+    private static final ConcurrentHashMap<List<NoteAndVelocity>, List<NoteAndVelocity>> notesPool = new ConcurrentHashMap<>();
+
+    /**Get the canonical instance equal to the given immutable bar; never null.
+     * @param bar  immutable bar; never null
+     * @return  an equal bar, possibly the argument
+     */
+    public static <T extends MIDIBarExpression> T intern(final T bar)
+	    {
+    	Objects.requireNonNull(bar);
+    	if((bar instanceof MIDIPlayableMonophonicDataBar db) && (null != db.dpr()))
+	    	{
+    		final List<NoteAndVelocity> notes = internNotes(db.notes());
+    		if(notes == db.notes()) { return(bar); }
+    		@SuppressWarnings("unchecked") final T t = (T) new MIDIPlayableMonophonicDataBar(
+				db.dataNotesPerBar(), db.dpr(), db.stream(), notes, db.expressionStart(), db.expressionEnd());
+    		return(t);
+	    	}
+    	final MIDIBarExpression existing = pool.get(bar);
+    	if(null != existing) { @SuppressWarnings("unchecked") final T t = (T) existing; return(t); }
+    	if(pool.size() >= MAX_ENTRIES) { pool.clear(); }
+    	@SuppressWarnings("unchecked") final T t = (T) pool.putIfAbsent(bar, bar);
+    	return((null == t) ? bar : t);
+	    }
+
+    /**Get the canonical instance of an immutable notes list; never null. */
+    private static List<NoteAndVelocity> internNotes(final List<NoteAndVelocity> notes)
+	    {
+    	final List<NoteAndVelocity> existing = notesPool.get(notes);
+    	if(null != existing) { return(existing); }
+    	if(notesPool.size() >= MAX_ENTRIES) { notesPool.clear(); }
+    	final List<NoteAndVelocity> n = notesPool.putIfAbsent(notes, notes);
+    	return((null == n) ? notes : n);
+	    }
+
+    /**Number of bars currently pooled, not counting shared data bar notes. */
+    public static int size() { return(pool.size()); }
+
+    /**Empty the pool, eg between unrelated batches. */
+    public static void clear() { pool.clear(); notesPool.clear(); }
+    }
@@ -44,6 +44,8 @@ public final class MIDIConstant
     public static final byte METAMESSAGE_COPYRIGHT = 2;
     /**MIDI track title meta message number. */
     public static final byte METAMESSAGE_TITLE = 3;
+    /**MIDI end-of-track meta message number. */
+    public static final byte METAMESSAGE_END_OF_TRACK = 0x2F;
 
     /**The default is centred, ie 64. */
 	public static final byte DEFAULT_PAN = 64;
@@ -17,16 +17,24 @@ Licensed under the Apache License, Version 2.0 (the "License");
 package org.hd.d.statsHouse.midi;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.random.RandomGenerator;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -38,11 +46,16 @@ import javax.sound.midi.Track;
 
 import org.hd.d.statsHouse.GenerationParameters;
 import org.hd.d.statsHouse.Main;
+import org.hd.d.statsHouse.StageStats;
 import org.hd.d.statsHouse.data.DataBounds;
 import org.hd.d.statsHouse.data.DataProtoBar;
 import org.hd.d.statsHouse.data.DataUtils;
 import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.Downsampled;
 import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.NoiseAnalysis;
+import org.hd.d.statsHouse.data.ProtoBarAligner;
+import org.hd.d.statsHouse.data.SlotStatistics;
 import org.hd.d.statsHouse.generic.ChorusStyleFromData;
 import org.hd.d.statsHouse.generic.DataCadence;
 import org.hd.d.statsHouse.generic.NoteAndVelocity;
@@ -65,6 +78,53 @@ public final class MIDIGen
     private MIDIGen() { }
 
 
+    /**If true, do not use the wall-clock generation time in MIDI output, so that it is reproducible.
+     * Process-wide, eg set from the <code>-deterministic</code> option.
+     */
+    private static volatile boolean deterministicHeader;
+
+    /**Set whether the wall-clock generation time is kept out of MIDI output, so that it is reproducible.
+     * The time recorded is then the source date if set,
+     * else the last date of the data if known,
+     * else none.
+     */
+    public static void setDeterministicHeader(final boolean deterministic) { deterministicHeader = deterministic; }
+
+    /**True if the wall-clock generation time is kept out of MIDI output. */
+    public static boolean isDeterministicHeader() { return(deterministicHeader); }
+
+    /**Parse a SOURCE_DATE_EPOCH style value (whole seconds since 1970 UTC); null if null, empty or malformed. */
+    public static Instant parseSourceDateEpoch(final String epoch)
+	    {
+    	if((null == epoch) || epoch.isBlank()) { return(null); }
+    	try { return(Instant.ofEpochSecond(Long.parseLong(epoch.strip(), 10))); }
+    	catch(final NumberFormatException | DateTimeException e) { return(null); }
+	    }
+
+    /**Fixed time to record as the generation time in MIDI output; null if none.
+     * Process-wide, initially from the SOURCE_DATE_EPOCH environment variable,
+     * as for reproducible builds.
+     */
+    private static volatile Instant sourceDate = parseSourceDateEpoch(System.getenv("SOURCE_DATE_EPOCH"));
+
+    /**Set the fixed time to record as the generation time in MIDI output; null for none. */
+    public static void setSourceDate(final Instant date) { sourceDate = date; }
+
+    /**Get the fixed time to record as the generation time in MIDI output; null if none. */
+    public static Instant getSourceDate() { return(sourceDate); }
+
+    /**Generation time text for MIDI output; null if none is to be recorded.
+     * @param db  data bounds; may be null
+     */
+    static String generatedTime(final DataBounds db)
+	    {
+    	final Instant sd = sourceDate;
+    	if(null != sd) { return(DateTimeFormatter.ISO_INSTANT.format(sd)); }
+    	if(!deterministicHeader) { return((new Date()).toString()); }
+    	if((null != db) && (null != db.lastDate())) { return(db.lastDate()); }
+    	return(null);
+	    }
+
     /**Default clock pulses per quarter note. */
 	public static final int DEFAULT_CLKSPQTR = 480;
 	/**Default 120bpm (0.5s per quarter note / beat). */
@@ -136,6 +196,7 @@ public final class MIDIGen
      * <li>(Save as .csv/.mid/.wav/etc to stdout or file, or play, from the returned MIDITune.)
      * </ul>
      */
+    @SuppressWarnings("try")
     public static MIDITune genTune(final GenerationParameters params, final EOUDataCSV data)
 	    {
     	if(null == params) { throw new IllegalArgumentException(); }
@@ -144,15 +205,19 @@ public final class MIDIGen
     	// Return empty tune if no data points.
     	if(data.data().isEmpty()) { return(new MIDITune(Collections.emptyList())); }
 
-    	// Compute data bounds, including capping number of data streams.
-		final DataBounds db = new DataBounds(data);
-
-    	// For plain/gentle style the data is used as-is as a single verse section.
-		return switch (params.style()) {
-		case plain, gentle -> _genPlainGentleMIDITune(params, db, data);
-		case house -> _genHouseMIDITune(params, db, data);
-default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FIXME
-		};
+    	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE))
+	    	{
+	    	// Compute data bounds, including capping number of data streams.
+			final DataBounds db;
+			try(StageStats.Timer tb = StageStats.time(StageStats.STAGE_BOUNDS)) { db = new DataBounds(data); }
+
+	    	// For plain/gentle style the data is used as-is as a single verse section.
+			return switch (params.style()) {
+			case plain, gentle -> _genPlainGentleMIDITune(params, db, data);
+			case house -> _genHouseMIDITune(params, db, data);
+	default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FIXME
+			};
+	    	}
 	    }
 
     /**Create a house tune from data; never null though may be empty.
@@ -161,6 +226,7 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
      * @param db  data bounds; never null
      * @return data melody, one or more tracks; never null
      */
+    @SuppressWarnings("try")
     private static MIDITune _genHouseMIDITune(
     		final GenerationParameters params,
     		final DataBounds db,
@@ -268,7 +334,47 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
     					(byte) (MIDIConstant.DEFAULT_PAN+1), // Slightly off to side.
     					"bass: house"),
     			new ArrayList<>());
-    	final MIDISupportTrack support[] = { percTrack, bassTrack };
+    	// Optional noise track, from the whole verse data at once.
+    	final float noiseIntensity[] = params.noise() ?
+			NoiseAnalysis.intensity(verseProtoBars, Math.max(1, db.mainDataStream()), db.maxVal()) : null;
+    	final MIDISupportTrack noiseTrack = !params.noise() ? null :
+			new MIDISupportTrack(
+    			new MIDITrackSetup((byte) (MIDIConstant.GM1_MIN_CHANNELS-1), // Use last channel.
+    					MIDIInstrument.SEASHORE.instrument0,
+    					(byte) (MIDIConstant.DEFAULT_VOLUME/2),
+    					(byte) (MIDIConstant.DEFAULT_PAN-1), // Slightly off to other side.
+    					"noise: house"),
+    			new ArrayList<>());
+
+    	// Chorus style, once per tune; the first is the default with no randomness.
+    	final ChorusStyleFromData chorusStyle = prog.pickOneNoProgression(PickOne.SQUARE, Arrays.asList(
+			ChorusStyleFromData.SyntheticRepresentativeDataBar,
+			ChorusStyleFromData.MeansPlusSyntheticRepresentativeDataBar,
+			ChorusStyleFromData.SyntheticRepresentativeDataBarPlusCounterpoint,
+			ChorusStyleFromData.MeansPlusSyntheticRepresentativeDataBarPlusCounterpoint));
+    	// Counterpoint track for choruses if needed, from the main data stream.
+    	final int counterpointTrackStream = Math.max(1, db.mainDataStream());
+    	final MIDISupportTrack counterpointTrack = !chorusStyle.hasCounterpoint() ? null :
+			new MIDISupportTrack(
+    			new MIDITrackSetup((byte) (MIDIConstant.GM1_PERCUSSION_CHANNEL+1), // Use channel two after percussion.
+    					MIDIInstrument.TENOR_SAX.instrument0,
+    					(byte) (MIDIConstant.DEFAULT_VOLUME/2),
+    					MIDIConstant.DEFAULT_PAN,
+    					"counterpoint: house"),
+    			new ArrayList<>());
+
+    	final List<MIDISupportTrack> supportList = new ArrayList<>(List.of(percTrack, bassTrack));
+    	if(null != counterpointTrack) { supportList.add(counterpointTrack); }
+    	if(null != noiseTrack) { supportList.add(noiseTrack); }
+    	final MIDISupportTrack support[] = supportList.toArray(new MIDISupportTrack[0]);
+
+    	// Per-stream summaries and downsampled views of the verse data for choruses,
+    	// each made once on first use and shared by all choruses.
+    	// Both are made from the same columns of verse values and coverage, parsed once per stream.
+    	final SlotStatistics chorusStats[] = new SlotStatistics[streams];
+    	final Downsampled chorusDown[] = new Downsampled[streams];
+    	final float chorusValues[][] = new float[streams][];
+    	final float chorusCoverage[][] = new float[streams][];
 
     	// Run through all the sections,
     	// inserting the full data melody and support as needed.
@@ -277,154 +383,207 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
     	for(int sectionNumber = 0; sectionNumber < plan.size(); ++sectionNumber)
 	    	{
     		final TuneSectionMetadata ts = plan.get(sectionNumber);
-    		// Previous section (null if none) to help with transitions.
-    		final TuneSectionMetadata tsPrev = (sectionNumber > 0) ? plan.get(sectionNumber-1) : null;
-    		// Next section (null if none) to help with transitions.
-    		final TuneSectionMetadata tsNext = (sectionNumber+1 < plan.size()) ? plan.get(sectionNumber+1) : null;
-
-            // Verify that section size is correct.
-            assert(ts.bars() == sectionBars);
-
-    		_generateHousePercussionBySection(percTrack, ts, prog);
-
-            // Fade in and out first and last verse/chorus.
-            // Also fade in/out each non-primary instrument verse?
-    		// Maybe do not want this type of logic hard-wired in.
-    		// TODO: Alt: sometimes omit (some) fades depending on the seed.
-    		// If the previous section is intro (or there is no previous section)
-    		// then set this section to fade in.
-    		final boolean fadeIn = (null == tsPrev) || (TuneSection.intro == tsPrev.sectionType());
-    		// If the following section is outro (or there is no further section)
-    		// then set this section to fade out.
-    		final boolean fadeOut = (null == tsNext) || (TuneSection.outro == tsNext.sectionType());
-
-    		// If this verse is not getting any other fade
-    		// and it is followed by a drop or a (higher-energy) chorus
-    		// then adjust the expression to build up to the drop/chorus.
-    		final boolean followedByDrop = (null != tsNext) &&
-				(switch(tsNext.sectionType()) {
-				case drop, chorus -> true;
-				default -> false;});
-
-            _generateHouseBassBySection(bassTrack, ts,
-            		fadeIn, fadeOut, followedByDrop,
-            		prog, sectionNumber);
-
-            // Inject relatively-vanilla data melody for verse.
-            switch(ts.sectionType())
-	        	{
-	        	case verse:
-	        		{
-	        		// Extract and pad to exactly section size for last one if needed.
-	        	    // If truncating (ie not using some bars)
-	        		// then on alternate repeats discard late bars rather than early ones
-	        		// for a little taste of progression.
-	        		// This also means that the latest data is heard on the first verse set.
-	        		final boolean discardEarlyBars = (0 == ((verseCount / verseSectionCount) & 1));
-	        		final int excessBars = verseProtoBars.size() - (verseSectionCount * sectionBars);
-	        		final int startOffset = (discardEarlyBars ? Math.max(0, excessBars) : 0);
-	        		final List<DataProtoBar> sectionProtoBars = new ArrayList<>(sectionBars);
-	        		final int startRow = ((verseCount % verseSectionCount) * sectionBars) + startOffset;
-	        		final int endRow = startRow + sectionBars;
+    		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE_PREFIX + ts.sectionType()))
+	    		{
+	    		// Previous section (null if none) to help with transitions.
+	    		final TuneSectionMetadata tsPrev = (sectionNumber > 0) ? plan.get(sectionNumber-1) : null;
+	    		// Next section (null if none) to help with transitions.
+	    		final TuneSectionMetadata tsNext = (sectionNumber+1 < plan.size()) ? plan.get(sectionNumber+1) : null;
+
+	            // Verify that section size is correct.
+	            assert(ts.bars() == sectionBars);
+
+	    		_generateHousePercussionBySection(percTrack, ts, prog);
+
+	            // Fade in and out first and last verse/chorus.
+	            // Also fade in/out each non-primary instrument verse?
+	    		// Maybe do not want this type of logic hard-wired in.
+	    		// TODO: Alt: sometimes omit (some) fades depending on the seed.
+	    		// If the previous section is intro (or there is no previous section)
+	    		// then set this section to fade in.
+	    		final boolean fadeIn = (null == tsPrev) || (TuneSection.intro == tsPrev.sectionType());
+	    		// If the following section is outro (or there is no further section)
+	    		// then set this section to fade out.
+	    		final boolean fadeOut = (null == tsNext) || (TuneSection.outro == tsNext.sectionType());
+
+	    		// If this verse is not getting any other fade
+	    		// and it is followed by a drop or a (higher-energy) chorus
+	    		// then adjust the expression to build up to the drop/chorus.
+	    		final boolean followedByDrop = (null != tsNext) &&
+					(switch(tsNext.sectionType()) {
+					case drop, chorus -> true;
+					default -> false;});
+
+	            _generateHouseBassBySection(bassTrack, ts,
+	            		fadeIn, fadeOut, followedByDrop,
+	            		prog, sectionNumber);
+
+	            // Counterpoint only in choruses.
+	            if((null != counterpointTrack) && (TuneSection.chorus != ts.sectionType()))
+		            {
+	            	counterpointTrack.bars().addAll(
+	    				Collections.nCopies(ts.bars(), MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS));
+		            }
+
+	            // Noise only with verse data.
+	            if((null != noiseTrack) && (TuneSection.verse != ts.sectionType()))
+		            {
+	            	noiseTrack.bars().addAll(
+	    				Collections.nCopies(ts.bars(), MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS));
+		            }
+
+	            // Inject relatively-vanilla data melody for verse.
+	            switch(ts.sectionType())
+		        	{
+		        	case verse:
+		        		{
+		        		// Extract and pad to exactly section size for last one if needed.
+		        	    // If truncating (ie not using some bars)
+		        		// then on alternate repeats discard late bars rather than early ones
+		        		// for a little taste of progression.
+		        		// This also means that the latest data is heard on the first verse set.
+		        		final boolean discardEarlyBars = (0 == ((verseCount / verseSectionCount) & 1));
+		        		final int excessBars = verseProtoBars.size() - (verseSectionCount * sectionBars);
+		        		final int startOffset = (discardEarlyBars ? Math.max(0, excessBars) : 0);
+		        		final List<DataProtoBar> sectionProtoBars = new ArrayList<>(sectionBars);
+		        		final int startRow = ((verseCount % verseSectionCount) * sectionBars) + startOffset;
+		        		final int endRow = startRow + sectionBars;
 //System.err.println(String.format("protobars=%d, verseCount=%d, excessBars=%d, startRow=%d",verseProtoBars.size(), verseCount, excessBars, startRow ));
-        			final DataProtoBar dpplast = verseProtoBars.get(verseProtoBars.size() - 1);
-	        		for(int dr = startRow; dr < endRow; ++dr)
+	        			final DataProtoBar dpplast = verseProtoBars.get(verseProtoBars.size() - 1);
+		        		for(int dr = startRow; dr < endRow; ++dr)
+			        		{
+		        			final DataProtoBar dbp = (dr < verseProtoBars.size()) ? verseProtoBars.get(dr) :
+		        				(new DataProtoBar(dpplast.dataNotesPerBar(),
+	        						new EOUDataCSV(Collections.nCopies(dpplast.dataNotesPerBar(), Collections.emptyList()))));
+		        			sectionProtoBars.add(dbp);
+			        		}
+
+		        		// Noise for the same bars, silent for padding.
+		        		if(null != noiseTrack)
+			        		{
+		        			final List<MIDIPlayableBar> noiseBars = new ArrayList<>(sectionBars);
+			        		for(int dr = startRow; dr < endRow; ++dr)
+				        		{
+			        			noiseBars.add((dr < noiseIntensity.length) ?
+		        					SupportBarGen.makeHouseNoiseBar(noiseIntensity[dr]) : MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS);
+				        		}
+			        		noiseTrack.bars().addAll(optionalFadeInOut(noiseBars, MIDIPlayableBar.class, fadeIn, fadeOut));
+			        		}
+
+		        		// Generate notes from data.
+	        			for(int s = 1; s <= streams; ++s)
+		                	{
+	                		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
+
+	                		// Collect all the bars for this stream (for this section).
+	                		final List<MIDIPlayableMonophonicDataBar> mpmBars =
+	            				new ArrayList<>(sectionBars);
+
+	                		for(final DataProtoBar dbp : sectionProtoBars)
+		                		{
+		                		final List<List<String>> rows = dbp.dataRows().data();
+		                		final int dnpb = dbp.dataNotesPerBar();
+		                		final List<NoteAndVelocity> notes = new ArrayList<>(dnpb);
+		                		for(final List<String> row : rows)
+		                			{
+		                			final Datum d = Datum.extractDatum(s, row);
+		                			// Rest/silence for missing stream or value,
+		                			// or where coverage is not strictly positive.
+		                			final NoteAndVelocity n = datumToNoteAndVelocity(
+	                					d,
+	                					isNotSecondaryDataStream,
+	                					scale,
+	                					octaves,
+	                					db.maxVal());
+		                			notes.add(n);
+		                			}
+
+		                		// Construct MIDI-playable bar for this stream.
+		                		final MIDIPlayableMonophonicDataBar mpmb = new MIDIPlayableMonophonicDataBar(
+		                				dnpb, dbp, s, Collections.unmodifiableList(notes));
+		                		mpmBars.add(mpmb);
+		                		}
+
+	    	        		// Fill in missing notes for each section (for each stream).
+	                		fillInMissingNotes(params, isNotSecondaryDataStream, mpmBars);
+
+	                		// TODO: other transformations
+
+	                		// TODO: construct padding track?
+
+	                		final List<MIDIPlayableMonophonicDataBar> newBars;
+	                		if(isNotSecondaryDataStream && !fadeIn && !fadeOut && followedByDrop)
+		                		{
+	                			// Warm up to drop...
+	                			newBars = warmUpToDrop(mpmBars, MIDIPlayableMonophonicDataBar.class);
+		                		}
+	                		else
+		                		{
+	                			// Fade in and/or out for start/finish.
+	                    		newBars = optionalFadeInOut(mpmBars, MIDIPlayableMonophonicDataBar.class,
+	                				fadeIn || !isNotSecondaryDataStream,
+	                				fadeOut || !isNotSecondaryDataStream);
+		                		}
+
+							tracks[s - 1].bars().addAll(newBars);
+		                	}
+
+	        			++verseCount;
+		                break;
+		                }
+
+		        	case chorus:
 		        		{
-	        			final DataProtoBar dbp = (dr < verseProtoBars.size()) ? verseProtoBars.get(dr) :
-	        				(new DataProtoBar(dpplast.dataNotesPerBar(),
-        						new EOUDataCSV(Collections.nCopies(dpplast.dataNotesPerBar(), Collections.emptyList()))));
-	        			sectionProtoBars.add(dbp);
-		        		}
-
-	        		// Generate notes from data.
-        			for(int s = 1; s <= streams; ++s)
-	                	{
-                		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
-
-                		// Collect all the bars for this stream (for this section).
-                		final List<MIDIPlayableMonophonicDataBar> mpmBars =
-            				new ArrayList<>(sectionBars);
-
-                		for(final DataProtoBar dbp : sectionProtoBars)
-	                		{
-	                		final List<List<String>> rows = dbp.dataRows().data();
-	                		final int dnpb = dbp.dataNotesPerBar();
-	                		final List<NoteAndVelocity> notes = new ArrayList<>(dnpb);
-	                		for(final List<String> row : rows)
-	                			{
-	                			final Datum d = Datum.extractDatum(s, row);
-	                			// Rest/silence for missing stream or value,
-	                			// or where coverage is not strictly positive.
-	                			final NoteAndVelocity n = datumToNoteAndVelocity(
-                					d,
-                					isNotSecondaryDataStream,
-                					scale,
-                					octaves,
-                					db.maxVal());
-	                			notes.add(n);
-	                			}
-
-	                		// Construct MIDI-playable bar for this stream.
-	                		final MIDIPlayableMonophonicDataBar mpmb = new MIDIPlayableMonophonicDataBar(
-	                				dnpb, dbp, s, Collections.unmodifiableList(notes));
-	                		mpmBars.add(mpmb);
-	                		}
-
-    	        		// Fill in missing notes for each section (for each stream).
-                		fillInMissingNotes(params, isNotSecondaryDataStream, mpmBars);
-
-                		// TODO: other transformations
-
-                		// TODO: construct padding track?
-
-                		final List<MIDIPlayableMonophonicDataBar> newBars;
-                		if(isNotSecondaryDataStream && !fadeIn && !fadeOut && followedByDrop)
-	                		{
-                			// Warm up to drop...
-                			newBars = warmUpToDrop(mpmBars, MIDIPlayableMonophonicDataBar.class);
-	                		}
-                		else
-	                		{
-                			// Fade in and/or out for start/finish.
-                    		newBars = optionalFadeInOut(mpmBars, MIDIPlayableMonophonicDataBar.class,
-                				fadeIn || !isNotSecondaryDataStream,
-                				fadeOut || !isNotSecondaryDataStream);
-	                		}
-
-						tracks[s - 1].bars().addAll(newBars);
-	                	}
-
-        			++verseCount;
-	                break;
-	                }
-
-	        	case chorus:
-	        		{
-        			++chorusCount;
-	            	for(int s = 1; s <= streams; ++s)
-	            		{
-        				// Make the bars!
-	            		final List<MIDIPlayableMonophonicDataBar> mpmBars =
-    						DataChorusGen.makeHouseDataChorusBars(
-    							ChorusStyleFromData.SyntheticRepresentativeDataBar, // Alt: randomise
-								chorusCount, s, ts, params, db, data,
-								scale);
+	        			++chorusCount;
+		            	for(int s = 1; s <= streams; ++s)
+		            		{
+		            		// Summarise the verse data for this stream once per tune, if used.
+		            		final boolean counterpointStream = (null != counterpointTrack) && (counterpointTrackStream == s);
+		            		final boolean needStats = (null == chorusStats[s - 1]) && (params.hetero() || db.isMainDataStream(s));
+		            		final boolean needDown = (null == chorusDown[s - 1]) && (counterpointStream ||
+	            				(chorusStyle.downsampled() && (params.hetero() || db.isMainDataStream(s))));
+		            		final int slots = verseProtoBars.get(0).dataNotesPerBar();
+		            		if((needStats || needDown) && (null == chorusValues[s - 1]))
+			            		{
+		            			chorusCoverage[s - 1] = new float[verseProtoBars.size() * slots];
+		            			chorusValues[s - 1] = DataUtils.columns(verseProtoBars, s, chorusCoverage[s - 1]);
+			            		}
+		            		if(needStats)
+		            			{ chorusStats[s - 1] = SlotStatistics.of(chorusValues[s - 1], slots); }
+		            		if(needDown)
+		            			{ chorusDown[s - 1] = Downsampled.of(chorusValues[s - 1], chorusCoverage[s - 1], slots, Downsampled.defaultFactor(slots)); }
+
+	        				// Make the bars!
+		            		final List<MIDIPlayableMonophonicDataBar> mpmBars =
+	    						DataChorusGen.makeHouseDataChorusBars(
+	    							chorusStyle,
+									chorusCount, s, ts, params, db, verseProtoBars, chorusStats[s - 1], chorusDown[s - 1],
+									scale);
 //	        			assert(mpmBars.size() == ts.bars());
-	            		tracks[s - 1].bars().addAll(optionalFadeInOut(mpmBars, MIDIPlayableMonophonicDataBar.class, fadeIn, fadeOut));
-	            		}
-	        		break;
-	        		}
+		            		tracks[s - 1].bars().addAll(optionalFadeInOut(mpmBars, MIDIPlayableMonophonicDataBar.class, fadeIn, fadeOut));
+
+		            		// Counterpoint from the main data stream.
+		            		if(counterpointStream)
+			            		{
+		            			counterpointTrack.bars().addAll(optionalFadeInOut(
+	            					DataChorusGen.makeHouseCounterpointBars(ts, db, chorusDown[s - 1], scale),
+	            					MIDIPlayableBar.class, fadeIn, fadeOut));
+			            		}
+		            		}
+		        		break;
+		        		}
 
-	        	default:
-	                // Skip over this section silently,
-	            	// inserting empty bars for all streams.
-	            	for(int s = 1; s <= streams; ++s)
-		            	{
-	            		tracks[s - 1].bars().addAll(
-	        				Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR));
-	            		}
-	            	break;
-	        	}
+		        	default:
+		                // Skip over this section silently,
+		            	// inserting empty bars for all streams.
+		            	for(int s = 1; s <= streams; ++s)
+			            	{
+		            		tracks[s - 1].bars().addAll(
+		        				Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR));
+		            		}
+		            	break;
+		        	}
+	    		}
 	    	}
 
 		// Return unmodifiable compact version.
@@ -468,13 +627,13 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
         for(int i = 0; i < fadeBarCount; ++i)
 	        {
         	final byte newExpression = (byte) (expression - fadePerBar);
-            updatedBars.add(type.cast(bars.get(i).cloneAndSetExpression(expression, newExpression)));
+            updatedBars.add(type.cast(MIDIBarPool.intern(bars.get(i).cloneAndSetExpression(expression, newExpression))));
             expression = newExpression;
 	        }
 //        assert(expression > 0); // Should not be fading all the way out!
 
         // Fade back up on final bar.
-        updatedBars.add(type.cast(bars.get(barCount-1).cloneAndSetExpression(expression, MIDIConstant.DEFAULT_EXPRESSION)));
+        updatedBars.add(type.cast(MIDIBarPool.intern(bars.get(barCount-1).cloneAndSetExpression(expression, MIDIConstant.DEFAULT_EXPRESSION))));
 
 //		assert(barCount == updatedBars.size());
 		updatedBars.trimToSize(); // Should be a no-op.
@@ -531,7 +690,7 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	        	final boolean isFinalFadeInBar = (i == postFadeInBarIndex - 1);
 	        	final byte newExpression = (byte)
 	    			(isFinalFadeInBar ? MIDIConstant.DEFAULT_EXPRESSION : (expression + fadePerBar));
-	            updatedBars.add(type.cast(bars.get(i).cloneAndSetExpression(expression, newExpression)));
+	            updatedBars.add(type.cast(MIDIBarPool.intern(bars.get(i).cloneAndSetExpression(expression, newExpression))));
 //	            assert(expression < MIDIConstant.DEFAULT_EXPRESSION); // No note (even last) at max.
 	            expression = newExpression;
 	            }
@@ -550,7 +709,7 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	        	final boolean isFinalFadeOutBar = (i == barCount - 1);
 	        	final byte newExpression = (byte)
 	    			(isFinalFadeOutBar ? 0 : (expression - fadePerBar));
-	            updatedBars.add(type.cast(bars.get(i).cloneAndSetExpression(expression, newExpression)));
+	            updatedBars.add(type.cast(MIDIBarPool.intern(bars.get(i).cloneAndSetExpression(expression, newExpression))));
 //	            assert(expression > 0); // No note (even last) totally silent.
 	            expression = newExpression;
 	            }
@@ -814,6 +973,7 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
      * @param db  data bounds; never null
      * @return data melody, one or more tracks; never null
      */
+    @SuppressWarnings("try")
     private static MIDITune _genPlainGentleMIDITune(
     		final GenerationParameters params,
     		final DataBounds db,
@@ -833,35 +993,116 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
     	// Return empty tune if no bars (though in principle cannot happen).
     	if(verseProtoBars.isEmpty()) { return(new MIDITune()); }
 
-    	final List<TuneSectionMetadata> plan = new ArrayList<>();
-    	plan.add(new TuneSectionMetadata(verseProtoBars.size(), TuneSection.verse));
+    	// Generate the verse data melody bars for all streams,
+    	// and any derived support track bars in the same pass.
+    	final int streams = db.streams();
+    	final List<List<MIDIPlayableMonophonicDataBar>> verseBars = new ArrayList<>(streams);
+    	for(int s = 1; s <= streams; ++s) { verseBars.add(new ArrayList<>(verseProtoBars.size())); }
+    	final List<VerseSupportGen> gens = verseSupportGens(params, DataUtils.extractDataCadenceQuick(data), db);
+    	final List<MIDISupportTrack> verseSupport = new ArrayList<>(gens.size());
+    	for(final VerseSupportGen g : gens) { verseSupport.add(new MIDISupportTrack(g.setup(), new ArrayList<>(verseProtoBars.size()))); }
+		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE_PREFIX + TuneSection.verse))
+			{
+			plainGentleVerseBars(params, db, verseProtoBars, verseBars,
+				gens.isEmpty() ? null : dbp -> {
+					for(int i = 0; i < gens.size(); ++i) { verseSupport.get(i).bars().add(gens.get(i).bar(dbp)); }
+					});
+			}
 
-        // Top and tail with intro/outro if specified, eg to be mix-friendly.
-    	final boolean hasIntroOutro = (params.introBars() > 0);
-        if(hasIntroOutro)
-	        {
-        	plan.add(0, new TuneSectionMetadata(params.introBars(), TuneSection.intro));
-        	plan.add(new TuneSectionMetadata(params.introBars(), TuneSection.outro));
-	        }
+    	return(plainGentleTuneFromVerse(params, db, s -> DataUtils.extractSourceName(data, s),
+			verseProtoBars.size(), verseBars, verseSupport));
+	    }
 
-    	// Create tracks with extendable (within this method) bars.
+    /**Append plain/gentle verse data melody bars for all streams generated from proto bars.
+     * Each bar depends only on its proto bar,
+     * and on the stream count, main stream and maximum value of the data bounds,
+     * so bars can be generated incrementally as data grows if those are unchanged.
+     *
+     * @param params  generation parameters; never null
+     * @param db  data bounds; never null
+     * @param protoBars  verse proto bars; never null
+     * @param verseBars  one list per stream (in stream order) to append to; never null
+     */
+    static void plainGentleVerseBars(
+    		final GenerationParameters params,
+    		final DataBounds db,
+    		final List<DataProtoBar> protoBars,
+    		final List<List<MIDIPlayableMonophonicDataBar>> verseBars)
+	    { plainGentleVerseBars(params, db, protoBars, verseBars, null); }
+
+    /**Append plain/gentle verse data melody bars, passing each proto bar on in order too.
+     * @param perBar  given each proto bar after its melody bars are made,
+     *     eg to generate support bars in the same pass; null if none
+     */
+    static void plainGentleVerseBars(
+    		final GenerationParameters params,
+    		final DataBounds db,
+    		final List<DataProtoBar> protoBars,
+    		final List<List<MIDIPlayableMonophonicDataBar>> verseBars,
+    		final Consumer<DataProtoBar> perBar)
+	    {
+    	final int streams = db.streams();
+    	if(verseBars.size() != streams) { throw new IllegalArgumentException(); }
+		final float multScaling = plainGentleMultScaling(db);
+        for(final DataProtoBar dbp : protoBars)
+        	{
+        	for(int s = 1; s <= streams; ++s)
+        		{
+        		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
+        		verseBars.get(s - 1).add(plainGentleDataBar(dbp, s, isNotSecondaryDataStream, multScaling));
+        		}
+        	if(null != perBar) { perBar.accept(dbp); }
+        	}
+	    }
+
+    /**Assemble a plain/gentle tune around pre-generated verse data melody bars; never null.
+     * Adds any intro/outro and the gentle percussion track.
+     *
+     * @param params  generation parameters; never null
+     * @param db  data bounds; never null
+     * @param sourceName  source name by 1-based stream, or null if none
+     * @param verseLength  verse length in bars; strictly positive
+     * @param verseBars  one list of verseLength bars per stream; never null
+     */
+    static MIDITune plainGentleTuneFromVerse(
+    		final GenerationParameters params,
+    		final DataBounds db,
+    		final IntFunction<String> sourceName,
+    		final int verseLength,
+    		final List<List<MIDIPlayableMonophonicDataBar>> verseBars)
+	    { return(plainGentleTuneFromVerse(params, db, sourceName, verseLength, verseBars, Collections.emptyList())); }
+
+    /**Assemble a plain/gentle tune around pre-generated verse data melody and support bars; never null.
+     * Support tracks follow any gentle percussion track, and are silent outside the verse.
+     *
+     * @param verseSupport  support tracks each of verseLength bars; never null
+     */
+    @SuppressWarnings("try")
+    static MIDITune plainGentleTuneFromVerse(
+    		final GenerationParameters params,
+    		final DataBounds db,
+    		final IntFunction<String> sourceName,
+    		final int verseLength,
+    		final List<List<MIDIPlayableMonophonicDataBar>> verseBars,
+    		final List<MIDISupportTrack> verseSupport)
+	    {
     	final int streams = db.streams();
+    	if(verseLength < 1) { throw new IllegalArgumentException(); }
+    	if(verseBars.size() != streams) { throw new IllegalArgumentException(); }
+
+    	final List<TuneSectionMetadata> plan = plainGentlePlan(params, verseLength);
+
+    	// Create tracks with extendable (within this method) bars.
     	final MIDIDataMelodyTrack tracks[] = new MIDIDataMelodyTrack[streams];
     	Arrays.setAll(tracks,
 			i -> new MIDIDataMelodyTrack(
 					genMIDITrackSetupGeneric(i+1, params, db,
-						((null==data)?null:("source: "+DataUtils.extractSourceName(data, i+1)))),
+						((null==sourceName)?null:("source: "+sourceName.apply(i+1)))),
 				new ArrayList<>()));
 
     	// At most one percussion track, not for "plain".
     	final MIDISupportTrack percTrack = (Style.plain == params.style()) ? null :
-			new MIDISupportTrack(
-    			new MIDITrackSetup((byte)(MIDIConstant.GM1_PERCUSSION_CHANNEL-1),
-    					(byte) 0,
-    					MIDIConstant.DEFAULT_VOLUME,
-    					MIDIConstant.DEFAULT_PAN,
-    					"percussion: gentle"),
-    			new ArrayList<>());
+			new MIDISupportTrack(gentlePercussionTrackSetup(), new ArrayList<>());
 
     	if(null != percTrack)
     		{
@@ -876,54 +1117,31 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	        	}
     		}
 
-    	// Parameterisation of melody play.
-		final byte range = 12 * DEFAULT_RANGE_OCTAVES;
-		final float multScaling = (db.maxVal() > 0) ? ((range-1)/db.maxVal()) : 1;
-
     	// Run through all the sections,
     	// inserting the full data melody in the 'verse' section.
     	for(final TuneSectionMetadata ts : plan)
 	    	{
             if(ts.sectionType() != TuneSection.verse)
 	            {
-                // Skip over this section silently,
-            	// inserting empty bars for all streams.
-            	for(int s = 1; s <= streams; ++s)
+            	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE_PREFIX + ts.sectionType()))
 	            	{
-            		tracks[s - 1].bars().addAll(
-        				Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR));
-            		}
+	                // Skip over this section silently,
+	            	// inserting empty bars for all streams.
+	            	for(int s = 1; s <= streams; ++s)
+		            	{
+	            		tracks[s - 1].bars().addAll(
+	        				Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR));
+	            		}
+	            	}
             	continue;
 	            }
 
-            // Verify that section size is correct.
-            if(ts.bars() != verseProtoBars.size())
-        		{ throw new IllegalArgumentException(); }
-
-            for(final DataProtoBar dbp : verseProtoBars)
+            for(int s = 1; s <= streams; ++s)
             	{
-            	for(int s = 1; s <= streams; ++s)
-            		{
-            		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
-
-            		final List<List<String>> rows = dbp.dataRows().data(); // Notes in bar.
-            		final int dnpb = dbp.dataNotesPerBar();
-            		final List<NoteAndVelocity> notes = new ArrayList<>(dnpb);
-            		for(final List<String> row : rows)
-            			{
-            			final Datum d = Datum.extractDatum(s, row);
-            			final NoteAndVelocity n = datumToNoteAndVelocityNoScale(
-            					d,
-								isNotSecondaryDataStream,
-								multScaling);
-            			notes.add(n);
-            			}
-
-            		// Construct MIDI-playable bar for this stream.
-            		final MIDIPlayableMonophonicDataBar mpmb = new MIDIPlayableMonophonicDataBar(
-            				dnpb, dbp, s, Collections.unmodifiableList(notes));
-            		tracks[s - 1].bars().add(mpmb);
-            		}
+                // Verify that section size is correct.
+                if(ts.bars() != verseBars.get(s - 1).size())
+            		{ throw new IllegalArgumentException(); }
+            	tracks[s - 1].bars().addAll(verseBars.get(s - 1));
             	}
 	    	}
 
@@ -933,12 +1151,180 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	    	tracks[i] = new MIDIDataMelodyTrack(tracks[i].setup(),
     			Collections.unmodifiableList(new ArrayList<>(tracks[i].bars())));
 	    	}
-    	final List<MIDISupportTrack> support = (null == percTrack) ? Collections.emptyList() :
-			Collections.singletonList(new MIDISupportTrack(percTrack.setup(),
+    	final List<MIDISupportTrack> support = new ArrayList<>(1 + verseSupport.size());
+    	if(null != percTrack)
+	    	{
+    		support.add(new MIDISupportTrack(percTrack.setup(),
 				Collections.unmodifiableList(percTrack.bars())));
+	    	}
+    	for(final MIDISupportTrack st : verseSupport)
+	    	{
+    		if(verseLength != st.bars().size()) { throw new IllegalArgumentException(); }
+    		final List<MIDIPlayableBar> bars = new ArrayList<>();
+    		for(final TuneSectionMetadata ts : plan)
+    			{
+    			if(TuneSection.verse == ts.sectionType()) { bars.addAll(st.bars()); }
+    			else { bars.addAll(Collections.nCopies(ts.bars(), MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS)); }
+    			}
+    		support.add(new MIDISupportTrack(st.setup(), Collections.unmodifiableList(bars)));
+	    	}
     	return(new MIDITune(Arrays.asList(tracks), support, new TuneSectionPlan(plan)));
 	    }
 
+    /**Section plan for a plain/gentle tune: the verse, topped and tailed if specified; never null.
+     * @param verseLength  verse length in bars; strictly positive
+     */
+    private static List<TuneSectionMetadata> plainGentlePlan(
+    		final GenerationParameters params, final int verseLength)
+	    {
+    	final List<TuneSectionMetadata> plan = new ArrayList<>();
+    	plan.add(new TuneSectionMetadata(verseLength, TuneSection.verse));
+
+        // Top and tail with intro/outro if specified, eg to be mix-friendly.
+    	final boolean hasIntroOutro = (params.introBars() > 0);
+        if(hasIntroOutro)
+	        {
+        	plan.add(0, new TuneSectionMetadata(params.introBars(), TuneSection.intro));
+        	plan.add(new TuneSectionMetadata(params.introBars(), TuneSection.outro));
+	        }
+        return(plan);
+	    }
+
+    /**Framework MIDI generation from data directly into compact form; never null.
+     * Renders the same as genTune(), but plain/gentle data melody bars
+     * are packed as generated rather than held as objects,
+     * so much less memory is needed for long data series.
+     * Other styles are generated by genTune() then packed.
+     */
+    @SuppressWarnings("try")
+    public static PackedMIDITune genPackedTune(final GenerationParameters params, final EOUDataCSV data)
+	    {
+    	if(null == params) { throw new IllegalArgumentException(); }
+    	if(null == data) { throw new IllegalArgumentException(); }
+    	switch(params.style()) {
+			case plain, gentle: break;
+			default: return(PackedMIDITune.of(genTune(params, data)));
+			}
+
+    	// Return empty tune if no data points.
+    	if(data.data().isEmpty()) { return(PackedMIDITune.of(new MIDITune())); }
+
+    	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE))
+	    	{
+			final DataBounds db;
+			try(StageStats.Timer tb = StageStats.time(StageStats.STAGE_BOUNDS)) { db = new DataBounds(data); }
+
+	    	final List<DataProtoBar> verseProtoBars = splitAndAlignData(TuneSection.verse, params, data);
+	    	if(verseProtoBars.isEmpty()) { return(PackedMIDITune.of(new MIDITune())); }
+	    	final List<TuneSectionMetadata> plan = plainGentlePlan(params, verseProtoBars.size());
+
+	    	// Percussion first, as in plainGentleTuneFromVerse(), not for "plain".
+	    	final List<PackedMIDITrack> support = new ArrayList<>();
+	    	if(Style.plain != params.style())
+		    	{
+	    		final PackedMIDITrack perc = new PackedMIDITrack(gentlePercussionTrackSetup());
+	    		final MIDIPlayableBar bar = SupportBarGen.makeBasicGentlePercussionBar();
+	    		final int bars = plan.stream().mapToInt(TuneSectionMetadata::bars).sum();
+	    		for(int b = 0; b < bars; ++b) { perc.addSupportBar(bar, b * DEFAULT_CLOCKS_PER_BAR); }
+	    		support.add(perc.trimToSize());
+		    	}
+
+	    	// Any derived support tracks, generated in the same pass as the melody.
+	    	final List<VerseSupportGen> gens = verseSupportGens(params, DataUtils.extractDataCadenceQuick(data), db);
+	    	final PackedMIDITrack derived[] = new PackedMIDITrack[gens.size()];
+	    	Arrays.setAll(derived, i -> new PackedMIDITrack(gens.get(i).setup()));
+
+	    	// Data melody only in the verse, after any (silent) intro.
+	    	final int streams = db.streams();
+	    	final PackedMIDITrack tracks[] = new PackedMIDITrack[streams];
+	    	Arrays.setAll(tracks, i -> new PackedMIDITrack(genMIDITrackSetupGeneric(i+1, params, db,
+				"source: " + DataUtils.extractSourceName(data, i+1))));
+			final float multScaling = plainGentleMultScaling(db);
+			try(StageStats.Timer tv = StageStats.time(StageStats.STAGE_TUNE_PREFIX + TuneSection.verse))
+				{
+				int clock = Math.max(0, params.introBars()) * DEFAULT_CLOCKS_PER_BAR;
+		        for(final DataProtoBar dbp : verseProtoBars)
+		        	{
+		        	for(int s = 1; s <= streams; ++s)
+		        		{
+		        		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
+		        		tracks[s - 1].addDataBar(plainGentleDataBar(dbp, s, isNotSecondaryDataStream, multScaling), clock);
+		        		}
+		        	for(int i = 0; i < derived.length; ++i) { derived[i].addSupportBar(gens.get(i).bar(dbp), clock); }
+		        	clock += DEFAULT_CLOCKS_PER_BAR;
+		        	}
+				}
+	    	for(final PackedMIDITrack pt : tracks) { pt.trimToSize(); }
+	    	for(final PackedMIDITrack pt : derived) { support.add(pt.trimToSize()); }
+
+	    	return(new PackedMIDITune(support, Arrays.asList(tracks), new TuneSectionPlan(plan), null));
+	    	}
+	    }
+
+    /**Generators for the derived support tracks requested for a plain/gentle verse, in track order; never null.
+     * Each has fresh state, so a new list is needed for each pass over the verse.
+     *
+     * @param params  generation parameters; never null
+     * @param cadence  data cadence; never null
+     * @param db  data bounds; never null
+     */
+    static List<VerseSupportGen> verseSupportGens(final GenerationParameters params,
+    		final DataCadence cadence, final DataBounds db)
+	    {
+    	final List<VerseSupportGen> gens = new ArrayList<>();
+    	if(null != params.rolling()) { gens.add(new RollingTrackGen(params.rolling(), cadence, db)); }
+    	for(int i = 0; i < params.lags().size(); ++i)
+    		{ gens.add(new LaggedTrackGen(params.lags().get(i), i, cadence, db)); }
+    	return(gens);
+	    }
+
+    /**Track setup for the simple gentle percussion track; never null. */
+    static MIDITrackSetup gentlePercussionTrackSetup()
+	    {
+    	return(new MIDITrackSetup((byte)(MIDIConstant.GM1_PERCUSSION_CHANNEL-1),
+			(byte) 0,
+			MIDIConstant.DEFAULT_VOLUME,
+			MIDIConstant.DEFAULT_PAN,
+			"percussion: gentle"));
+	    }
+
+    /**Multiplier from data value to semitones above root for plain/gentle melody; strictly positive. */
+    static float plainGentleMultScaling(final DataBounds db)
+	    {
+		final byte range = 12 * DEFAULT_RANGE_OCTAVES;
+		return((db.maxVal() > 0) ? ((range-1)/db.maxVal()) : 1);
+	    }
+
+    /**Make one plain/gentle data melody bar for one stream from a proto bar; never null.
+     * @param dbp  proto bar; never null
+     * @param s  stream, 1-based
+     * @param isNotSecondaryDataStream  true unless a known secondary stream
+     * @param multScaling  from plainGentleMultScaling()
+     */
+    static MIDIPlayableMonophonicDataBar plainGentleDataBar(
+    		final DataProtoBar dbp,
+    		final int s,
+    		final boolean isNotSecondaryDataStream,
+    		final float multScaling)
+	    {
+		final List<List<String>> rows = dbp.dataRows().data(); // Notes in bar.
+		final int dnpb = dbp.dataNotesPerBar();
+		final List<NoteAndVelocity> notes = new ArrayList<>(dnpb);
+		for(final List<String> row : rows)
+			{
+			final Datum d = Datum.extractDatum(s, row);
+			final NoteAndVelocity n = datumToNoteAndVelocityNoScale(
+					d,
+					isNotSecondaryDataStream,
+					multScaling);
+			notes.add(n);
+			}
+
+		// Construct MIDI-playable bar for this stream.
+		return(new MIDIPlayableMonophonicDataBar(
+				dnpb, dbp, s, Collections.unmodifiableList(notes)));
+	    }
+
 	/**Generate MIDITrackSetup for a given stream (1-based); never null.
      * This knows about instrument choices, relative volumes, etc.
      * <p>
@@ -1007,11 +1393,22 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	 * @param params  generation parameters; never null
 	 * @param data  the entire ingested data set; never null
      */
+    @SuppressWarnings("try")
     public static List<DataProtoBar> splitAndAlignData(
     		final TuneSection section,
     		final GenerationParameters params,
     		final EOUDataCSV data)
 	    {
+    	try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SPLIT_ALIGN))
+    		{ return(_splitAndAlignData(section, params, data)); }
+	    }
+
+    /**Implementation of splitAndAlignData(); never null. */
+    private static List<DataProtoBar> _splitAndAlignData(
+    		final TuneSection section,
+    		final GenerationParameters params,
+    		final EOUDataCSV data)
+	    {
     	Objects.requireNonNull(section);
     	switch(section) {
     	    case verse: break;
@@ -1044,80 +1441,10 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	    final int size = data.data().size();
 	    final ArrayList<DataProtoBar> result = new ArrayList<>(2 + (size/dataNotesPerBar));
 
-		// Do alignment where appropriate.
-	    if(doAlign)
-		    {
-	    	// Do alignment.
-	    	// Assumes all input data is well-formed, well-ordered and dense (no gaps).
-	    	// Any item with least-significant date (lsd) section N should be on beat N
-	    	// (treating both schemes as 1-based).
-	    	//     * If a datum with lsd less than the current beat is encountered
-	    	//       then insert empty notes to pad the current bar to the end.
-	    	//       (Nominally the lsd should be 1 (or "01") if no gaps,
-	    	//       but we could drop through to the next rule to cope with some gaps.)
-	    	//     * If a datum with lsd greater than the current beat is encountered
-	    	//       then insert empty notes to get to beat N.
-		    final List<List<String>> bar = new ArrayList<>(dataNotesPerBar);
-	    	for(int i = 0; i < size; ++i)
-		    	{
-	    		final int currentBeatNumber = bar.size() + 1;
-
-	    		final List<String> row = data.data().get(i);
-	    		// TODO: optimisation: avoid parsing the data for each stream.
-	    		final String date = row.get(0);
-	    		final int lastDash = date.lastIndexOf('-');
-	    		if(lastDash < 0) { throw new DateTimeException("malformed date (missing '-'): " + date); }
-	    		final String lsdRaw = date.substring(lastDash + 1);
-	    		final int lsd = Integer.parseInt(lsdRaw, 10);
-	    		if(lsd <= 0) { throw new DateTimeException("malformed date (lsd <= 0): " + date); }
-	    		if(lsd > dataNotesPerBar) { throw new DateTimeException("malformed date (lsd too high): " + date); }
-
-                if(lsd < currentBeatNumber)
-	                {
-                	if(1 != lsd) { throw new DateTimeException("malformed date or missing datum: " + date + "; lsd="+lsd+", currentBeatNumber="+currentBeatNumber); }
-                    // Pad bar to end, push it out...
-        		    while(bar.size() < dataNotesPerBar) { bar.add(null); }
-        		    result.add(new DataProtoBar(dataNotesPerBar, new EOUDataCSV(Collections.unmodifiableList(new ArrayList<>(bar)))));
-                	// ... and be ready to start new bar with this note.
-        		    bar.clear();
-	                }
-                else if(lsd > currentBeatNumber)
-	                {
-	                // Insert empty notes to get to the right place.
-                	// Should only happen on a partial first bar if data is dense/complete.
-        		    while(bar.size()+1 < lsd) { bar.add(null); }
-	                }
-
-                // Add this note.
-    		    bar.add(row);
-
-    		    assert(bar.size() <= dataNotesPerBar);
-    		    if(dataNotesPerBar == bar.size())
-	    		    {
-        		    result.add(new DataProtoBar(dataNotesPerBar, new EOUDataCSV(Collections.unmodifiableList(new ArrayList<>(bar)))));
-                	// Start new bar with this note.
-        		    bar.clear();
-	    		    }
-		    	}
-
-		    // Pad the final possibly-partial bar if necessary.
-		    while(bar.size() < dataNotesPerBar) { bar.add(null); }
-		    result.add(new DataProtoBar(dataNotesPerBar, new EOUDataCSV(Collections.unmodifiableList(new ArrayList<>(bar)))));
-		    }
-	    else
-		    {
-	    	// No alignment
-			for(int i = 0; i < size; i += dataNotesPerBar)
-			    {
-			    final List<List<String>> bar = new ArrayList<>(dataNotesPerBar);
-			    // FIXME: wrap leaf List if not already Unmodifiable.
-			    for(int j = i; (j - i < dataNotesPerBar) && (j < size); ++j)
-				    { bar.add(data.data().get(j)); }
-			    // Pad the final possibly-partial bar if necessary.
-			    while(bar.size() < dataNotesPerBar) { bar.add(null); }
-			    result.add(new DataProtoBar(dataNotesPerBar, new EOUDataCSV(Collections.unmodifiableList(bar))));
-			    }
-		    }
+		// Split, aligning where appropriate.
+	    final ProtoBarAligner aligner = new ProtoBarAligner(dataNotesPerBar, doAlign, result::add);
+	    for(final List<String> row : data.data()) { aligner.add(row); }
+	    aligner.finish();
 
 	    // Be prepared to discard partial start/end bars
 	    // for Danceable tunes
@@ -1219,7 +1546,20 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
      * @param ts  track setup parameters; never null
      * @throws InvalidMidiDataException
      */
-	private static void _setupMIDITrack(final Track trackMelody, final MIDITrackSetup ts)
+	static void _setupMIDITrack(final Track trackMelody, final MIDITrackSetup ts)
+		throws InvalidMidiDataException
+		{ _setupMIDITrack(trackMelody, ts, 0, true); }
+
+    /**Set up a Track at the given clock, eg at the start of each part of a mix.
+     * The channel's expression is reset to the default.
+     *
+     * @param trackMelody  never null
+     * @param ts  track setup parameters; never null
+     * @param clock  clock at which to set up; non-negative
+     * @param withText  if true, also set the track name and comment, if any
+     * @throws InvalidMidiDataException
+     */
+	static void _setupMIDITrack(final Track trackMelody, final MIDITrackSetup ts, final long clock, final boolean withText)
 		throws InvalidMidiDataException
 	    {
 		Objects.requireNonNull(trackMelody);
@@ -1229,18 +1569,18 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 		final byte instrument = ts.instrument();
 
 		// Set the track name, if available.
-		if((null != ts.name()) && !ts.name().isBlank())
+		if(withText && (null != ts.name()) && !ts.name().isBlank())
 			{
 			final byte[] text = ts.name().getBytes(StandardCharsets.US_ASCII);
             final MetaMessage mm = new MetaMessage(MIDIConstant.METAMESSAGE_TITLE, text, text.length);
-            trackMelody.add(new MidiEvent(mm, 0));
+            trackMelody.add(new MidiEvent(mm, clock));
 			}
 		// Set the track comment, if available.
-		if((null != ts.comment()) && !ts.name().isBlank())
+		if(withText && (null != ts.comment()) && !ts.name().isBlank())
 			{
 			final byte[] text = ("comment: " + ts.comment()).getBytes(StandardCharsets.US_ASCII);
             final MetaMessage mm = new MetaMessage(MIDIConstant.METAMESSAGE_TEXT, text, text.length);
-            trackMelody.add(new MidiEvent(mm, 0));
+            trackMelody.add(new MidiEvent(mm, clock));
 			}
 
 		// Program change (setting the instrument).
@@ -1249,46 +1589,37 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 			{
 			final ShortMessage pc = new ShortMessage();
 			pc.setMessage(ShortMessage.PROGRAM_CHANGE, channel, instrument, 0);
-			trackMelody.add(new MidiEvent(pc, 0));
+			trackMelody.add(new MidiEvent(pc, clock));
 			}
 		// Volume setting (CC 7); do not assume a consistent synthesiser default.
 		// Also set expression to something sensible.
 		final ShortMessage vol = new ShortMessage();
 		vol.setMessage(ShortMessage.CONTROL_CHANGE, channel, 7, ts.volume());
-		trackMelody.add(new MidiEvent(vol, 0));
+		trackMelody.add(new MidiEvent(vol, clock));
 		final ShortMessage exp = new ShortMessage();
 		exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, MIDIConstant.DEFAULT_EXPRESSION);
-		trackMelody.add(new MidiEvent(exp, 0));
-		// Pan (if not default).
-		if(MIDIConstant.DEFAULT_PAN != ts.pan())
+		trackMelody.add(new MidiEvent(exp, clock));
+		// Pan (if not default, or always when re-setting up a channel part way through or without text,
+		// eg for a later part of a mix, so as not to inherit an earlier part's pan).
+		if((MIDIConstant.DEFAULT_PAN != ts.pan()) || (clock > 0) || !withText)
 			{
 			final ShortMessage pan = new ShortMessage();
 			pan.setMessage(ShortMessage.CONTROL_CHANGE, channel, 10, ts.pan());
-			trackMelody.add(new MidiEvent(pan, 0));
+			trackMelody.add(new MidiEvent(pan, clock));
 			}
 	    }
 
-    /**Generate a MIDI Sequence from a MIDITune; never null.
-     * @param tune  abstract tune with zero or more tracks and an optional plan; never null
+    /**Add the metadata events to the tempo (first) track.
+     * @param tempoTrack  empty track; never null
      * @param params  generation params; may be null
      * @param db  data bounds; may be null
-     * @return internal MIDI representation of the tune
      * @throws InvalidMidiDataException
      */
-    public static Sequence genFromTuneSequence(
-    		final MIDITune tune,
+    static void _setupTempoTrack(final Track tempoTrack,
     		final GenerationParameters params,
     		final DataBounds db)
 		throws InvalidMidiDataException
 	    {
-    	// Validate, including that argument is non-null.
-    	validateMIDITune(tune);
-
-		final int barClocks = DEFAULT_CLKSPQTR * DEFAULT_BEATS_PER_BAR;
-		final Sequence sequence = new Sequence(Sequence.PPQ, DEFAULT_CLKSPQTR);
-
-		// Tempo (first) track
-		final Track tempoTrack = sequence.createTrack();
 		// TODO: set tempo!
 		// Set a copyright disclaimer.
 		final byte[] copyright = "autogenerated output released as CC0 / public domain.".getBytes(StandardCharsets.US_ASCII);
@@ -1301,10 +1632,14 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
             tempoTrack.add(new MidiEvent(titleMM, 0));
 			}
         tempoTrack.add(new MidiEvent(copyrightMM, 0));
-        // Note the date and time of generation.
-        final byte[] datetime = ("generated: " + (new Date()).toString()).getBytes(StandardCharsets.US_ASCII);
-        final MetaMessage textDT = new MetaMessage(MIDIConstant.METAMESSAGE_TEXT, datetime, datetime.length);
-        tempoTrack.add(new MidiEvent(textDT, 0));
+        // Note the date and time of generation, reproducibly if need be.
+        final String generated = generatedTime(db);
+        if(null != generated)
+	        {
+	        final byte[] datetime = ("generated: " + generated).getBytes(StandardCharsets.US_ASCII);
+	        final MetaMessage textDT = new MetaMessage(MIDIConstant.METAMESSAGE_TEXT, datetime, datetime.length);
+	        tempoTrack.add(new MidiEvent(textDT, 0));
+	        }
 		if(null != params)
 			{
 			final byte[] text = ("params: " + params).getBytes(StandardCharsets.US_ASCII);
@@ -1327,126 +1662,288 @@ default -> throw new UnsupportedOperationException("NOT IMPLEMENTED YET"); // FI
 	        }
 		// TODO: markers
 		// TODO: other tempo track!
+	    }
 
-		// Generate from support tracks, eg including percussion.
-    	for(final MIDISupportTrack t : tune.supportTracks())
-	    	{
-			final Track track = sequence.createTrack();
-			final MIDITrackSetup ts = t.setup();
-			final byte channel = ts.channel();
-			_setupMIDITrack(track, ts);
-
-			// All data melody tracks start at the default expression level.
-			byte expression = MIDIConstant.DEFAULT_EXPRESSION;
+    /**Add the events for one support bar to a track; returns the expression level at the end.
+     * Events are passed on in the order generated,
+     * which may not be time order if notes overlap.
+     *
+     * @param track  destination for events; never null
+     * @param channel  MIDI channel
+     * @param b  bar; never null
+     * @param startOfBarClock  clock at start of bar
+     * @param expression  current expression (CC11) level on entry
+     */
+    static byte _addSupportBarEvents(final Consumer<MidiEvent> track, final byte channel,
+    		final MIDIPlayableBar b, final int startOfBarClock, byte expression)
+		throws InvalidMidiDataException
+	    {
+		final int barClocks = DEFAULT_CLKSPQTR * DEFAULT_BEATS_PER_BAR;
+		byte targetExpression = b.expressionStart();
+		// Change in expression per clock tick.
+		final boolean flatExpression = (b.expressionEnd() == b.expressionStart());
+		final float expressionDeltaPerClock = flatExpression ? 0f :
+				((b.expressionEnd() - b.expressionStart()) / (float) barClocks);
+
+		// Play each note in this bar.
+		for(final MIDIPlayableBar.StartNoteVelocityDuration n : b.notes())
+			{
+			final int start = startOfBarClock + n.start();
+			final int end = start + Math.max(0, n.duration() - 1);
 
-			// Generate each bar for this track.
-			// Note that the javax implementation inserts events in correct order,
-			// which means that this code can insert the on and off events easily,
-			// even when notes of differing lengths overlap or nest, etc.
-			// TODO: disallow notes extending beyond bar end, usually?
-			int clock = 0;
-			for(final MIDIPlayableBar b : t.bars())
+			// Adjust expression level just before each played note as needed.
+			if(!flatExpression)
+				{
+				targetExpression = (byte) Math.max(0, Math.min(127, Math.round(
+					b.expressionStart() + (n.start() * expressionDeltaPerClock))));
+				}
+			if(expression != targetExpression)
 				{
-				final int startOfBarClock = clock;
+				expression = targetExpression;
+				final ShortMessage exp = new ShortMessage();
+				exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, expression);
+				track.accept(new MidiEvent(exp, start));
+				}
 
-				byte targetExpression = b.expressionStart();
-				// Change in expression per clock tick.
-				final boolean flatExpression = (b.expressionEnd() == b.expressionStart());
-				final float expressionDeltaPerClock = flatExpression ? 0f :
-						((b.expressionEnd() - b.expressionStart()) / (float) barClocks);
+			// Add a note-on event to the track.
+		    final ShortMessage noteOn = new ShortMessage();
+		    noteOn.setMessage(ShortMessage.NOTE_ON, channel, n.note().note(), n.note().velocity());
+		    final MidiEvent noteOnEvent = new MidiEvent(noteOn, start);
+		    track.accept(noteOnEvent);
+		    // Add a note-off event to the track.
+		    final ShortMessage noteOff = new ShortMessage();
+		    noteOff.setMessage(ShortMessage.NOTE_OFF, channel, n.note().note(), 0);
+		    final MidiEvent noteOffEvent = new MidiEvent(noteOff, end);
+		    track.accept(noteOffEvent);
+			}
+		return(expression);
+	    }
 
-				// Play each note in this bar.
-				for(final MIDIPlayableBar.StartNoteVelocityDuration n : b.notes())
+    /**Add the events for one data melody bar to a track, in time order; returns the expression level at the end.
+     *
+     * @param trackMelody  destination for events; never null
+     * @param channel  MIDI channel
+     * @param b  bar; never null
+     * @param clock  clock at start of bar
+     * @param expression  current expression (CC11) level on entry
+     */
+    static byte _addDataBarEvents(final Consumer<MidiEvent> trackMelody, final byte channel,
+    		final MIDIPlayableMonophonicDataBar b, final int clock, byte expression)
+		throws InvalidMidiDataException
+	    {
+		final int barClocks = DEFAULT_CLKSPQTR * DEFAULT_BEATS_PER_BAR;
+		final int noteCount = b.notes().size();
+		final int clocksPerNote = barClocks / noteCount;
+		int subClock = clock;
+
+		byte targetExpression = b.expressionStart();
+		// Change in expression per note.
+		final int expressionDelta = (b.expressionEnd() - b.expressionStart()) / noteCount;
+		// FIXME: better handle case where noteCount > change in expression.
+
+		for(final NoteAndVelocity nv : b.notes())
+		    {
+			// Rest for null/missing/silent note.
+			if((null != nv) && (0 != nv.velocity()))
+				{
+				// Adjust expression level just before each played note as needed.
+				if(expression != targetExpression)
 					{
-					final int start = startOfBarClock + n.start();
-					final int end = start + Math.max(0, n.duration() - 1);
-
-					// Adjust expression level just before each played note as needed.
-					if(!flatExpression)
-						{
-						targetExpression = (byte) Math.max(0, Math.min(127, Math.round(
-							b.expressionStart() + (n.start() * expressionDeltaPerClock))));
-						}
-					if(expression != targetExpression)
-						{
-						expression = targetExpression;
-						final ShortMessage exp = new ShortMessage();
-						exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, expression);
-						track.add(new MidiEvent(exp, start));
-						}
-
-					// Add a note-on event to the track.
-				    final ShortMessage noteOn = new ShortMessage();
-				    noteOn.setMessage(ShortMessage.NOTE_ON, channel, n.note().note(), n.note().velocity());
-				    final MidiEvent noteOnEvent = new MidiEvent(noteOn, start);
-				    track.add(noteOnEvent);
-				    // Add a note-off event to the track.
-				    final ShortMessage noteOff = new ShortMessage();
-				    noteOff.setMessage(ShortMessage.NOTE_OFF, channel, n.note().note(), 0);
-				    final MidiEvent noteOffEvent = new MidiEvent(noteOff, end);
-				    track.add(noteOffEvent);
+					expression = targetExpression;
+					final ShortMessage exp = new ShortMessage();
+					exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, expression);
+					trackMelody.accept(new MidiEvent(exp, subClock));
 					}
-				clock += barClocks; // Ensure correct clocks per bar.
+
+				// Add a note-on event to the track.
+			    final ShortMessage noteOn = new ShortMessage();
+			    noteOn.setMessage(ShortMessage.NOTE_ON, channel, nv.note(), nv.velocity());
+			    final MidiEvent noteOnEvent = new MidiEvent(noteOn, subClock);
+			    trackMelody.accept(noteOnEvent);
+			    // Add a note-off event to the track.
+			    final ShortMessage noteOff = new ShortMessage();
+			    noteOff.setMessage(ShortMessage.NOTE_OFF, channel, nv.note(), 0);
+			    final MidiEvent noteOffEvent = new MidiEvent(noteOff, subClock+clocksPerNote-1);
+			    trackMelody.accept(noteOffEvent);
+				}
+
+			targetExpression += expressionDelta;
+			subClock += clocksPerNote;
+			}
+		return(expression);
+	    }
+
+    /**Add the events for a whole packed track to a track; returns the expression level at the end.
+     * Events are passed on in the order generated,
+     * which may not be time order if notes overlap.
+     *
+     * @param track  destination for events; never null
+     * @param channel  MIDI channel
+     * @param t  packed track; never null
+     * @param expression  current expression (CC11) level on entry
+     */
+    static byte _addPackedTrackEvents(final Consumer<MidiEvent> track, final byte channel,
+    		final PackedMIDITrack t, byte expression)
+		throws InvalidMidiDataException
+	    {
+    	final int size = t.size();
+    	for(int i = 0; i < size; ++i)
+	    	{
+    		final long e = t.event(i);
+			final int start = PackedMIDITrack.start(e);
+			final byte note = PackedMIDITrack.note(e);
+
+			// Adjust expression level just before each played note as needed.
+			final byte targetExpression = PackedMIDITrack.expression(e);
+			if(expression != targetExpression)
+				{
+				expression = targetExpression;
+				final ShortMessage exp = new ShortMessage();
+				exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, expression);
+				track.accept(new MidiEvent(exp, start));
 				}
+
+			// Add a note-on event to the track.
+		    final ShortMessage noteOn = new ShortMessage();
+		    noteOn.setMessage(ShortMessage.NOTE_ON, channel, note, PackedMIDITrack.velocity(e));
+		    track.accept(new MidiEvent(noteOn, start));
+		    // Add a note-off event to the track.
+		    final ShortMessage noteOff = new ShortMessage();
+		    noteOff.setMessage(ShortMessage.NOTE_OFF, channel, note, 0);
+		    track.accept(new MidiEvent(noteOff, start + PackedMIDITrack.duration(e) - 1));
 	    	}
+		return(expression);
+	    }
+
+    /**Generate a MIDI Sequence from a MIDITune; never null.
+     * The tune is packed first, then rendered as by genFromPackedTuneSequence().
+     *
+     * @param tune  abstract tune with zero or more tracks and an optional plan; never null
+     * @param params  generation params; may be null
+     * @param db  data bounds; may be null
+     * @return internal MIDI representation of the tune
+     * @throws InvalidMidiDataException
+     */
+    public static Sequence genFromTuneSequence(
+    		final MIDITune tune,
+    		final GenerationParameters params,
+    		final DataBounds db)
+		throws InvalidMidiDataException
+	    {
+    	// Validate, including that argument is non-null.
+    	validateMIDITune(tune);
+    	return(genFromPackedTuneSequence(PackedMIDITune.of(tune), params, db));
+	    }
+
+    /**Generate a MIDI Sequence from a packed tune; never null.
+     * @param tune  packed tune with zero or more tracks; never null
+     * @param params  generation params; may be null
+     * @param db  data bounds; may be null
+     * @return internal MIDI representation of the tune
+     * @throws InvalidMidiDataException
+     */
+    public static Sequence genFromPackedTuneSequence(
+    		final PackedMIDITune tune,
+    		final GenerationParameters params,
+    		final DataBounds db)
+		throws InvalidMidiDataException
+	    {
+    	Objects.requireNonNull(tune);
+		final Sequence sequence = new Sequence(Sequence.PPQ, DEFAULT_CLKSPQTR);
+
+		// Tempo (first) track
+		_setupTempoTrack(sequence.createTrack(), params, db);
 
-		// Generate from data melody tracks.
-		for(final MIDIDataMelodyTrack mt : tune.dataMelody())
+		// Generate from support tracks, eg including percussion, then data melody tracks.
+		// Note that the javax implementation inserts events in correct order,
+		// which means that this code can insert the on and off events easily,
+		// even when notes of differing lengths overlap or nest, etc.
+		for(final List<PackedMIDITrack> tracks : List.of(tune.supportTracks(), tune.dataMelody()))
 			{
-			final Track trackMelody = sequence.createTrack();
-			final MIDITrackSetup ts = mt.setup();
-			final byte channel = ts.channel();
-			_setupMIDITrack(trackMelody, ts);
+	    	for(final PackedMIDITrack t : tracks)
+		    	{
+				final Track track = sequence.createTrack();
+				_setupMIDITrack(track, t.setup());
+				// All tracks start at the default expression level.
+				_addPackedTrackEvents(track::add, t.setup().channel(), t, MIDIConstant.DEFAULT_EXPRESSION);
+		    	}
+			}
+		return(sequence);
+	    }
 
-			// All data melody tracks start at the default expression level.
-			byte expression = MIDIConstant.DEFAULT_EXPRESSION;
+    /**Write a packed tune as a Standard MIDI File, assembled from precompiled bar fragments.
+     * Gives the same bytes as MidiSystem.write() of genFromPackedTuneSequence(),
+     * but each distinct bar of each track is encoded only once,
+     * so the cost scales with the number of distinct bars rather than the total.
+     * Tracks with notes that run over a bar end are rendered note by note instead.
+     *
+     * @param tune  packed tune with zero or more tracks; never null
+     * @param params  generation params; may be null
+     * @param db  data bounds; may be null
+     * @param os  destination, not closed by this routine; never null
+     */
+    public static void genFromPackedTuneSMF(
+    		final PackedMIDITune tune,
+    		final GenerationParameters params,
+    		final DataBounds db,
+    		final OutputStream os)
+		throws IOException, InvalidMidiDataException
+	    {
+    	Objects.requireNonNull(tune);
+    	Objects.requireNonNull(os);
+		try(StreamingSMFWriter w = new StreamingSMFWriter(DEFAULT_CLKSPQTR))
+			{
+			final Track tempo = new Sequence(Sequence.PPQ, DEFAULT_CLKSPQTR).createTrack();
+			_setupTempoTrack(tempo, params, db);
+			w.createTrack().addAll(tempo);
 
-			int clock = 0;
-			for(final MIDIPlayableMonophonicDataBar b : mt.bars())
+			// Fragments are shared across tracks, eg for repeated percussion.
+			final Map<BarFragment.Key, BarFragment> fragments = new HashMap<>();
+			for(final List<PackedMIDITrack> tracks : List.of(tune.supportTracks(), tune.dataMelody()))
 				{
-				final int noteCount = b.notes().size();
-				final int clocksPerNote = barClocks / noteCount;
-				int subClock = clock;
-
-				byte targetExpression = b.expressionStart();
-				// Change in expression per note.
-				final int expressionDelta = (b.expressionEnd() - b.expressionStart()) / noteCount;
-				// FIXME: better handle case where noteCount > change in expression.
-
-				for(final NoteAndVelocity nv : b.notes())
-				    {
-					// Rest for null/missing/silent note.
-					if((null != nv) && (0 != nv.velocity()))
-						{
-						// Adjust expression level just before each played note as needed.
-						if(expression != targetExpression)
-							{
-							expression = targetExpression;
-							final ShortMessage exp = new ShortMessage();
-							exp.setMessage(ShortMessage.CONTROL_CHANGE, channel, 11, expression);
-							trackMelody.add(new MidiEvent(exp, subClock));
-							}
-
-						// Add a note-on event to the track.
-					    final ShortMessage noteOn = new ShortMessage();
-					    noteOn.setMessage(ShortMessage.NOTE_ON, channel, nv.note(), nv.velocity());
-					    final MidiEvent noteOnEvent = new MidiEvent(noteOn, subClock);
-					    trackMelody.add(noteOnEvent);
-					    // Add a note-off event to the track.
-					    final ShortMessage noteOff = new ShortMessage();
-					    noteOff.setMessage(ShortMessage.NOTE_OFF, channel, nv.note(), 0);
-					    final MidiEvent noteOffEvent = new MidiEvent(noteOff, subClock+clocksPerNote-1);
-					    trackMelody.add(noteOffEvent);
-						}
-
-					targetExpression += expressionDelta;
-					subClock += clocksPerNote;
-					}
-
-				clock += barClocks; // Ensure correct clocks per bar.
+		    	for(final PackedMIDITrack t : tracks)
+			    	{
+					final Track setup = new Sequence(Sequence.PPQ, DEFAULT_CLKSPQTR).createTrack();
+					_setupMIDITrack(setup, t.setup());
+					final StreamingSMFWriter.TrackWriter tw = w.createTrack();
+					tw.addAll(setup);
+					_addPackedTrackFragments(tw, t, fragments);
+			    	}
 				}
+			w.writeTo(os);
 			}
-		return(sequence);
+		catch(final UncheckedIOException e) { throw e.getCause(); }
+	    }
+
+    /**Add a whole packed track to a track writer, bar by bar from shared fragments where possible.
+     * @param tw  destination; never null
+     * @param t  packed track; never null
+     * @param fragments  cache of compiled fragments to use and add to; never null
+     */
+    static void _addPackedTrackFragments(final StreamingSMFWriter.TrackWriter tw,
+    		final PackedMIDITrack t, final Map<BarFragment.Key, BarFragment> fragments)
+		throws InvalidMidiDataException
+	    {
+    	final int barClocks = DEFAULT_CLOCKS_PER_BAR;
+    	if(!BarFragment.fitsBars(t, barClocks))
+	    	{
+    		_addPackedTrackEvents(tw, t.setup().channel(), t, MIDIConstant.DEFAULT_EXPRESSION);
+    		return;
+	    	}
+
+		// All tracks start at the default expression level.
+    	byte expression = MIDIConstant.DEFAULT_EXPRESSION;
+    	final int size = t.size();
+    	for(int i = 0; i < size; )
+	    	{
+    		final int barStart = (PackedMIDITrack.start(t.event(i)) / barClocks) * barClocks;
+    		int j = i + 1;
+    		while((j < size) && (PackedMIDITrack.start(t.event(j)) < barStart + barClocks)) { ++j; }
+    		final BarFragment f = fragments.computeIfAbsent(
+				BarFragment.key(t, i, j, barStart), BarFragment::compile);
+    		expression = tw.appendFragment(f, barStart, expression);
+    		i = j;
+	    	}
 	    }
 
     /**Generate a MIDICSV stream from a tune. */
@@ -30,6 +30,9 @@ public enum MIDIInstrument
 	{
 	MARIMBA(13),
 
+	/**Use for quiet derived (eg rolling-average) support tracks. */
+	DRAWBAR_ORGAN(16),
+
 	// Bass
 	ACOUSTIC_BASE(32),
 	ELECTRIC_BASE_FINGER(33),
@@ -57,7 +60,10 @@ public enum MIDIInstrument
 	LEAD_2_SAWTOOTH_WAVE(81),
 
 	/**Aka boutique 808 (GB). */
-	SYNTH_DRUM(120);
+	SYNTH_DRUM(120),
+
+	/**Use for noise/hiss support tracks. */
+	SEASHORE(122);
 
 
 	/**Raw zero-based instrument number. */
@@ -0,0 +1,196 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**Packed tunes joined end to end into one continuous timeline, eg for an album or an hour-long mix.
+ * Each part starts on the bar after the previous one ends,
+ * its events simply shifted by a clock offset, so parts are not regenerated or re-rendered.
+ * <p>
+ * Channels are allocated as in each part
+ * (data melody streams from 0, percussion on the GM1 channel, and so on, as MIDIGen does),
+ * and all the tracks on one channel become one track of the mix,
+ * with the instrument, volume, pan and expression set again at the start of each part.
+ * <p>
+ * To smooth the joins, expression (CC 11) is faded down over the last bars of each part
+ * and back up over the first bars of the next.
+ *
+ * @param tracks  the segments of each track, each all on one channel and in clock order;
+ *     non-null, and no null or empty entries
+ * @param partStarts  start clock of each part; non-null, non-decreasing
+ * @param endClock  clock at the end of the last part; non-negative
+ */
+public record MIDIMix(List<List<MIDIMix.Segment>> tracks, List<Integer> partStarts, int endClock)
+    {
+	public MIDIMix
+		{
+		tracks = tracks.stream().map(List::copyOf).toList(); // Defensive copy; rejects nulls.
+		for(final List<Segment> t : tracks) { if(t.isEmpty()) { throw new IllegalArgumentException(); } }
+		partStarts = List.copyOf(partStarts);
+		if(endClock < 0) { throw new IllegalArgumentException(); }
+		}
+
+	/**One part's contribution to a track of the mix.
+	 * @param clock  clock at which the part starts in the mix; non-negative
+	 * @param track  events of the part's track, in mix time; never null
+	 */
+	public record Segment(int clock, PackedMIDITrack track)
+		{
+		public Segment
+			{
+			if(clock < 0) { throw new IllegalArgumentException(); }
+			Objects.requireNonNull(track);
+			}
+		}
+
+	/**Default length of the fade each side of a join, in bars. */
+	public static final int DEFAULT_FADE_BARS = 2;
+
+	/**Fraction of the expression kept right at a join. */
+	private static final float MIN_FADE = 0.25f;
+
+	/**Expression scaling in (0,1] at a clock a given distance from a join. */
+	private static float fade(final int distance, final int fadeClocks)
+		{
+		if(distance >= fadeClocks) { return(1); }
+		return(MIN_FADE + (((1 - MIN_FADE) * distance) / fadeClocks));
+		}
+
+	/**Copy a part's track into mix time, fading at either end as required; never null.
+	 * @param t  track; never null
+	 * @param offset  start clock of the part in the mix
+	 * @param length  length of the part in clocks
+	 * @param fadeIn  clocks to fade in over at the start, or zero for none
+	 * @param fadeOut  clocks to fade out over at the end, or zero for none
+	 */
+	private static PackedMIDITrack shift(final PackedMIDITrack t, final int offset, final int length,
+			final int fadeIn, final int fadeOut)
+		{
+		final PackedMIDITrack result = new PackedMIDITrack(t.setup());
+		final int size = t.size();
+		for(int i = 0; i < size; ++i)
+			{
+			final long e = t.event(i);
+			final int start = PackedMIDITrack.start(e);
+			float f = 1;
+			if(0 != fadeIn) { f = Math.min(f, fade(start, fadeIn)); }
+			if(0 != fadeOut) { f = Math.min(f, fade(length - start, fadeOut)); }
+			final byte expression = (1 == f) ? PackedMIDITrack.expression(e) :
+				(byte) Math.round(f * PackedMIDITrack.expression(e));
+			result.add(offset + start, PackedMIDITrack.note(e), PackedMIDITrack.velocity(e),
+				PackedMIDITrack.duration(e), expression);
+			}
+		return(result.trimToSize());
+		}
+
+	/**Join packed tunes end to end; never null.
+	 * @param parts  tunes in play order; non-null, no null entries
+	 * @param fadeBars  bars to fade over each side of each join; non-negative
+	 * @throws IllegalArgumentException  if the mix is too long to represent
+	 */
+	public static MIDIMix stitch(final List<PackedMIDITune> parts, final int fadeBars)
+		{
+		if(fadeBars < 0) { throw new IllegalArgumentException(); }
+		final int barClocks = MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+		final int fadeClocks = fadeBars * barClocks;
+
+		// Segments by channel plus 16 times the occurrence of that channel within a part.
+		final Map<Integer, List<Segment>> byChannel = new LinkedHashMap<>();
+		final List<Integer> partStarts = new ArrayList<>(parts.size());
+		int clock = 0;
+		for(int p = 0; p < parts.size(); ++p)
+			{
+			final PackedMIDITune tune = parts.get(p);
+			final int length = ((tune.endClock() + barClocks - 1) / barClocks) * barClocks;
+			final int fadeIn = (p > 0) ? Math.min(fadeClocks, length / 2) : 0;
+			final int fadeOut = (p < parts.size() - 1) ? Math.min(fadeClocks, length / 2) : 0;
+			// Check before shifting, which would otherwise fail on the first out-of-range event.
+			if((long) clock + length > PackedMIDITrack.MAX_CLOCK) { throw new IllegalArgumentException("mix too long"); }
+			partStarts.add(clock);
+			final int occurrences[] = new int[16];
+			for(final List<PackedMIDITrack> tracks : List.of(tune.supportTracks(), tune.dataMelody()))
+				{
+				for(final PackedMIDITrack t : tracks)
+					{
+					final int channel = t.setup().channel();
+					byChannel.computeIfAbsent(channel + (16 * occurrences[channel]++), k -> new ArrayList<>())
+						.add(new Segment(clock, shift(t, clock, length, fadeIn, fadeOut)));
+					}
+				}
+			clock += length;
+			}
+		return(new MIDIMix(new ArrayList<>(byChannel.values()), partStarts, clock));
+		}
+
+	/**Write the mix as a Standard MIDI File.
+	 * Each distinct bar is encoded once, as for MIDIGen.genFromPackedTuneSMF().
+	 *
+	 * @param name  title of the mix; may be null
+	 * @param os  destination, not closed by this routine; never null
+	 */
+	@SuppressWarnings("try")
+	public void writeSMF(final String name, final OutputStream os)
+		throws IOException, InvalidMidiDataException
+		{
+		Objects.requireNonNull(os);
+		try(StreamingSMFWriter w = new StreamingSMFWriter(MIDIGen.DEFAULT_CLKSPQTR))
+			{
+			final Track tempo = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+			if((null != name) && !name.isBlank())
+				{
+				final byte[] title = name.getBytes(StandardCharsets.US_ASCII);
+				tempo.add(new MidiEvent(new MetaMessage(MIDIConstant.METAMESSAGE_TITLE, title, title.length), 0));
+				}
+			MIDIGen._setupTempoTrack(tempo, null, null);
+			w.createTrack().addAll(tempo);
+
+			final Map<BarFragment.Key, BarFragment> fragments = new HashMap<>();
+			for(final List<Segment> segments : tracks)
+				{
+				final StreamingSMFWriter.TrackWriter tw = w.createTrack();
+				boolean first = true;
+				for(final Segment s : segments)
+					{
+					// Set up afresh for each part, naming the track only once.
+					final Track setup = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+					MIDIGen._setupMIDITrack(setup, s.track().setup(), s.clock(), first);
+					tw.addAll(setup);
+					MIDIGen._addPackedTrackFragments(tw, s.track(), fragments);
+					first = false;
+					}
+				}
+			w.writeTo(os);
+			}
+		catch(final UncheckedIOException e) { throw e.getCause(); }
+		}
+    }
@@ -0,0 +1,202 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+
+/**Compact playable track, one <code>long</code> per note event.
+ * Holds the same information as a MIDIDataMelodyTrack or MIDISupportTrack
+ * once laid out in absolute time,
+ * in roughly an order of magnitude less memory,
+ * so that very long tunes (eg hours of hourly data) can be held.
+ * <p>
+ * Each event is a note at an absolute clock,
+ * with its velocity and note-on to note-off duration,
+ * and the expression (CC 11) level to be in effect when it starts.
+ * Events are in non-decreasing start clock order.
+ * <p>
+ * Event bit layout, from least significant:
+ * <ul>
+ * <li>0--6: velocity [0,127]</li>
+ * <li>7--13: note [0,127]</li>
+ * <li>14--20: expression [0,127]</li>
+ * <li>21--34: duration in clocks [1,{@link #MAX_DURATION}]</li>
+ * <li>35--62: start clock [0,{@link #MAX_CLOCK}]</li>
+ * </ul>
+ * so events sort by start clock as plain signed longs.
+ * <p>
+ * Appended to while being generated, then read by renderers.
+ * Not thread-safe while being appended to.
+ */
+public final class PackedMIDITrack
+    {
+	/**Maximum start clock: about 77 hours at 120bpm and the default clocks per quarter note. */
+	public static final int MAX_CLOCK = (1 << 28) - 1;
+	/**Maximum note duration in clocks. */
+	public static final int MAX_DURATION = (1 << 14) - 1;
+
+	/**Track setup; never null. */
+	private final MIDITrackSetup setup;
+	/**Events; only the first size are valid. */
+	private long events[];
+	/**Number of events. */
+	private int size;
+
+	/**Create an empty track.
+	 * @param setup  setup for the whole track; never null
+	 */
+	public PackedMIDITrack(final MIDITrackSetup setup)
+		{
+		Objects.requireNonNull(setup);
+		this.setup = setup;
+		events = new long[16];
+		}
+
+	/**Setup for the whole track; never null. */
+	public MIDITrackSetup setup() { return(setup); }
+
+	/**Number of events. */
+	public int size() { return(size); }
+
+	/**Get one packed event.
+	 * @param i  index [0,size()-1]
+	 */
+	public long event(final int i)
+		{
+		Objects.checkIndex(i, size);
+		return(events[i]);
+		}
+
+	/**Pack an event; never negative. */
+	public static long pack(final int start, final byte note, final byte velocity,
+			final int duration, final byte expression)
+		{
+		if((start < 0) || (start > MAX_CLOCK)) { throw new IllegalArgumentException("start " + start); }
+		if((duration < 1) || (duration > MAX_DURATION)) { throw new IllegalArgumentException("duration " + duration); }
+		if(note < 0) { throw new IllegalArgumentException(); }
+		if(velocity < 0) { throw new IllegalArgumentException(); }
+		if(expression < 0) { throw new IllegalArgumentException(); }
+		return(((long) start << 35) | ((long) duration << 21) | (expression << 14) | (note << 7) | velocity);
+		}
+
+	/**Start clock of a packed event. */
+	public static int start(final long e) { return((int) (e >>> 35)); }
+	/**Duration in clocks of a packed event. */
+	public static int duration(final long e) { return((int) (e >>> 21) & MAX_DURATION); }
+	/**Expression level of a packed event. */
+	public static byte expression(final long e) { return((byte) ((e >>> 14) & 0x7f)); }
+	/**Note of a packed event. */
+	public static byte note(final long e) { return((byte) ((e >>> 7) & 0x7f)); }
+	/**Velocity of a packed event. */
+	public static byte velocity(final long e) { return((byte) (e & 0x7f)); }
+
+	/**Append one note event, starting no earlier than the previous one. */
+	public void add(final int start, final byte note, final byte velocity,
+			final int duration, final byte expression)
+		{
+		final long e = pack(start, note, velocity, duration, expression);
+		if((size > 0) && (start < start(events[size-1]))) { throw new IllegalArgumentException("out of order"); }
+		if(size == events.length) { events = Arrays.copyOf(events, Math.max(16, 2 * size)); }
+		events[size++] = e;
+		}
+
+    /**Append the notes of one data melody bar, as MIDIGen._addDataBarEvents() would play them.
+     * Rests (null or zero-velocity notes) are omitted.
+     *
+     * @param b  bar; never null
+     * @param clock  clock at start of bar
+     */
+	public void addDataBar(final MIDIPlayableMonophonicDataBar b, final int clock)
+		{
+		final int noteCount = b.notes().size();
+		final int clocksPerNote = MIDIGen.DEFAULT_CLOCKS_PER_BAR / noteCount;
+		final int expressionDelta = (b.expressionEnd() - b.expressionStart()) / noteCount;
+		byte targetExpression = b.expressionStart();
+		int subClock = clock;
+		for(final NoteAndVelocity nv : b.notes())
+			{
+			if((null != nv) && (0 != nv.velocity()))
+				{ add(subClock, nv.note(), nv.velocity(), clocksPerNote, targetExpression); }
+			targetExpression += expressionDelta;
+			subClock += clocksPerNote;
+			}
+		}
+
+    /**Append the notes of one support bar, as MIDIGen._addSupportBarEvents() would play them.
+     *
+     * @param b  bar; never null
+     * @param clock  clock at start of bar
+     */
+	public void addSupportBar(final MIDIPlayableBar b, final int clock)
+		{
+		final boolean flatExpression = (b.expressionEnd() == b.expressionStart());
+		final float expressionDeltaPerClock = flatExpression ? 0f :
+				((b.expressionEnd() - b.expressionStart()) / (float) MIDIGen.DEFAULT_CLOCKS_PER_BAR);
+		for(final MIDIPlayableBar.StartNoteVelocityDuration n : b.notes())
+			{
+			final byte expression = flatExpression ? b.expressionStart() :
+				(byte) Math.max(0, Math.min(127, Math.round(
+					b.expressionStart() + (n.start() * expressionDeltaPerClock))));
+			add(clock + n.start(), n.note().note(), n.note().velocity(), n.duration(), expression);
+			}
+		}
+
+	/**Pack a data melody track; never null. */
+	public static PackedMIDITrack of(final MIDIDataMelodyTrack t)
+		{
+		final PackedMIDITrack p = new PackedMIDITrack(t.setup());
+		int clock = 0;
+		for(final MIDIPlayableMonophonicDataBar b : t.bars())
+			{
+			p.addDataBar(b, clock);
+			clock += MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+			}
+		return(p.trimToSize());
+		}
+
+	/**Pack a support track; never null. */
+	public static PackedMIDITrack of(final MIDISupportTrack t)
+		{
+		final PackedMIDITrack p = new PackedMIDITrack(t.setup());
+		int clock = 0;
+		for(final MIDIPlayableBar b : t.bars())
+			{
+			p.addSupportBar(b, clock);
+			clock += MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+			}
+		return(p.trimToSize());
+		}
+
+	/**Clock just after the last note-off, or zero if no notes. */
+	public int endClock()
+		{
+		int end = 0;
+		for(int i = size; --i >= 0; )
+			{ end = Math.max(end, start(events[i]) + duration(events[i])); }
+		return(end);
+		}
+
+	/**Release unused capacity once generation is complete; returns this. */
+	public PackedMIDITrack trimToSize()
+		{
+		if(events.length != size) { events = Arrays.copyOf(events, size); }
+		return(this);
+		}
+    }
@@ -0,0 +1,66 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.hd.d.statsHouse.data.DataVizBeatPoint;
+import org.hd.d.statsHouse.generic.TuneSectionPlan;
+
+/**A full MIDI 'tune' in compact form, laid out in absolute time, ready to render.
+ * The packed equivalent of MIDITune.
+ * Is immutable once its tracks are complete.
+ *
+ * @param supportTracks  the non-data tracks, rendered first;
+ *     non-null, and no null entries, but may be empty
+ * @param dataMelody  the data melody tracks;
+ *     non-null, and no null entries, but may be empty
+ * @param plan  the section plan; may be null
+ * @param dataRendered  the set of key data as rendered in the tune; may be null
+ */
+public record PackedMIDITune(List<PackedMIDITrack> supportTracks,
+		List<PackedMIDITrack> dataMelody,
+		TuneSectionPlan plan,
+		DataVizBeatPoint dataRendered)
+    {
+    public PackedMIDITune
+	    {
+	    supportTracks = List.copyOf(supportTracks); // Defensive copy; rejects nulls.
+	    dataMelody = List.copyOf(dataMelody); // Defensive copy; rejects nulls.
+	    }
+
+    /**Clock just after the last note-off of any track, or zero if no notes. */
+    public int endClock()
+	    {
+    	int end = 0;
+    	for(final PackedMIDITrack t : supportTracks) { end = Math.max(end, t.endClock()); }
+    	for(final PackedMIDITrack t : dataMelody) { end = Math.max(end, t.endClock()); }
+    	return(end);
+	    }
+
+    /**Pack a MIDITune; never null. */
+    public static PackedMIDITune of(final MIDITune tune)
+	    {
+    	Objects.requireNonNull(tune);
+    	return(new PackedMIDITune(
+			tune.supportTracks().stream().map(PackedMIDITrack::of).toList(),
+			tune.dataMelody().stream().map(PackedMIDITrack::of).toList(),
+			tune.plan(),
+			tune.dataRendered()));
+	    }
+    }
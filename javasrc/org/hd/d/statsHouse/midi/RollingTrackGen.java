@@ -0,0 +1,128 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.RollingWindow;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+
+/**Generates a quiet support track from a rolling-window statistic of the main data stream.
+ * Bars are made one at a time, in order, from the same proto bars as the data melody,
+ * so the track is generated in the same pass as the melody
+ * with each data slot adding one sample to the window.
+ * Padding slots are missing samples, so the window is always over a fixed span of time.
+ * <p>
+ * The statistic is played an octave below where the melody would play the same value,
+ * with repeated notes within a bar held;
+ * variance is played as the standard deviation so as to be in the units of the data.
+ * <p>
+ * Not thread-safe.
+ */
+public final class RollingTrackGen implements VerseSupportGen
+    {
+	/**Window over the main data stream; never null. */
+	private final RollingWindow window;
+	/**Main data stream, 1-based. */
+	private final int stream;
+	/**True if playing the square root of the statistic. */
+	private final boolean sqrt;
+	/**Multiplier from data value to semitones, as for the plain/gentle melody. */
+	private final float multScaling;
+	/**Track setup; never null. */
+	private final MIDITrackSetup setup;
+
+	/**Create a generator with an empty window.
+	 * @param spec  window specification; never null
+	 * @param cadence  data cadence, for the default window length; never null
+	 * @param db  data bounds; never null
+	 */
+	public RollingTrackGen(final RollingWindow.Spec spec, final DataCadence cadence, final DataBounds db)
+		{
+		Objects.requireNonNull(spec);
+		Objects.requireNonNull(cadence);
+		Objects.requireNonNull(db);
+		final int rows = (0 != spec.rows()) ? spec.rows() : defaultRows(cadence);
+		window = RollingWindow.of(spec.kind(), rows);
+		stream = Math.max(1, db.mainDataStream());
+		sqrt = (RollingWindow.Kind.variance == spec.kind());
+		multScaling = MIDIGen.plainGentleMultScaling(db);
+		setup = new MIDITrackSetup(MIDIConstant.GM1_PERCUSSION_CHANNEL, // Use channel one after percussion.
+			MIDIInstrument.DRAWBAR_ORGAN.instrument0,
+			(byte) (MIDIConstant.DEFAULT_VOLUME/2),
+			MIDIConstant.DEFAULT_PAN,
+			"rolling: " + new RollingWindow.Spec(spec.kind(), rows));
+		}
+
+	/**Default window length in samples for a cadence: a day, week, quarter or 3 years; strictly positive. */
+	public static int defaultRows(final DataCadence cadence)
+		{
+		return(switch(cadence) {
+			case H -> 24;
+			case D -> 7;
+			case M, Y -> 3;
+			});
+		}
+
+	@Override
+	public MIDITrackSetup setup() { return(setup); }
+
+	/**Make the next bar, advancing the window by every slot of the proto bar; never null. */
+	@Override
+	public MIDIPlayableBar bar(final DataProtoBar dbp)
+		{
+		final List<List<String>> rows = dbp.dataRows().data();
+		final int clocksPerNote = MIDIGen.DEFAULT_CLOCKS_PER_BAR / dbp.dataNotesPerBar();
+		final SortedSet<MIDIPlayableBar.StartNoteVelocityDuration> notes = new TreeSet<>();
+		int heldNote = -1;
+		int heldSlot = 0;
+		for(int i = 0; i <= rows.size(); ++i)
+			{
+			int note = -1;
+			if(i < rows.size())
+				{
+				final Datum d = Datum.extractDatum(stream, rows.get(i));
+				final float stat = window.add(
+					(null == d.value()) ? Float.NaN : d.value(),
+					(null == d.coverage()) ? 0 : d.coverage());
+				if(!Float.isNaN(stat))
+					{
+					final double v = sqrt ? Math.sqrt(stat) : stat;
+					note = (int) Math.max(0, Math.min(127, MIDIGen.DEFAULT_ROOT_NOTE - 12 + (v * multScaling)));
+					}
+				}
+			if(note == heldNote) { continue; }
+			if(heldNote >= 0)
+				{
+				notes.add(new MIDIPlayableBar.StartNoteVelocityDuration(heldSlot * clocksPerNote,
+					new NoteAndVelocity((byte) heldNote, MIDIGen.DEFAULT_MELODY_VELOCITY),
+					(i - heldSlot) * clocksPerNote));
+				}
+			heldNote = note;
+			heldSlot = i;
+			}
+		return(MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes))));
+		}
+    }
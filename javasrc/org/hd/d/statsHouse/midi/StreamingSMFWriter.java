@@ -0,0 +1,302 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**Writes a type 1 Standard MIDI File (SMF) with memory use independent of length.
+ * Each track body is spilled to a temporary file as events arrive,
+ * and the tracks are concatenated behind the file header at the end,
+ * since each track chunk must be prefixed with its length.
+ * <p>
+ * Events may be added to a track slightly out of time order,
+ * eg a long note-off after a later note-on,
+ * and are held until {@link TrackWriter#flushBefore(long)}
+ * promises that no earlier events will follow.
+ * Events with the same tick are written in the order added,
+ * as javax.sound.midi.Track does, so the output matches
+ * MidiSystem.write() of the equivalent Sequence.
+ * <p>
+ * Not thread-safe.
+ * Always close() to remove temporary files.
+ */
+public final class StreamingSMFWriter implements Closeable
+    {
+	/**Pulses (clocks) per quarter note. */
+	private final int ppq;
+	/**Tracks in order of creation. */
+	private final List<TrackWriter> tracks = new ArrayList<>();
+
+	/**Create a writer.
+	 * @param ppq  pulses (clocks) per quarter note; strictly positive and no more than 0x7fff
+	 */
+	public StreamingSMFWriter(final int ppq)
+		{
+		if((ppq < 1) || (ppq > 0x7fff)) { throw new IllegalArgumentException(); }
+		this.ppq = ppq;
+		}
+
+	/**Create a new track, after any previously created; never null. */
+	public TrackWriter createTrack() throws IOException
+		{
+		final TrackWriter t = new TrackWriter();
+		tracks.add(t);
+		return(t);
+		}
+
+	/**Finish all tracks and write the complete file; the writer cannot then be added to.
+	 * @param os  destination, not closed by this routine; never null
+	 */
+	public void writeTo(final OutputStream os) throws IOException
+		{
+		Objects.requireNonNull(os);
+		for(final TrackWriter t : tracks) { t.finish(); }
+
+		// Header chunk.
+		os.write(new byte[]{ 'M', 'T', 'h', 'd', 0, 0, 0, 6 });
+		write16(os, MIDIConstant.PREFERRED_MIDI_FILETYPE);
+		write16(os, tracks.size());
+		write16(os, ppq);
+
+		// Track chunks.
+		for(final TrackWriter t : tracks)
+			{
+			if(t.length > 0xffffffffL) { throw new IOException("track too long for SMF"); }
+			os.write(new byte[]{ 'M', 'T', 'r', 'k' });
+			write16(os, (int) (t.length >>> 16));
+			write16(os, (int) t.length);
+			Files.copy(t.spill.toPath(), os);
+			}
+		}
+
+	/**Remove all temporary files. */
+	@Override
+	public void close() throws IOException
+		{
+		for(final TrackWriter t : tracks)
+			{
+			try { t.out.close(); }
+			finally { t.spill.delete(); }
+			}
+		}
+
+	/**Encode a MIDI variable-length quantity into the end of a 4-byte buffer; returns the number of bytes used.
+	 * @throws IllegalArgumentException  if the value is negative or too large
+	 */
+	static int encodeVarLen(final long value, final byte[] buf)
+		{
+		if((value < 0) || (value > 0x0fffffff)) { throw new IllegalArgumentException("bad delta time: " + value); }
+		long v = value;
+		buf[3] = (byte) (v & 0x7f);
+		int n = 1;
+		while((v >>>= 7) > 0) { buf[3 - n] = (byte) ((v & 0x7f) | 0x80); ++n; }
+		return(n);
+		}
+
+	/**Write a 16-bit big-endian value. */
+	private static void write16(final OutputStream os, final int v) throws IOException
+		{
+		os.write(v >>> 8);
+		os.write(v);
+		}
+
+	/**Pending event, ordered by tick then order of addition. */
+	private record Pending(long tick, long seq, MidiMessage message) implements Comparable<Pending>
+		{
+		@Override
+		public int compareTo(final Pending o)
+			{
+			final int c = Long.compare(tick, o.tick);
+			return((0 != c) ? c : Long.compare(seq, o.seq));
+			}
+		}
+
+	/**Writer for one track; accepts events as a Consumer,
+	 * throwing UncheckedIOException on I/O error.
+	 */
+	public final class TrackWriter implements Consumer<MidiEvent>
+		{
+		/**Temporary file for the track body. */
+		private final File spill;
+		/**Buffered stream to spill file. */
+		private final OutputStream out;
+		/**Events not yet written. */
+		private final PriorityQueue<Pending> pending = new PriorityQueue<>();
+		/**Sequence number of next event added. */
+		private long seq;
+		/**Tick of last event written. */
+		private long lastTick;
+		/**Highest tick of any event added. */
+		private long maxTick;
+		/**Earliest tick that may still be added; advanced by flushBefore(). */
+		private long minTick;
+		/**Running status, or -1 if none. */
+		private int runningStatus = -1;
+		/**Bytes written to the body so far. */
+		private long length;
+		/**True once finished. */
+		private boolean finished;
+		/**Scratch buffer for variable-length quantities. */
+		private final byte[] varLenBuf = new byte[4];
+
+		private TrackWriter() throws IOException
+			{
+			spill = Files.createTempFile("statsHouse", ".mtrk").toFile();
+			spill.deleteOnExit();
+			out = new BufferedOutputStream(Files.newOutputStream(spill.toPath()), 1 << 16);
+			}
+
+		/**Add an event; end-of-track meta events are ignored, as one is added at the end.
+		 * @throws IllegalArgumentException  if the event is earlier than already flushed
+		 */
+		@Override
+		public void accept(final MidiEvent e)
+			{
+			Objects.requireNonNull(e);
+			if(finished) { throw new IllegalStateException("finished"); }
+			if((e.getMessage() instanceof MetaMessage mm) && (MIDIConstant.METAMESSAGE_END_OF_TRACK == mm.getType()))
+				{ return; }
+			final long tick = e.getTick();
+			if(tick < minTick) { throw new IllegalArgumentException("event before flushed time: " + tick); }
+			if(tick > maxTick) { maxTick = tick; }
+			pending.add(new Pending(tick, seq++, e.getMessage()));
+			}
+
+		/**Add all events of a javax.sound.midi.Track, eg one set up by existing code. */
+		public void addAll(final Track t)
+			{ for(int i = 0; i < t.size(); ++i) { accept(t.get(i)); } }
+
+		/**Write out all events before the given tick; no earlier events may then be added. */
+		public void flushBefore(final long tick)
+			{
+			try
+				{
+				while(!pending.isEmpty() && (pending.peek().tick < tick))
+					{ write(pending.poll()); }
+				}
+			catch(final IOException e) { throw new UncheckedIOException(e); }
+			if(tick > minTick) { minTick = tick; }
+			}
+
+		/**Append a precompiled bar fragment after all events added so far; returns the expression level at the end.
+		 * Sets the expression (CC 11) before the first note only if it differs from that on entry.
+		 *
+		 * @param f  fragment; never null
+		 * @param barStart  tick of the start of the bar
+		 * @param expression  current expression (CC11) level on entry
+		 * @throws IllegalArgumentException  if any event already added is later than the first in the fragment
+		 */
+		byte appendFragment(final BarFragment f, final long barStart, final byte expression)
+			{
+			if(finished) { throw new IllegalStateException("finished"); }
+			final long first = barStart + f.firstTick;
+			if((first < maxTick) || (first < minTick)) { throw new IllegalArgumentException("fragment before existing events: " + first); }
+			try
+				{
+				while(!pending.isEmpty()) { write(pending.poll()); }
+				if(expression != f.firstExpression)
+					{ writeShort(first, ShortMessage.CONTROL_CHANGE | f.channel, 11, f.firstExpression); }
+				writeShort(first, f.firstStatus(), f.firstNote(), f.firstVelocity());
+				final byte rest[] = f.rest();
+				writeBytes(rest, 0, rest.length);
+				}
+			catch(final IOException e) { throw new UncheckedIOException(e); }
+			lastTick = barStart + f.lastTick;
+			maxTick = lastTick;
+			minTick = lastTick;
+			runningStatus = f.lastStatus;
+			return(f.lastExpression);
+			}
+
+		/**Write one channel message with delta time, using running status where possible. */
+		private void writeShort(final long tick, final int status, final int d1, final int d2) throws IOException
+			{
+			writeVarLen(tick - lastTick);
+			lastTick = tick;
+			if(status != runningStatus) { out.write(status); ++length; runningStatus = status; }
+			out.write(d1);
+			out.write(d2);
+			length += 2;
+			}
+
+		/**Write out all remaining events and the end of track; idempotent. */
+		void finish() throws IOException
+			{
+			if(finished) { return; }
+			while(!pending.isEmpty()) { write(pending.poll()); }
+			writeVarLen(maxTick - lastTick);
+			writeBytes(new byte[]{ (byte) 0xff, MIDIConstant.METAMESSAGE_END_OF_TRACK, 0 }, 0, 3);
+			out.close();
+			finished = true;
+			}
+
+		/**Write one event with delta time. */
+		private void write(final Pending p) throws IOException
+			{
+			writeVarLen(p.tick - lastTick);
+			lastTick = p.tick;
+			final byte[] m = p.message.getMessage();
+			final int len = p.message.getLength();
+			if(p.message instanceof ShortMessage)
+				{
+				// Use running status where possible.
+				final int status = m[0] & 0xff;
+				if(status == runningStatus) { writeBytes(m, 1, len - 1); }
+				else { runningStatus = status; writeBytes(m, 0, len); }
+				}
+			else
+				{
+				// Meta and system exclusive messages cancel running status.
+				runningStatus = -1;
+				writeBytes(m, 0, len);
+				}
+			}
+
+		/**Write bytes and track length. */
+		private void writeBytes(final byte[] b, final int off, final int len) throws IOException
+			{
+			out.write(b, off, len);
+			length += len;
+			}
+
+		/**Write a MIDI variable-length quantity. */
+		private void writeVarLen(final long value) throws IOException
+			{
+			final int n;
+			try { n = encodeVarLen(value, varLenBuf); }
+			catch(final IllegalArgumentException e) { throw new IOException(e.getMessage()); }
+			writeBytes(varLenBuf, 4 - n, n);
+			}
+		}
+    }
@@ -0,0 +1,220 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.StageStats;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataScan;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.ProtoBarAligner;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.ProductionLevel;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.lib.SupportBarGen;
+
+/**Streaming, bounded-memory sonification of very long data series, plain and gentle styles only.
+ * <p>
+ * This makes two passes over the input file:
+ * the first gathers the few whole-series values needed (max value, busiest stream, etc),
+ * and the second pulls rows one at a time through the bar aligner
+ * and writes MIDI events as each bar completes.
+ * Memory use is thus independent of the length of the series.
+ * <p>
+ * The MIDI output is the same as that of MIDIGen.genTune() then genFromTuneSequence()
+ * for the same data and parameters,
+ * except for the generation timestamp.
+ */
+public final class StreamingTuneGen
+    {
+    /**Prevent creation of an instance. */
+    private StreamingTuneGen() { }
+
+    /**True if the style can be streamed. */
+    public static boolean canStream(final Style style)
+	    { return((Style.plain == style) || (Style.gentle == style)); }
+
+    /**Sonify a data CSV file to a MIDI file stream.
+     *
+     * @param params  generation parameters, with a plain or gentle style; never null
+     * @param dataCSVFile  EOU consolidated data CSV file; never null
+     * @param os  destination for the MIDI file, not closed by this routine; never null
+     */
+    @SuppressWarnings("try")
+    public static void genPlainGentle(final GenerationParameters params,
+    		final File dataCSVFile, final OutputStream os)
+		throws IOException, InvalidMidiDataException
+	    {
+    	Objects.requireNonNull(params);
+    	if(!canStream(params.style())) { throw new IllegalArgumentException("unsupported style"); }
+    	Objects.requireNonNull(dataCSVFile);
+    	Objects.requireNonNull(os);
+
+    	// First pass for whole-series values.
+    	final DataScan scan;
+		try(StageStats.Timer t = StageStats.time(StageStats.STAGE_BOUNDS))
+			{ scan = DataScan.scan(dataCSVFile); }
+		final DataBounds db = scan.bounds();
+		final DataCadence cadence = scan.cadence();
+		// As splitAndAlignData() for non-Danceable styles.
+		final boolean doAlign = cadence.canAlign() && (ProductionLevel.Gentle == params.style().level);
+		// With no verse bars the tune is empty.
+		final boolean empty = (0 == scan.rows()) && !doAlign;
+
+		try(StreamingSMFWriter w = new StreamingSMFWriter(MIDIGen.DEFAULT_CLKSPQTR))
+			{
+			final Track scratch = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+			MIDIGen._setupTempoTrack(scratch, params, db);
+			w.createTrack().addAll(scratch);
+
+			if(!empty)
+				{
+				try(StageStats.Timer t = StageStats.time(StageStats.STAGE_TUNE_PREFIX + "verse"))
+					{ _streamTracks(params, dataCSVFile, scan, db, cadence, doAlign, w); }
+				}
+
+			try(StageStats.Timer t = StageStats.time(StageStats.STAGE_SEQUENCE))
+				{ w.writeTo(os); }
+			}
+		catch(final UncheckedIOException e) { throw e.getCause(); }
+	    }
+
+    /**Second pass: stream data through the aligner into the percussion and melody tracks. */
+    private static void _streamTracks(final GenerationParameters params,
+    		final File dataCSVFile, final DataScan scan, final DataBounds db,
+    		final DataCadence cadence, final boolean doAlign, final StreamingSMFWriter w)
+		throws IOException, InvalidMidiDataException
+	    {
+		final int barClocks = MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+
+		// Percussion track, for gentle only, first as in MIDIGen.
+		final StreamingSMFWriter.TrackWriter perc;
+		final MIDIPlayableBar percBar;
+		if(Style.plain == params.style()) { perc = null; percBar = null; }
+		else
+			{
+			final Track scratch = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+			MIDIGen._setupMIDITrack(scratch, MIDIGen.gentlePercussionTrackSetup());
+			perc = w.createTrack();
+			perc.addAll(scratch);
+			percBar = SupportBarGen.makeBasicGentlePercussionBar();
+			}
+		byte percExpression = MIDIConstant.DEFAULT_EXPRESSION;
+
+		// Any derived support tracks, next as in MIDIGen.
+		final List<VerseSupportGen> gens = MIDIGen.verseSupportGens(params, cadence, db);
+		final StreamingSMFWriter.TrackWriter[] derived = new StreamingSMFWriter.TrackWriter[gens.size()];
+		final byte[] derivedExpression = new byte[gens.size()];
+		Arrays.fill(derivedExpression, MIDIConstant.DEFAULT_EXPRESSION);
+		for(int i = 0; i < derived.length; ++i)
+			{
+			final Track scratch = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+			MIDIGen._setupMIDITrack(scratch, gens.get(i).setup());
+			derived[i] = w.createTrack();
+			derived[i].addAll(scratch);
+			}
+
+		// Data melody tracks.
+		final int streams = db.streams();
+		final StreamingSMFWriter.TrackWriter[] tracks = new StreamingSMFWriter.TrackWriter[streams];
+		final MIDITrackSetup[] setups = new MIDITrackSetup[streams];
+		final byte[] expression = new byte[streams];
+		Arrays.fill(expression, MIDIConstant.DEFAULT_EXPRESSION);
+		for(int i = 0; i < streams; ++i)
+			{
+			setups[i] = MIDIGen.genMIDITrackSetupGeneric(i+1, params, db, "source: " + scan.sourceName(i+1));
+			final Track scratch = new Sequence(Sequence.PPQ, MIDIGen.DEFAULT_CLKSPQTR).createTrack();
+			MIDIGen._setupMIDITrack(scratch, setups[i]);
+			tracks[i] = w.createTrack();
+			tracks[i].addAll(scratch);
+			}
+		final float multScaling = MIDIGen.plainGentleMultScaling(db);
+
+		// Intro: percussion only.
+		int clock = 0;
+		for(int b = 0; b < params.introBars(); ++b, clock += barClocks)
+			{ percExpression = _percBar(perc, percBar, clock, percExpression); }
+
+		// Verse: one bar at a time from the aligner.
+		final List<DataProtoBar> ready = new ArrayList<>(2);
+		final ProtoBarAligner aligner = new ProtoBarAligner(cadence.defaultPerBar, doAlign, ready::add);
+		try(Reader r = new FileReader(dataCSVFile, EOUDataCSV.EOUDATACSV_CHARSET))
+			{
+			final EOUDataCSV.RowReader rr = new EOUDataCSV.RowReader(r);
+			for(boolean more = true; more; )
+				{
+				final List<String> row = rr.next();
+				if(null != row) { aligner.add(row); }
+				else { aligner.finish(); more = false; }
+
+				for(final DataProtoBar dbp : ready)
+					{
+					percExpression = _percBar(perc, percBar, clock, percExpression);
+					for(int i = 0; i < derived.length; ++i)
+						{
+						derivedExpression[i] = MIDIGen._addSupportBarEvents(derived[i], gens.get(i).setup().channel(),
+							gens.get(i).bar(dbp), clock, derivedExpression[i]);
+						}
+	            	for(int s = 1; s <= streams; ++s)
+	            		{
+	            		final boolean isNotSecondaryDataStream = params.hetero() || db.isMainDataStream(s);
+	            		final MIDIPlayableMonophonicDataBar mpmb =
+            				MIDIGen.plainGentleDataBar(dbp, s, isNotSecondaryDataStream, multScaling);
+	            		expression[s-1] = MIDIGen._addDataBarEvents(tracks[s-1], setups[s-1].channel(),
+            				mpmb, clock, expression[s-1]);
+	            		}
+	            	clock += barClocks;
+	            	for(final StreamingSMFWriter.TrackWriter t : tracks) { t.flushBefore(clock); }
+	            	for(final StreamingSMFWriter.TrackWriter t : derived) { t.flushBefore(clock); }
+					}
+				ready.clear();
+				}
+			}
+
+		// Outro: percussion only.
+		for(int b = 0; b < params.introBars(); ++b, clock += barClocks)
+			{ percExpression = _percBar(perc, percBar, clock, percExpression); }
+	    }
+
+    /**Add one percussion bar if there is a percussion track; returns the new expression level. */
+    private static byte _percBar(final StreamingSMFWriter.TrackWriter perc, final MIDIPlayableBar bar,
+    		final int clock, final byte expression)
+		throws InvalidMidiDataException
+	    {
+    	if(null == perc) { return(expression); }
+    	final byte e = MIDIGen._addSupportBarEvents(perc, MIDIConstant.GM1_PERCUSSION_CHANNEL0,
+			bar, clock, expression);
+    	perc.flushBefore(clock);
+    	return(e);
+	    }
+    }
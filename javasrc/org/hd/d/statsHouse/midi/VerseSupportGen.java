@@ -0,0 +1,35 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import org.hd.d.statsHouse.data.DataProtoBar;
+
+/**Generator of a support track derived from the data, one bar per verse proto bar.
+ * Bars are requested strictly in order, in the same pass as the data melody,
+ * so an implementation may carry state (eg a window) from bar to bar.
+ * The track is silent outside the verse.
+ */
+public sealed interface VerseSupportGen permits RollingTrackGen, LaggedTrackGen
+	{
+	/**Track setup; never null. */
+	MIDITrackSetup setup();
+
+	/**Make the bar for the next verse proto bar; never null.
+	 * @param dbp  next proto bar of the verse; never null
+	 */
+	MIDIPlayableBar bar(DataProtoBar dbp);
+	}
@@ -0,0 +1,319 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package org.hd.d.statsHouse.midi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**Renders MIDI files to WAV in parallel, reusing a pool of open software synthesizers.
+ * Rendering via AudioSystem alone creates and opens a new synthesizer for every file,
+ * so a batch of WAVs pays that start-up cost for each one.
+ * <p>
+ * Here each of a fixed number of worker threads
+ * keeps an open offline (AudioSynthesizer) stream from the JDK software synthesizer,
+ * resetting it between jobs to the state that a new synthesizer starts in.
+ * The synthesizer loads its default soundbank once per process and shares it.
+ * <p>
+ * The offline stream is not public API:
+ * it needs java.desktop/com.sun.media.sound exported to this code,
+ * as the JAR manifest and the test build do (Add-Exports).
+ * If that is not available, each job falls back to rendering via AudioSystem,
+ * still in parallel.
+ * <p>
+ * Output is 44.1kHz 16-bit stereo with a 4s tail,
+ * as AudioSystem would render it,
+ * though not necessarily bit-identical since synths are reused.
+ * <p>
+ * Thread-safe.
+ */
+public final class WAVRenderer implements Closeable
+    {
+	/**Default number of synthesizers and rendering threads; strictly positive. */
+	public static final int DEFAULT_SYNTHS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/**Tail rendered after the last whole second of events (seconds), as AudioSystem does. */
+	private static final int TAIL_S = 4;
+
+	/**Output format, as AudioSystem uses for MIDI files. */
+	private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+	/**AudioSynthesizer.openStream(AudioFormat, Map), or null if not accessible. */
+	private static final Method OPEN_STREAM = findOpenStream();
+
+	/**Find AudioSynthesizer.openStream() if accessible, else null. */
+	private static Method findOpenStream()
+		{
+		try
+			{
+			final Method m = Class.forName("com.sun.media.sound.AudioSynthesizer")
+				.getMethod("openStream", AudioFormat.class, Map.class);
+			MethodHandles.lookup().unreflect(m); // Fails if not exported to us.
+			return(m);
+			}
+		catch(final ReflectiveOperationException | RuntimeException e) { return(null); }
+		}
+
+	/**An open offline synthesizer stream; used by one thread at a time. */
+	private static final class PooledSynth implements Closeable
+		{
+		final Synthesizer synth;
+		final AudioInputStream stream;
+		final Receiver receiver;
+		/**Frames read from the stream so far, ie its time position. */
+		long framesRead;
+
+		PooledSynth(final Synthesizer synth, final AudioInputStream stream, final Receiver receiver)
+			{
+			this.synth = synth;
+			this.stream = stream;
+			this.receiver = receiver;
+			}
+
+		@Override public void close()
+			{
+			try { stream.close(); } catch(final IOException e) { /* Ignore. */ }
+			synth.close();
+			}
+		}
+
+	/**Rendering threads; never null. */
+	private final ExecutorService executor;
+	/**Idle open synthesizers; never null. */
+	private final BlockingQueue<PooledSynth> idle;
+
+	/**Create a renderer, opening its synthesizers in the background.
+	 * @param synths  number of synthesizers and rendering threads; strictly positive
+	 */
+	public WAVRenderer(final int synths)
+		{
+		if(synths < 1) { throw new IllegalArgumentException(); }
+		idle = new ArrayBlockingQueue<>(synths);
+		executor = Executors.newFixedThreadPool(synths, r -> {
+			final Thread t = new Thread(r, "statsHouse-wav");
+			t.setDaemon(true);
+			return(t);
+			});
+		if(isPooled())
+			{
+			for(int i = synths; --i >= 0; )
+				{
+				executor.execute(() -> {
+					try { release(openSynth()); }
+					catch(final MidiUnavailableException | RuntimeException e) { /* Try again when needed. */ }
+					});
+				}
+			}
+		}
+
+	/**Lazily-created shared instance. */
+	private static final class SharedHolder
+		{ static final WAVRenderer shared = new WAVRenderer(DEFAULT_SYNTHS); }
+
+	/**Get the process-wide shared renderer with DEFAULT_SYNTHS synthesizers; never null. */
+	public static WAVRenderer shared() { return(SharedHolder.shared); }
+
+	/**True if synthesizers are reused between jobs, else false if falling back to AudioSystem. */
+	public static boolean isPooled() { return(null != OPEN_STREAM); }
+
+	/**Queue a MIDI file for rendering; never null.
+	 * @param smf  standard MIDI file bytes, not modified; never null
+	 * @return  future WAV file bytes, completing exceptionally on failure
+	 */
+	public CompletableFuture<byte[]> submit(final byte smf[])
+		{
+		Objects.requireNonNull(smf);
+		return(CompletableFuture.supplyAsync(() -> {
+			try { return(isPooled() ? renderPooled(smf) : renderFresh(smf)); }
+			catch(final IOException | InvalidMidiDataException | MidiUnavailableException e)
+				{ throw new CompletionException(e); }
+			}, executor));
+		}
+
+	/**Render a MIDI file to WAV, waiting for a free synthesizer; never null.
+	 * @param smf  standard MIDI file bytes, not modified; never null
+	 * @return  WAV file bytes; never null
+	 */
+	public byte[] render(final byte smf[]) throws IOException, InvalidMidiDataException
+		{
+		try { return(submit(smf).join()); }
+		catch(final CompletionException e)
+			{
+			final Throwable c = e.getCause();
+			if(c instanceof IOException ioe) { throw ioe; }
+			if(c instanceof InvalidMidiDataException imde) { throw imde; }
+			if(c instanceof RuntimeException re) { throw re; }
+			throw new IOException(c);
+			}
+		}
+
+	/**Accept no more jobs, closing synthesizers as they become idle; queued jobs still complete. */
+	@Override
+	public void close()
+		{
+		executor.shutdown();
+		PooledSynth s;
+		while(null != (s = idle.poll())) { s.close(); }
+		}
+
+	/**Render with a new synthesizer via AudioSystem. */
+	private static byte[] renderFresh(final byte smf[]) throws IOException, InvalidMidiDataException
+		{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(16384);
+		try(final AudioInputStream stream = AudioSystem.getAudioInputStream(new ByteArrayInputStream(smf)))
+			{ AudioSystem.write(stream, AudioFileFormat.Type.WAVE, baos); }
+		catch(final UnsupportedAudioFileException e)
+			{ throw new InvalidMidiDataException(e.getMessage()); }
+		return(baos.toByteArray());
+		}
+
+	/**Open a new offline synthesizer stream. */
+	private static PooledSynth openSynth() throws MidiUnavailableException
+		{
+		final Synthesizer synth = MidiSystem.getSynthesizer();
+		try
+			{
+			final AudioInputStream stream = (AudioInputStream) OPEN_STREAM.invoke(synth, FORMAT, null);
+			return(new PooledSynth(synth, stream, synth.getReceiver()));
+			}
+		catch(final IllegalAccessException | InvocationTargetException | RuntimeException e)
+			{
+			synth.close();
+			final MidiUnavailableException mue = new MidiUnavailableException("cannot open synthesizer stream");
+			mue.initCause(e);
+			throw mue;
+			}
+		}
+
+	/**Return a synthesizer to the idle pool, or close it if the pool is full or closed. */
+	private void release(final PooledSynth s)
+		{
+		if(executor.isShutdown() || !idle.offer(s)) { s.close(); }
+		}
+
+	/**Render on a pooled synthesizer. */
+	private byte[] renderPooled(final byte smf[])
+		throws IOException, InvalidMidiDataException, MidiUnavailableException
+		{
+		final Sequence seq = MidiSystem.getSequence(new ByteArrayInputStream(smf));
+		PooledSynth s = idle.poll();
+		if(null == s) { s = openSynth(); }
+		boolean ok = false;
+		try
+			{
+			// Silence and reset everything left from any previous job:
+			// GM Off resets all channels and global settings, and is the initial mode.
+			final byte gmOff[] = { (byte) SysexMessage.SYSTEM_EXCLUSIVE, 0x7e, 0x7f, 0x09, 0x02, (byte) 0xf7 };
+			s.receiver.send(new SysexMessage(gmOff, gmOff.length), -1);
+
+			// Schedule the whole file from the point read up to in the stream
+			// (the synth's own position can lag by a block),
+			// then read just enough of the stream to cover it and the tail,
+			// the length computed as AudioSystem does.
+			final long baseUs = (long) ((s.framesRead * 1_000_000.0) / FORMAT.getFrameRate());
+			final long lastUs = send(seq, s.receiver, baseUs);
+			final long frames = (long) (FORMAT.getFrameRate() * ((lastUs / 1_000_000) + TAIL_S));
+			final InputStream unclosable = new FilterInputStream(s.stream) { @Override public void close() { } };
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 64, 64 + (frames * FORMAT.getFrameSize())));
+			try(final AudioInputStream job = new AudioInputStream(unclosable, FORMAT, frames))
+				{ AudioSystem.write(job, AudioFileFormat.Type.WAVE, baos); }
+			s.framesRead += frames;
+			ok = true;
+			return(baos.toByteArray());
+			}
+		finally
+			{
+			if(ok) { release(s); }
+			else { s.close(); }
+			}
+		}
+
+	/**Send all events of a sequence to a receiver, timestamped from a base, following tempo changes.
+	 * Timing is as AudioSystem computes it.
+	 * @return  time of the last event relative to the start of the sequence (microseconds)
+	 */
+	private static long send(final Sequence seq, final Receiver r, final long baseUs)
+		{
+		final Track tracks[] = seq.getTracks();
+		final int next[] = new int[tracks.length];
+		final float divisionType = seq.getDivisionType();
+		final int resolution = seq.getResolution();
+		long usPerQuarter = MIDIGen.DEFAULT_TEMPO;
+		long lastTick = 0;
+		long us = 0;
+		for( ; ; )
+			{
+			// Earliest next event across tracks, ties to the lowest track.
+			int best = -1;
+			long bestTick = Long.MAX_VALUE;
+			for(int i = 0; i < tracks.length; ++i)
+				{
+				if(next[i] >= tracks[i].size()) { continue; }
+				final long tick = tracks[i].get(next[i]).getTick();
+				if(tick < bestTick) { bestTick = tick; best = i; }
+				}
+			if(best < 0) { return(us); }
+			final MidiEvent e = tracks[best].get(next[best]++);
+			if(Sequence.PPQ == divisionType)
+				{ us += ((bestTick - lastTick) * usPerQuarter) / resolution; }
+			else
+				{ us = (long) ((bestTick * 1_000_000.0 * divisionType) / resolution); }
+			lastTick = bestTick;
+			final MidiMessage m = e.getMessage();
+			if(m instanceof MetaMessage mm)
+				{
+				if((Sequence.PPQ == divisionType) && (0x51 == mm.getType()) && (mm.getData().length >= 3))
+					{
+					final byte d[] = mm.getData();
+					usPerQuarter = ((d[0] & 0xff) << 16) | ((d[1] & 0xff) << 8) | (d[2] & 0xff);
+					}
+				}
+			else { r.send(m, baseUs + us); }
+			}
+		}
+    }
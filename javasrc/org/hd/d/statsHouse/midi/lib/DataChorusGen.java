@@ -20,18 +20,24 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.hd.d.statsHouse.GenerationParameters;
 import org.hd.d.statsHouse.data.DataBounds;
 import org.hd.d.statsHouse.data.DataProtoBar;
 import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.Downsampled;
 import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.SlotStatistics;
 import org.hd.d.statsHouse.generic.ChorusStyleFromData;
 import org.hd.d.statsHouse.generic.NoteAndVelocity;
 import org.hd.d.statsHouse.generic.Scale;
 import org.hd.d.statsHouse.generic.TuneSection;
 import org.hd.d.statsHouse.generic.TuneSectionMetadata;
+import org.hd.d.statsHouse.midi.MIDIBarPool;
 import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
 import org.hd.d.statsHouse.midi.MIDIPlayableMonophonicDataBar;
 
 /**Simple data-melody-track bar(s) generation. */
@@ -43,6 +49,7 @@ public final class DataChorusGen
 
 	/**Generate a house chorus data melody track section.
 	 * TODO: implement other types
+	 * @param style  chorus style; never null
 	 * @param stream  data stream index, first is 1; strictly positive
 	 * @param ts  tune section; never null
 	 * @param params  generation parameters; never null
@@ -69,18 +76,87 @@ public final class DataChorusGen
 		Objects.requireNonNull(data);
 		Objects.requireNonNull(scale);
 
+		// Skip any secondary data stream by returning empty bars.
+		if(!db.isMainDataStream(stream) && !params.hetero())
+		    { return(Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR)); }
+
+		return(makeHouseDataChorusBars(style, chorusCount, stream, ts, params, db,
+			MIDIGen.splitAndAlignData(TuneSection.verse, params, data), null, null, scale));
+		}
+
+	/**Generate a house chorus data melody track section from already split and aligned verse data.
+	 * Allows the verse data and any summary of it
+	 * to be computed once per tune rather than once per chorus and stream.
+	 *
+	 * @param style  chorus style; never null
+	 * @param stream  data stream index, first is 1; strictly positive
+	 * @param ts  tune section; never null
+	 * @param params  generation parameters; never null
+	 * @param db  data bounds; never null
+	 * @param verseProtoBars  verse proto bars as from MIDIGen.splitAndAlignData(); never null
+	 * @param stats  per-slot statistics of verseProtoBars for this stream,
+	 *     or null to compute them if needed
+	 * @param down  verseProtoBars for this stream downsampled,
+	 *     or null to compute if needed
+	 * @param scale scale to use; never null
+	 * @param chorusCount  chorus index, first is 1; strictly positive
+	 *
+	 * @return chorus section data melody track segment of correct section length; never null
+	 */
+	public static List<MIDIPlayableMonophonicDataBar> makeHouseDataChorusBars(
+			final ChorusStyleFromData style,
+			final int chorusCount,
+			final int stream,
+			final TuneSectionMetadata ts,
+			final GenerationParameters params, final DataBounds db,
+			final List<DataProtoBar> verseProtoBars, final SlotStatistics stats, final Downsampled down,
+			final Scale scale)
+		{
+		if(chorusCount < 1) { throw new IllegalArgumentException(); }
+		if(stream < 1) { throw new IllegalArgumentException(); }
+		Objects.requireNonNull(ts);
+		Objects.requireNonNull(params);
+		Objects.requireNonNull(db);
+		Objects.requireNonNull(verseProtoBars);
+		Objects.requireNonNull(scale);
+
 		// Skip any secondary data stream by returning empty bars.
 		if(!db.isMainDataStream(stream) && !params.hetero())
 		    { return(Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR)); }
 
 		// Parameterisation of melody play with scales.
 		final int octaves = MIDIGen.DEFAULT_RANGE_OCTAVES; // Math.max(1, DEFAULT_RANGE_OCTAVES/2);
-		final List<DataProtoBar> verseProtoBars = MIDIGen.splitAndAlignData(TuneSection.verse, params, data);
 		// If there are no data bars, return empty section.
 		if(verseProtoBars.isEmpty())
 	    	{ return(Collections.nCopies(ts.bars(), MIDIPlayableMonophonicDataBar.EMPTY_1_NOTE_BAR)); }
 
 	    switch(style) {
+	        // The counterpoint itself is a separate support track: see makeHouseCounterpointBars().
+	        case SyntheticRepresentativeDataBar, SyntheticRepresentativeDataBarPlusCounterpoint,
+	        	MeansPlusSyntheticRepresentativeDataBar, MeansPlusSyntheticRepresentativeDataBarPlusCounterpoint:
+		        {
+		        final SlotStatistics ss = (null != stats) ? stats : SlotStatistics.of(verseProtoBars, stream);
+		        // Fall back to a real bar if there is no data at all for this stream.
+		        if(0 == ss.maxCount())
+			        {
+		        	return(makeHouseDataChorusBars(ChorusStyleFromData.FirstFullDataBar, chorusCount, stream,
+	        			ts, params, db, verseProtoBars, ss, down, scale));
+			        }
+		        // A four-bar phrase: typical, high, typical, low,
+		        // with the first typical bar in coarse (eg quarterly) means if downsampling.
+		        final SlotStatistics first = !style.downsampled() ? ss :
+		        	((null != down) ? down : Downsampled.of(verseProtoBars, stream)).slotStatistics();
+		        final MIDIPlayableMonophonicDataBar phrase[] = {
+	        		synthesiseBar(first, null, scale, octaves, db.maxVal()),
+	        		synthesiseBar(ss, SlotStatistics.Percentile.P90, scale, octaves, db.maxVal()),
+	        		synthesiseBar(ss, SlotStatistics.Percentile.P50, scale, octaves, db.maxVal()),
+	        		synthesiseBar(ss, SlotStatistics.Percentile.P10, scale, octaves, db.maxVal()),
+		        	};
+		        final List<MIDIPlayableMonophonicDataBar> bars = new ArrayList<>(ts.bars());
+		        for(int b = 0; b < ts.bars(); ++b) { bars.add(phrase[b % phrase.length]); }
+		        return(Collections.unmodifiableList(bars));
+		        }
+
 	        default:
 	        case FirstFullDataBar:
 	        nextBar: for(final DataProtoBar dbp : verseProtoBars)
@@ -110,8 +186,8 @@ public final class DataChorusGen
 
     			// A full bar has been located.
     			// Return repeated MIDI-playable bar for this stream.
-    			final MIDIPlayableMonophonicDataBar mpmb = new MIDIPlayableMonophonicDataBar(
-    					dnpb, dbp, stream, Collections.unmodifiableList(notes));
+    			final MIDIPlayableMonophonicDataBar mpmb = MIDIBarPool.intern(new MIDIPlayableMonophonicDataBar(
+    					dnpb, dbp, stream, Collections.unmodifiableList(notes)));
     			return(Collections.nCopies(ts.bars(), mpmb));
 		        }
         	// Fall back to FirstDataBar if no full bar found.
@@ -137,9 +213,73 @@ public final class DataChorusGen
 				}
 
 			// Return repeated MIDI-playable bar for this stream.
-			final MIDIPlayableMonophonicDataBar mpmb = new MIDIPlayableMonophonicDataBar(
-					dnpb, dbp, stream, Collections.unmodifiableList(notes));
+			final MIDIPlayableMonophonicDataBar mpmb = MIDIBarPool.intern(new MIDIPlayableMonophonicDataBar(
+					dnpb, dbp, stream, Collections.unmodifiableList(notes)));
 			return(Collections.nCopies(ts.bars(), mpmb));
 	        }
 		}
+
+	/**Synthesise one bar from per-slot statistics; never null.
+	 * Slots less often present in the data (eg the 31st of the month) are softer.
+	 *
+	 * @param ss  per-slot statistics with some data; never null
+	 * @param p  percentile to play, or null for the mean
+	 */
+	private static MIDIPlayableMonophonicDataBar synthesiseBar(final SlotStatistics ss,
+			final SlotStatistics.Percentile p,
+			final Scale scale, final int octaves, final float maxVal)
+		{
+		final int slots = ss.slots();
+		final int maxCount = ss.maxCount();
+		final List<NoteAndVelocity> notes = new ArrayList<>(slots);
+		for(int i = 0; i < slots; ++i)
+			{
+			final Datum d = (0 == ss.count(i)) ? new Datum() :
+				new Datum(null, ss.count(i) / (float) maxCount, (null == p) ? ss.mean(i) : ss.percentile(p, i));
+			notes.add(MIDIGen.datumToNoteAndVelocity(
+				d,
+				true, // isNotSecondaryDataStream,
+				scale,
+				octaves,
+				maxVal));
+			}
+		return(MIDIBarPool.intern(new MIDIPlayableMonophonicDataBar(
+			slots, null, 0, Collections.unmodifiableList(notes))));
+		}
+
+	/**Generate a house chorus counterpoint section: the coarse (eg quarterly) median line an octave down,
+	 * each note lasting for its coarse slot.
+	 * Intended for a support track alongside a ...PlusCounterpoint chorus style.
+	 *
+	 * @param ts  tune section; never null
+	 * @param db  data bounds; never null
+	 * @param down  main data stream downsampled; never null
+	 * @param scale scale to use; never null
+	 * @return support track segment of correct section length; never null
+	 */
+	public static List<MIDIPlayableBar> makeHouseCounterpointBars(
+			final TuneSectionMetadata ts, final DataBounds db, final Downsampled down, final Scale scale)
+		{
+		Objects.requireNonNull(ts);
+		Objects.requireNonNull(db);
+		Objects.requireNonNull(down);
+		Objects.requireNonNull(scale);
+		final SlotStatistics ss = down.slotStatistics();
+		if(0 == ss.maxCount()) { return(Collections.nCopies(ts.bars(), MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS)); }
+
+		final MIDIPlayableMonophonicDataBar line =
+			synthesiseBar(ss, SlotStatistics.Percentile.P50, scale, MIDIGen.DEFAULT_RANGE_OCTAVES, db.maxVal());
+		final int clocksPerNote = MIDIGen.DEFAULT_CLOCKS_PER_BAR / line.dataNotesPerBar();
+		final SortedSet<MIDIPlayableBar.StartNoteVelocityDuration> notes = new TreeSet<>();
+		for(int i = 0; i < line.dataNotesPerBar(); ++i)
+			{
+			final NoteAndVelocity n = line.notes().get(i);
+			if(null == n) { continue; }
+			notes.add(new MIDIPlayableBar.StartNoteVelocityDuration(i * clocksPerNote,
+				new NoteAndVelocity((byte) Math.max(0, n.note() - 12), (byte) Math.max(1, (2 * n.velocity()) / 3)),
+				clocksPerNote));
+			}
+		final MIDIPlayableBar bar = MIDIBarPool.intern(new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes)));
+		return(Collections.nCopies(ts.bars(), bar));
+		}
 	}
@@ -27,6 +27,7 @@ import org.hd.d.statsHouse.generic.NoteAndVelocity;
 import org.hd.d.statsHouse.generic.PickOne;
 import org.hd.d.statsHouse.generic.ProgressionGroup;
 import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIBarPool;
 import org.hd.d.statsHouse.midi.MIDIGen;
 import org.hd.d.statsHouse.midi.MIDIPercusssionInstrument;
 import org.hd.d.statsHouse.midi.MIDIPlayableBar;
@@ -47,7 +48,7 @@ public final class SupportBarGen
 				MIDIGen.DEFAULT_CLOCKS_PER_BAR / 16);
 		final MIDIPlayableBar bar = new MIDIPlayableBar(
 			Collections.unmodifiableSortedSet(new TreeSet<>(Arrays.asList(snvd))));
-		return bar;
+		return(MIDIBarPool.intern(bar));
 	}
 
 	/**Create a basic house percussion bar: four on the floor.
@@ -136,7 +137,34 @@ public final class SupportBarGen
 					MIDIGen.DEFAULT_CLKSPQTR/2));
 
 		final MIDIPlayableBar bar = new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes));
-		return(bar);
+		return(MIDIBarPool.intern(bar));
+		}
+
+	/**Create a house noise (hiss) bar: evenly-spaced sixteenth-note hits as dense as the intensity.
+	 * @param intensity  noise intensity in [0,1]; 0 (or NaN) gives an empty bar
+	 * @return one bar; never null
+	 */
+	public static MIDIPlayableBar makeHouseNoiseBar(final float intensity)
+		{
+		final int slots = 16;
+		final int hits = Float.isNaN(intensity) ? 0 : Math.round(Math.max(0, Math.min(1, intensity)) * slots);
+		if(0 == hits) { return(MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS); }
+
+		// Louder as well as denser with more noise.
+		final byte v = (byte) Math.max(1, Math.round(MIDIGen.DEFAULT_MELODY_VELOCITY * ((1 + intensity) / 2)));
+		final int clocksPerSlot = MIDIGen.DEFAULT_CLOCKS_PER_BAR / slots;
+
+		final SortedSet<MIDIPlayableBar.StartNoteVelocityDuration> notes = new TreeSet<>();
+		for(int h = 0; h < hits; ++h)
+			{
+			notes.add(new MIDIPlayableBar.StartNoteVelocityDuration(
+				((h * slots) / hits) * clocksPerSlot,
+					new NoteAndVelocity(MIDIGen.DEFAULT_ROOT_NOTE, v),
+					clocksPerSlot));
+			}
+
+		final MIDIPlayableBar bar = new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes));
+		return(MIDIBarPool.intern(bar));
 		}
 
 	/**Create a basic house bass bar.
@@ -194,6 +222,6 @@ public final class SupportBarGen
 				duration));
 
 		final MIDIPlayableBar bar = new MIDIPlayableBar(Collections.unmodifiableSortedSet(notes));
-		return(bar);
+		return(MIDIBarPool.intern(bar));
 		}
 	}
@@ -0,0 +1,86 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localbench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.NoiseAnalysis;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Analysis benchmarks: noise analysis (windowed FFT autocorrelation and running variance)
+ * over long series, from already split/aligned proto bars.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AnalysisBenchmarks
+	{
+	/**Aligned proto bars and bounds. */
+	@State(Scope.Benchmark)
+	public static class SeriesInput
+		{
+		@Param({"gen-D.csv", "synth-D-100000", "synth-H-200000"})
+		public String input;
+
+		/**Verse proto bars. */
+		public List<DataProtoBar> bars;
+		/**Data bounds. */
+		public DataBounds db;
+		/**Main data stream values in slot order. */
+		public float values[];
+
+		@Setup
+		public void setup() throws IOException
+			{
+			final EOUDataCSV data = EOUDataCSV.parseEOUDataCSV(new StringReader(BenchInputs.getCSVText(input)));
+			db = new DataBounds(data);
+			bars = MIDIGen.splitAndAlignData(TuneSection.verse,
+				new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, input), data);
+			values = DataUtils.column(bars, Math.max(1, db.mainDataStream()));
+			}
+		}
+
+	/**Per-bar noise intensity from the proto bars, including column extraction. */
+	@Benchmark
+	public float[] noiseIntensity(final SeriesInput in)
+		{ return(NoiseAnalysis.intensity(in.bars, Math.max(1, in.db.mainDataStream()), in.db.maxVal())); }
+
+	/**Per-bar noise intensity from the already-extracted column. */
+	@Benchmark
+	public float[] noiseIntensityColumn(final SeriesInput in)
+		{
+		return(NoiseAnalysis.intensity(in.values, in.bars.get(0).dataNotesPerBar(),
+			NoiseAnalysis.DEFAULT_WINDOW_BARS, in.db.maxVal()));
+		}
+	}
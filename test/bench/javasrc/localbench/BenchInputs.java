@@ -0,0 +1,99 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
+import org.hd.d.statsHouse.generic.DataCadence;
+
+/**Benchmark input data, from the data samples or synthesised from them at scale.
+ * <p>
+ * Input names are either a data sample file name such as <code>gen-M.csv</code>,
+ * or <code>synthetic-M-&lt;N&gt;x</code> for the monthly sample repeated N times,
+ * each repeat shifted later by the span of the sample in months
+ * so that dates stay strictly increasing and dense, as the aligner expects,
+ * or <code>synth-&lt;C&gt;-&lt;R&gt;</code> for R rows of cadence C
+ * (H, D, M or Y) from {@link SyntheticEOUData} with three streams.
+ */
+public final class BenchInputs
+	{
+	/**Prevent instance creation. */
+	private BenchInputs() { }
+
+	/**Path of data sample (top) directory relative to the project root; not null. */
+	public final static File DATA_SAMPLE_DIR = new File("dataSample");
+
+	/**Data sample used as the basis of synthetic monthly data. */
+	public static final String SYNTHETIC_M_BASE = "gen-M.csv";
+
+	/**Prefix of synthetic monthly data input names. */
+	public static final String SYNTHETIC_M_PREFIX = "synthetic-M-";
+
+	/**Prefix of generated synthetic data input names. */
+	public static final String SYNTH_PREFIX = "synth-";
+
+	/**Seed for generated synthetic data, fixed so that runs are comparable. */
+	public static final long SYNTH_SEED = 1;
+
+	/**Get the named input as raw CSV text; never null.
+	 * @throws IOException  if the input cannot be read or the name is not understood
+	 */
+	public static String getCSVText(final String name) throws IOException
+		{
+		if(name.startsWith(SYNTH_PREFIX))
+			{
+			final String[] parts = name.split("-");
+			if(3 != parts.length) { throw new IOException("bad synthetic input name: " + name); }
+			final StringWriter sw = new StringWriter();
+			new SyntheticEOUData(DataCadence.valueOf(parts[1]), Long.parseLong(parts[2], 10), 3, 0.02f, SYNTH_SEED).write(sw);
+			return(sw.toString());
+			}
+
+		if(!name.startsWith(SYNTHETIC_M_PREFIX))
+			{ return(Files.readString(new File(DATA_SAMPLE_DIR, name).toPath(), EOUDataCSV.EOUDATACSV_CHARSET)); }
+
+		if(!name.endsWith("x")) { throw new IOException("bad synthetic input name: " + name); }
+		final int scale = Integer.parseInt(name.substring(SYNTHETIC_M_PREFIX.length(), name.length()-1), 10);
+		if(scale < 1) { throw new IOException("bad synthetic input scale: " + name); }
+
+		final List<List<String>> rows =
+			EOUDataCSV.loadEOUDataCSV(new File(DATA_SAMPLE_DIR, SYNTHETIC_M_BASE)).data();
+		final YearMonth first = YearMonth.parse(rows.get(0).get(0));
+		final YearMonth last = YearMonth.parse(rows.get(rows.size()-1).get(0));
+		final long span = first.until(last, ChronoUnit.MONTHS) + 1;
+
+		final StringBuilder sb = new StringBuilder(scale * rows.size() * 40);
+		for(int s = 0; s < scale; ++s)
+			{
+			for(final List<String> row : rows)
+				{
+				sb.append(YearMonth.parse(row.get(0)).plusMonths(s * span));
+				for(int i = 1; i < row.size(); ++i) { sb.append(',').append(row.get(i)); }
+				sb.append('\n');
+				}
+			}
+		return(sb.toString());
+		}
+	}
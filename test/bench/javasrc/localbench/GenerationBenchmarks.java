@@ -0,0 +1,80 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localbench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Generation benchmarks: split/align and whole-tune generation for each style.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GenerationBenchmarks
+	{
+	/**Parsed CSV input and generation parameters. */
+	@State(Scope.Benchmark)
+	public static class TuneInput
+		{
+		@Param({"gen-D.csv", "gen-M.csv", "imp-M.csv",
+			"synthetic-M-10x", "synthetic-M-100x", "synthetic-M-1000x",
+			"synth-D-100000"})
+		public String input;
+
+		@Param({"plain", "gentle", "house"})
+		public Style style;
+
+		/**Parsed CSV. */
+		public EOUDataCSV data;
+		/**Generation parameters, with no randomness. */
+		public GenerationParameters params;
+
+		@Setup
+		public void setup() throws IOException
+			{
+			data = EOUDataCSV.parseEOUDataCSV(new StringReader(BenchInputs.getCSVText(input)));
+			params = new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, style, 0, false, input);
+			}
+		}
+
+	/**Split and align data into proto bars for the verse. */
+	@Benchmark
+	public List<DataProtoBar> splitAndAlignData(final TuneInput in)
+		{ return(MIDIGen.splitAndAlignData(TuneSection.verse, in.params, in.data)); }
+
+	/**Generate the abstract tune. */
+	@Benchmark
+	public MIDITune genTune(final TuneInput in)
+		{ return(MIDIGen.genTune(in.params, in.data)); }
+	}
@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localbench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.feedHits.data.FeedStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Ingest benchmarks: CSV parse, data bounds, feed status record parse.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestBenchmarks
+	{
+	/**CSV input, raw and parsed. */
+	@State(Scope.Benchmark)
+	public static class CSVInput
+		{
+		@Param({"gen-D.csv", "gen-M.csv", "gen-Y.csv", "imp-M.csv",
+			"synthetic-M-10x", "synthetic-M-100x", "synthetic-M-1000x",
+			"synth-D-100000", "synth-H-1000000"})
+		public String input;
+
+		/**Raw CSV text. */
+		public String text;
+		/**Parsed CSV. */
+		public EOUDataCSV data;
+
+		@Setup
+		public void setup() throws IOException
+			{
+			text = BenchInputs.getCSVText(input);
+			data = EOUDataCSV.parseEOUDataCSV(new StringReader(text));
+			}
+		}
+
+	/**Parse CSV text into rows and fields. */
+	@Benchmark
+	public EOUDataCSV parseEOUDataCSV(final CSVInput in) throws IOException
+		{ return(EOUDataCSV.parseEOUDataCSV(new StringReader(in.text))); }
+
+	/**Compute data bounds from parsed CSV. */
+	@Benchmark
+	public DataBounds dataBounds(final CSVInput in)
+		{ return(new DataBounds(in.data)); }
+
+	/**Feed status record input. */
+	@State(Scope.Benchmark)
+	public static class FeedStatusInput
+		{
+		@Param({"ALL", "byHour", "UA"})
+		public String record;
+
+		/**Raw record text. */
+		public String line;
+
+		@Setup
+		public void setup()
+			{
+			line = switch(record) {
+				case "ALL" -> "12857 71404021 200:304:406:429:SH 2987 1993 359 7476 5129 ALL";
+				case "byHour" -> "539 2295559 200:304:406:429:SH 90 81 0 367 539 00";
+				default -> "1701 3248489 200:304:406:429:SH 183 0 0 1518 421 \"Podbean/FeedUpdate 2.1\"";
+				};
+			}
+		}
+
+	/**Parse one feed status record. */
+	@Benchmark
+	public FeedStatus parseFeedStatus(final FeedStatusInput in)
+		{ return(FeedStatus.parseRecord(in.line)); }
+	}
@@ -0,0 +1,157 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localbench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataVizBeatPoint;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIConstant;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Rendering benchmarks: Sequence construction and SMF (MIDI file) output,
+ * and visualisation data output as text and binary.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenderBenchmarks
+	{
+	/**Pre-generated abstract tune. */
+	@State(Scope.Benchmark)
+	public static class RenderInput
+		{
+		@Param({"gen-D.csv", "gen-M.csv", "imp-M.csv",
+			"synthetic-M-10x", "synthetic-M-100x", "synthetic-M-1000x"})
+		public String input;
+
+		@Param({"plain", "gentle", "house"})
+		public Style style;
+
+		/**Generation parameters, with no randomness. */
+		public GenerationParameters params;
+		/**Data bounds. */
+		public DataBounds db;
+		/**Generated abstract tune. */
+		public MIDITune tune;
+		/**Reusable output buffer. */
+		public ByteArrayOutputStream baos;
+
+		@Setup
+		public void setup() throws IOException
+			{
+			final EOUDataCSV data = EOUDataCSV.parseEOUDataCSV(new StringReader(BenchInputs.getCSVText(input)));
+			params = new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, style, 0, false, input);
+			db = new DataBounds(data);
+			tune = MIDIGen.genTune(params, data);
+			baos = new ByteArrayOutputStream(1 << 20);
+			}
+		}
+
+	/**Build the Sequence and write it as a MIDI file to memory. */
+	@Benchmark
+	public int genFromTuneSequenceAndWrite(final RenderInput in)
+		throws InvalidMidiDataException, IOException
+		{
+		final Sequence s = MIDIGen.genFromTuneSequence(in.tune, in.params, in.db);
+		in.baos.reset();
+		MidiSystem.write(s, MIDIConstant.PREFERRED_MIDI_FILETYPE, in.baos);
+		return(in.baos.size());
+		}
+	
+	/**Visualisation data the shape of a feedHits summary, one row per hour, some values missing. */
+	@State(Scope.Benchmark)
+	public static class VizInput
+		{
+		/**Number of weekly blocks of 24 hours. */
+		@Param({"52", "520"})
+		public int weeks;
+
+		/**Visualisation data. */
+		public DataVizBeatPoint dv;
+		/**Reusable output buffer. */
+		public ByteArrayOutputStream baos;
+
+		@Setup
+		public void setup()
+			{
+			final int nBeats = weeks * 24;
+			final DataVizBeatPoint.Builder b = new DataVizBeatPoint.Builder(nBeats);
+			b.addColumns(List.of("bytes/h", "hits/h", "200", "206", "304", "404"));
+			final Random r = new Random(42);
+			for(int i = 0; i < nBeats; ++i)
+				{
+				b.setBeatLabel(i, Integer.toString(i % 24));
+				for(int c = 0; c < b.nColumns(); ++c)
+					{ if(r.nextInt(20) != 0) { b.set(i, c, 1e4f * r.nextFloat() * r.nextFloat()); } }
+				}
+			dv = b.build();
+			baos = new ByteArrayOutputStream(1 << 20);
+			}
+		}
+
+	/**Write visualisation data as text with the shortest representation of each value. */
+	@Benchmark
+	public int vizWriteShortest(final VizInput in) throws IOException
+		{
+		in.baos.reset();
+		final Writer w = new OutputStreamWriter(in.baos);
+		in.dv.write(w, false, DataVizBeatPoint.SHORTEST);
+		return(in.baos.size());
+		}
+
+	/**Write visualisation data as text with fixed precision. */
+	@Benchmark
+	public int vizWriteFixed(final VizInput in) throws IOException
+		{
+		in.baos.reset();
+		final Writer w = new OutputStreamWriter(in.baos);
+		in.dv.write(w, false, DataVizBeatPoint.DEFAULT_DECIMALS);
+		return(in.baos.size());
+		}
+
+	/**Write visualisation data as gnuplot binary. */
+	@Benchmark
+	public int vizWriteBinary(final VizInput in) throws IOException
+		{
+		in.baos.reset();
+		in.dv.writeBinary(in.baos);
+		return(in.baos.size());
+		}
+	}
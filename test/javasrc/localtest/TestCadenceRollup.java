@@ -0,0 +1,154 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hd.d.statsHouse.Main;
+import org.hd.d.statsHouse.data.CadenceRollup;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
+import org.hd.d.statsHouse.generic.DataCadence;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test rolling up data to coarser cadences. */
+public final class TestCadenceRollup extends TestCase
+    {
+	/**Load one of the main data samples by name. */
+	private static ExternalFile sample(final String name)
+		{ return(TestCSVDataSamples.mainFileDataSamples().stream().filter(ef -> name.equals(ef.name())).findFirst().get()); }
+
+	/**Rows of the stream for a device, by date. */
+	private static Map<String, Datum> byDate(final EOUDataCSV data, final String device)
+		{
+		final Map<String, Datum> result = new HashMap<>();
+		for(final List<String> row : data.data())
+			{
+			for(int s = 1; 3 * s < row.size(); ++s)
+				{
+				final Datum d = Datum.extractDatum(s, row);
+				if(device.equals(d.source())) { result.put(row.get(0), d); }
+				}
+			}
+		return(result);
+		}
+
+	/**Test that daily data rolls up to monthly and yearly totals matching those files. */
+	public static void testDailyRollup() throws IOException
+		{
+		final Map<DataCadence, EOUDataCSV> all = CadenceRollup.load(sample("gen-D.csv").getFullPath(), CadenceRollup.Aggregate.sum);
+		assertEquals(3, all.size());
+		final EOUDataCSV daily = sample("gen-D.csv").loadEOUDataCSV();
+		assertEquals(daily.data(), all.get(DataCadence.D).data());
+		assertEquals(DataCadence.M, DataUtils.extractDataCadenceQuick(all.get(DataCadence.M)));
+		assertEquals(DataCadence.Y, DataUtils.extractDataCadenceQuick(all.get(DataCadence.Y)));
+
+		// Complete periods match the separately-made files,
+		// which were not all made from the same day's data.
+		for(final String name : new String[]{ "gen-M.csv", "gen-Y.csv" })
+			{
+			final DataCadence cadence = sample(name).cadenceExpected();
+			final Map<String, Datum> expected = byDate(sample(name).loadEOUDataCSV(), "SunnyBeam");
+			final Map<String, Datum> actual = byDate(all.get(cadence), "SunnyBeam");
+			assertEquals(expected.keySet(), actual.keySet());
+			for(final String date : expected.keySet())
+				{
+				final Datum e = expected.get(date), a = actual.get(date);
+				if(1 != e.coverage()) { continue; }
+				assertEquals(date, e.value(), a.value(), 1e-5f * Math.max(1, e.value()));
+				assertTrue(date, a.coverage() > 0.9f); // The daily file may lack a day or so.
+				}
+			}
+		// 4 days of February in a leap year.
+		assertEquals(List.of("2008-02", "SunnyBeam", "0.137931", "3.54"), all.get(DataCadence.M).data().get(0));
+
+		// Rolling up in memory gives the same, as does rolling up the monthly totals.
+		final Map<DataCadence, EOUDataCSV> again = CadenceRollup.rollUp(daily, CadenceRollup.Aggregate.sum);
+		assertEquals(all.get(DataCadence.M), again.get(DataCadence.M));
+		assertEquals(all.get(DataCadence.Y), again.get(DataCadence.Y));
+		final EOUDataCSV yFromM = CadenceRollup.rollUp(all.get(DataCadence.M), CadenceRollup.Aggregate.sum).get(DataCadence.Y);
+		assertEquals(all.get(DataCadence.Y).data().size(), yFromM.data().size());
+		for(int i = 0; i < yFromM.data().size(); ++i)
+			{
+			assertEquals(Datum.extractDatum(1, all.get(DataCadence.Y).data().get(i)).value(),
+				Datum.extractDatum(1, yFromM.data().get(i)).value(), 0.01f);
+			}
+		}
+
+	/**Test hourly roll-up with gaps, multiple streams and means. */
+	public static void testHourlyRollup() throws IOException
+		{
+		final String csv =
+			"#YYYY-MM-DDTHH,device,coverage,value\n" +
+			"2024-02-01T00,a,1,2\n" +
+			"2024-02-01T01,a,0.5,4,b,1,1\n" +
+			"2024-02-02T00,,,,b,1,3\n";
+		final Map<DataCadence, EOUDataCSV> sum = CadenceRollup.parse(new StringReader(csv), CadenceRollup.Aggregate.sum);
+		assertEquals(EOUDataCSV.parseEOUDataCSV(new StringReader(csv)), sum.get(DataCadence.H));
+		assertEquals(List.of(
+				List.of("2024-02-01", "a", "0.0625", "6", "b", "0.04166667", "1"),
+				List.of("2024-02-02", "", "", "", "b", "0.04166667", "3")),
+			sum.get(DataCadence.D).data());
+		assertEquals(List.of(List.of("2024-02", "a", "0.002155172", "6", "b", "0.002873563", "4")),
+			sum.get(DataCadence.M).data());
+		final Map<DataCadence, EOUDataCSV> mean = CadenceRollup.parse(new StringReader(csv), CadenceRollup.Aggregate.mean);
+		assertEquals(List.of("2024-02-01", "a", "0.0625", "2.666667", "b", "0.04166667", "1"), mean.get(DataCadence.D).data().get(0));
+		assertEquals(List.of("2024", "a", "0.000170765", "2.666667", "b", "0.0002276867", "2"), mean.get(DataCadence.Y).data().get(0));
+
+		// Synthetic hourly data rolls up to full days.
+		final StringWriter sw = new StringWriter();
+		new SyntheticEOUData(DataCadence.H, 24 * 10, 2, 0, 1).write(sw);
+		final EOUDataCSV daily = CadenceRollup.parse(new StringReader(sw.toString()), CadenceRollup.Aggregate.sum).get(DataCadence.D);
+		assertEquals(10, daily.data().size());
+		for(final List<String> row : daily.data()) { assertEquals("1", row.get(2)); }
+
+		try { CadenceRollup.parse(new StringReader("2024-02-02\n2024-01-01\n"), CadenceRollup.Aggregate.sum); fail(); }
+		catch(final IOException e) { /* Expected. */ }
+		try { CadenceRollup.parse(new StringReader("2024-02\n2024-03-01\n"), CadenceRollup.Aggregate.sum); fail(); }
+		catch(final IOException e) { /* Expected. */ }
+		}
+
+	/**Test that one daily file makes tunes at each cadence from the command runner. */
+	public static void testCommands() throws IOException
+		{
+		final String input = sample("gen-D.csv").getFullPath().toString();
+		final File outM = File.createTempFile("rollupM", ".mid");
+		outM.deleteOnExit();
+		final File outY = File.createTempFile("rollupY", ".mid");
+		outY.deleteOnExit();
+		outM.delete();
+		outY.delete();
+		Main.runCommands(List.of(
+			List.of(input, outM.toString(), "-rollup", "M", "-style", "gentle"),
+			List.of(input, outY.toString(), "-style", "plain", "-rollupMean", "Y")), true);
+		assertTrue(outM.length() > 0);
+		assertTrue(outY.length() > 0);
+
+		try { Main.runCommands(List.of(List.of(sample("gen-M.csv").getFullPath().toString(), outM.toString(), "-rollup", "D")), true); fail(); }
+		catch(final RuntimeException e) { /* Expected. */ }
+		}
+    }
@@ -0,0 +1,137 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.DateTimeException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.Main;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataMerge;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.PackedDate;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIGen;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test packed dates and merge-joining of data sets. */
+public final class TestDataMerge extends TestCase
+    {
+	/**Test that packed dates of each cadence are consecutive and ordered. */
+	public static void testPack()
+		{
+		assertEquals(2024, PackedDate.pack("2024"));
+		assertEquals(PackedDate.pack("2023-12") + 1, PackedDate.pack("2024-01"));
+		assertEquals(0, PackedDate.pack("1970-01-01"));
+		assertEquals(PackedDate.pack("2024-02-28") + 2, PackedDate.pack("2024-03-01"));
+		assertEquals(PackedDate.pack("2023-02-28") + 1, PackedDate.pack("2023-03-01"));
+		assertEquals(PackedDate.epochHour("2024-03-01T05"), PackedDate.pack("2024-03-01T05"));
+		assertEquals(24 * PackedDate.pack("2024-03-01"), PackedDate.pack("2024-03-01T00"));
+		for(final String bad : new String[]{ "", "202", "2024-13", "2024-02-30", "2024/01", "2024-01-0x", "2024-1-01" })
+			{
+			try { PackedDate.pack(bad); fail(bad); }
+			catch(final DateTimeException e) { /* Expected. */ }
+			}
+		}
+
+	/**Parse inline CSV. */
+	private static EOUDataCSV csv(final String s) throws IOException
+		{ return(EOUDataCSV.parseEOUDataCSV(new StringReader(s))); }
+
+	/**Test merging with gaps, and rejection of bad inputs. */
+	public static void testMergeSmall() throws IOException
+		{
+		final EOUDataCSV a = csv("2024-01-01,a,1,1\n2024-01-03,a,1,3\n");
+		final EOUDataCSV b = csv("2024-01-02,b,1,20,c,0.5,21\n2024-01-03,b,1,30\n2024-01-04,b,1,40,c,1,41\n");
+		final EOUDataCSV m = DataMerge.merge(List.of(a, b));
+		assertEquals(List.of(
+				List.of("2024-01-01", "a", "1", "1", "", "", "", "", "", ""),
+				List.of("2024-01-02", "", "", "", "b", "1", "20", "c", "0.5", "21"),
+				List.of("2024-01-03", "a", "1", "3", "b", "1", "30", "", "", ""),
+				List.of("2024-01-04", "", "", "", "b", "1", "40", "c", "1", "41")),
+			m.data());
+		assertEquals(3, new DataBounds(m).streams());
+		assertTrue(DataMerge.merge(List.of()).data().isEmpty());
+		assertEquals(a, DataMerge.merge(List.of(csv(""), a)));
+
+		// Explicit selection, in any order.
+		assertEquals(List.of("2024-01-02", "c", "0.5", "21", "", "", ""),
+			DataMerge.merge(List.of(a, b), List.of(new DataMerge.Source(1, 2), new DataMerge.Source(0, 1))).data().get(1));
+
+		for(final List<EOUDataCSV> bad : List.of(
+				List.of(a, csv("2024-01,x,1,1\n")),
+				List.of(a, csv("2024-01-02,x,1,1\n2024-02,x,1,1\n")),
+				List.of(a, csv("2024-01-02,x,1,1\n2024-01-02,x,1,1\n")),
+				List.of(a, csv("2024-01-02,x,1,1\n2024-01-01,x,1,1\n")),
+				List.of(a, a, a, a, a)))
+			{
+			try { DataMerge.merge(bad); fail(); }
+			catch(final IllegalArgumentException e) { /* Expected. */ }
+			}
+		}
+
+	/**Test merging real files that have more streams between them than can be used. */
+	public static void testMergeFiles() throws IOException
+		{
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		final EOUDataCSV imp = samples.get(0).loadEOUDataCSV();
+		final EOUDataCSV gen = samples.get(2).loadEOUDataCSV();
+		final List<DataMerge.Source> streams = DataMerge.selectStreams(List.of(imp, gen));
+		// Main meter and SunnyBeam streams, plus the first of each.
+		assertEquals(List.of(new DataMerge.Source(0, 1), new DataMerge.Source(0, 3),
+			new DataMerge.Source(1, 1), new DataMerge.Source(1, 3)), streams);
+
+		final EOUDataCSV m = DataMerge.merge(List.of(imp, gen), streams);
+		final TreeSet<String> dates = new TreeSet<>();
+		final Map<String, List<String>> impRows = new HashMap<>(), genRows = new HashMap<>();
+		for(final List<String> row : imp.data()) { dates.add(row.get(0)); impRows.put(row.get(0), row); }
+		for(final List<String> row : gen.data()) { dates.add(row.get(0)); genRows.put(row.get(0), row); }
+		assertEquals(List.copyOf(dates), m.data().stream().map(r -> r.get(0)).toList());
+		for(final List<String> row : m.data())
+			{
+			assertEquals(13, row.size());
+			final List<String> i = impRows.get(row.get(0)), g = genRows.get(row.get(0));
+			assertEquals((null == i) ? "" : i.get(9), row.get(6));
+			assertEquals((null == g) ? "" : g.get(9), row.get(12));
+			}
+
+		MIDIGen.validateMIDITune(MIDIGen.genTune(
+			new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, true, "imp+gen"), m));
+		}
+
+	/**Test merging from the command runner. */
+	public static void testCommand() throws IOException
+		{
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		final String input = samples.get(0).getFullPath() + "+" + samples.get(2).getFullPath();
+		assertEquals(2, Main.splitInputFileNames(input).size());
+		final File out = File.createTempFile("merge", ".mid");
+		out.deleteOnExit();
+		out.delete();
+		Main.runCommands(List.of(List.of(input, out.toString(), "-hetero", "-style", "gentle")), true);
+		assertTrue(out.length() > 0);
+		}
+    }
@@ -0,0 +1,129 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hd.d.statsHouse.data.DataVizBeatPoint;
+
+import junit.framework.TestCase;
+
+/**Test the data visualisation matrix, its builder, and its text and binary output. */
+public final class TestDataVizBeatPoint extends TestCase
+    {
+	/**Text output of a data set at the given precision; never null. */
+	private static String text(final DataVizBeatPoint dv, final boolean commaSep, final int decimals) throws IOException
+		{
+		final StringWriter sw = new StringWriter();
+		dv.write(sw, commaSep, decimals);
+		return(sw.toString());
+		}
+
+	/**Test that the builder appends columns, keeping values already set, with missing values as NaN. */
+	public static void testBuilder()
+		{
+		final DataVizBeatPoint.Builder b = new DataVizBeatPoint.Builder(3);
+		assertEquals(0, b.addColumns(List.of("a", "b")));
+		b.set(0, 0, 1);
+		b.set(2, 1, 6);
+		assertEquals(2, b.addColumns(List.of("c")));
+		b.set(1, 2, 7);
+		final DataVizBeatPoint dv = b.build();
+		assertEquals(3, dv.nBeats());
+		assertEquals(3, dv.nColumns());
+		assertEquals(List.of("a", "b", "c"), dv.dataLabels());
+		assertNull(dv.beatLabels());
+		assertEquals(1f, dv.value(0, 0));
+		assertEquals(6f, dv.value(2, 1));
+		assertEquals(7f, dv.value(1, 2));
+		assertTrue(Float.isNaN(dv.value(0, 2)));
+		assertNull(dv.dataRendered().get(0).get(2));
+		assertEquals(7f, dv.dataRendered().get(1).get(2));
+
+		// Immutable, with value equality.
+		dv.values()[0] = 99;
+		assertEquals(1f, dv.value(0, 0));
+		assertEquals(dv, new DataVizBeatPoint(3, 3, dv.dataLabels(), dv.dataRendered(), null));
+
+		try { b.set(3, 0, 1); fail(); }
+		catch(final IndexOutOfBoundsException e) { /* Expected. */ }
+		try { new DataVizBeatPoint(2, 2, null, new float[3], null); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+
+	/**Test that text output keeps its format: labels, beat labels, and placeholders for missing values. */
+	public static void testWrite() throws IOException
+		{
+		final DataVizBeatPoint dv = new DataVizBeatPoint(3, 2, Arrays.asList("x y", null),
+			Arrays.asList(List.of(1.5f, 1e-5f), null, Arrays.asList(-2f, null)),
+			Arrays.asList("b,1", null, "b3"));
+		assertEquals("beat x_y ?\nb,1 1.5 1.0E-5\n? ? ?\nb3 -2.0 ?\n", text(dv, false, DataVizBeatPoint.SHORTEST));
+		assertEquals("beat,x_y,?\nb,1,1.5,0\n?,?,?\nb3,-2,?\n", text(dv, true, 3));
+		}
+
+	/**Test fixed-precision formatting against BigDecimal rounding. */
+	public static void testFixedPrecision() throws IOException
+		{
+		final float samples[] = { 0, -0f, 1, 0.5f, 0.0625f, 473.28572f, -0.0004f, 12345.678f, 99.9996f, 1e11f, 3e12f, Float.POSITIVE_INFINITY };
+		for(final int decimals : new int[]{ 0, 1, 3, DataVizBeatPoint.MAX_DECIMALS })
+			{
+			final DataVizBeatPoint dv = new DataVizBeatPoint(samples.length, 1, null, samples, null);
+			final String lines[] = text(dv, false, decimals).split("\n");
+			assertEquals(samples.length, lines.length);
+			for(int i = 0; i < samples.length; ++i)
+				{
+				final float v = samples[i];
+				if(!(Math.abs(v) < 1e12)) { assertEquals(Float.toString(v), lines[i]); continue; }
+				final String expected = new BigDecimal(Math.abs((double) v))
+					.setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+				final String e = (v < 0) && !"0".equals(expected) ? ("-" + expected) : expected;
+				assertEquals(v + " @" + decimals, e, lines[i]);
+				}
+			}
+		}
+
+	/**Test that binary output is row-major little-endian floats with NaN for missing. */
+	public static void testWriteBinary() throws IOException
+		{
+		final int nBeats = 1000, nColumns = 3;
+		final DataVizBeatPoint.Builder b = new DataVizBeatPoint.Builder(nBeats);
+		b.addColumns(List.of("a", "b", "c"));
+		for(int i = 0; i < nBeats; ++i) { b.set(i, i % nColumns, i / 7f); }
+		final DataVizBeatPoint dv = b.build();
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		dv.writeBinary(baos);
+		assertEquals(nBeats * nColumns * 4, baos.size());
+		final ByteBuffer bb = ByteBuffer.wrap(baos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < nBeats; ++i)
+			{
+			for(int c = 0; c < nColumns; ++c)
+				{
+				final float v = bb.getFloat();
+				if(c == (i % nColumns)) { assertEquals(i / 7f, v); }
+				else { assertTrue(Float.isNaN(v)); }
+				}
+			}
+		}
+    }
@@ -0,0 +1,157 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.Downsampled;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.ChorusStyleFromData;
+import org.hd.d.statsHouse.generic.Scale;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.generic.TuneSectionMetadata;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDIPlayableMonophonicDataBar;
+import org.hd.d.statsHouse.midi.MIDISupportTrack;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.lib.DataChorusGen;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test downsampling of verse data and the chorus styles and counterpoint made from it. */
+public final class TestDownsampled extends TestCase
+    {
+	/**Test default factors. */
+	public static void testDefaultFactor()
+		{
+		assertEquals(3, Downsampled.defaultFactor(12));
+		assertEquals(8, Downsampled.defaultFactor(32));
+		assertEquals(6, Downsampled.defaultFactor(24));
+		assertEquals(1, Downsampled.defaultFactor(4));
+		assertEquals(1, Downsampled.defaultFactor(7));
+		}
+
+	/**Test that coarse values are the coverage-weighted means of each run of slots. */
+	public static void testWeightedMeans() throws IOException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final int stream = Math.max(1, new DataBounds(data).mainDataStream());
+			final List<DataProtoBar> bars = MIDIGen.splitAndAlignData(TuneSection.verse,
+				new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, ef.name()), data);
+			final Downsampled down = Downsampled.of(bars, stream);
+			final int factor = down.factor();
+			// The same from columns parsed once.
+			final float coverage[] = new float[bars.size() * bars.get(0).dataNotesPerBar()];
+			final float values[] = DataUtils.columns(bars, stream, coverage);
+			assertTrue(Arrays.equals(DataUtils.column(bars, stream), values));
+			final Downsampled fromColumns = Downsampled.of(values, coverage, bars.get(0).dataNotesPerBar(), factor);
+			for(int i = 0; i < bars.size() * down.slotsPerBar(); ++i)
+				{
+				assertEquals(down.value(i), fromColumns.value(i));
+				assertEquals(down.coverage(i), fromColumns.coverage(i));
+				}
+			assertEquals(bars.get(0).dataNotesPerBar(), factor * down.slotsPerBar());
+			assertEquals(bars.size(), down.bars());
+			int c = 0;
+			for(final DataProtoBar b : bars)
+				{
+				for(int s = 0; s < down.slotsPerBar(); ++s, ++c)
+					{
+					double sw = 0, swv = 0;
+					for(int i = s * factor; i < (s + 1) * factor; ++i)
+						{
+						final Datum d = Datum.extractDatum(stream, b.dataRows().data().get(i));
+						if((null == d.value()) || (null == d.coverage()) || !(d.coverage() > 0)) { continue; }
+						sw += d.coverage();
+						swv += d.coverage() * d.value();
+						}
+					if(0 == sw) { assertTrue(Float.isNaN(down.value(c))); assertEquals(0f, down.coverage(c)); continue; }
+					assertEquals(swv / sw, down.value(c), 1e-3 * Math.abs(swv / sw));
+					assertEquals(Math.min(1, sw / factor), down.coverage(c), 1e-5);
+					}
+				}
+			}
+
+		try { Downsampled.of(List.of(new DataProtoBar(12, new EOUDataCSV(Collections.nCopies(12, null)))), 1, 5); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+
+	/**Test the downsampled chorus phrase and counterpoint on monthly data. */
+	public static void testMeansChorusAndCounterpoint() throws IOException
+		{
+		final EOUDataCSV data = TestCSVDataSamples.mainFileDataSamples().stream()
+			.filter(ef -> "gen-M.csv".equals(ef.name())).findFirst().get().loadEOUDataCSV();
+		final DataBounds db = new DataBounds(data);
+		final GenerationParameters params =
+			new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, "gen-M");
+		final TuneSectionMetadata ts = new TuneSectionMetadata(8, TuneSection.chorus);
+		final int stream = Math.max(1, db.mainDataStream());
+		final List<MIDIPlayableMonophonicDataBar> bars = DataChorusGen.makeHouseDataChorusBars(
+			ChorusStyleFromData.MeansPlusSyntheticRepresentativeDataBar, 1, stream, ts, params, db, data, Scale.MAJOR);
+		assertEquals(8, bars.size());
+		assertEquals(4, bars.get(0).dataNotesPerBar()); // Quarterly.
+		assertEquals(12, bars.get(1).dataNotesPerBar());
+		assertSame(bars.get(0), bars.get(4));
+
+		final List<DataProtoBar> verse = MIDIGen.splitAndAlignData(TuneSection.verse, params, data);
+		final List<MIDIPlayableBar> cp = DataChorusGen.makeHouseCounterpointBars(ts, db, Downsampled.of(verse, stream), Scale.MAJOR);
+		assertEquals(8, cp.size());
+		assertEquals(4, cp.get(0).notes().size());
+		}
+
+	/**Test that with randomness house tunes sometimes get a valid counterpoint track, silent outside choruses. */
+	public static void testHouseCounterpointTrack() throws IOException, InvalidMidiDataException
+		{
+		final EOUDataCSV data = TestCSVDataSamples.mainFileDataSamples().get(0).loadEOUDataCSV();
+		int withCounterpoint = 0;
+		for(int seed = 2; seed < 40; ++seed)
+			{
+			final GenerationParameters params = new GenerationParameters(seed, Style.house, 0, false, "counterpoint");
+			final MIDITune tune = MIDIGen.genTune(params, data);
+			MIDIGen.validateMIDITune(tune);
+			assertNotNull(MIDIGen.genFromTuneSequence(tune, params, new DataBounds(data)));
+			for(final MIDISupportTrack t : tune.supportTracks())
+				{
+				if(!"counterpoint: house".equals(t.setup().name())) { continue; }
+				++withCounterpoint;
+				assertEquals(tune.supportTracks().get(0).bars().size(), t.bars().size());
+				int b = 0;
+				for(final TuneSectionMetadata s : tune.plan().sections())
+					{
+					for(int i = 0; i < s.bars(); ++i, ++b)
+						{ if(TuneSection.chorus != s.sectionType()) { assertTrue(t.bars().get(b).notes().isEmpty()); } }
+					}
+				}
+			}
+		assertTrue(withCounterpoint > 0);
+		}
+    }
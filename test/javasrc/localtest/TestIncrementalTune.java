@@ -0,0 +1,207 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.IncrementalTune;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+import localtest.support.MIDITestUtils;
+
+/**Test incremental re-sonification of a growing data file. */
+public final class TestIncrementalTune extends TestCase
+    {
+	/**MIDI file bytes of a tune without the generation timestamp, for comparison. */
+	private static String smfOf(final MIDITune tune, final GenerationParameters params, final DataBounds db)
+		throws IOException
+		{
+		final byte smf[];
+		try { smf = MIDITestUtils.smf(tune, params, db); }
+		catch(final InvalidMidiDataException e) { throw new IOException(e); }
+		return(new String(smf, StandardCharsets.ISO_8859_1).replaceAll("generated: [^\\x00-\\x1f]+", ""));
+		}
+
+	/**Append text to a file. */
+	private static void append(final File f, final String s) throws IOException
+		{
+		try(OutputStream os = new FileOutputStream(f, true))
+			{ os.write(s.getBytes(StandardCharsets.US_ASCII)); }
+		}
+
+	/**Check that the snapshot matches whole-file generation. */
+	private static void assertMatchesWhole(final String message, final File f,
+			final GenerationParameters params, final IncrementalTune.Snapshot snapshot)
+		throws IOException
+		{
+		final EOUDataCSV data = EOUDataCSV.loadEOUDataCSV(f);
+		final DataBounds db = new DataBounds(data);
+		assertEquals(message, db, snapshot.bounds());
+		assertEquals(message, smfOf(MIDIGen.genTune(params, data), params, db),
+			smfOf(snapshot.tune(), params, snapshot.bounds()));
+		}
+
+	/**Test that growing a file a few lines at a time gives the same tune as generating from scratch. */
+	public static void testGrowMatchesWhole() throws IOException
+		{
+		final File f = File.createTempFile("incr", ".csv");
+		f.deleteOnExit();
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final List<String> lines = Files.readAllLines(ef.getFullPath().toPath(), StandardCharsets.US_ASCII);
+			for(final Style style : new Style[]{ Style.plain, Style.gentle, Style.house })
+				{
+				final GenerationParameters params = new GenerationParameters(
+					GenerationParameters.RANDOMNESS_NONE, style, (Style.house == style) ? 0 : 2, false, ef.name());
+				Files.write(f.toPath(), new byte[0]);
+				final IncrementalTune it = new IncrementalTune(f, params);
+				assertMatchesWhole(ef.name(), f, params, it.update());
+
+				// Grow by steps of varying size, ending with a single row.
+				int done = 0;
+				for(int step = 1; done < lines.size(); step = 1 + ((step * 7) % 397))
+					{
+					final int n = Math.min(step, lines.size() - done);
+					append(f, String.join("\n", lines.subList(done, done + n)) + "\n");
+					done += n;
+					assertMatchesWhole(ef.name() + " " + style + " " + done, f, params, it.update());
+					}
+				}
+			}
+		}
+
+	/**Test that appending one day to a long daily file parses one row and generates few bars. */
+	public static void testAppendOneDay() throws IOException
+		{
+		final File f = File.createTempFile("incr", ".csv");
+		f.deleteOnExit();
+		final ExternalFile ef = TestCSVDataSamples.mainFileDataSamples().get(1);
+		assertEquals("gen-D.csv", ef.name());
+		final List<String> lines = Files.readAllLines(ef.getFullPath().toPath(), StandardCharsets.US_ASCII);
+		// Find the last data row, skipping any trailing blank or comment lines.
+		int last = lines.size() - 1;
+		while(lines.get(last).isEmpty() || lines.get(last).startsWith("#")) { --last; }
+		Files.write(f.toPath(), lines.subList(0, last), StandardCharsets.US_ASCII);
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, ef.name());
+		final IncrementalTune it = new IncrementalTune(f, params);
+		final DataBounds before = it.update().bounds();
+		assertEquals(ef.recordsExpected() - 1, it.lastRowsParsed());
+
+		append(f, String.join("\n", lines.subList(last, lines.size())) + "\n");
+		final IncrementalTune.Snapshot s = it.update();
+		assertEquals(1, it.lastRowsParsed());
+		if(before.maxVal() == s.bounds().maxVal())
+			{ assertTrue(it.lastBarsGenerated() <= 2); }
+		assertMatchesWhole(ef.name(), f, params, s);
+
+		// No change, or an unterminated line, is a no-op.
+		assertSame(s, it.update());
+		append(f, "2099-01-01,,");
+		assertSame(s, it.update());
+		assertEquals(0, it.lastRowsParsed());
+		}
+
+	/**Test that rewriting (rather than appending to) the file causes a full re-parse. */
+	public static void testRewrite() throws IOException
+		{
+		final File f = File.createTempFile("incr", ".csv");
+		f.deleteOnExit();
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.plain, 0, false, null);
+		final IncrementalTune it = new IncrementalTune(f, params);
+		for(final ExternalFile ef : samples)
+			{
+			Files.copy(ef.getFullPath().toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			assertMatchesWhole(ef.name(), f, params, it.update());
+			assertEquals(ef.recordsExpected(), it.lastRowsParsed());
+			}
+		}
+    
+	/**Test that a change just before the old end is detected cheaply, with or without growth. */
+	public static void testRewriteNearEnd() throws IOException
+		{
+		final File f = File.createTempFile("incr", ".csv");
+		f.deleteOnExit();
+		final ExternalFile ef = TestCSVDataSamples.mainFileDataSamples().get(1);
+		final List<String> lines = Files.readAllLines(ef.getFullPath().toPath(), StandardCharsets.US_ASCII);
+		int last = lines.size() - 1;
+		while(lines.get(last).isEmpty() || lines.get(last).startsWith("#")) { --last; }
+		Files.write(f.toPath(), lines.subList(0, last), StandardCharsets.US_ASCII);
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.plain, 0, false, ef.name());
+		final IncrementalTune it = new IncrementalTune(f, params);
+		it.update();
+		assertEquals(ef.recordsExpected() - 1, it.lastRowsParsed());
+
+		// Change one digit of the last row parsed, keeping the length.
+		final List<String> changed = new ArrayList<>(lines);
+		final StringBuilder sb = new StringBuilder(changed.get(last - 1));
+		int i = sb.length() - 1;
+		while(!Character.isDigit(sb.charAt(i))) { --i; }
+		sb.setCharAt(i, (char) ('0' + ((sb.charAt(i) - '0' + 1) % 10)));
+		changed.set(last - 1, sb.toString());
+		Files.write(f.toPath(), changed.subList(0, last), StandardCharsets.US_ASCII);
+		assertTrue(f.setLastModified(f.lastModified() + 2000));
+		assertMatchesWhole(ef.name(), f, params, it.update());
+		assertEquals(ef.recordsExpected() - 1, it.lastRowsParsed());
+
+		// Change it back and append the final row.
+		Files.write(f.toPath(), lines.subList(0, last + 1), StandardCharsets.US_ASCII);
+		assertMatchesWhole(ef.name(), f, params, it.update());
+		assertEquals(ef.recordsExpected(), it.lastRowsParsed());
+		}
+
+	/**Test that shared instances are reused, and that the least-recently used is dropped beyond the limit. */
+	public static void testCacheBounded() throws IOException
+		{
+		IncrementalTune.clearCache();
+		final File f = new File("x.csv");
+		final GenerationParameters first = new GenerationParameters(2, Style.plain, 0, false, null);
+		final GenerationParameters recent = new GenerationParameters(3, Style.plain, 0, false, null);
+		final IncrementalTune it = IncrementalTune.forInput(f, first);
+		final IncrementalTune itRecent = IncrementalTune.forInput(f, recent);
+		assertSame(it, IncrementalTune.forInput(f, new GenerationParameters(2, Style.plain, 0, false, null)));
+		// Seeds as if from successive reloads of a watched command file.
+		for(int seed = 4; seed < 4 + IncrementalTune.MAX_CACHED; ++seed)
+			{
+			assertSame(itRecent, IncrementalTune.forInput(f, recent));
+			IncrementalTune.forInput(f, new GenerationParameters(seed, Style.plain, 0, false, null));
+			}
+		assertSame(itRecent, IncrementalTune.forInput(f, recent));
+		assertNotSame(it, IncrementalTune.forInput(f, first));
+		IncrementalTune.clearCache();
+		}
+    }
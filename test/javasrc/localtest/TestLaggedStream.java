@@ -0,0 +1,175 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.LaggedStream;
+import org.hd.d.statsHouse.data.PackedDate;
+import org.hd.d.statsHouse.data.RollingWindow;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+import localtest.support.MIDITestUtils;
+
+/**Test lagged views of the data and the companion voices made from them. */
+public final class TestLaggedStream extends TestCase
+    {
+	/**Test parsing of lags. */
+	public static void testSpec()
+		{
+		assertEquals(new LaggedStream.Spec(7, false), LaggedStream.Spec.parse("7"));
+		assertEquals(List.of(new LaggedStream.Spec(1, true), new LaggedStream.Spec(7, false)),
+			LaggedStream.Spec.parseList("1c,7"));
+		assertEquals("1c", LaggedStream.Spec.parse("1c").toString());
+		for(final String bad : new String[]{ "", "0", "c", "-1c", "1,", "x" })
+			{
+			try { LaggedStream.Spec.parseList(bad); fail(bad); }
+			catch(final IllegalArgumentException e) { /* Expected. */ }
+			}
+		assertEquals(List.of(new LaggedStream.Spec(24, false)),
+			GenerationParameters.parseOptionalCommandArguments(List.of("-lag", "24"), null).lags());
+		try { GenerationParameters.parseOptionalCommandArguments(List.of("-lag", "1,2,3,4,5"), null); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		try { GenerationParameters.parseOptionalCommandArguments(List.of("-style", "house", "-lag", "1c"), null); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+
+	/**Aligned gentle proto bars of hourly data with some hours missing. */
+	private static List<DataProtoBar> hourlyWithGaps() throws IOException
+		{
+		final StringWriter sw = new StringWriter();
+		new SyntheticEOUData(DataCadence.H, 24 * 5, 1, 0, 1).write(sw);
+		final StringBuilder sb = new StringBuilder();
+		int line = 0;
+		for(final String l : sw.toString().split("\n"))
+			{
+			// Drop a few single hours, and most of day 3.
+			++line;
+			if(((line % 17) == 0) || ((line > 50) && (line < 70))) { continue; }
+			sb.append(l).append('\n');
+			}
+		final EOUDataCSV data = EOUDataCSV.parseEOUDataCSV(new StringReader(sb.toString()));
+		return(MIDIGen.splitAndAlignData(TuneSection.verse,
+			new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, null), data));
+		}
+
+	/**Test that a cycle lag gives the same hour the day before, where present, as references to the same rows. */
+	public static void testCycleLag() throws IOException
+		{
+		final List<DataProtoBar> bars = hourlyWithGaps();
+		final Map<Integer, List<String>> byHour = new HashMap<>();
+		for(final DataProtoBar b : bars)
+			{ for(final List<String> row : b.dataRows().data()) { if(null != row) { byHour.put(PackedDate.epochHour(row.get(0)), row); } } }
+
+		final LaggedStream ls = new LaggedStream(LaggedStream.Spec.parse("1c"), DataCadence.H.defaultCycle);
+		assertEquals(24, ls.length());
+		int checked = 0;
+		for(final DataProtoBar b : bars)
+			{
+			final DataProtoBar lagged = ls.next(b);
+			assertEquals(b.dataNotesPerBar(), lagged.dataNotesPerBar());
+			for(int i = 0; i < b.dataNotesPerBar(); ++i)
+				{
+				final List<String> row = b.dataRows().data().get(i);
+				final List<String> l = lagged.dataRows().data().get(i);
+				if(null == row) { continue; }
+				final List<String> expected = byHour.get(PackedDate.epochHour(row.get(0)) - 24);
+				assertSame(expected, l);
+				if(null != l) { ++checked; }
+				}
+			}
+		assertTrue(checked > 24);
+		}
+
+	/**Test that a row lag skips padding and plays only where the data does. */
+	public static void testRowLag() throws IOException
+		{
+		final List<DataProtoBar> bars = hourlyWithGaps();
+		final List<List<String>> rows = new ArrayList<>();
+		for(final DataProtoBar b : bars)
+			{ for(final List<String> row : b.dataRows().data()) { if(null != row) { rows.add(row); } } }
+
+		final LaggedStream ls = new LaggedStream(LaggedStream.Spec.parse("3"), DataCadence.H.defaultCycle);
+		int n = 0;
+		for(final DataProtoBar b : bars)
+			{
+			final DataProtoBar lagged = ls.next(b);
+			for(int i = 0; i < b.dataNotesPerBar(); ++i)
+				{
+				final List<String> l = lagged.dataRows().data().get(i);
+				if(null == b.dataRows().data().get(i)) { assertNull(l); continue; }
+				assertSame((n < 3) ? null : rows.get(n - 3), l);
+				++n;
+				}
+			}
+		assertEquals(rows.size(), n);
+		}
+
+	/**Test that a row-lagged voice replays the melody's notes that many data rows late,
+	 * alongside a cycle-lagged voice and the rolling track,
+	 * the same way in full, packed and streamed generation.
+	 */
+	public static void testLaggedTracks() throws IOException, InvalidMidiDataException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final int main = Math.max(1, new DataBounds(ef.loadEOUDataCSV()).mainDataStream()) - 1;
+			for(final Style style : new Style[]{ Style.plain, Style.gentle })
+				{
+				final String what = ef.name() + " " + style;
+				final MIDITune full = MIDITestUtils.genFullPackedStreamed(new GenerationParameters(
+					GenerationParameters.RANDOMNESS_NONE, style, 2, false, ef.name(),
+					RollingWindow.Spec.parse("mean"), LaggedStream.Spec.parseList("1c,7")), ef);
+				final int n = full.supportTracks().size();
+				assertEquals("lagged: 1c", full.supportTracks().get(n-2).setup().name());
+				assertEquals("lagged: 7", full.supportTracks().get(n-1).setup().name());
+
+				// The lag-7 voice plays the melody's pitches in order, all but at most the last 7.
+				final List<NoteAndVelocity> melody =
+					new ArrayList<>(MIDITestUtils.verseNotes(full, full.dataMelody().get(main).bars()).values());
+				final List<MIDIPlayableBar.StartNoteVelocityDuration> lagged =
+					new ArrayList<>(MIDITestUtils.verseSupportNotes(full, full.supportTracks().get(n-1).bars()).values());
+				assertFalse(what, lagged.isEmpty());
+				assertTrue(what, lagged.size() <= melody.size());
+				assertTrue(what, lagged.size() >= melody.size() - 7);
+				for(int i = 0; i < lagged.size(); ++i)
+					{ assertEquals(what + " " + i, melody.get(i).note(), lagged.get(i).note().note()); }
+				}
+			}
+		}
+    }
@@ -0,0 +1,137 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.LivePlayer;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITrackSetup;
+import org.hd.d.statsHouse.midi.PackedMIDITrack;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test live playback to a Receiver. */
+public final class TestLivePlayer extends TestCase
+    {
+	/**Receiver that records what it is sent, with the time of receipt. */
+	private static final class RecordingReceiver implements Receiver
+		{
+		final List<byte[]> messages = new ArrayList<>();
+		final List<Long> nanos = new ArrayList<>();
+		@Override public synchronized void send(final MidiMessage message, final long timeStamp)
+			{
+			messages.add(message.getMessage());
+			nanos.add(System.nanoTime());
+			}
+		@Override public void close() { }
+		/**Messages for one channel, in order sent. */
+		synchronized List<String> channel(final int ch)
+			{
+			final List<String> l = new ArrayList<>();
+			for(final byte m[] : messages) { if((m[0] & 0xf) == ch) { l.add(Arrays.toString(m)); } }
+			return(l);
+			}
+		}
+
+	/**Short messages for one track of a sequence, in order. */
+	private static List<String> shortMessages(final Track t)
+		{
+		final List<String> l = new ArrayList<>();
+		for(int i = 0; i < t.size(); ++i)
+			{
+			final MidiMessage m = t.get(i).getMessage();
+			if(m instanceof ShortMessage) { l.add(Arrays.toString(m.getMessage())); }
+			}
+		return(l);
+		}
+
+	/**Test that a whole tune is sent, each track in Sequence order, and not early. */
+	public static void testPlaysAsSequence() throws IOException, InvalidMidiDataException, InterruptedException
+		{
+		final ExternalFile ef = TestCSVDataSamples.mainFileDataSamples().get(0);
+		final EOUDataCSV data = ef.loadEOUDataCSV();
+		final DataBounds db = new DataBounds(data);
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, ef.name());
+		final PackedMIDITune tune = MIDIGen.genPackedTune(params, data);
+		assertTrue(tune.endClock() > 0);
+
+		final long nanosPerClock = 1000;
+		final RecordingReceiver r = new RecordingReceiver();
+		final long before = System.nanoTime();
+		try(final LivePlayer p = new LivePlayer(r, nanosPerClock))
+			{
+			p.start(tune);
+			p.await();
+			}
+		final long after = System.nanoTime();
+		assertTrue("not early", (after - before) >= (tune.endClock() - 1) * nanosPerClock);
+
+		final Sequence s = MIDIGen.genFromPackedTuneSequence(tune, params, db);
+		final List<PackedMIDITrack> tracks = new ArrayList<>(tune.supportTracks());
+		tracks.addAll(tune.dataMelody());
+		int expected = 0;
+		for(int i = 0; i < tracks.size(); ++i)
+			{
+			// Track 0 of the sequence is the tempo track.
+			final List<String> fromSequence = shortMessages(s.getTracks()[i+1]);
+			assertEquals(fromSequence, r.channel(tracks.get(i).setup().channel()));
+			expected += fromSequence.size();
+			}
+		assertEquals(expected, r.messages.size());
+		}
+
+	/**Test that a stopped player stops promptly and silences its channels. */
+	public static void testStop() throws InterruptedException
+		{
+		final PackedMIDITrack t = new PackedMIDITrack(new MIDITrackSetup((byte) 5, (byte) 0));
+		for(int b = 0; b < 100; ++b)
+			{ t.add(b * MIDIGen.DEFAULT_CLOCKS_PER_BAR, (byte) 60, (byte) 63, MIDIGen.DEFAULT_CLOCKS_PER_BAR, (byte) 127); }
+		final PackedMIDITune tune = new PackedMIDITune(List.of(), List.of(t), null, null);
+
+		final RecordingReceiver r = new RecordingReceiver();
+		final LivePlayer p = new LivePlayer(r);
+		p.start(tune);
+		try { p.start(tune); fail(); }
+		catch(final IllegalStateException e) { /* Expected. */ }
+		Thread.sleep(50);
+		final long before = System.nanoTime();
+		p.close();
+		assertTrue("prompt", (System.nanoTime() - before) < 1_000_000_000L);
+		p.await();
+		assertTrue(p.position() < MIDIGen.DEFAULT_CLOCKS_PER_BAR);
+		final List<String> sent = r.channel(5);
+		assertEquals(Arrays.toString(new byte[]{ (byte) (ShortMessage.CONTROL_CHANGE | 5), 123, 0 }), sent.get(sent.size()-1));
+		}
+    }
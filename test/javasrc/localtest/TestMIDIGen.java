@@ -19,17 +19,26 @@ package localtest;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.Sequence;
 
 import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataProtoBar;
 import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
 import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIBarPool;
 import org.hd.d.statsHouse.midi.MIDIConstant;
 import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDIPlayableMonophonicDataBar;
 import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.lib.SupportBarGen;
 
 import junit.framework.TestCase;
 import localtest.support.BuiltInCSVDataSamples;
@@ -239,4 +248,37 @@ public final class TestMIDIGen extends TestCase
 	    assertTrue("expect persussion note(s)",
     		result1.supportTracks().stream().anyMatch(st -> !st.bars().isEmpty()));
 	    }
+
+    /**Test that equal bars share one pooled instance. */
+    public static void testBarPool()
+	    {
+    	assertSame(SupportBarGen.makeBasicGentlePercussionBar(), SupportBarGen.makeBasicGentlePercussionBar());
+    	final MIDIPlayableBar bar = SupportBarGen.makeBasicGentlePercussionBar();
+    	final MIDIPlayableBar faded1 = MIDIBarPool.intern(bar.cloneAndSetExpression((byte) 10, (byte) 20));
+    	final MIDIPlayableBar faded2 = MIDIBarPool.intern(bar.cloneAndSetExpression((byte) 10, (byte) 20));
+    	assertSame(faded1, faded2);
+    	assertNotSame(faded1, MIDIBarPool.intern(bar.cloneAndSetExpression((byte) 10, (byte) 21)));
+    	assertTrue(MIDIBarPool.size() > 0);
+    	assertTrue(MIDIBarPool.size() <= MIDIBarPool.MAX_ENTRIES);
+	    }
+
+    /**Test that data bars from different rows share equal notes but keep their own source rows. */
+    public static void testBarPoolDataBars()
+	    {
+    	final DataProtoBar dpr1 = new DataProtoBar(2, new EOUDataCSV(List.of(List.of("2024-01", "1"), List.of("2024-02", "2"))));
+    	final DataProtoBar dpr2 = new DataProtoBar(2, new EOUDataCSV(List.of(List.of("2025-01", "1"), List.of("2025-02", "2"))));
+    	final List<NoteAndVelocity> notes = Arrays.asList(new NoteAndVelocity((byte) 60, (byte) 64), null);
+    	final MIDIPlayableMonophonicDataBar b1 = MIDIBarPool.intern(
+			new MIDIPlayableMonophonicDataBar(2, dpr1, 1, Collections.unmodifiableList(new ArrayList<>(notes))));
+    	final MIDIPlayableMonophonicDataBar b2 = MIDIBarPool.intern(
+			new MIDIPlayableMonophonicDataBar(2, dpr2, 1, Collections.unmodifiableList(new ArrayList<>(notes))));
+    	assertSame(dpr1, b1.dpr());
+    	assertSame(dpr2, b2.dpr());
+    	assertSame(b1.notes(), b2.notes());
+    	assertEquals(notes, b2.notes());
+    	final MIDIPlayableMonophonicDataBar faded = MIDIBarPool.intern(b1.cloneAndSetExpression((byte) 10, (byte) 20));
+    	assertSame(b1.notes(), faded.notes());
+    	assertSame(dpr1, faded.dpr());
+    	assertEquals(10, faded.expressionStart());
+	    }
     }
@@ -0,0 +1,208 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.Main;
+import org.hd.d.statsHouse.data.RollingWindow;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIMix;
+import org.hd.d.statsHouse.midi.PackedMIDITrack;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test joining tunes into a mix. */
+public final class TestMIDIMix extends TestCase
+    {
+	/**Packed tune of a data sample in a style. */
+	private static PackedMIDITune tune(final ExternalFile ef, final Style style) throws IOException
+		{
+		return(MIDIGen.genPackedTune(new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, style, 0, false, ef.name()), ef.loadEOUDataCSV()));
+		}
+
+	/**Test that parts are shifted whole onto bar boundaries, with channels kept and joins faded. */
+	public static void testStitch() throws IOException
+		{
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		final List<PackedMIDITune> parts = List.of(
+			tune(samples.get(3), Style.house), tune(samples.get(2), Style.gentle), tune(samples.get(3), Style.plain));
+		final MIDIMix mix = MIDIMix.stitch(parts, MIDIMix.DEFAULT_FADE_BARS);
+		final int barClocks = MIDIGen.DEFAULT_CLOCKS_PER_BAR;
+		final int fade = MIDIMix.DEFAULT_FADE_BARS * barClocks;
+		assertEquals(3, mix.partStarts().size());
+		assertEquals(0, (int) mix.partStarts().get(0));
+		for(int p = 0; p < parts.size(); ++p)
+			{
+			final int start = mix.partStarts().get(p);
+			final int end = (p + 1 < parts.size()) ? mix.partStarts().get(p + 1) : mix.endClock();
+			assertEquals(0, start % barClocks);
+			assertTrue(end - start >= parts.get(p).endClock());
+			assertTrue(end - start < parts.get(p).endClock() + barClocks);
+			}
+
+		// Every event of every part is present, shifted, at the same or lower expression.
+		int partEvents = 0, mixEvents = 0, faded = 0;
+		for(final PackedMIDITune t : parts)
+			{
+			for(final PackedMIDITrack pt : t.supportTracks()) { partEvents += pt.size(); }
+			for(final PackedMIDITrack pt : t.dataMelody()) { partEvents += pt.size(); }
+			}
+		for(final List<MIDIMix.Segment> track : mix.tracks())
+			{
+			final byte channel = track.get(0).track().setup().channel();
+			for(final MIDIMix.Segment s : track)
+				{
+				assertEquals(channel, s.track().setup().channel());
+				final int p = mix.partStarts().indexOf(s.clock());
+				assertTrue(p >= 0);
+				final int length = ((p + 1 < parts.size()) ? mix.partStarts().get(p + 1) : mix.endClock()) - s.clock();
+				final PackedMIDITrack original = findTrack(parts.get(p), s.track());
+				assertEquals(original.size(), s.track().size());
+				for(int i = 0; i < original.size(); ++i)
+					{
+					final long o = original.event(i), e = s.track().event(i);
+					final int start = PackedMIDITrack.start(o);
+					assertEquals(start + s.clock(), PackedMIDITrack.start(e));
+					assertEquals(PackedMIDITrack.note(o), PackedMIDITrack.note(e));
+					assertEquals(PackedMIDITrack.velocity(o), PackedMIDITrack.velocity(e));
+					assertEquals(PackedMIDITrack.duration(o), PackedMIDITrack.duration(e));
+					final boolean inFade = ((p > 0) && (start < fade)) || ((p < parts.size() - 1) && (length - start < fade));
+					if(!inFade) { assertEquals(PackedMIDITrack.expression(o), PackedMIDITrack.expression(e)); }
+					else
+						{
+						assertTrue(PackedMIDITrack.expression(e) <= PackedMIDITrack.expression(o));
+						if(PackedMIDITrack.expression(e) < PackedMIDITrack.expression(o)) { ++faded; }
+						}
+					}
+				mixEvents += s.track().size();
+				}
+			}
+		assertEquals(partEvents, mixEvents);
+		assertTrue(faded > 0);
+
+		// A single part is unchanged but for being bar-padded.
+		final MIDIMix one = MIDIMix.stitch(parts.subList(1, 2), MIDIMix.DEFAULT_FADE_BARS);
+		assertEquals(parts.get(1).supportTracks().size() + parts.get(1).dataMelody().size(), one.tracks().size());
+		final List<PackedMIDITrack> data = parts.get(1).dataMelody();
+		assertEquals(data.get(data.size() - 1).event(0), one.tracks().get(one.tracks().size() - 1).get(0).track().event(0));
+		}
+
+	/**Find the track of a part with the same setup and size as a segment's; never null. */
+	private static PackedMIDITrack findTrack(final PackedMIDITune part, final PackedMIDITrack shifted)
+		{
+		for(final List<PackedMIDITrack> tracks : List.of(part.supportTracks(), part.dataMelody()))
+			{
+			for(final PackedMIDITrack t : tracks)
+				{ if(t.setup().equals(shifted.setup()) && (t.size() == shifted.size())) { return(t); } }
+			}
+		throw new AssertionError("no matching track");
+		}
+
+	/**Test that each later part sets its own pan, even when centred after an off-centre earlier part. */
+	public static void testPanResetBetweenParts() throws IOException, InvalidMidiDataException
+		{
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		// The plain part's centred rolling track is on the same channel as the house bass, panned off-centre.
+		final PackedMIDITune plain = MIDIGen.genPackedTune(new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.plain, 0, false, samples.get(3).name(),
+			RollingWindow.Spec.parse("mean"), List.of()), samples.get(3).loadEOUDataCSV());
+		final MIDIMix mix = MIDIMix.stitch(List.of(tune(samples.get(3), Style.house), plain), 1);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mix.writeSMF("mix", baos);
+		final Track tracks[] = MidiSystem.getSequence(new ByteArrayInputStream(baos.toByteArray())).getTracks();
+		int changed = 0;
+		for(int t = 0; t < mix.tracks().size(); ++t)
+			{
+			final List<MIDIMix.Segment> segments = mix.tracks().get(t);
+			for(int i = 1; i < segments.size(); ++i)
+				{
+				final MIDIMix.Segment s = segments.get(i);
+				Integer pan = null;
+				for(int e = 0; e < tracks[1 + t].size(); ++e)
+					{
+					final MidiEvent me = tracks[1 + t].get(e);
+					if((me.getTick() == s.clock()) && (me.getMessage() instanceof ShortMessage sm) &&
+						(ShortMessage.CONTROL_CHANGE == sm.getCommand()) && (10 == sm.getData1()))
+						{ pan = sm.getData2(); }
+					}
+				assertNotNull(pan);
+				assertEquals(s.track().setup().pan(), pan.intValue());
+				if(segments.get(i - 1).track().setup().pan() != s.track().setup().pan()) { ++changed; }
+				}
+			}
+		assertTrue(changed > 0);
+		}
+
+	/**Test that a mix too long to represent is rejected as such, before any part is shifted out of range. */
+	public static void testTooLong() throws IOException
+		{
+		final PackedMIDITune tune = tune(TestCSVDataSamples.mainFileDataSamples().get(3), Style.plain);
+		final PackedMIDITrack t = new PackedMIDITrack(tune.dataMelody().get(0).setup());
+		t.add(PackedMIDITrack.MAX_CLOCK / 2, (byte) 60, (byte) 64, 1, (byte) 127);
+		final PackedMIDITune half = new PackedMIDITune(List.of(), List.of(t), null, null);
+		assertEquals(1, MIDIMix.stitch(List.of(half), 1).partStarts().size());
+		try { MIDIMix.stitch(List.of(half, half), 1); fail(); }
+		catch(final IllegalArgumentException e) { assertEquals("mix too long", e.getMessage()); }
+		}
+
+	/**Test that the mix writes as a valid MIDI file, directly and from the command runner. */
+	public static void testWriteAndCommand() throws IOException, InvalidMidiDataException
+		{
+		final List<ExternalFile> samples = TestCSVDataSamples.mainFileDataSamples();
+		final MIDIMix mix = MIDIMix.stitch(List.of(tune(samples.get(0), Style.gentle), tune(samples.get(3), Style.house)), 1);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		mix.writeSMF("mix", baos);
+		final Sequence s = MidiSystem.getSequence(new ByteArrayInputStream(baos.toByteArray()));
+		assertEquals(1 + mix.tracks().size(), s.getTracks().length);
+		assertTrue(s.getTickLength() >= mix.endClock() - MIDIGen.DEFAULT_CLOCKS_PER_BAR);
+
+		final File out = File.createTempFile("mix", ".mid");
+		out.deleteOnExit();
+		out.delete();
+		Main.runCommands(List.of(List.of("-mix", out.toString(),
+			"-part", samples.get(1).getFullPath().toString(), "-rollup", "Y", "-style", "house",
+			"-part", samples.get(1).getFullPath().toString(), "-rollup", "M", "-style", "gentle",
+			"-part", samples.get(2).getFullPath().toString())), true);
+		assertTrue(out.length() > 0);
+		assertNotNull(MidiSystem.getSequence(out));
+
+		for(final List<String> bad : List.of(List.<String>of(), List.of("x.csv"), List.of("-part"), List.of("-part", "x.csv", "-part")))
+			{
+			try { Main.splitMixParts(bad); fail(bad.toString()); }
+			catch(final IllegalArgumentException e) { /* Expected. */ }
+			}
+		assertEquals(List.of(List.of("a.csv", "-style", "house"), List.of("b.csv")),
+			Main.splitMixParts(List.of("-part", "a.csv", "-style", "house", "-part", "b.csv")));
+		}
+    }
@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.FFT;
+import org.hd.d.statsHouse.data.NoiseAnalysis;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.generic.TuneSectionMetadata;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDISupportTrack;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.lib.SupportBarGen;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test the FFT, autocorrelation and noise analysis, and the house noise track made from them. */
+public final class TestNoiseAnalysis extends TestCase
+    {
+	/**Test that the FFT matches a direct DFT, and that the inverse undoes it. */
+	public static void testFFT()
+		{
+		assertTrue(FFT.isPowerOfTwo(1));
+		assertFalse(FFT.isPowerOfTwo(0));
+		assertFalse(FFT.isPowerOfTwo(12));
+		assertEquals(1, FFT.nextPowerOfTwo(1));
+		assertEquals(16, FFT.nextPowerOfTwo(9));
+		assertEquals(16, FFT.nextPowerOfTwo(16));
+
+		final Random r = new Random(42);
+		for(final int n : new int[]{ 1, 2, 8, 64 })
+			{
+			final double re[] = new double[n], im[] = new double[n];
+			for(int i = 0; i < n; ++i) { re[i] = r.nextGaussian(); im[i] = r.nextGaussian(); }
+			final double re0[] = re.clone(), im0[] = im.clone();
+			FFT.transform(re, im, n, false);
+			for(int k = 0; k < n; ++k)
+				{
+				double sr = 0, si = 0;
+				for(int t = 0; t < n; ++t)
+					{
+					final double a = -2 * Math.PI * k * t / n;
+					sr += (re0[t] * Math.cos(a)) - (im0[t] * Math.sin(a));
+					si += (re0[t] * Math.sin(a)) + (im0[t] * Math.cos(a));
+					}
+				assertEquals(sr, re[k], 1e-9);
+				assertEquals(si, im[k], 1e-9);
+				}
+			FFT.transform(re, im, n, true);
+			for(int i = 0; i < n; ++i)
+				{
+				assertEquals(re0[i], re[i], 1e-9);
+				assertEquals(im0[i], im[i], 1e-9);
+				}
+			}
+		}
+
+	/**Test that the FFT autocorrelation matches direct summation, without wrap-around. */
+	public static void testAutocorrelation()
+		{
+		final Random r = new Random(7);
+		for(final int len : new int[]{ 1, 5, 16, 100 })
+			{
+			final double x[] = new double[len];
+			for(int i = 0; i < len; ++i) { x[i] = r.nextGaussian(); }
+			final int n = FFT.nextPowerOfTwo(2 * len);
+			final double acf[] = new double[len];
+			FFT.autocorrelation(x, len, acf, new double[n], new double[n]);
+			for(int k = 0; k < len; ++k)
+				{
+				double s = 0;
+				for(int i = 0; i + k < len; ++i) { s += x[i] * x[i + k]; }
+				assertEquals(len + "@" + k, s, acf[k], 1e-9);
+				}
+			}
+		}
+
+	/**Test that random data is noisier than periodic or constant data of the same range. */
+	public static void testIntensity()
+		{
+		final int slotsPerBar = 24, bars = 40;
+		final float noisy[] = new float[slotsPerBar * bars];
+		final float periodic[] = new float[noisy.length];
+		final float constant[] = new float[noisy.length];
+		final Random r = new Random(1);
+		for(int i = 0; i < noisy.length; ++i)
+			{
+			noisy[i] = 100 * r.nextFloat();
+			periodic[i] = (float) (50 + (50 * Math.sin((2 * Math.PI * i) / slotsPerBar)));
+			constant[i] = ((i % 13) == 0) ? Float.NaN : 42;
+			}
+		final float n[] = NoiseAnalysis.intensity(noisy, slotsPerBar, NoiseAnalysis.DEFAULT_WINDOW_BARS, 100);
+		final float p[] = NoiseAnalysis.intensity(periodic, slotsPerBar, NoiseAnalysis.DEFAULT_WINDOW_BARS, 100);
+		final float c[] = NoiseAnalysis.intensity(constant, slotsPerBar, NoiseAnalysis.DEFAULT_WINDOW_BARS, 100);
+		assertEquals(bars, n.length);
+		for(int b = NoiseAnalysis.DEFAULT_WINDOW_BARS; b < bars; ++b)
+			{
+			assertTrue(n[b] >= 0 && n[b] <= 1);
+			assertTrue(n[b] + " vs " + p[b], n[b] > p[b] + 0.2f);
+			assertEquals(0f, c[b]);
+			}
+
+		// All missing, or zero range, is silent.
+		final float missing[] = new float[slotsPerBar * 2];
+		Arrays.fill(missing, Float.NaN);
+		assertEquals(0f, NoiseAnalysis.intensity(missing, slotsPerBar, 1, 100)[1]);
+		assertEquals(0f, NoiseAnalysis.intensity(noisy, slotsPerBar, 1, 0)[3]);
+		try { NoiseAnalysis.intensity(new float[5], 2, 1, 1); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+
+		// Noise bars get denser with intensity.
+		assertSame(MIDIPlayableBar.EMPTY_DEFAULT_CLOCKS, SupportBarGen.makeHouseNoiseBar(0));
+		assertEquals(4, SupportBarGen.makeHouseNoiseBar(0.25f).notes().size());
+		assertEquals(16, SupportBarGen.makeHouseNoiseBar(1).notes().size());
+		}
+
+	/**Test that the house noise track is added only on request, silent outside verses, and valid. */
+	public static void testHouseNoiseTrack() throws IOException
+		{
+		assertTrue(GenerationParameters.parseOptionalCommandArguments(List.of("-style", "house", "-noise"), null).noise());
+		for(final String style : new String[]{ "plain", "gentle" })
+			{
+			try { GenerationParameters.parseOptionalCommandArguments(List.of("-style", style, "-noise"), null); fail(style); }
+			catch(final IllegalArgumentException e) { /* Expected. */ }
+			}
+		assertFalse(GenerationParameters.parseOptionalCommandArguments(List.of(), null).noise());
+
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final MIDITune plain = MIDIGen.genTune(new GenerationParameters(
+				GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, ef.name()), data);
+			final MIDITune tune = MIDIGen.genTune(new GenerationParameters(
+				GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, ef.name(),
+				null, List.of(), true), data);
+			MIDIGen.validateMIDITune(tune);
+			assertEquals(plain.supportTracks().size() + 1, tune.supportTracks().size());
+			assertEquals(plain.dataMelody(), tune.dataMelody());
+			final MIDISupportTrack noise = tune.supportTracks().get(tune.supportTracks().size() - 1);
+			assertEquals("noise: house", noise.setup().name());
+			assertEquals(tune.supportTracks().get(0).bars().size(), noise.bars().size());
+			int b = 0;
+			for(final TuneSectionMetadata ts : tune.plan().sections())
+				{
+				for(int i = 0; i < ts.bars(); ++i, ++b)
+					{ if(TuneSection.verse != ts.sectionType()) { assertTrue(noise.bars().get(b).notes().isEmpty()); } }
+				}
+			}
+		}
+    }
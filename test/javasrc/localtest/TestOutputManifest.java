@@ -0,0 +1,158 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.Main;
+import org.hd.d.statsHouse.OutputManifest;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+import localtest.support.MIDITestUtils;
+
+/**Test output-skipping by dependency manifest, and reproducible MIDI headers. */
+public final class TestOutputManifest extends TestCase
+    {
+	/**Junk to overwrite outputs with, to detect whether they are regenerated. */
+	private static final byte JUNK[] = "junk".getBytes(StandardCharsets.US_ASCII);
+
+	/**Run one command with a manifest freshly loaded from file, as a new process would. */
+	private static void run(final File manifestFile, final List<String> cmdline) throws IOException
+		{ Main.runCommands(Collections.singletonList(cmdline), true, false, false, new OutputManifest(manifestFile)); }
+
+	/**True if the file content is the junk. */
+	private static boolean isJunk(final File f) throws IOException
+		{ return(Arrays.equals(JUNK, Files.readAllBytes(f.toPath()))); }
+
+	/**Test that commands are skipped only when inputs and parameters are unchanged. */
+	public static void testSkip() throws IOException
+		{
+		final Path dir = Files.createTempDirectory("manifest");
+		final File in = dir.resolve("gen-M.csv").toFile();
+		final File out = dir.resolve("gen-M.mid").toFile();
+		final File manifestFile = dir.resolve("manifest.txt").toFile();
+		Files.copy(new File(ExternalFile.DATA_SAMPLE_DIR, "gen-M.csv").toPath(), in.toPath());
+		try
+			{
+			final List<String> cmd = List.of(in.getPath(), out.getPath(), "-style", "gentle");
+			run(manifestFile, cmd);
+			assertTrue(out.exists());
+			assertTrue(manifestFile.exists());
+
+			// Unchanged: skipped.
+			Files.write(out.toPath(), JUNK);
+			run(manifestFile, cmd);
+			assertTrue(isJunk(out));
+
+			// Changed parameters: regenerated.
+			run(manifestFile, List.of(in.getPath(), out.getPath(), "-style", "plain"));
+			assertFalse(isJunk(out));
+
+			// Changed input: regenerated.
+			Files.write(out.toPath(), JUNK);
+			try(OutputStream os = new FileOutputStream(in, true))
+				{ os.write("# comment\n".getBytes(StandardCharsets.US_ASCII)); }
+			run(manifestFile, List.of(in.getPath(), out.getPath(), "-style", "plain"));
+			assertFalse(isJunk(out));
+
+			// Missing output: regenerated.
+			out.delete();
+			run(manifestFile, List.of(in.getPath(), out.getPath(), "-style", "plain"));
+			assertTrue(out.exists());
+
+			// Never skipped.
+			assertNull(OutputManifest.entryFor(List.of(in.getPath(), out.getPath(), "-seed", "-1")));
+			assertNull(OutputManifest.entryFor(List.of(in.getPath(), "-play")));
+			assertNull(OutputManifest.entryFor(List.of("-synthCSV", "-", "D", "1", "1", "0", "1")));
+			}
+		finally
+			{
+			for(final File f : dir.toFile().listFiles()) { f.delete(); }
+			dir.toFile().delete();
+			}
+		}
+
+	/**Test that the deterministic header gives byte-identical MIDI output across runs. */
+	public static void testDeterministicHeader() throws IOException, InvalidMidiDataException, InterruptedException
+		{
+		final EOUDataCSV data = TestCSVDataSamples.mainFileDataSamples().get(0).loadEOUDataCSV();
+		final DataBounds db = new DataBounds(data);
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, "test");
+		final MIDITune tune = MIDIGen.genTune(params, data);
+		try
+			{
+			MIDIGen.setDeterministicHeader(true);
+			final byte a[] = MIDITestUtils.smf(tune, params, db);
+			Thread.sleep(1100); // Ensure that the wall-clock time in seconds has changed.
+			final byte b[] = MIDITestUtils.smf(tune, params, db);
+			assertTrue(Arrays.equals(a, b));
+			// Without a source date, the data's last date is recorded.
+			assertTrue(new String(a, StandardCharsets.ISO_8859_1).contains("generated: " + db.lastDate()));
+			}
+		finally { MIDIGen.setDeterministicHeader(false); }
+		}
+
+	/**Test that a SOURCE_DATE_EPOCH style source date is recorded, with or without the deterministic header. */
+	public static void testSourceDate() throws IOException, InvalidMidiDataException
+		{
+		assertNull(MIDIGen.parseSourceDateEpoch(null));
+		assertNull(MIDIGen.parseSourceDateEpoch(""));
+		assertNull(MIDIGen.parseSourceDateEpoch("junk"));
+		final Instant sd = MIDIGen.parseSourceDateEpoch("1700000000");
+		assertEquals(Instant.parse("2023-11-14T22:13:20Z"), sd);
+
+		final EOUDataCSV data = TestCSVDataSamples.mainFileDataSamples().get(0).loadEOUDataCSV();
+		final DataBounds db = new DataBounds(data);
+		final GenerationParameters params = new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, Style.plain, 0, false, "test");
+		final MIDITune tune = MIDIGen.genTune(params, data);
+		final Instant prev = MIDIGen.getSourceDate();
+		try
+			{
+			MIDIGen.setSourceDate(sd);
+			final byte a[] = MIDITestUtils.smf(tune, params, db);
+			assertTrue(new String(a, StandardCharsets.ISO_8859_1).contains("generated: 2023-11-14T22:13:20Z"));
+			MIDIGen.setDeterministicHeader(true);
+			assertTrue(Arrays.equals(a, MIDITestUtils.smf(tune, params, db)));
+			}
+		finally
+			{
+			MIDIGen.setSourceDate(prev);
+			MIDIGen.setDeterministicHeader(false);
+			}
+		}
+    }
@@ -0,0 +1,83 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.PackedDate;
+import org.hd.d.statsHouse.generic.DataCadence;
+
+import junit.framework.TestCase;
+
+/**Test compact date handling. */
+public final class TestPackedDate extends TestCase
+    {
+	/**Test that hourly dates pack and unpack as java.time would, across leap days and eras. */
+	public static void testEpochHour()
+		{
+		final DateTimeFormatter f = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH");
+		final LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0);
+		for(final LocalDateTime start : new LocalDateTime[]{
+				LocalDateTime.of(0, 1, 1, 0, 0), LocalDateTime.of(1899, 12, 25, 0, 0),
+				LocalDateTime.of(1969, 12, 30, 0, 0), LocalDateTime.of(2000, 2, 27, 0, 0),
+				LocalDateTime.of(2100, 2, 27, 0, 0), LocalDateTime.of(9999, 12, 29, 0, 0) })
+			{
+			for(int h = 0; h < 24 * 3; ++h)
+				{
+				final LocalDateTime t = start.plusHours(h);
+				final String s = f.format(t);
+				assertTrue(PackedDate.isHourly(s));
+				final int eh = PackedDate.epochHour(s);
+				assertEquals(s, ChronoUnit.HOURS.between(epoch, t), eh);
+				assertEquals(t.toEpochSecond(ZoneOffset.UTC) / 3600, eh);
+				assertEquals(t.getHour(), PackedDate.hourOfDay(eh));
+				assertEquals(s, PackedDate.formatEpochHour(eh));
+				}
+			}
+		assertEquals(0, PackedDate.epochHour("1970-01-01T00"));
+
+		for(final String bad : new String[]{ "2024-02-30T00", "2023-02-29T00", "2024-04-31T00",
+				"2024-13-01T00", "2024-00-01T00", "2024-01-00T00", "2024-01-01T24", "2024-01-01 00", "2024-01-0xT00", "2024-01-01" })
+			{
+			try { PackedDate.epochHour(bad); fail(bad); }
+			catch(final DateTimeException e) { /* Expected. */ }
+			}
+		}
+
+	/**Test the least-significant date component and cadence from date form. */
+	public static void testLastComponentAndCadence()
+		{
+		assertEquals(12, PackedDate.lastComponent("2008-12"));
+		assertEquals(31, PackedDate.lastComponent("2008-12-31"));
+		assertEquals(1, PackedDate.lastComponent("2008-01-01"));
+		for(final String bad : new String[]{ "2008", "2008-", "2008-1x" })
+			{
+			try { PackedDate.lastComponent(bad); fail(bad); }
+			catch(final DateTimeException e) { /* Expected. */ }
+			}
+
+		assertEquals(DataCadence.H, DataUtils.extractDataCadenceFromDate("2008-01-01T13"));
+		assertEquals(DataCadence.D, DataUtils.extractDataCadenceFromDate("2008-01-01"));
+		try { DataUtils.extractDataCadenceFromDate("2008-01-01X13"); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+    }
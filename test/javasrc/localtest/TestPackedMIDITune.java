@@ -0,0 +1,159 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIConstant;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITrackSetup;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.PackedMIDITrack;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test the compact packed tune representation. */
+public final class TestPackedMIDITune extends TestCase
+    {
+	/**Test that event fields round-trip and are range checked. */
+	public static void testPack()
+		{
+		final long e = PackedMIDITrack.pack(PackedMIDITrack.MAX_CLOCK, (byte) 127, (byte) 1,
+			PackedMIDITrack.MAX_DURATION, (byte) 64);
+		assertTrue(e > 0);
+		assertEquals(PackedMIDITrack.MAX_CLOCK, PackedMIDITrack.start(e));
+		assertEquals(127, PackedMIDITrack.note(e));
+		assertEquals(1, PackedMIDITrack.velocity(e));
+		assertEquals(PackedMIDITrack.MAX_DURATION, PackedMIDITrack.duration(e));
+		assertEquals(64, PackedMIDITrack.expression(e));
+		assertTrue(PackedMIDITrack.pack(1, (byte) 0, (byte) 0, 1, (byte) 0) > PackedMIDITrack.pack(0, (byte) 127, (byte) 127, 100, (byte) 127));
+
+		try { PackedMIDITrack.pack(PackedMIDITrack.MAX_CLOCK + 1, (byte) 60, (byte) 1, 1, (byte) 0); fail(); }
+		catch(final IllegalArgumentException ex) { /* Expected. */ }
+		try { PackedMIDITrack.pack(0, (byte) 60, (byte) 1, 0, (byte) 0); fail(); }
+		catch(final IllegalArgumentException ex) { /* Expected. */ }
+
+		final PackedMIDITrack t = new PackedMIDITrack(new MIDITrackSetup((byte) 0, (byte) 0));
+		t.trimToSize();
+		for(int i = 0; i < 100; ++i) { t.add(i * 10, (byte) 60, (byte) 63, 10, (byte) 100); }
+		assertEquals(100, t.size());
+		assertEquals(990, PackedMIDITrack.start(t.event(99)));
+		try { t.add(0, (byte) 60, (byte) 63, 10, (byte) 100); fail(); }
+		catch(final IllegalArgumentException ex) { /* Expected. */ }
+		}
+
+	/**MIDI file bytes for a sequence. */
+	private static byte[] smf(final Sequence s) throws IOException
+		{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		MidiSystem.write(s, MIDIConstant.PREFERRED_MIDI_FILETYPE, baos);
+		return(baos.toByteArray());
+		}
+
+	/**Test that tunes generated directly in packed form render as the full form does, for all styles. */
+	public static void testGenPackedMatchesFull() throws IOException, InvalidMidiDataException
+		{
+		try
+			{
+			MIDIGen.setDeterministicHeader(true);
+			for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+				{
+				final EOUDataCSV data = ef.loadEOUDataCSV();
+				final DataBounds db = new DataBounds(data);
+				for(final Style style : new Style[]{ Style.plain, Style.gentle, Style.house })
+					{
+					for(final int introBars : new int[]{ 0, 4, GenerationParameters.AUTO_INTRO_BARS })
+						{
+						final GenerationParameters params = new GenerationParameters(
+							GenerationParameters.RANDOMNESS_NONE, style, introBars, false, ef.name());
+						final MIDITune full = MIDIGen.genTune(params, data);
+						final PackedMIDITune packed = MIDIGen.genPackedTune(params, data);
+						assertEquals(full.supportTracks().size(), packed.supportTracks().size());
+						assertEquals(full.dataMelody().size(), packed.dataMelody().size());
+						assertEquals(full.plan(), packed.plan());
+						assertTrue(ef.name() + " " + style + " " + introBars, Arrays.equals(
+							smf(MIDIGen.genFromTuneSequence(full, params, db)),
+							smf(MIDIGen.genFromPackedTuneSequence(packed, params, db))));
+						}
+					}
+				}
+			}
+		finally { MIDIGen.setDeterministicHeader(false); }
+		}
+    
+	/**SMF bytes assembled from bar fragments. */
+	private static byte[] smfFromFragments(final PackedMIDITune tune, final GenerationParameters params, final DataBounds db)
+		throws IOException, InvalidMidiDataException
+		{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		MIDIGen.genFromPackedTuneSMF(tune, params, db, baos);
+		return(baos.toByteArray());
+		}
+
+	/**Test that assembly from precompiled bar fragments gives the same bytes as via a Sequence. */
+	public static void testFragmentsMatchSequence() throws IOException, InvalidMidiDataException
+		{
+		try
+			{
+			MIDIGen.setDeterministicHeader(true);
+			for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+				{
+				final EOUDataCSV data = ef.loadEOUDataCSV();
+				final DataBounds db = new DataBounds(data);
+				for(final Style style : new Style[]{ Style.plain, Style.gentle, Style.house })
+					{
+					final GenerationParameters params = new GenerationParameters(
+						GenerationParameters.RANDOMNESS_NONE, style, 4, false, ef.name());
+					final PackedMIDITune packed = MIDIGen.genPackedTune(params, data);
+					assertTrue(ef.name() + " " + style, Arrays.equals(
+						smf(MIDIGen.genFromPackedTuneSequence(packed, params, db)),
+						smfFromFragments(packed, params, db)));
+					}
+				}
+			}
+		finally { MIDIGen.setDeterministicHeader(false); }
+
+		// Notes over bar ends, expression changes, and an empty track.
+		final PackedMIDITrack t = new PackedMIDITrack(new MIDITrackSetup((byte) 2, (byte) 0));
+		t.add(0, (byte) 60, (byte) 63, 100, (byte) 127);
+		t.add(0, (byte) 64, (byte) 63, 100, (byte) 100);
+		t.add(MIDIGen.DEFAULT_CLOCKS_PER_BAR - 10, (byte) 67, (byte) 63, 100, (byte) 80);
+		final PackedMIDITrack u = new PackedMIDITrack(new MIDITrackSetup((byte) 3, (byte) 0));
+		for(int b = 0; b < 8; ++b)
+			{
+			u.add(b * MIDIGen.DEFAULT_CLOCKS_PER_BAR, (byte) 60, (byte) 63, 10, (byte) ((b < 4) ? 127 : (b * 10)));
+			u.add(b * MIDIGen.DEFAULT_CLOCKS_PER_BAR + 5, (byte) 62, (byte) 63, 5, (byte) 50);
+			}
+		final PackedMIDITune tune = new PackedMIDITune(List.of(t),
+			List.of(u, new PackedMIDITrack(new MIDITrackSetup((byte) 4, (byte) 0))), null, null);
+		assertTrue(Arrays.equals(smf(MIDIGen.genFromPackedTuneSequence(tune, null, null)),
+			smfFromFragments(tune, null, null)));
+		}
+    }
@@ -0,0 +1,183 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.RollingWindow;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDISupportTrack;
+import org.hd.d.statsHouse.midi.MIDITune;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+import localtest.support.MIDITestUtils;
+
+/**Test rolling-window statistics and the support track made from them. */
+public final class TestRollingWindow extends TestCase
+    {
+	/**Statistic over values[from..to] recomputed from scratch, or NaN if no valid samples. */
+	private static double bruteForce(final RollingWindow.Kind kind,
+			final float values[], final float weights[], final int from, final int to)
+		{
+		double sum = 0, sumWeights = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		int n = 0;
+		for(int i = from; i <= to; ++i)
+			{
+			if(!Float.isFinite(values[i]) || !(weights[i] > 0)) { continue; }
+			++n;
+			sum += ((RollingWindow.Kind.cmean == kind) ? weights[i] : 1) * values[i];
+			sumWeights += (RollingWindow.Kind.cmean == kind) ? weights[i] : 1;
+			min = Math.min(min, values[i]);
+			max = Math.max(max, values[i]);
+			}
+		if(0 == n) { return(Double.NaN); }
+		final double mean = sum / sumWeights;
+		return(switch(kind) {
+			case mean, cmean -> mean;
+			case min -> min;
+			case max -> max;
+			case variance -> {
+				double ss = 0;
+				for(int i = from; i <= to; ++i)
+					{ if(Float.isFinite(values[i]) && (weights[i] > 0)) { ss += (values[i] - mean) * (values[i] - mean); } }
+				yield(ss / n);
+				}
+			});
+		}
+
+	/**Test that each statistic matches recomputation over each window, with gaps. */
+	public static void testMatchesBruteForce()
+		{
+		final Random r = new Random(42);
+		final int len = 500;
+		final float values[] = new float[len];
+		final float weights[] = new float[len];
+		for(int i = 0; i < len; ++i)
+			{
+			// Offset well away from zero, with missing runs and zero coverage.
+			values[i] = ((i % 97) < 10) ? Float.NaN : (1000 + (50 * r.nextFloat()));
+			weights[i] = ((i % 31) == 0) ? 0 : r.nextFloat();
+			}
+		for(final RollingWindow.Kind kind : RollingWindow.Kind.values())
+			{
+			for(final int rows : new int[]{ 1, 2, 7, 24, 100 })
+				{
+				final float result[] = RollingWindow.apply(kind, rows, values, weights);
+				assertEquals(len, result.length);
+				for(int i = 0; i < len; ++i)
+					{
+					final double expected = bruteForce(kind, values, weights, Math.max(0, i - rows + 1), i);
+					if(Double.isNaN(expected)) { assertTrue(Float.isNaN(result[i])); continue; }
+					assertEquals(kind + " " + rows + " @" + i, expected, result[i], 1e-3 * Math.max(1, Math.abs(expected)));
+					}
+				}
+			}
+
+		// Unit weights by default.
+		assertEquals(2f, RollingWindow.of(RollingWindow.Kind.mean, 2).add(2));
+		final float mm[] = RollingWindow.apply(RollingWindow.Kind.min, 3, new float[]{ 3, 1, 2, 5, 4, 6 }, null);
+		assertEquals("[3.0, 1.0, 1.0, 1.0, 2.0, 4.0]", Arrays.toString(mm));
+		}
+
+	/**Test parsing of window specifications. */
+	public static void testSpec()
+		{
+		assertEquals(new RollingWindow.Spec(RollingWindow.Kind.mean, 0), RollingWindow.Spec.parse("mean"));
+		assertEquals(new RollingWindow.Spec(RollingWindow.Kind.cmean, 7), RollingWindow.Spec.parse("cmean:7"));
+		assertEquals("max:30", RollingWindow.Spec.parse("max:30").toString());
+		for(final String bad : new String[]{ "", "median", "mean:0", "mean:", "min:x" })
+			{
+			try { RollingWindow.Spec.parse(bad); fail(bad); }
+			catch(final IllegalArgumentException e) { /* Expected. */ }
+			}
+		assertEquals(RollingWindow.Spec.parse("variance:12"),
+			GenerationParameters.parseOptionalCommandArguments(List.of("-rolling", "variance:12"), null).rolling());
+		assertNull(GenerationParameters.parseOptionalCommandArguments(List.of(), null).rolling());
+		try { GenerationParameters.parseOptionalCommandArguments(List.of("-style", "house", "-rolling", "mean"), null); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+
+	/**Verse notes of the rolling track of a full tune with the given window, checked across generation paths. */
+	private static NavigableMap<Integer, MIDIPlayableBar.StartNoteVelocityDuration> rollingNotes(
+			final ExternalFile ef, final Style style, final String spec)
+		throws IOException, InvalidMidiDataException
+		{
+		final MIDITune full = MIDITestUtils.genFullPackedStreamed(new GenerationParameters(
+			GenerationParameters.RANDOMNESS_NONE, style, 2, false, ef.name(), RollingWindow.Spec.parse(spec)), ef);
+		// After any gentle percussion.
+		assertEquals((Style.plain == style) ? 1 : 2, full.supportTracks().size());
+		final MIDISupportTrack rolling = full.supportTracks().get(full.supportTracks().size() - 1);
+		assertTrue(rolling.setup().name().startsWith("rolling: "));
+		return(MIDITestUtils.verseSupportNotes(full, rolling.bars()));
+		}
+
+	/**Test that the rolling track plays the windowed statistic an octave below the melody,
+	 * the same way in full, packed and streamed generation.
+	 */
+	public static void testRollingTrack() throws IOException, InvalidMidiDataException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final int main = Math.max(1, new DataBounds(data).mainDataStream()) - 1;
+			for(final Style style : new Style[]{ Style.plain, Style.gentle })
+				{
+				final String what = ef.name() + " " + style;
+				final MIDITune tune = MIDIGen.genTune(new GenerationParameters(
+					GenerationParameters.RANDOMNESS_NONE, style, 2, false, ef.name()), data);
+				final NavigableMap<Integer, NoteAndVelocity> melody =
+					MIDITestUtils.verseNotes(tune, tune.dataMelody().get(main).bars());
+
+				// A one-row window starts a note an octave below each change of melody note.
+				final NavigableMap<Integer, MIDIPlayableBar.StartNoteVelocityDuration> one = rollingNotes(ef, style, "mean:1");
+				assertFalse(what, one.isEmpty());
+				for(final MIDIPlayableBar.StartNoteVelocityDuration n : one.values())
+					{
+					final NoteAndVelocity m = melody.get(n.start());
+					assertNotNull(what + " @" + n.start(), m);
+					assertEquals(what + " @" + n.start(), m.note() - 12, n.note().note());
+					}
+
+				// A rolling maximum sounds wherever the melody does, never below it.
+				final NavigableMap<Integer, MIDIPlayableBar.StartNoteVelocityDuration> max = rollingNotes(ef, style, "max:5");
+				for(final Map.Entry<Integer, NoteAndVelocity> e : melody.entrySet())
+					{
+					final Map.Entry<Integer, MIDIPlayableBar.StartNoteVelocityDuration> r = max.floorEntry(e.getKey());
+					assertNotNull(what + " @" + e.getKey(), r);
+					assertTrue(what + " @" + e.getKey(), r.getValue().start() + r.getValue().duration() > e.getKey());
+					assertTrue(what + " @" + e.getKey(), r.getValue().note().note() >= e.getValue().note() - 12);
+					}
+
+				assertFalse(what, rollingNotes(ef, style, "variance").isEmpty());
+				}
+			}
+		}
+    }
@@ -0,0 +1,145 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.Datum;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.P2Quantile;
+import org.hd.d.statsHouse.data.SlotStatistics;
+import org.hd.d.statsHouse.generic.ChorusStyleFromData;
+import org.hd.d.statsHouse.generic.Scale;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.generic.TuneSectionMetadata;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableMonophonicDataBar;
+import org.hd.d.statsHouse.midi.lib.DataChorusGen;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test streaming quantile sketches, per-slot statistics, and the synthetic chorus made from them. */
+public final class TestSlotStatistics extends TestCase
+    {
+	/**Exact quantile of sorted values, interpolating between closest ranks. */
+	private static double exact(final double sorted[], final double p)
+		{
+		final double pos = p * (sorted.length - 1);
+		final int lo = (int) pos;
+		return((lo + 1 < sorted.length) ? (sorted[lo] + ((pos - lo) * (sorted[lo+1] - sorted[lo]))) : sorted[lo]);
+		}
+
+	/**Test that P-square estimates are exact for few samples and close for many. */
+	public static void testP2Quantile()
+		{
+		assertTrue(Double.isNaN(new P2Quantile(0.5).quantile()));
+		final P2Quantile few = new P2Quantile(0.1);
+		for(final double x : new double[]{ 5, 1, 4, 2, 3 }) { few.add(x); }
+		few.add(Double.NaN);
+		assertEquals(5, few.count());
+		assertEquals(1.4, few.quantile(), 1e-9);
+
+		final Random r = new Random(3);
+		for(final double p : new double[]{ 0.1, 0.5, 0.9 })
+			{
+			final int n = 10_000;
+			final double values[] = new double[n];
+			final P2Quantile q = new P2Quantile(p);
+			for(int i = 0; i < n; ++i)
+				{
+				// Skewed, as eg generation is.
+				values[i] = 100 * r.nextDouble() * r.nextDouble();
+				q.add(values[i]);
+				}
+			Arrays.sort(values);
+			assertEquals("p=" + p, exact(values, p), q.quantile(), 1.0);
+			}
+
+		try { new P2Quantile(1.5); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+
+	/**Test per-slot statistics on real data against sorting. */
+	public static void testSlotStatistics() throws IOException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final DataBounds db = new DataBounds(data);
+			final int stream = Math.max(1, db.mainDataStream());
+			final List<DataProtoBar> bars = MIDIGen.splitAndAlignData(TuneSection.verse,
+				new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, ef.name()), data);
+			final SlotStatistics ss = SlotStatistics.of(bars, stream);
+			assertEquals(bars.get(0).dataNotesPerBar(), ss.slots());
+			for(int i = 0; i < ss.slots(); ++i)
+				{
+				final List<Double> v = new ArrayList<>();
+				for(final DataProtoBar b : bars)
+					{
+					final List<String> row = b.dataRows().data().get(i);
+					final Datum d = Datum.extractDatum(stream, row);
+					if((null != d.value()) && (null != d.coverage()) && (d.coverage() > 0)) { v.add((double) d.value()); }
+					}
+				assertEquals(v.size(), ss.count(i));
+				if(v.isEmpty()) { assertTrue(Float.isNaN(ss.mean(i))); continue; }
+				final double sorted[] = v.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+				assertEquals(Arrays.stream(sorted).average().getAsDouble(), ss.mean(i), 1e-3 * db.maxVal());
+				final float p10 = ss.percentile(SlotStatistics.Percentile.P10, i);
+				final float p50 = ss.percentile(SlotStatistics.Percentile.P50, i);
+				final float p90 = ss.percentile(SlotStatistics.Percentile.P90, i);
+				assertTrue(p10 <= p50 && p50 <= p90);
+				assertTrue(p10 >= sorted[0] && p90 <= sorted[sorted.length-1]);
+				if(sorted.length <= 5) { assertEquals(exact(sorted, 0.5), p50, 1e-3); }
+				}
+			}
+		}
+
+	/**Test that the synthetic chorus is a repeating four-bar phrase of the correct length and shape. */
+	public static void testSyntheticChorus() throws IOException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final DataBounds db = new DataBounds(data);
+			final GenerationParameters params =
+				new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, ef.name());
+			final TuneSectionMetadata ts = new TuneSectionMetadata(16, TuneSection.chorus);
+			final int stream = Math.max(1, db.mainDataStream());
+			final List<MIDIPlayableMonophonicDataBar> bars = DataChorusGen.makeHouseDataChorusBars(
+				ChorusStyleFromData.SyntheticRepresentativeDataBar, 1, stream, ts, params, db, data, Scale.MAJOR);
+			assertEquals(16, bars.size());
+			assertNull(bars.get(0).dpr());
+			for(int b = 4; b < 16; ++b) { assertSame(bars.get(b - 4), bars.get(b)); }
+			assertTrue(bars.get(0).notes().stream().anyMatch(n -> null != n));
+			// The high bar is nowhere lower than the low one.
+			for(int i = 0; i < bars.get(1).notes().size(); ++i)
+				{
+				if(null == bars.get(1).notes().get(i)) { continue; }
+				assertTrue(bars.get(1).notes().get(i).note() >= bars.get(3).notes().get(i).note());
+				}
+			}
+		}
+    }
@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hd.d.statsHouse.SonificationServer;
+import org.hd.d.statsHouse.feedHits.GenerateSummary;
+import org.hd.d.statsHouse.feedHits.data.SyntheticFeedHits;
+
+import junit.framework.TestCase;
+
+/**Test the on-demand HTTP sonification service. */
+public final class TestSonificationServer extends TestCase
+    {
+	/**Response status and body. */
+	private record Response(int status, byte[] body, String etag) { }
+
+	/**Make a request, optionally POSTing a body and/or sending If-None-Match. */
+	private static Response request(final SonificationServer s, final String pathAndQuery,
+			final byte post[], final String ifNoneMatch)
+		throws IOException
+		{
+		final HttpURLConnection c = (HttpURLConnection)
+			new URL("http://localhost:" + s.port() + pathAndQuery).openConnection();
+		if(null != ifNoneMatch) { c.setRequestProperty("If-None-Match", ifNoneMatch); }
+		if(null != post)
+			{
+			c.setRequestMethod("POST");
+			c.setDoOutput(true);
+			try(OutputStream os = c.getOutputStream()) { os.write(post); }
+			}
+		final int status = c.getResponseCode();
+		final InputStream is = (status >= 400) ? c.getErrorStream() : c.getInputStream();
+		final byte body[] = (null == is) ? new byte[0] : is.readAllBytes();
+		if(null != is) { is.close(); }
+		return(new Response(status, body, c.getHeaderField("ETag")));
+		}
+
+	/**True if the bytes look like a MIDI file. */
+	private static boolean isMIDI(final byte b[])
+		{ return((b.length > 4) && "MThd".equals(new String(b, 0, 4, StandardCharsets.US_ASCII))); }
+
+	/**Test file and posted CSV sonification, caching, ETags and refusing paths outside the root. */
+	public static void testTune() throws IOException
+		{
+		try(final SonificationServer s = new SonificationServer(0, new File("dataSample"), 4, 8))
+			{
+			final Response r1 = request(s, "/tune?file=gen-M.csv&opts=-style+gentle", null, null);
+			assertEquals(200, r1.status());
+			assertTrue(isMIDI(r1.body()));
+			assertNotNull(r1.etag());
+			final Response r2 = request(s, "/tune?file=gen-M.csv&opts=-style+gentle", null, null);
+			assertTrue(Arrays.equals(r1.body(), r2.body()));
+			assertEquals(1, s.generations());
+			assertEquals(304, request(s, "/tune?file=gen-M.csv&opts=-style+gentle", null, r1.etag()).status());
+
+			// Posting the same content and name is found by content hash.
+			final byte csv[] = Files.readAllBytes(Path.of("dataSample/gen-M.csv"));
+			final Response r3 = request(s, "/tune?name=gen-M&opts=-style+gentle", csv, null);
+			assertEquals(200, r3.status());
+			assertTrue(Arrays.equals(r1.body(), r3.body()));
+			assertEquals(1, s.generations());
+			// A different name gives different parameters.
+			final Response r4 = request(s, "/tune?name=other&opts=-style+gentle", csv, null);
+			assertEquals(200, r4.status());
+			assertTrue(isMIDI(r4.body()));
+			assertEquals(2, s.generations());
+
+			assertEquals(403, request(s, "/tune?file=../build.xml", null, null).status());
+			assertEquals(404, request(s, "/tune?file=nosuch.csv", null, null).status());
+			assertEquals(400, request(s, "/tune?file=gen-M.csv&opts=-style+nosuch", null, null).status());
+			assertEquals(404, request(s, "/nosuch", null, null).status());
+			}
+		}
+
+	/**Test that identical concurrent requests are coalesced into one generation. */
+	public static void testCoalesce() throws Exception
+		{
+		final ExecutorService es = Executors.newFixedThreadPool(8);
+		try(final SonificationServer s = new SonificationServer(0, new File("dataSample"), 8, 8))
+			{
+			final List<Future<Response>> fs = new ArrayList<>();
+			for(int i = 0; i < 8; ++i)
+				{ fs.add(es.submit(() -> request(s, "/tune?file=gen-D.csv&opts=-style+house+-seed+1", null, null))); }
+			final byte first[] = fs.get(0).get().body();
+			assertTrue(isMIDI(first));
+			for(final Future<Response> f : fs) { assertTrue(Arrays.equals(first, f.get().body())); }
+			assertEquals(1, s.generations());
+			}
+		finally { es.shutdown(); }
+		}
+
+	/**Test feedHits summary as MIDI and as visualisation data. */
+	public static void testFeedHits() throws IOException
+		{
+		final Path root = Files.createTempDirectory("serve");
+		final List<String> dirs = SyntheticFeedHits.writeDirs(root.toFile(), 2, 7, 5, 1);
+		try(final SonificationServer s = new SonificationServer(0, root.toFile(), 2, 8))
+			{
+			final String q = "/feedHits?type=1&dir=" + dirs.get(0) + "&dir=" + dirs.get(1);
+			final Response mid = request(s, q, null, null);
+			assertEquals(200, mid.status());
+			assertTrue(isMIDI(mid.body()));
+			final Response dat = request(s, q + "&format=dat", null, null);
+			assertEquals(200, dat.status());
+			assertFalse(isMIDI(dat.body()));
+			assertTrue(dat.body().length > 0);
+			// Shortest form by default, fixed precision only on request.
+			final StringWriter sw = new StringWriter();
+			GenerateSummary.summary(1, List.of(root.resolve(dirs.get(0)).toString(), root.resolve(dirs.get(1)).toString()))
+				.dataRendered().write(sw, false);
+			assertEquals(sw.toString(), new String(dat.body(), StandardCharsets.US_ASCII));
+			final Response dat3 = request(s, q + "&format=dat&decimals=3", null, null);
+			assertEquals(200, dat3.status());
+			assertTrue(dat3.body().length > 0);
+			assertEquals(400, request(s, q + "&format=dat&decimals=7", null, null).status());
+			// Two blocks of 24 hours, each with bytes and hits as 4-byte floats.
+			final Response bin = request(s, q + "&format=bin", null, null);
+			assertEquals(200, bin.status());
+			assertEquals(2 * 24 * 2 * 4, bin.body().length);
+			assertEquals(400, request(s, q + "&format=xyz", null, null).status());
+			assertEquals(400, request(s, "/feedHits?type=99&dir=" + dirs.get(0), null, null).status());
+			}
+		finally
+			{
+			for(final String d : dirs)
+				{
+				for(final File f : root.resolve(d).toFile().listFiles()) { f.delete(); }
+				root.resolve(d).toFile().delete();
+				}
+			root.toFile().delete();
+			}
+		}
+    }
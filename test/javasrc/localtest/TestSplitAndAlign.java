@@ -18,6 +18,8 @@ package localtest;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.DateTimeException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -27,6 +29,7 @@ import javax.sound.midi.InvalidMidiDataException;
 import org.hd.d.statsHouse.GenerationParameters;
 import org.hd.d.statsHouse.data.DataProtoBar;
 import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
 import org.hd.d.statsHouse.generic.DataCadence;
 import org.hd.d.statsHouse.generic.Style;
 import org.hd.d.statsHouse.generic.TuneSection;
@@ -139,4 +142,52 @@ public final class TestSplitAndAlign extends TestCase
 	    assertNotNull("first note in first bar should not be null", result8.get(0).dataRows().data().get(0));
 	    assertNotNull("last note in last bar should not be null", result8.get(13).dataRows().data().get(11));
 	    }
+
+    /**Test split and align of hourly data on hour of day, with gaps. */
+    public static void testSplitAndAlignHourly() throws IOException
+	    {
+    	final GenerationParameters gentle = new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, null);
+    	final String csv =
+			"2024-01-01T02,,,,meter,1,1\n" +
+			"2024-01-01T03,,,,meter,1,2\n" +
+			"2024-01-01T04,,,,meter,1,3\n" +
+			"2024-01-01T06,,,,meter,1,4\n" + // Gap within bar.
+			"2024-01-01T13,,,,meter,1,5\n" + // Gap of one whole bar.
+			"2024-01-03T01,,,,meter,1,6\n"; // Gap of 8 bars: 2 modulo 6 bars per day.
+    	final List<DataProtoBar> bars = MIDIGen.splitAndAlignData(TuneSection.verse, gentle,
+			EOUDataCSV.parseEOUDataCSV(new StringReader(csv)));
+    	assertEquals(DataCadence.H.defaultPerBar, bars.get(0).dataNotesPerBar());
+    	final StringBuilder sb = new StringBuilder();
+    	for(final DataProtoBar b : bars)
+	    	{
+    		for(final List<String> row : b.dataRows().data()) { sb.append((null == row) ? "." : row.get(6)); }
+    		sb.append('|');
+	    	}
+    	assertEquals("..12|3.4.|....|.5..|....|....|.6..|", sb.toString());
+
+    	// Plain style is not aligned.
+    	final List<DataProtoBar> plain = MIDIGen.splitAndAlignData(TuneSection.verse,
+			new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.plain, 0, false, null),
+			EOUDataCSV.parseEOUDataCSV(new StringReader(csv)));
+    	assertEquals(2, plain.size());
+
+    	// Out of order is rejected.
+    	try
+	    	{
+    		MIDIGen.splitAndAlignData(TuneSection.verse, gentle,
+				EOUDataCSV.parseEOUDataCSV(new StringReader("2024-01-01T03,,,,meter,1,1\n2024-01-01T02,,,,meter,1,1\n")));
+    		fail();
+	    	}
+    	catch(final DateTimeException e) { /* Expected. */ }
+
+    	// Synthetic hourly data generates in all styles.
+    	final StringWriter sw = new StringWriter();
+    	new SyntheticEOUData(DataCadence.H, 24 * 30, 2, 0.05f, 3).write(sw);
+    	final EOUDataCSV hourly = EOUDataCSV.parseEOUDataCSV(new StringReader(sw.toString()));
+    	for(final Style style : Style.values())
+	    	{
+    		final GenerationParameters params = new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, style, 0, false, "hourly");
+    		MIDIGen.validateMIDITune(MIDIGen.genTune(params, hourly));
+	    	}
+	    }
     }
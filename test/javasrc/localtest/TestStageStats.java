@@ -0,0 +1,59 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.util.Map;
+
+import org.hd.d.statsHouse.StageStats;
+
+import junit.framework.TestCase;
+
+/**Test pipeline stage instrumentation.
+ */
+public final class TestStageStats extends TestCase
+    {
+    /**Test that nothing is collected when not requested. */
+	@SuppressWarnings("try")
+    public static void testNotCollecting()
+	    {
+    	try(StageStats.Timer t = StageStats.time("x")) { }
+    	assertTrue(StageStats.end().isEmpty());
+	    }
+
+    /**Test that nested stages are counted, and recorded as self time. */
+	@SuppressWarnings("try")
+    public static void testNestedStages() throws InterruptedException
+	    {
+    	StageStats.begin();
+    	try(StageStats.Timer outer = StageStats.time("outer"))
+	    	{
+    		for(int i = 0; i < 3; ++i)
+    			{ try(StageStats.Timer inner = StageStats.time("inner")) { Thread.sleep(10); } }
+	    	}
+    	final Map<String, StageStats.Totals> m = StageStats.end();
+    	assertEquals(2, m.size());
+    	assertEquals(1, m.get("outer").count);
+    	assertEquals(3, m.get("inner").count);
+    	assertTrue(m.get("inner").wallNs >= 30_000_000L);
+    	// Outer self time excludes the nested sleeps.
+    	assertTrue(m.get("outer").wallNs < m.get("inner").wallNs);
+
+    	final String summary = StageStats.summaryLine(1, m);
+    	assertTrue(summary.startsWith("STATSSUMMARY commands=1 "));
+    	assertTrue(summary.contains(" inner.count=3 "));
+	    }
+    }
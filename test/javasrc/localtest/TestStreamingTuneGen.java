@@ -0,0 +1,134 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataScan;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.ProtoBarAligner;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIConstant;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.StreamingTuneGen;
+
+import junit.framework.TestCase;
+import localtest.support.ExternalFile;
+
+/**Test streaming, bounded-memory sonification and its parts. */
+public final class TestStreamingTuneGen extends TestCase
+    {
+	/**Test that a single-pass scan matches whole-data bounds, cadence and source names. */
+	public static void testDataScan() throws IOException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final DataScan scan = DataScan.scan(ef.getFullPath());
+			assertEquals(data.data().size(), scan.rows());
+			assertEquals(new DataBounds(data), scan.bounds());
+			assertEquals(DataUtils.extractDataCadenceQuick(data), scan.cadence());
+			for(int s = 1; s <= 4; ++s)
+				{ assertEquals(DataUtils.extractSourceName(data, s), scan.sourceName(s)); }
+			}
+		}
+
+	/**Test that the incremental aligner keeps the final padding-only bar when data ends on a bar boundary. */
+	public static void testAlignerFinalBar() throws IOException
+		{
+		final StringWriter sw = new StringWriter();
+		new SyntheticEOUData(DataCadence.M, 24, 1, 0, 1).write(sw);
+		final EOUDataCSV data = EOUDataCSV.parseEOUDataCSV(new StringReader(sw.toString()));
+
+		final List<DataProtoBar> aligned = new ArrayList<>();
+		final ProtoBarAligner a = new ProtoBarAligner(12, true, aligned::add);
+		for(final List<String> row : data.data()) { a.add(row); }
+		assertEquals(2, aligned.size());
+		a.finish();
+		assertEquals(3, aligned.size());
+		assertEquals(aligned, MIDIGen.splitAndAlignData(TuneSection.verse,
+			new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.gentle, 0, false, null), data));
+
+		final List<DataProtoBar> unaligned = new ArrayList<>();
+		final ProtoBarAligner u = new ProtoBarAligner(12, false, unaligned::add);
+		for(final List<String> row : data.data()) { u.add(row); }
+		u.finish();
+		assertEquals(2, unaligned.size());
+		}
+
+	/**Remove the generation timestamp which otherwise makes output differ. */
+	private static String stripTimestamp(final byte[] smf)
+		{ return(new String(smf, StandardCharsets.ISO_8859_1).replaceAll("generated: [^\\x00-\\x1f]+", "")); }
+
+	/**Test that streamed output matches in-memory output for all sample data, plain and gentle. */
+	public static void testMatchesInMemory() throws IOException, InvalidMidiDataException
+		{
+		for(final ExternalFile ef : TestCSVDataSamples.mainFileDataSamples())
+			{
+			final EOUDataCSV data = ef.loadEOUDataCSV();
+			final DataBounds db = new DataBounds(data);
+			for(final Style style : new Style[]{ Style.plain, Style.gentle })
+				{
+				for(final int introBars : new int[]{ 0, 2 })
+					{
+					final GenerationParameters params = new GenerationParameters(
+						GenerationParameters.RANDOMNESS_NONE, style, introBars, false, ef.name());
+
+					final ByteArrayOutputStream inMemory = new ByteArrayOutputStream();
+					MidiSystem.write(MIDIGen.genFromTuneSequence(MIDIGen.genTune(params, data), params, db),
+						MIDIConstant.PREFERRED_MIDI_FILETYPE, inMemory);
+
+					final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+					StreamingTuneGen.genPlainGentle(params, ef.getFullPath(), streamed);
+
+					assertEquals(ef.name() + " " + style + " " + introBars,
+						stripTimestamp(inMemory.toByteArray()), stripTimestamp(streamed.toByteArray()));
+					}
+				}
+			}
+		}
+
+	/**Test that unsupported styles are rejected. */
+	public static void testRejectsHouse() throws IOException, InvalidMidiDataException
+		{
+		assertFalse(StreamingTuneGen.canStream(Style.house));
+		try
+			{
+			StreamingTuneGen.genPlainGentle(
+				new GenerationParameters(GenerationParameters.RANDOMNESS_NONE, Style.house, 0, false, null),
+				TestCSVDataSamples.mainFileDataSamples().get(0).getFullPath(), new ByteArrayOutputStream());
+			fail();
+			}
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+    }
@@ -0,0 +1,112 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.DataProtoBar;
+import org.hd.d.statsHouse.data.DataUtils;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.data.SyntheticEOUData;
+import org.hd.d.statsHouse.generic.DataCadence;
+import org.hd.d.statsHouse.generic.Style;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.midi.MIDIGen;
+
+import junit.framework.TestCase;
+
+/**Test synthetic data generation. */
+public final class TestSyntheticData extends TestCase
+    {
+	/**Generate synthetic CSV text; never null. */
+	private static String gen(final SyntheticEOUData sd) throws IOException
+		{
+		final StringWriter sw = new StringWriter();
+		sd.write(sw);
+		return(sw.toString());
+		}
+
+	/**Test that output is deterministic from the seed. */
+	public static void testDeterministic() throws IOException
+		{
+		final String a = gen(new SyntheticEOUData(DataCadence.D, 1000, 3, 0.1f, 42));
+		assertEquals(a, gen(new SyntheticEOUData(DataCadence.D, 1000, 3, 0.1f, 42)));
+		assertFalse(a.equals(gen(new SyntheticEOUData(DataCadence.D, 1000, 3, 0.1f, 43))));
+		}
+
+	/**Test that output parses with the expected shape, dates and cadence. */
+	public static void testShape() throws IOException
+		{
+		final EOUDataCSV d = EOUDataCSV.parseEOUDataCSV(new StringReader(
+			gen(new SyntheticEOUData(DataCadence.D, 400, 2, 0.2f, List.of("a", "b"), 1))));
+		assertEquals(400, d.data().size());
+		assertEquals(DataCadence.D, DataUtils.extractDataCadenceQuick(d));
+		assertEquals("2008-01-01", d.data().get(0).get(0));
+		assertEquals("2008-02-01", d.data().get(31).get(0));
+		for(final List<String> row : d.data())
+			{
+			// Trailing empty fields are dropped by the parser.
+			assertTrue((row.size() == 1 + (2 * 3)) || (row.size() == 1 + 3));
+			assertTrue("a".equals(row.get(1)) || "b".equals(row.get(4)));
+			}
+		assertEquals(2, new DataBounds(d).streams());
+
+		final EOUDataCSV m = EOUDataCSV.parseEOUDataCSV(new StringReader(
+			gen(new SyntheticEOUData(DataCadence.M, 13, 1, 0, 1))));
+		assertEquals("2009-01", m.data().get(12).get(0));
+		final EOUDataCSV y = EOUDataCSV.parseEOUDataCSV(new StringReader(
+			gen(new SyntheticEOUData(DataCadence.Y, 2, 1, 0, 1))));
+		assertEquals("2009", y.data().get(1).get(0));
+		final EOUDataCSV h = EOUDataCSV.parseEOUDataCSV(new StringReader(
+			gen(new SyntheticEOUData(DataCadence.H, 25, 1, 0, 1))));
+		assertEquals("2008-01-01T23", h.data().get(23).get(0));
+		assertEquals("2008-01-02T00", h.data().get(24).get(0));
+		}
+
+	/**Test that synthetic data is dense enough to align and generate tunes from. */
+	public static void testGenerate() throws IOException
+		{
+		final EOUDataCSV d = EOUDataCSV.parseEOUDataCSV(new StringReader(
+			gen(new SyntheticEOUData(DataCadence.D, 3000, 3, 0.05f, 7))));
+		for(final Style style : Style.values())
+			{
+			final GenerationParameters params = new GenerationParameters(
+				GenerationParameters.RANDOMNESS_NONE, style, 0, false, "synth");
+			final List<DataProtoBar> bars = MIDIGen.splitAndAlignData(TuneSection.verse, params, d);
+			assertFalse(bars.isEmpty());
+			MIDIGen.validateMIDITune(MIDIGen.genTune(params, d));
+			}
+		}
+
+	/**Test that bad parameters are rejected, including dates beyond year 9999. */
+	public static void testBadParameters()
+		{
+		try { new SyntheticEOUData(DataCadence.Y, SyntheticEOUData.maxRows(DataCadence.Y) + 1, 1, 0, 1); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		try { new SyntheticEOUData(DataCadence.D, 10, 0, 0, 1); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		try { new SyntheticEOUData(DataCadence.D, 10, 1, 1, 1); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		try { new SyntheticEOUData(DataCadence.D, 10, 1, 0, List.of("a,b"), 1); fail(); }
+		catch(final IllegalArgumentException e) { /* Expected. */ }
+		}
+    }
@@ -0,0 +1,99 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITrackSetup;
+import org.hd.d.statsHouse.midi.PackedMIDITrack;
+import org.hd.d.statsHouse.midi.PackedMIDITune;
+import org.hd.d.statsHouse.midi.WAVRenderer;
+
+import junit.framework.TestCase;
+
+/**Test pooled WAV rendering. */
+public final class TestWAVRenderer extends TestCase
+    {
+	/**A short MIDI file with notes on one track. */
+	private static byte[] smf(final int bars) throws IOException, InvalidMidiDataException
+		{
+		final PackedMIDITrack t = new PackedMIDITrack(new MIDITrackSetup((byte) 0, (byte) 0));
+		for(int b = 0; b < bars; ++b)
+			{ t.add(b * MIDIGen.DEFAULT_CLOCKS_PER_BAR, (byte) (60 + b), (byte) 100, MIDIGen.DEFAULT_CLKSPQTR, (byte) 127); }
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		MIDIGen.genFromPackedTuneSMF(new PackedMIDITune(List.of(), List.of(t), null, null), null, null, baos);
+		return(baos.toByteArray());
+		}
+
+	/**WAV via AudioSystem, as before pooling. */
+	private static byte[] fresh(final byte smf[]) throws IOException, UnsupportedAudioFileException
+		{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try(final AudioInputStream s = AudioSystem.getAudioInputStream(new ByteArrayInputStream(smf)))
+			{ AudioSystem.write(s, AudioFileFormat.Type.WAVE, baos); }
+		return(baos.toByteArray());
+		}
+
+	/**Frame count of a WAV, checking that it has some sound. */
+	private static long frames(final byte wav[]) throws IOException, UnsupportedAudioFileException
+		{
+		try(final AudioInputStream s = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav)))
+			{
+			final byte pcm[] = s.readAllBytes();
+			boolean sound = false;
+			for(final byte b : pcm) { if(0 != b) { sound = true; break; } }
+			assertTrue("some sound", sound);
+			return(s.getFrameLength());
+			}
+		}
+
+	/**Test that parallel jobs on reused synthesizers render as AudioSystem would. */
+	public static void testRender() throws Exception
+		{
+		final byte shortSMF[] = smf(2);
+		final byte longSMF[] = smf(6);
+		final long shortFrames = frames(fresh(shortSMF));
+		final long longFrames = frames(fresh(longSMF));
+		assertTrue(longFrames > shortFrames);
+
+		try(final WAVRenderer r = new WAVRenderer(2))
+			{
+			// More jobs than synths, so some are reused.
+			final List<CompletableFuture<byte[]>> jobs = new ArrayList<>();
+			for(int i = 0; i < 6; ++i) { jobs.add(r.submit(((i & 1) == 0) ? shortSMF : longSMF)); }
+			for(int i = 0; i < jobs.size(); ++i)
+				{ assertEquals(((i & 1) == 0) ? shortFrames : longFrames, frames(jobs.get(i).join())); }
+
+			// A bad job fails alone.
+			try { r.render(new byte[]{ 1, 2, 3 }); fail(); }
+			catch(final InvalidMidiDataException | IOException e) { /* Expected. */ }
+			assertEquals(shortFrames, frames(r.render(shortSMF)));
+			}
+		}
+    }
@@ -0,0 +1,105 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.hd.d.statsHouse.Watcher;
+
+import junit.framework.TestCase;
+
+/**Test the file-watching regeneration mode. */
+public final class TestWatcher extends TestCase
+    {
+	/**Test extraction of inputs from command lines. */
+	public static void testInputsOf()
+		{
+		assertEquals(List.of(Path.of("in.csv").toAbsolutePath()),
+			Watcher.inputsOf(Arrays.asList("in.csv", "out.mid", "-style", "gentle")));
+		assertEquals(List.of(Path.of("in.csv").toAbsolutePath()),
+			Watcher.inputsOf(Arrays.asList("-streamTune", "in.csv", "out.mid")));
+		assertEquals(List.of(Path.of("a").toAbsolutePath(), Path.of("b").toAbsolutePath()),
+			Watcher.inputsOf(Arrays.asList("-feedHitsSummary", "out", "1", "a", "b")));
+		assertEquals(List.of(Path.of("a.csv").toAbsolutePath(), Path.of("b.csv").toAbsolutePath()),
+			Watcher.inputsOf(Arrays.asList("a.csv+b.csv", "out.mid")));
+		assertEquals(List.of(Path.of("a.csv").toAbsolutePath(), Path.of("b.csv").toAbsolutePath(), Path.of("c.csv").toAbsolutePath()),
+			Watcher.inputsOf(Arrays.asList("-mix", "out.mid", "-part", "a.csv", "-style", "house", "-part", "b.csv+c.csv")));
+		assertTrue(Watcher.inputsOf(Arrays.asList("-synthCSV", "-", "D", "10", "1", "0", "1")).isEmpty());
+		}
+
+	/**Wait up to a few seconds for a condition; false if it does not become true. */
+	private static boolean waitFor(final BooleanSupplier condition) throws InterruptedException
+		{
+		for(int i = 0; i < 200; ++i)
+			{
+			if(condition.getAsBoolean()) { return(true); }
+			Thread.sleep(50);
+			}
+		return(condition.getAsBoolean());
+		}
+
+	/**Test that appending to an input re-runs only the affected command line. */
+	public static void testRegenerateOnAppend() throws Exception
+		{
+		final Path dir = Files.createTempDirectory("watch");
+		final File in1 = dir.resolve("a.csv").toFile();
+		final File in2 = dir.resolve("b.csv").toFile();
+		final File out1 = dir.resolve("a.mid").toFile();
+		final File out2 = dir.resolve("b.mid").toFile();
+		final List<String> lines = Files.readAllLines(new File("dataSample/gen-M.csv").toPath(), StandardCharsets.US_ASCII);
+		Files.write(in1.toPath(), lines.subList(0, lines.size() / 2), StandardCharsets.US_ASCII);
+		Files.write(in2.toPath(), lines, StandardCharsets.US_ASCII);
+		final File cmds = dir.resolve("cmds.txt").toFile();
+		Files.write(cmds.toPath(), List.of(
+			in1 + " " + out1 + " -style gentle",
+			in2 + " " + out2 + " -style plain"), StandardCharsets.US_ASCII);
+
+		try(final Watcher w = new Watcher(cmds, 50, 2, false))
+			{
+			final Thread t = new Thread(() -> {
+				try { w.run(); }
+				catch(final Exception e) { e.printStackTrace(); }
+				});
+			t.setDaemon(true);
+			t.start();
+
+			// Initial run of everything.
+			assertTrue(waitFor(() -> (2 == w.runs()) && out1.exists() && out2.exists()));
+			final long len1 = out1.length();
+			final long len2 = out2.length();
+
+			// Append to one input only.
+			try(OutputStream os = new FileOutputStream(in1, true))
+				{ os.write((String.join("\n", lines.subList(lines.size() / 2, lines.size())) + "\n").getBytes(StandardCharsets.US_ASCII)); }
+			assertTrue(waitFor(() -> (3 == w.runs()) && (out1.length() > len1)));
+			Thread.sleep(200);
+			assertEquals(3, w.runs());
+			assertEquals(len2, out2.length());
+			}
+
+		for(final File f : dir.toFile().listFiles()) { f.delete(); }
+		dir.toFile().delete();
+		}
+    }
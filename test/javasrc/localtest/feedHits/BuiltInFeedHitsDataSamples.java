@@ -63,4 +63,18 @@ public final class BuiltInFeedHitsDataSamples
 508 2203081 200:304:406:429:SH 82 101 0 325 508 23
 12857 71404021 200:304:406:429:SH 2987 1993 359 7476 5129 ALL
 	""";
+
+	/**One block of feed hit types by User-Agent, heaviest first, somewhat truncated.
+	 * Modelled on https://www.earth.org.uk/img/research/RSS-efficiency/data/20240527/feedStatusByUA.log
+	 */
+	public static final String feedStatusByUA_20240527 = """
+12857 71404021 200:304:406:429:SH 2987 1993 359 7476 5129 ALL
+3313 8064521 200:304:406:429:SH 152 0 0 3161 1269 "iTMS"
+1701 3248489 200:304:406:429:SH 183 0 0 1518 421 "Podbean/FeedUpdate 2.1"
+1265 2305721 200:304:406:429:SH 58 1207 0 0 0 "Spotify/1.0"
+812 1442009 200:304:406:429:SH 101 0 0 711 300 "Amazon Music Podcast"
+477 632084 200:304:406:429:SH 22 0 75 380 173 "-"
+201 907774 200:304:406:429:SH 201 0 0 0 0 "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"
+88 130201 200:304:406:429:SH 12 76 0 0 0 "Gofeed/1.0"
+	""";
 	}
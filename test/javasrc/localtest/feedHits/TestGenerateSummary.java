@@ -0,0 +1,113 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest.feedHits;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hd.d.statsHouse.feedHits.GenerateSummary;
+import org.hd.d.statsHouse.feedHits.data.FeedStatus;
+import org.hd.d.statsHouse.feedHits.data.FeedStatusBlocks;
+import org.hd.d.statsHouse.feedHits.data.SyntheticFeedHits;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDITune;
+
+import junit.framework.TestCase;
+
+/**Test generation of summary sonifications from feed data blocks. */
+public final class TestGenerateSummary extends TestCase
+    {
+	/**Create a temporary data block directory with the by-UA sample data; never null. */
+	private static File makeByUABlockDir(final int nDays) throws IOException
+		{
+		final File d = Files.createTempDirectory("statsHouseByUA").toFile();
+		d.deleteOnExit();
+		final File id = new File(d, FeedStatusBlocks.INTERVAL_DAYS_FILENAME);
+		Files.writeString(id.toPath(), Integer.toString(nDays) + "\n", FeedStatus.CHARSET);
+		id.deleteOnExit();
+		final File sbu = new File(d, FeedStatusBlocks.STATUS_BY_UA_FILENAME);
+		Files.writeString(sbu.toPath(), BuiltInFeedHitsDataSamples.feedStatusByUA_20240527, FeedStatus.CHARSET);
+		sbu.deleteOnExit();
+		return(d);
+		}
+
+	/**Test by-UA summary type 3 over a few sample blocks. */
+	public static void testSummary3() throws IOException
+		{
+		final List<String> dirnames = new ArrayList<>();
+		for(int i = 0; i < 3; ++i)
+			{ dirnames.add(makeByUABlockDir(BuiltInFeedHitsDataSamples.intervalDays_20240527 - i).getPath()); }
+
+		final MIDITune mt = GenerateSummary.summary(3, dirnames);
+		assertNotNull(mt);
+		MIDIGen.validateMIDITune(mt);
+		assertTrue(mt.dataMelody().isEmpty());
+		// Four overall heaviest UAs, OTHER, and percussion.
+		assertEquals(6, mt.supportTracks().size());
+		assertEquals("UA: iTunes", mt.supportTracks().get(0).setup().name());
+		assertEquals("UA: Podbean", mt.supportTracks().get(1).setup().name());
+		assertEquals("UA: OTHER", mt.supportTracks().get(4).setup().name());
+		// One bar per block.
+		assertEquals(dirnames.size(), mt.supportTracks().get(0).bars().size());
+		// Heaviest UA chord has one note per non-zero status code.
+		assertEquals(3, mt.supportTracks().get(0).bars().get(0).notes().size());
+
+		// One visualisation point per beat, four beats per block.
+		assertNotNull(mt.dataRendered());
+		assertEquals(4 * dirnames.size(), mt.dataRendered().nBeats());
+		assertEquals("iTunes", mt.dataRendered().beatLabels().get(0));
+		assertEquals("Spotify", mt.dataRendered().beatLabels().get(2));
+		assertEquals(3313 / (float) BuiltInFeedHitsDataSamples.intervalDays_20240527,
+			mt.dataRendered().dataRendered().get(0).get(0).floatValue(), 0.001f);
+		}
+	
+	/**Test all summary types over synthetic data blocks, and that generation is deterministic. */
+	public static void testSyntheticBlocks() throws IOException
+		{
+		final File parent = Files.createTempDirectory("statsHouseSynth").toFile();
+		final List<String> dirnames = SyntheticFeedHits.writeDirs(parent, 5, 7, 20, 1);
+		assertEquals(5, dirnames.size());
+		assertEquals(5, FeedStatusBlocks.loadStatusByHourFromDirs(dirnames).blocks().size());
+		assertEquals(21, FeedStatusBlocks.loadStatusByUAFromDirs(dirnames).blocks().get(0).records().size());
+
+		for(int type = 1; type <= 3; ++type)
+			{ MIDIGen.validateMIDITune(GenerateSummary.summary(type, dirnames)); }
+
+		final File parent2 = Files.createTempDirectory("statsHouseSynth").toFile();
+		final List<String> dirnames2 = SyntheticFeedHits.writeDirs(parent2, 5, 7, 20, 1);
+		for(int i = 0; i < dirnames.size(); ++i)
+			{
+			final File d = new File(dirnames.get(i)), d2 = new File(dirnames2.get(i));
+			assertEquals(d.getName(), d2.getName());
+			assertEquals(Files.readString(new File(d, FeedStatusBlocks.STATUS_BY_UA_FILENAME).toPath()),
+				Files.readString(new File(d2, FeedStatusBlocks.STATUS_BY_UA_FILENAME).toPath()));
+			}
+
+		for(final File p : new File[]{parent, parent2})
+			{
+			for(final File d : p.listFiles())
+				{
+				for(final File f : d.listFiles()) { f.delete(); }
+				d.delete();
+				}
+			p.delete();
+			}
+		}
+	}
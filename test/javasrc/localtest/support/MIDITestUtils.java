@@ -0,0 +1,136 @@
+/*
+Copyright (c) 2024, Damon Hart-Davis
+
+Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package localtest.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+
+import org.hd.d.statsHouse.GenerationParameters;
+import org.hd.d.statsHouse.data.DataBounds;
+import org.hd.d.statsHouse.data.EOUDataCSV;
+import org.hd.d.statsHouse.generic.NoteAndVelocity;
+import org.hd.d.statsHouse.generic.TuneSection;
+import org.hd.d.statsHouse.generic.TuneSectionMetadata;
+import org.hd.d.statsHouse.midi.MIDIConstant;
+import org.hd.d.statsHouse.midi.MIDIGen;
+import org.hd.d.statsHouse.midi.MIDIPlayableBar;
+import org.hd.d.statsHouse.midi.MIDIPlayableMonophonicDataBar;
+import org.hd.d.statsHouse.midi.MIDITune;
+import org.hd.d.statsHouse.midi.StreamingTuneGen;
+
+import junit.framework.AssertionFailedError;
+
+/**MIDI output and inspection helpers, shareable across all test cases. */
+public final class MIDITestUtils
+	{
+	/**Prevent instance creation. */
+	private MIDITestUtils() { }
+
+	/**SMF bytes of a full tune; never null. */
+	public static byte[] smf(final MIDITune tune, final GenerationParameters params, final DataBounds db)
+		throws IOException, InvalidMidiDataException
+		{
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		MidiSystem.write(MIDIGen.genFromTuneSequence(tune, params, db), MIDIConstant.PREFERRED_MIDI_FILETYPE, baos);
+		return(baos.toByteArray());
+		}
+
+	/**Generate a plain/gentle tune in full, packed and streamed, asserting identical SMF bytes from all three.
+	 * Uses the deterministic header for the comparison.
+	 *
+	 * @return the validated full tune; never null
+	 */
+	public static MIDITune genFullPackedStreamed(final GenerationParameters params, final ExternalFile ef)
+		throws IOException, InvalidMidiDataException
+		{
+		final String what = ef.name() + " " + params.style();
+		final EOUDataCSV data = ef.loadEOUDataCSV();
+		final DataBounds db = new DataBounds(data);
+		final MIDITune full = MIDIGen.genTune(params, data);
+		MIDIGen.validateMIDITune(full);
+		try
+			{
+			MIDIGen.setDeterministicHeader(true);
+			final byte fullSMF[] = smf(full, params, db);
+			final ByteArrayOutputStream packed = new ByteArrayOutputStream();
+			MidiSystem.write(MIDIGen.genFromPackedTuneSequence(MIDIGen.genPackedTune(params, data), params, db),
+				MIDIConstant.PREFERRED_MIDI_FILETYPE, packed);
+			if(!Arrays.equals(fullSMF, packed.toByteArray())) { throw new AssertionFailedError(what + " packed"); }
+			final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+			StreamingTuneGen.genPlainGentle(params, ef.getFullPath(), streamed);
+			if(!Arrays.equals(fullSMF, streamed.toByteArray())) { throw new AssertionFailedError(what + " streamed"); }
+			}
+		finally { MIDIGen.setDeterministicHeader(false); }
+		return(full);
+		}
+
+	/**True if the given bar of the tune is in a verse; every bar is if the tune has no plan. */
+	private static boolean isVerseBar(final MIDITune tune, final int bar)
+		{
+		if(null == tune.plan()) { return(true); }
+		int start = 0;
+		for(final TuneSectionMetadata ts : tune.plan().sections())
+			{
+			if(bar < start + ts.bars()) { return(TuneSection.verse == ts.sectionType()); }
+			start += ts.bars();
+			}
+		return(false);
+		}
+
+	/**Notes of a data melody track in verses by absolute start clock; never null. */
+	public static NavigableMap<Integer, NoteAndVelocity> verseNotes(final MIDITune tune,
+			final List<MIDIPlayableMonophonicDataBar> bars)
+		{
+		final NavigableMap<Integer, NoteAndVelocity> result = new TreeMap<>();
+		for(int b = 0; b < bars.size(); ++b)
+			{
+			if(!isVerseBar(tune, b)) { continue; }
+			final MIDIPlayableMonophonicDataBar bar = bars.get(b);
+			final int clocksPerNote = MIDIGen.DEFAULT_CLOCKS_PER_BAR / bar.dataNotesPerBar();
+			for(int i = 0; i < bar.notes().size(); ++i)
+				{
+				final NoteAndVelocity n = bar.notes().get(i);
+				if(null != n) { result.put((b * MIDIGen.DEFAULT_CLOCKS_PER_BAR) + (i * clocksPerNote), n); }
+				}
+			}
+		return(result);
+		}
+
+	/**Notes of a support track in verses by absolute start clock, with start adjusted to match; never null. */
+	public static NavigableMap<Integer, MIDIPlayableBar.StartNoteVelocityDuration> verseSupportNotes(
+			final MIDITune tune, final List<MIDIPlayableBar> bars)
+		{
+		final NavigableMap<Integer, MIDIPlayableBar.StartNoteVelocityDuration> result = new TreeMap<>();
+		for(int b = 0; b < bars.size(); ++b)
+			{
+			if(!isVerseBar(tune, b)) { continue; }
+			for(final MIDIPlayableBar.StartNoteVelocityDuration n : bars.get(b).notes())
+				{
+				final int start = (b * MIDIGen.DEFAULT_CLOCKS_PER_BAR) + n.start();
+				result.put(start, new MIDIPlayableBar.StartNoteVelocityDuration(start, n.note(), n.duration()));
+				}
+			}
+		return(result);
+		}
+	}